@@ -0,0 +1,27 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import java.util.List;
+
+/**
+ * BatchEventListener - a listener which would rather receive its events in
+ * batches. The batch is only acknowledged once onEvents returns. If it throws,
+ * the events are handed over again one at a time, and those which still fail
+ * are dropped; see BatchListenerWrapper.
+ */
+public interface BatchEventListener extends EventListener {
+    void onEvents(List<Event> events);
+}
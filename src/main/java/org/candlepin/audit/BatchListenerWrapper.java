@@ -0,0 +1,277 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientSession;
+
+/**
+ * BatchListenerWrapper
+ *
+ * Drains a listener's queue on its own thread and hands the events over in
+ * batches of up to batchSize, waiting at most maxWait milliseconds for a batch
+ * to fill up. The session does not commit acknowledgements by itself, a batch
+ * is only acknowledged once the listener has handled it.
+ *
+ * When the listener fails on a batch, its events are handed over again one at a
+ * time, so one bad event can not hold up the others: the events which still
+ * fail are logged and dropped, and the rest are acknowledged. Each retry gets
+ * an event freshly read from its message, as the listener may have left state
+ * (e.g. a generated id) on the ones it failed on. Only when not a single event
+ * goes through is the batch rolled back and redelivered, as the listener is
+ * then most likely unable to store anything at all.
+ */
+public class BatchListenerWrapper implements Runnable {
+
+    private static Logger log = Logger.getLogger(BatchListenerWrapper.class);
+    private static final long IDLE_WAIT = 1000L;
+    private static final long MIN_RETRY_WAIT = 100L;
+    private static final long SUMMARY_INTERVAL = 60 * 1000L;
+
+    private BatchEventListener listener;
+    private ClientSession session;
+    private ClientConsumer consumer;
+    private ObjectMapper mapper;
+    private int batchSize;
+    private long maxWait;
+    private volatile boolean running = true;
+
+    private AtomicLong events = new AtomicLong();
+    private AtomicLong batches = new AtomicLong();
+    private AtomicLong failures = new AtomicLong();
+    private AtomicLong dropped = new AtomicLong();
+    private volatile long lag;
+    private long lastSummary = System.currentTimeMillis();
+
+    public BatchListenerWrapper(BatchEventListener listener, ClientSession session,
+        ClientConsumer consumer, ObjectMapper mapper, int batchSize, long maxWait) {
+        this.listener = listener;
+        this.session = session;
+        this.consumer = consumer;
+        this.mapper = mapper;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxWait = Math.max(0, maxWait);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                receiveBatch();
+            }
+            catch (HornetQException e) {
+                if (running) {
+                    log.error("Unable to receive events for " + listener, e);
+                    pause();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops draining the queue once the current batch is done.
+     */
+    public void shutDown() {
+        running = false;
+    }
+
+    /**
+     * Waits for the first event, then collects more until the batch is full or
+     * maxWait has passed, and delivers the batch.
+     *
+     * @return the number of messages received.
+     * @throws HornetQException if the queue can not be read
+     */
+    int receiveBatch() throws HornetQException {
+        ClientMessage msg = consumer.receive(IDLE_WAIT);
+        if (msg == null) {
+            return 0;
+        }
+
+        List<ClientMessage> messages = new ArrayList<ClientMessage>(batchSize);
+        List<String> bodies = new ArrayList<String>(batchSize);
+        List<Event> batch = new ArrayList<Event>(batchSize);
+        long deadline = System.currentTimeMillis() + maxWait;
+        while (msg != null) {
+            messages.add(msg);
+            String body = msg.getBodyBuffer().readString();
+            Event event = readEvent(body);
+            if (event != null) {
+                bodies.add(body);
+                batch.add(event);
+            }
+
+            long remaining = deadline - System.currentTimeMillis();
+            if (messages.size() >= batchSize || remaining <= 0) {
+                break;
+            }
+            msg = consumer.receive(remaining);
+        }
+
+        deliver(messages, bodies, batch);
+        return messages.size();
+    }
+
+    private void deliver(List<ClientMessage> messages, List<String> bodies,
+        List<Event> batch) throws HornetQException {
+        long start = System.currentTimeMillis();
+        int delivered;
+        try {
+            delivered = handOver(bodies, batch);
+            for (ClientMessage msg : messages) {
+                msg.acknowledge();
+            }
+            session.commit();
+        }
+        catch (Exception e) {
+            failures.incrementAndGet();
+            log.error("Unable to process " + messages.size() + " events for " +
+                listener + ", they will be redelivered", e);
+            session.rollback();
+            pause();
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        events.addAndGet(delivered);
+        batches.incrementAndGet();
+        if (!batch.isEmpty() && batch.get(0).getTimestamp() != null) {
+            // the oldest event in the batch waited the longest
+            lag = now - batch.get(0).getTimestamp().getTime();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Stored " + delivered + " events in " + (now - start) +
+                "ms, lag " + lag + "ms");
+        }
+        if (now - lastSummary >= SUMMARY_INTERVAL) {
+            lastSummary = now;
+            log.info(listener.getClass().getSimpleName() + ": " + events.get() +
+                " events in " + batches.get() + " batches, " + failures.get() +
+                " failed batches, " + dropped.get() + " dropped events, lag " +
+                lag + "ms");
+        }
+    }
+
+    /**
+     * Hands the batch to the listener, falling back to one event at a time if
+     * the batch as a whole fails.
+     *
+     * @param bodies the message bodies the events were read from
+     * @param batch the events
+     * @return the number of events the listener accepted.
+     * @throws RuntimeException if the listener accepted none of them
+     */
+    private int handOver(List<String> bodies, List<Event> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        try {
+            listener.onEvents(batch);
+            return batch.size();
+        }
+        catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                throw e;
+            }
+            log.warn("Unable to process a batch of " + batch.size() + " events for " +
+                listener + ", retrying them one at a time", e);
+
+            int delivered = 0;
+            for (String body : bodies) {
+                Event event = readEvent(body);
+                try {
+                    listener.onEvents(Collections.singletonList(event));
+                    delivered++;
+                }
+                catch (RuntimeException single) {
+                    log.error("Dropping event " + event + " which " + listener +
+                        " can not process", single);
+                }
+            }
+            if (delivered == 0) {
+                throw e;
+            }
+            dropped.addAndGet(batch.size() - delivered);
+            return delivered;
+        }
+    }
+
+    private Event readEvent(String body) {
+        try {
+            return mapper.readValue(body, Event.class);
+        }
+        catch (Exception e) {
+            // acknowledged with the rest of the batch, it will never parse
+            log.fatal("Unable to deserialize event object from msg: " + body, e);
+            return null;
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(Math.max(maxWait, MIN_RETRY_WAIT));
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    /**
+     * @return number of events handed to the listener and acknowledged.
+     */
+    public long getEvents() {
+        return events.get();
+    }
+
+    /**
+     * @return number of batches acknowledged.
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * @return number of batches rolled back for redelivery.
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * @return number of events the listener could not process on their own,
+     * which were acknowledged without being stored.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return milliseconds between the oldest event of the last batch being
+     * created and it being acknowledged.
+     */
+    public long getLag() {
+        return lag;
+    }
+}
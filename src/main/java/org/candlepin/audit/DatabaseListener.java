@@ -14,6 +14,8 @@
  */
 package org.candlepin.audit;
 
+import java.util.List;
+
 import org.apache.log4j.Logger;
 import org.candlepin.auth.Principal;
 import org.candlepin.auth.SystemPrincipal;
@@ -21,18 +23,39 @@ import org.candlepin.model.EventCurator;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
 
 import com.google.inject.Inject;
+import com.google.inject.persist.UnitOfWork;
 
 /**
- * DatabaseListener
+ * DatabaseListener - stores events in the audit table. Events are received in
+ * batches, each of which is inserted in a single transaction.
  */
-public class DatabaseListener implements EventListener {
+public class DatabaseListener implements BatchEventListener {
 
     private EventCurator eventCurator;
+    private UnitOfWork unitOfWork;
     private static Logger log = Logger.getLogger(DatabaseListener.class);
 
     @Inject
-    public DatabaseListener(EventCurator eventCurator) {
+    public DatabaseListener(EventCurator eventCurator, UnitOfWork unitOfWork) {
         this.eventCurator = eventCurator;
+        this.unitOfWork = unitOfWork;
+    }
+
+    @Override
+    public void onEvents(List<Event> events) {
+        ResteasyProviderFactory.pushContext(Principal.class, new SystemPrincipal());
+        if (log.isDebugEnabled()) {
+            log.debug("Received " + events.size() + " events");
+        }
+
+        // a fresh persistence context per batch, so stored events do not pile up
+        unitOfWork.begin();
+        try {
+            eventCurator.createAll(events);
+        }
+        finally {
+            unitOfWork.end();
+        }
     }
 
     @Override
@@ -34,6 +34,7 @@ import org.candlepin.auth.PrincipalData;
 import org.candlepin.model.Persisted;
 import org.candlepin.util.Util;
 import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Index;
 
 /**
  * Event - Base class for Candlepin events. Serves as both our semi-permanent
@@ -42,6 +43,11 @@ import org.hibernate.annotations.GenericGenerator;
  */
 @Entity
 @Table(name = "cp_event")
+@org.hibernate.annotations.Table(appliesTo = "cp_event", indexes = {
+    @Index(name = "cp_event_timestamp_idx", columnNames = {"timestamp"}),
+    @Index(name = "cp_event_owner_time_idx", columnNames = {"ownerid", "timestamp"}),
+    @Index(name = "cp_event_consumer_time_idx",
+        columnNames = {"consumerid", "timestamp"})})
 @XmlRootElement(namespace = "http://fedorahosted.org/candlepin/Event")
 @XmlAccessorType(XmlAccessType.PROPERTY)
 public class Event implements Persisted {
@@ -136,6 +142,12 @@ public class Event implements Persisted {
     @Transient
     private String messageText;
 
+    // render the entity json the first time it is needed, see EventFactory
+    @Transient
+    private EntityRenderer oldEntityRenderer;
+    @Transient
+    private EntityRenderer newEntityRenderer;
+
     public Event() {
     }
 
@@ -247,20 +259,40 @@ public class Event implements Persisted {
 
     @XmlTransient
     public String getOldEntity() {
+        if (oldEntityRenderer != null) {
+            oldEntity = oldEntityRenderer.render();
+            oldEntityRenderer = null;
+        }
         return oldEntity;
     }
 
     public void setOldEntity(String oldEntity) {
         this.oldEntity = oldEntity;
+        this.oldEntityRenderer = null;
+    }
+
+    void deferOldEntity(EntityRenderer renderer) {
+        this.oldEntity = null;
+        this.oldEntityRenderer = renderer;
     }
 
     @XmlTransient
     public String getNewEntity() {
+        if (newEntityRenderer != null) {
+            newEntity = newEntityRenderer.render();
+            newEntityRenderer = null;
+        }
         return newEntity;
     }
 
     public void setNewEntity(String newEntity) {
         this.newEntity = newEntity;
+        this.newEntityRenderer = null;
+    }
+
+    void deferNewEntity(EntityRenderer renderer) {
+        this.newEntity = null;
+        this.newEntityRenderer = renderer;
     }
 
     @Override
@@ -305,4 +337,12 @@ public class Event implements Persisted {
     public void setMessageText(String messageText) {
         this.messageText = messageText;
     }
+
+    /**
+     * EntityRenderer - produces the JSON of an event's entity once the event is
+     * actually sent, rather than when it is created.
+     */
+    interface EntityRenderer {
+        String render();
+    }
 }
@@ -20,6 +20,7 @@ import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.introspect.JacksonAnnotationIntrospector;
 import org.codehaus.jackson.map.ser.impl.SimpleFilterProvider;
 import org.codehaus.jackson.xc.JaxbAnnotationIntrospector;
+import org.candlepin.audit.Event.EntityRenderer;
 import org.candlepin.auth.Principal;
 import org.candlepin.guice.PrincipalProvider;
 import org.candlepin.jackson.HateoasBeanPropertyFilter;
@@ -35,6 +36,13 @@ import com.google.inject.Inject;
 
 /**
  * EventFactory
+ *
+ * Consumer and entitlement events are created on busy request paths, so their
+ * entity JSON is only rendered when the event is sent. The sink sends a
+ * request's events after its transaction has finished, and never renders
+ * events which are discarded. State which may change before then is captured
+ * up front: deleted entities and pools (whose quantities keep changing) are
+ * rendered immediately, and a consumer about to be updated is snapshotted.
  */
 public class EventFactory {
     private final PrincipalProvider principalProvider;
@@ -65,12 +73,12 @@ public class EventFactory {
     }
 
     public Event consumerCreated(Consumer newConsumer) {
-        String newEntityJson = entityToJson(newConsumer);
         Principal principal = principalProvider.get();
         Event e = new Event(Event.Type.CREATED, Event.Target.CONSUMER,
             newConsumer.getName(), principal, newConsumer.getOwner().getId(),
-            newConsumer.getId(), newConsumer.getId(), null, newEntityJson,
+            newConsumer.getId(), newConsumer.getId(), null, null,
             null, null);
+        e.deferNewEntity(deferToJson(newConsumer));
         return e;
     }
 
@@ -86,24 +94,32 @@ public class EventFactory {
     }
 
     public Event consumerModified(Consumer newConsumer) {
-        String newEntityJson = entityToJson(newConsumer);
         Principal principal = principalProvider.get();
 
-        return new Event(Event.Type.MODIFIED, Event.Target.CONSUMER,
+        Event e = new Event(Event.Type.MODIFIED, Event.Target.CONSUMER,
             newConsumer.getName(), principal, newConsumer.getOwner().getId(),
-            newConsumer.getId(), newConsumer.getId(), null, newEntityJson,
+            newConsumer.getId(), newConsumer.getId(), null, null,
             null, null);
+        e.deferNewEntity(deferToJson(newConsumer));
+        return e;
     }
 
+    /**
+     * @param oldConsumer the consumer before it is updated. It is snapshotted
+     * so it can go on being updated after this.
+     * @param newConsumer the incoming changes
+     * @return the consumer modified event
+     */
     public Event consumerModified(Consumer oldConsumer, Consumer newConsumer) {
-        String oldEntityJson = entityToJson(oldConsumer);
-        String newEntityJson = entityToJson(newConsumer);
         Principal principal = principalProvider.get();
 
-        return new Event(Event.Type.MODIFIED, Event.Target.CONSUMER,
+        Event e = new Event(Event.Type.MODIFIED, Event.Target.CONSUMER,
             oldConsumer.getName(), principal, oldConsumer.getOwner().getId(),
-            oldConsumer.getId(), oldConsumer.getId(), oldEntityJson, newEntityJson,
+            oldConsumer.getId(), oldConsumer.getId(), null, null,
             null, null);
+        e.deferOldEntity(deferToJson(oldConsumer.snapshot()));
+        e.deferNewEntity(deferToJson(newConsumer));
+        return e;
     }
 
     public Event consumerDeleted(Consumer oldConsumer) {
@@ -129,19 +145,18 @@ public class EventFactory {
     }
 
     private Event entitlementEvent(Entitlement e, Event.Type type) {
-        String json = entityToJson(e);
-        String old = null, latest = null;
         Owner owner = e.getOwner();
+        Event event = new Event(type, Event.Target.ENTITLEMENT, e.getPool()
+            .getProductName(), principalProvider.get(), owner.getId(), e
+            .getConsumer().getId(), e.getId(), null, null,
+            e.getPool().getId(), Event.ReferenceType.POOL);
         if (type == Event.Type.DELETED) {
-            old = json;
+            event.setOldEntity(entityToJson(e));
         }
         else {
-            latest = json;
+            event.deferNewEntity(deferToJson(e));
         }
-        return new Event(type, Event.Target.ENTITLEMENT, e.getPool()
-            .getProductName(), principalProvider.get(), owner.getId(), e
-            .getConsumer().getId(), e.getId(), old, latest,
-            e.getPool().getId(), Event.ReferenceType.POOL);
+        return event;
     }
 
     public Event ownerCreated(Owner newOwner) {
@@ -212,8 +227,9 @@ public class EventFactory {
         Principal principal = principalProvider.get();
         Event e = new Event(Event.Type.CREATED, Event.Target.EXPORT, consumer.getName(),
             principal, consumer.getOwner().getId(), consumer.getId(),
-            consumer.getId(), null, entityToJson(consumer),
+            consumer.getId(), null, null,
             null, null);
+        e.deferNewEntity(deferToJson(consumer));
         return e;
     }
 
@@ -271,6 +287,14 @@ public class EventFactory {
         return event;
     }
 
+    private EntityRenderer deferToJson(final Object entity) {
+        return new EntityRenderer() {
+            public String render() {
+                return entityToJson(entity);
+            }
+        };
+    }
+
     private String entityToJson(Object entity) {
         String newEntityJson = "";
         // TODO: Throw an auditing exception here
@@ -27,6 +27,18 @@ public interface EventSink {
 
     void sendEvent(Event event);
 
+    /**
+     * Holds the events sent by the current thread from now on, until
+     * {@link #sendEvents()} is called. Events sent while a transaction is in
+     * progress are only held once it commits, and dropped if it rolls back.
+     */
+    void beginBatch();
+
+    /**
+     * Sends all events held for the current thread as a single transaction.
+     */
+    void sendEvents();
+
     void emitConsumerCreated(Consumer newConsumer);
 
     void emitOwnerCreated(Owner newOwner);
@@ -17,6 +17,12 @@ package org.candlepin.audit;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
 import org.apache.log4j.Logger;
 import org.candlepin.config.Config;
 import org.candlepin.config.ConfigProperties;
@@ -25,6 +31,7 @@ import org.candlepin.model.Consumer;
 import org.candlepin.model.Owner;
 import org.candlepin.model.Pool;
 import org.candlepin.model.Subscription;
+import org.candlepin.model.TransactionHooks;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.TransportConfiguration;
@@ -37,28 +44,50 @@ import org.hornetq.api.core.client.ServerLocator;
 import org.hornetq.core.remoting.impl.invm.InVMConnectorFactory;
 /**
  * EventSink - Reliably dispatches events to all configured listeners.
+ *
+ * HornetQ sessions must not be used by two threads at once, so a thread sending
+ * events borrows a transacted session and producer, and hands it back as soon
+ * as its events are committed. Idle sessions are kept for reuse, up to
+ * {@link #MAX_IDLE_SESSIONS}, so threads which come and go never hold on to a
+ * session.
+ *
+ * Events sent between {@link #beginBatch()} and {@link #sendEvents()} (i.e.
+ * during a request, see EventFilter) are held until the batch ends, then
+ * serialized and committed together. An event sent while a database transaction
+ * is in progress only joins the batch once that transaction commits, and is
+ * dropped if it rolls back. That keeps their JSON rendering out of the
+ * transaction, skips it entirely for work which was rolled back, and costs one
+ * journal sync per request rather than one per event. Outside of a batch every
+ * event is committed as soon as it is sent.
  */
 @Singleton
 public class EventSinkImpl implements EventSink {
 
     private static Logger log = Logger.getLogger(EventSinkImpl.class);
+    static final int MAX_IDLE_SESSIONS = 16;
+
     private EventFactory eventFactory;
+    private TransactionHooks transactionHooks;
     private ClientSessionFactory factory;
-    private ClientSession clientSession;
-    private ClientProducer clientProducer;
+    private BlockingQueue<ProducerSession> idle =
+        new ArrayBlockingQueue<ProducerSession>(MAX_IDLE_SESSIONS);
+    // events held until the end of the current batch
+    private ThreadLocal<List<Event>> batches = new ThreadLocal<List<Event>>();
     private int largeMsgSize;
     private ObjectMapper mapper;
 
     @Inject
-    public EventSinkImpl(EventFactory eventFactory, ObjectMapper mapper) {
+    public EventSinkImpl(EventFactory eventFactory, ObjectMapper mapper,
+        TransactionHooks transactionHooks) {
         this.eventFactory = eventFactory;
         this.mapper = mapper;
+        this.transactionHooks = transactionHooks;
         try {
             largeMsgSize = new Config().getInt(ConfigProperties.HORNETQ_LARGE_MSG_SIZE);
 
             factory =  createClientSessionFactory();
-            clientSession = factory.createSession();
-            clientProducer = clientSession.createProducer(EventSource.QUEUE_ADDRESS);
+            // fail now, rather than on the first event, if hornetq is unusable
+            release(borrow());
         }
         catch (HornetQException e) {
             throw new RuntimeException(e);
@@ -76,18 +105,122 @@ public class EventSinkImpl implements EventSink {
     }
 
     @Override
-    public void sendEvent(Event event) {
+    public void sendEvent(final Event event) {
         if (log.isDebugEnabled()) {
             log.debug("Sending event - " + event);
         }
+        if (batches.get() == null) {
+            send(Collections.singletonList(event));
+            return;
+        }
+
+        transactionHooks.afterCommit(new Runnable() {
+            public void run() {
+                List<Event> batch = batches.get();
+                if (batch != null) {
+                    batch.add(event);
+                }
+                else {
+                    send(Collections.singletonList(event));
+                }
+            }
+        });
+    }
+
+    @Override
+    public void beginBatch() {
+        batches.set(new ArrayList<Event>());
+    }
+
+    @Override
+    public void sendEvents() {
+        List<Event> batch = batches.get();
+        batches.remove();
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Committing " + batch.size() + " events");
+        }
+        send(batch);
+    }
+
+    /**
+     * Serializes the events and commits them in a single transaction of a
+     * borrowed session. Events which can not be serialized are logged and
+     * skipped.
+     */
+    private void send(List<Event> events) {
+        ProducerSession producerSession;
         try {
-            ClientMessage message = clientSession.createMessage(true);
-            String eventString = mapper.writeValueAsString(event);
-            message.getBodyBuffer().writeString(eventString);
-            clientProducer.send(message);
+            producerSession = borrow();
         }
-        catch (Exception e) {
-            log.error("Error while trying to send event: " + event, e);
+        catch (HornetQException e) {
+            log.error("Unable to send " + events.size() + " events", e);
+            return;
+        }
+
+        int pending = 0;
+        for (Event event : events) {
+            try {
+                ClientMessage message = producerSession.session.createMessage(true);
+                String eventString = mapper.writeValueAsString(event);
+                message.getBodyBuffer().writeString(eventString);
+                producerSession.producer.send(message);
+                pending++;
+            }
+            catch (Exception e) {
+                log.error("Error while trying to send event: " + event, e);
+            }
+        }
+
+        try {
+            if (pending > 0) {
+                producerSession.session.commit();
+            }
+            release(producerSession);
+        }
+        catch (HornetQException e) {
+            log.error("Error while trying to send " + pending + " events", e);
+            rollback(producerSession);
+        }
+    }
+
+    private void rollback(ProducerSession producerSession) {
+        try {
+            producerSession.session.rollback();
+            release(producerSession);
+        }
+        catch (HornetQException e) {
+            // the session is unusable, start over with a new one
+            log.error("Error while trying to roll back events", e);
+            close(producerSession);
+        }
+    }
+
+    private ProducerSession borrow() throws HornetQException {
+        ProducerSession producerSession = idle.poll();
+        if (producerSession == null) {
+            // transacted: sends are only persisted on commit
+            ClientSession session = factory.createSession(false, false);
+            ClientProducer producer = session.createProducer(EventSource.QUEUE_ADDRESS);
+            producerSession = new ProducerSession(session, producer);
+        }
+        return producerSession;
+    }
+
+    private void release(ProducerSession producerSession) {
+        if (!idle.offer(producerSession)) {
+            close(producerSession);
+        }
+    }
+
+    private void close(ProducerSession producerSession) {
+        try {
+            producerSession.session.close();
+        }
+        catch (HornetQException e) {
+            log.warn("Unable to close event session", e);
         }
     }
 
@@ -139,4 +272,17 @@ public class EventSinkImpl implements EventSink {
     public Event createSubscriptionDeleted(Subscription todelete) {
         return eventFactory.subscriptionDeleted(todelete);
     }
+
+    /**
+     * A session and its producer, used by one thread at a time.
+     */
+    private static class ProducerSession {
+        private final ClientSession session;
+        private final ClientProducer producer;
+
+        ProducerSession(ClientSession session, ClientProducer producer) {
+            this.session = session;
+            this.producer = producer;
+        }
+    }
 }
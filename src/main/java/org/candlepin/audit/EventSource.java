@@ -14,7 +14,12 @@
  */
 package org.candlepin.audit;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.log4j.Logger;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.TransportConfiguration;
@@ -27,20 +32,27 @@ import org.hornetq.core.remoting.impl.invm.InVMConnectorFactory;
 import com.google.inject.Inject;
 
 /**
- * EventSource
+ * EventSource - registers the audit listeners with the event queue. Plain
+ * listeners share one auto-acknowledging session. Each
+ * {@link BatchEventListener} gets its own transacted session and thread, see
+ * {@link BatchListenerWrapper}.
  */
 public class EventSource {
     private static  Logger log = Logger.getLogger(HornetqContextListener.class);
     static final String QUEUE_ADDRESS = "event";
+    private ClientSessionFactory factory;
     private ClientSession session;
     private ObjectMapper mapper;
+    private List<BatchListenerWrapper> batchListeners =
+        new ArrayList<BatchListenerWrapper>();
+    private List<ClientSession> batchSessions = new ArrayList<ClientSession>();
 
     @Inject
     public EventSource(ObjectMapper mapper) {
         this.mapper = mapper;
 
         try {
-            ClientSessionFactory factory =  createSessionFactory();
+            factory =  createSessionFactory();
             session = factory.createSession(true, true);
             session.start();
         }
@@ -60,6 +72,17 @@ public class EventSource {
     }
 
     void shutDown() {
+        for (BatchListenerWrapper wrapper : batchListeners) {
+            wrapper.shutDown();
+        }
+        for (ClientSession batchSession : batchSessions) {
+            try {
+                batchSession.close();
+            }
+            catch (HornetQException e) {
+                log.warn("Exception while trying to close event session", e);
+            }
+        }
         try {
             session.stop();
             session.close();
@@ -85,11 +108,36 @@ public class EventSource {
                 }
             }
 
-            ClientConsumer consumer = session.createConsumer(queueName);
-            consumer.setMessageHandler(new ListenerWrapper(listener, mapper));
+            if (listener instanceof BatchEventListener) {
+                registerBatchListener((BatchEventListener) listener, queueName);
+            }
+            else {
+                ClientConsumer consumer = session.createConsumer(queueName);
+                consumer.setMessageHandler(new ListenerWrapper(listener, mapper));
+            }
         }
         catch (HornetQException e) {
             log.fatal("Unable to register listener :" + listener, e);
         }
     }
+
+    private void registerBatchListener(BatchEventListener listener, String queueName)
+        throws HornetQException {
+        Config config = new Config();
+        // acks are committed along with each batch
+        ClientSession batchSession = factory.createSession(true, false);
+        ClientConsumer consumer = batchSession.createConsumer(queueName);
+        batchSession.start();
+        batchSessions.add(batchSession);
+
+        BatchListenerWrapper wrapper = new BatchListenerWrapper(listener, batchSession,
+            consumer, mapper, config.getInt(ConfigProperties.AUDIT_BATCH_SIZE),
+            config.getInt(ConfigProperties.AUDIT_BATCH_MAX_WAIT));
+        batchListeners.add(wrapper);
+
+        Thread thread = new Thread(wrapper,
+            "audit-" + listener.getClass().getSimpleName());
+        thread.setDaemon(true);
+        thread.start();
+    }
 }
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.auth;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Owner;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * ConsumerPrincipalCache
+ *
+ * Bounded, least recently used cache of authenticated consumers keyed by
+ * consumer uuid, so that every request made with a consumer certificate does
+ * not have to load the consumer.
+ *
+ * A principal only depends on the consumer's uuid, name and owner, so only an
+ * immutable snapshot of those is cached and every hit gets a principal of its
+ * own. Consumers updated or deleted through this node are evicted by {@link
+ * org.candlepin.model.ConsumerCurator} once the change has committed, changes
+ * made through other nodes are picked up once the entry is older than
+ * {@link ConfigProperties#CONSUMER_PRINCIPAL_CACHE_MAX_AGE}. That includes
+ * deletes which the deleted consumer filter has not seen yet, so a consumer
+ * deleted through another node may authenticate until its entry expires.
+ */
+@Singleton
+public class ConsumerPrincipalCache {
+
+    private final long maxAge;
+    // guarded by itself
+    private final Map<String, CachedConsumer> principals;
+
+    @Inject
+    public ConsumerPrincipalCache(Config config) {
+        this.maxAge = config.getInt(ConfigProperties.CONSUMER_PRINCIPAL_CACHE_MAX_AGE) *
+            1000L;
+        final int maxSize = config.getInt(ConfigProperties.CONSUMER_PRINCIPAL_CACHE_MAX);
+        this.principals = new LinkedHashMap<String, CachedConsumer>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, CachedConsumer> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return true if principals should be cached.
+     */
+    public boolean isEnabled() {
+        return maxAge > 0;
+    }
+
+    /**
+     * @param uuid consumer uuid
+     * @return a new principal for the cached consumer, or null if there is none
+     * or it has expired.
+     */
+    public ConsumerPrincipal get(String uuid) {
+        if (!isEnabled()) {
+            return null;
+        }
+        CachedConsumer cached;
+        synchronized (principals) {
+            cached = principals.get(uuid);
+            if (cached == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() - cached.loaded > maxAge) {
+                principals.remove(uuid);
+                return null;
+            }
+        }
+        return cached.createPrincipal();
+    }
+
+    /**
+     * @param consumer consumer which was just authenticated
+     */
+    public void put(Consumer consumer) {
+        if (!isEnabled()) {
+            return;
+        }
+        CachedConsumer cached = new CachedConsumer(consumer);
+        synchronized (principals) {
+            principals.put(cached.uuid, cached);
+        }
+    }
+
+    /**
+     * Evicts the principal of a consumer which was updated or deleted.
+     *
+     * @param uuid consumer uuid
+     */
+    public void invalidate(String uuid) {
+        synchronized (principals) {
+            principals.remove(uuid);
+        }
+    }
+
+    /**
+     * CachedConsumer - the parts of a consumer a principal needs. Entities are
+     * never shared between requests, each principal gets detached copies.
+     */
+    private static class CachedConsumer {
+        private final String id;
+        private final String uuid;
+        private final String name;
+        private final String ownerId;
+        private final String ownerKey;
+        private final long loaded;
+
+        CachedConsumer(Consumer consumer) {
+            this.id = consumer.getId();
+            this.uuid = consumer.getUuid();
+            this.name = consumer.getName();
+            this.ownerId = consumer.getOwner().getId();
+            this.ownerKey = consumer.getOwner().getKey();
+            this.loaded = System.currentTimeMillis();
+        }
+
+        ConsumerPrincipal createPrincipal() {
+            Owner owner = new Owner(ownerKey);
+            owner.setId(ownerId);
+            Consumer consumer = new Consumer();
+            consumer.setId(id);
+            consumer.setUuid(uuid);
+            consumer.setName(name);
+            consumer.setOwner(owner);
+            return new ConsumerPrincipal(consumer);
+        }
+    }
+}
@@ -21,8 +21,11 @@ import java.util.Map;
 import org.apache.commons.lang.StringUtils;
 import org.candlepin.pinsetter.tasks.CancelJobJob;
 import org.candlepin.pinsetter.tasks.CertificateRevocationListTask;
+import org.candlepin.pinsetter.tasks.ConsumerCheckinTask;
+import org.candlepin.pinsetter.tasks.EventCleanerTask;
 import org.candlepin.pinsetter.tasks.ImportRecordJob;
 import org.candlepin.pinsetter.tasks.JobCleaner;
+import org.candlepin.pinsetter.tasks.PoolCounterTask;
 import org.candlepin.pinsetter.tasks.StatisticHistoryTask;
 
 /**
@@ -48,6 +51,9 @@ public class ConfigProperties {
     public static final String AUDIT_LISTENERS = "candlepin.audit.listeners";
     public static final String AUDIT_LOG_FILE = "candlepin.audit.log_file";
     public static final String AUDIT_LOG_VERBOSE = "candlepin.audit.log_verbose";
+    public static final String AUDIT_BATCH_SIZE = "candlepin.audit.batch_size";
+    public static final String AUDIT_BATCH_MAX_WAIT = "candlepin.audit.batch_max_wait";
+    public static final String AUDIT_RETENTION_DAYS = "candlepin.audit.retention_days";
 
     public static final String PRETTY_PRINT = "candlepin.pretty_print";
     public static final String REVOKE_ENTITLEMENT_IN_FIFO_ORDER =
@@ -73,9 +79,14 @@ public class ConfigProperties {
         CertificateRevocationListTask.class.getName(),
         JobCleaner.class.getName(), ImportRecordJob.class.getName(),
         StatisticHistoryTask.class.getName(),
-        CancelJobJob.class.getName()};
+        CancelJobJob.class.getName(), ConsumerCheckinTask.class.getName(),
+        PoolCounterTask.class.getName(), EventCleanerTask.class.getName()};
 
     public static final String SYNC_WORK_DIR = "candlepin.sync.work_dir";
+    public static final String SYNC_EXPORT_MEMORY_THRESHOLD =
+        "candlepin.sync.export_memory_threshold";
+    public static final String SYNC_MANIFEST_CACHE_MAX =
+        "candlepin.sync.manifest_cache_max";
     public static final String CONSUMER_FACTS_MATCHER =
                                   "candlepin.consumer.facts.match_regex";
 
@@ -98,6 +109,31 @@ public class ConfigProperties {
 
     public static final String PRODUCT_CACHE_MAX = "candlepin.cache.product_cache_max";
 
+    // Seconds between checks for rules updated by another node
+    public static final String RULES_CHECK_INTERVAL = "candlepin.rules.check_interval";
+
+    // Seconds an owner's pool index is used before it is rebuilt
+    public static final String POOL_INDEX_MAX_AGE = "candlepin.cache.pool_index_max_age";
+    public static final String CONSUMER_PRINCIPAL_CACHE_MAX =
+        "candlepin.cache.consumer_principal_max";
+    public static final String CONSUMER_PRINCIPAL_CACHE_MAX_AGE =
+        "candlepin.cache.consumer_principal_max_age";
+    public static final String CONTENT_EXTENSION_CACHE_MAX =
+        "candlepin.cache.content_extension_max";
+    public static final String CONSUMER_CHECKIN_MAX_DELAY =
+        "candlepin.consumer.checkin_max_delay";
+    public static final String POOL_OPTIMISTIC_LOCKING =
+        "candlepin.pool.optimistic_locking";
+    public static final String KEYPAIR_POOL_SIZE = "candlepin.pki.keypair_pool.size";
+    public static final String KEYPAIR_POOL_LOW_WATERMARK =
+        "candlepin.pki.keypair_pool.low_watermark";
+    public static final String KEYPAIR_POOL_THREADS =
+        "candlepin.pki.keypair_pool.threads";
+    public static final String ENTITLEMENT_REGEN_CHUNK_SIZE =
+        "candlepin.entitlement.regen_chunk_size";
+    public static final String ENTITLEMENT_REGEN_THREADS =
+        "candlepin.entitlement.regen_threads";
+
     public static final String ENABLE_CERT_V3 = "candlepin.enable_cert_v3";
 
     public static final String INTEGER_FACTS =
@@ -166,12 +202,38 @@ public class ConfigProperties {
                         "org.candlepin.audit.ActivationListener");
                 this.put(AUDIT_LOG_FILE, "/var/log/candlepin/audit.log");
                 this.put(AUDIT_LOG_VERBOSE, "false");
+                /**
+                 * Batching listeners (i.e. the DatabaseListener) receive up to
+                 * batch_size events at once, waiting at most batch_max_wait
+                 * milliseconds for a batch to fill up.
+                 */
+                this.put(AUDIT_BATCH_SIZE, "100");
+                this.put(AUDIT_BATCH_MAX_WAIT, "500");
+                /**
+                 * Events older than this many days are pruned from the
+                 * database by the EventCleanerTask. 0 keeps them forever.
+                 */
+                this.put(AUDIT_RETENTION_DAYS, "0");
 
                 this.put(PRETTY_PRINT, "false");
                 this.put(REVOKE_ENTITLEMENT_IN_FIFO_ORDER, "true");
                 this.put(CRL_FILE_PATH, "/var/lib/candlepin/candlepin-crl.crl");
+                this.put(CRL_MAX_AGE, "60");
+                this.put(CRL_DELTA_ENABLED, "false");
 
                 this.put(SYNC_WORK_DIR, "/var/cache/candlepin/sync");
+                /**
+                 * Exports are built in memory up to this many bytes, larger
+                 * ones spill to a temp file in the sync work dir.
+                 */
+                this.put(SYNC_EXPORT_MEMORY_THRESHOLD, "10485760");
+                /**
+                 * Total bytes of signed manifests kept in memory to answer
+                 * repeated downloads. 0 disables the cache. A repeated
+                 * download keeps its created date, so re-importing it is a
+                 * MANIFEST_SAME conflict.
+                 */
+                this.put(SYNC_MANIFEST_CACHE_MAX, "104857600");
                 this.put(CONSUMER_FACTS_MATCHER, ".*");
                 this.put(TRUSTED_AUTHENTICATION, "true");
                 this.put(SSL_AUTHENTICATION, "true");
@@ -221,6 +283,66 @@ public class ConfigProperties {
                  */
                 this.put(PRODUCT_CACHE_MAX, "100");
 
+                /**
+                 * Rules changed through this node are picked up immediately, rules
+                 * changed through other nodes within this many seconds.
+                 */
+                this.put(RULES_CHECK_INTERVAL, "60");
+
+                /**
+                 * Pools changed through this node are picked up immediately, pools
+                 * changed through other nodes within this many seconds. 0 disables
+                 * the index.
+                 */
+                this.put(POOL_INDEX_MAX_AGE, "60");
+
+                /**
+                 * Authenticated consumers are cached for this many seconds, 0
+                 * disables the cache. This is also how long a consumer deleted
+                 * through another node can keep authenticating.
+                 */
+                this.put(CONSUMER_PRINCIPAL_CACHE_MAX, "10000");
+                this.put(CONSUMER_PRINCIPAL_CACHE_MAX_AGE, "60");
+
+                /**
+                 * Number of distinct V3 content sets whose encoded extension is
+                 * kept, 0 disables the cache.
+                 */
+                this.put(CONTENT_EXTENSION_CACHE_MAX, "500");
+
+                /**
+                 * Consumer check ins are written in batches, at most this many
+                 * seconds late. 0 writes them as they happen.
+                 */
+                this.put(CONSUMER_CHECKIN_MAX_DELAY, "60");
+
+                /**
+                 * Lock pools for the whole of a bind by default. When enabled,
+                 * binds only claim the pool quantity with a conditional update at
+                 * the end of the bind. A bind which then conflicts with a
+                 * concurrent update of a pool it touched is retried a few times
+                 * by the Entitler, unless it ran inside a larger transaction.
+                 */
+                this.put(POOL_OPTIMISTIC_LOCKING, "false");
+
+                /**
+                 * Consumer key pairs are generated ahead of time by background
+                 * threads. The pool is topped back up to its size once no more
+                 * than low_watermark pairs are left. A size of 0 generates
+                 * every key pair when it is needed.
+                 */
+                this.put(KEYPAIR_POOL_SIZE, "50");
+                this.put(KEYPAIR_POOL_LOW_WATERMARK, "10");
+                this.put(KEYPAIR_POOL_THREADS, "1");
+
+                /**
+                 * Regen jobs split the affected entitlements into chunks of this
+                 * size. Each chunk is regenerated and committed in its own
+                 * transaction, up to regen_threads chunks at a time.
+                 */
+                this.put(ENTITLEMENT_REGEN_CHUNK_SIZE, "50");
+                this.put(ENTITLEMENT_REGEN_THREADS, "4");
+
                 /**
                  * By default, disable cert v3.
                  */
@@ -239,6 +361,15 @@ public class ConfigProperties {
             }
         };
     public static final String CRL_FILE_PATH = "candlepin.crl.file";
+    /**
+     * Maximum age in seconds of the in-memory CRL before it is re-synced
+     */
+    public static final String CRL_MAX_AGE = "candlepin.crl.max_age";
+    /**
+     * Publish delta CRLs for revocations, rolling the base CRL only from
+     * the CRL pinsetter task
+     */
+    public static final String CRL_DELTA_ENABLED = "candlepin.crl.delta.enable";
     public static final String IDENTITY_CERT_YEAR_ADDENDUM =
                                "candlepin.identityCert.yr.addendum";
     /**
@@ -61,6 +61,7 @@ import org.candlepin.policy.js.pool.PoolRules;
 import org.candlepin.policy.js.pool.PoolUpdate;
 import org.candlepin.service.EntitlementCertServiceAdapter;
 import org.candlepin.service.SubscriptionServiceAdapter;
+import org.candlepin.sync.ManifestCache;
 import org.candlepin.util.Util;
 import org.candlepin.version.CertVersionConflictException;
 import org.candlepin.version.ProductVersionValidator;
@@ -89,6 +90,9 @@ public class CandlepinPoolManager implements PoolManager {
     private ComplianceRules complianceRules;
     private ProductCache productCache;
     private EnvironmentCurator envCurator;
+    private CrlPublisher crlPublisher;
+    private PoolIndex poolIndex;
+    private ManifestCache manifestCache;
 
     /**
      * @param poolCurator
@@ -105,7 +109,8 @@ public class CandlepinPoolManager implements PoolManager {
         EventFactory eventFactory, Config config, Enforcer enforcer,
         PoolRules poolRules, EntitlementCurator curator1, ConsumerCurator consumerCurator,
         EntitlementCertificateCurator ecC, ComplianceRules complianceRules,
-        EnvironmentCurator envCurator) {
+        EnvironmentCurator envCurator, CrlPublisher crlPublisher, PoolIndex poolIndex,
+        ManifestCache manifestCache) {
 
         this.poolCurator = poolCurator;
         this.subAdapter = subAdapter;
@@ -121,6 +126,9 @@ public class CandlepinPoolManager implements PoolManager {
         this.complianceRules = complianceRules;
         this.productCache = productCache;
         this.envCurator = envCurator;
+        this.crlPublisher = crlPublisher;
+        this.poolIndex = poolIndex;
+        this.manifestCache = manifestCache;
     }
 
     Set<Entitlement> refreshPoolsWithoutRegeneration(Owner owner) {
@@ -173,6 +181,7 @@ public class CandlepinPoolManager implements PoolManager {
             }
         }
 
+        poolIndex.invalidate(owner);
         return entitlementsToRegen;
     }
 
@@ -264,6 +273,7 @@ public class CandlepinPoolManager implements PoolManager {
             }
             // save changes for the pool
             this.poolCurator.merge(existingPool);
+            poolIndex.invalidate(existingPool.getOwner());
 
             eventFactory.poolChangedTo(poolEvents.get(existingPool.getId()),
                 existingPool);
@@ -303,6 +313,7 @@ public class CandlepinPoolManager implements PoolManager {
             log.debug("   new pool: " + p);
         }
         if (created != null) {
+            poolIndex.invalidate(created.getOwner());
             sink.emitPoolCreated(created);
         }
 
@@ -340,7 +351,8 @@ public class CandlepinPoolManager implements PoolManager {
     // will most certainly be stale. beware!
     //
     @Override
-    @Transactional
+    @Transactional(rollbackOn = {RuntimeException.class,
+        EntitlementRefusedException.class})
     public List<Entitlement> entitleByProducts(Consumer consumer,
         String[] productIds, Date entitleDate)
         throws EntitlementRefusedException {
@@ -378,8 +390,6 @@ public class CandlepinPoolManager implements PoolManager {
 
         ValidationResult failedResult = null;
 
-        List<Pool> allOwnerPools = poolCurator.listAvailableEntitlementPools(
-            consumer, owner, (String) null, entitleDate, true, false);
         List<Pool> filteredPools = new LinkedList<Pool>();
 
         // We have to check compliance status here so we can replace an empty
@@ -402,47 +412,52 @@ public class CandlepinPoolManager implements PoolManager {
             }
         }
 
-        for (Pool pool : allOwnerPools) {
-            boolean providesProduct = false;
-            for (String productId : productIds) {
-                if (pool.provides(productId)) {
-                    providesProduct = true;
-                    break;
+        // Only pools which provide one of the products are loaded:
+        List<Pool> candidatePools;
+        if (poolIndex.isEnabled()) {
+            Set<String> candidateIds = poolIndex.getPoolIds(
+                owner == null ? consumer.getOwner() : owner, productIds, entitleDate);
+            candidatePools = poolCurator.listAvailableEntitlementPoolsById(consumer,
+                owner, candidateIds, entitleDate, true, false);
+        }
+        else {
+            candidatePools = poolCurator.listAvailableEntitlementPoolsForProducts(
+                consumer, owner, Arrays.asList(productIds), entitleDate, true, false);
+        }
+
+        Map<Pool, ValidationResult> validations =
+            enforcer.preEntitlement(consumer, candidatePools, 1);
+        for (Pool pool : candidatePools) {
+            ValidationResult result = validations.get(pool);
+
+            if (result.hasErrors() || result.hasWarnings()) {
+                // Just keep the last one around, if we need it
+                failedResult = result;
+                if (log.isDebugEnabled()) {
+                    log.debug("Pool filtered from candidates due to rules " +
+                        "failure: " +
+                        pool.getId());
                 }
             }
-            if (providesProduct) {
-                PreEntHelper preHelper = enforcer.preEntitlement(consumer, pool, 1);
-                ValidationResult result = preHelper.getResult();
-
-                if (result.hasErrors() || result.hasWarnings()) {
-                    // Just keep the last one around, if we need it
-                    failedResult = result;
-                    if (log.isDebugEnabled()) {
-                        log.debug("Pool filtered from candidates due to rules " +
-                            "failure: " +
-                            pool.getId());
-                    }
+            else {
+
+                // If cert V3 is disabled, do not create a certificate with anything
+                // considered V3+ as it is not supported in V1.
+                if (!ProductVersionValidator.verifyServerSupport(config, consumer,
+                    pool.getProductAttributes())) {
+                    log.debug("Pool filtered from candidates because the server " +
+                              "does not support subscriptions requiring V3 " +
+                              "certificates.");
+                }
+                // Check to make sure that the consumer supports the required cert
+                // versions for all attributes.
+                else if (!ProductVersionValidator.verifyClientSupport(consumer,
+                    pool.getProductAttributes())) {
+                    log.debug("Pool filtered from candidates because it is " +
+                              "unsupported by the consumer. Upgrade client to use.");
                 }
                 else {
-
-                    // If cert V3 is disabled, do not create a certificate with anything
-                    // considered V3+ as it is not supported in V1.
-                    if (!ProductVersionValidator.verifyServerSupport(config, consumer,
-                        pool.getProductAttributes())) {
-                        log.debug("Pool filtered from candidates because the server " +
-                                  "does not support subscriptions requiring V3 " +
-                                  "certificates.");
-                    }
-                    // Check to make sure that the consumer supports the required cert
-                    // versions for all attributes.
-                    else if (!ProductVersionValidator.verifyClientSupport(consumer,
-                        pool.getProductAttributes())) {
-                        log.debug("Pool filtered from candidates because it is " +
-                                  "unsupported by the consumer. Upgrade client to use.");
-                    }
-                    else {
-                        filteredPools.add(pool);
-                    }
+                    filteredPools.add(pool);
                 }
             }
         }
@@ -471,21 +486,24 @@ public class CandlepinPoolManager implements PoolManager {
      * @throws EntitlementRefusedException if entitlement is refused
      */
     @Override
-    @Transactional
+    @Transactional(rollbackOn = {RuntimeException.class,
+        EntitlementRefusedException.class})
     public Entitlement entitleByPool(Consumer consumer, Pool pool,
         Integer quantity) throws EntitlementRefusedException {
         return addOrUpdateEntitlement(consumer, pool, null, quantity, false);
     }
 
     @Override
-    @Transactional
+    @Transactional(rollbackOn = {RuntimeException.class,
+        EntitlementRefusedException.class})
     public Entitlement ueberCertEntitlement(Consumer consumer, Pool pool,
         Integer quantity) throws EntitlementRefusedException {
         return addOrUpdateEntitlement(consumer, pool, null, 1, true);
     }
 
     @Override
-    @Transactional
+    @Transactional(rollbackOn = {RuntimeException.class,
+        EntitlementRefusedException.class})
     public Entitlement adjustEntitlementQuantity(Consumer consumer,
         Entitlement entitlement, Integer quantity)
         throws EntitlementRefusedException {
@@ -505,7 +523,13 @@ public class CandlepinPoolManager implements PoolManager {
         // pool
         // when it was read. As such we're going to reload it with a lock
         // before starting this process.
-        pool = poolCurator.lockAndLoad(pool);
+        //
+        // With optimistic locking the rules check the pool as it was read, and
+        // the quantity is only claimed at the very end, see claimQuantity.
+        boolean optimistic = isOptimisticLocking();
+        if (!optimistic) {
+            pool = poolCurator.lockAndLoad(pool);
+        }
 
         if (quantity > 0) {
             // XXX preEntitlement is run twice for new entitlement creation
@@ -527,12 +551,15 @@ public class CandlepinPoolManager implements PoolManager {
         }
 
         entitlement = handler.handleEntitlement(consumer, pool, entitlement, quantity);
-
-        // The quantity is calculated at fetch time. We update it here
-        // To reflect what we just added to the db.
-        pool.setConsumed(pool.getConsumed() + quantity);
-        if (consumer.getType().isManifest()) {
-            pool.setExported(pool.getExported() + quantity);
+        manifestCache.invalidate(consumer);
+
+        // Counters are only maintained here and in removeEntitlement, while
+        // holding the pool lock.
+        if (!optimistic) {
+            pool.setConsumed(pool.getConsumed() + quantity);
+            if (consumer.getType().isManifest()) {
+                pool.setExported(pool.getExported() + quantity);
+            }
         }
         PoolHelper poolHelper = new PoolHelper(this, productCache, entitlement);
         handler.handlePostEntitlement(consumer, poolHelper, entitlement);
@@ -552,9 +579,36 @@ public class CandlepinPoolManager implements PoolManager {
 
         // we might have changed the bonus pool quantities, lets find out.
         handler.handleBonusPools(consumer, pool, entitlement);
+
+        if (optimistic) {
+            claimQuantity(consumer, pool, quantity);
+        }
         return entitlement;
     }
 
+    /**
+     * Adds the quantity to the pool's counters with a single conditional update,
+     * refusing the entitlement if a concurrent bind used up the pool since the
+     * rules were run. Done last so the pool row is only locked from here until
+     * the transaction commits, rather than for the whole bind.
+     */
+    private void claimQuantity(Consumer consumer, Pool pool, int quantity)
+        throws EntitlementRefusedException {
+        long exported = consumer.getType().isManifest() ? quantity : 0;
+        if (!poolCurator.updateConsumed(pool, quantity, exported)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Pool " + pool.getId() + " was used up concurrently");
+            }
+            ValidationResult result = new ValidationResult();
+            result.addError("rulefailed.no.entitlements.available");
+            throw new EntitlementRefusedException(result);
+        }
+    }
+
+    private boolean isOptimisticLocking() {
+        return config.getBoolean(ConfigProperties.POOL_OPTIMISTIC_LOCKING);
+    }
+
     /**
      * This method will pull the bonus pools from a physical and make sure that
      *  the bonus pools are not over-consumed.
@@ -651,9 +705,8 @@ public class CandlepinPoolManager implements PoolManager {
     /**
      * Used to regenerate certificates affected by a mass content promotion/demotion.
      *
-     * WARNING: can be quite expensive, currently we must look up all entitlements in the
-     * environment, all provided products for each entitlement, and check if any product
-     * provides any of the modified content set IDs.
+     * WARNING: can be quite expensive, see
+     * {@link #listEntitlementsForRegeneration(Environment, Set)}.
      *
      * @param e Environment where the content was promoted/demoted.
      * @param affectedContent List of content set IDs promoted/demoted.
@@ -662,7 +715,23 @@ public class CandlepinPoolManager implements PoolManager {
     @Transactional
     public void regenerateCertificatesOf(Environment e, Set<String> affectedContent,
         boolean lazy) {
-        log.info("Regenerating relevant certificates in environment: " + e.getId());
+        regenerateCertificatesOf(listEntitlementsForRegeneration(e, affectedContent),
+            lazy);
+    }
+
+    /**
+     * WARNING: can be quite expensive, currently we must look up all entitlements in the
+     * environment, all provided products for each entitlement, and check if any product
+     * provides any of the modified content set IDs.
+     *
+     * @param e Environment where the content was promoted/demoted.
+     * @param affectedContent List of content set IDs promoted/demoted.
+     * @return entitlements whose certificates are affected by the content change.
+     */
+    @Override
+    public Set<Entitlement> listEntitlementsForRegeneration(Environment e,
+        Set<String> affectedContent) {
+        log.info("Finding certificates to regenerate in environment: " + e.getId());
         List<Entitlement> allEnvEnts = entitlementCurator.listByEnvironment(e);
         Set<Entitlement> entsToRegen = new HashSet<Entitlement>();
         for (Entitlement ent : allEnvEnts) {
@@ -685,8 +754,7 @@ public class CandlepinPoolManager implements PoolManager {
             }
         }
         log.info("Found " + entsToRegen.size() + " certificates to regenerate.");
-
-        regenerateCertificatesOf(entsToRegen, lazy);
+        return entsToRegen;
     }
 
 
@@ -715,6 +783,7 @@ public class CandlepinPoolManager implements PoolManager {
     public void regenerateCertificatesOf(Entitlement e, boolean ueberCertificate,
         boolean lazy) {
 
+        manifestCache.invalidate(e.getConsumer());
         if (lazy) {
             if (log.isDebugEnabled()) {
                 log.debug("Marking certificates dirty for entitlement: " + e);
@@ -727,6 +796,7 @@ public class CandlepinPoolManager implements PoolManager {
             log.debug("Revoking entitlementCertificates of : " + e);
         }
         this.entCertAdapter.revokeEntitlementCertificates(e);
+        this.crlPublisher.markStale();
         for (EntitlementCertificate ec : e.getCertificates()) {
             if (log.isDebugEnabled()) {
                 log.debug("Deleting entitlementCertificate: #" + ec.getId());
@@ -750,12 +820,19 @@ public class CandlepinPoolManager implements PoolManager {
     @Override
     @Transactional
     public void regenerateCertificatesOf(String productId, boolean lazy) {
+        regenerateCertificatesOf(listEntitlementsForRegeneration(productId), lazy);
+    }
+
+    @Override
+    public List<Entitlement> listEntitlementsForRegeneration(String productId) {
         List<Pool> poolsForProduct = this.poolCurator
             .listAvailableEntitlementPools(null, null, productId, new Date(),
                 false, false);
+        List<Entitlement> entitlements = new ArrayList<Entitlement>();
         for (Pool pool : poolsForProduct) {
-            regenerateCertificatesOf(pool.getEntitlements(), lazy);
+            entitlements.addAll(pool.getEntitlements());
         }
+        return entitlements;
     }
 
     /**
@@ -776,7 +853,10 @@ public class CandlepinPoolManager implements PoolManager {
         // Similarly to when we add an entitlement, lock the pool when we remove one, too.
         // This won't do anything for over/under consumption, but it will prevent
         // concurrency issues if someone else is operating on the pool.
-        pool = poolCurator.lockAndLoad(pool);
+        boolean optimistic = isOptimisticLocking();
+        if (!optimistic) {
+            pool = poolCurator.lockAndLoad(pool);
+        }
 
         PreUnbindHelper preHelper = enforcer.preUnbind(consumer,
             pool);
@@ -791,6 +871,7 @@ public class CandlepinPoolManager implements PoolManager {
         }
 
         consumer.removeEntitlement(entitlement);
+        manifestCache.invalidate(consumer);
 
         // Look for pools referencing this entitlement as their source
         // entitlement and clean them up as well
@@ -818,11 +899,15 @@ public class CandlepinPoolManager implements PoolManager {
         entitlementCurator.delete(entitlement);
         Event event = eventFactory.entitlementDeleted(entitlement);
 
-        // The quantity is calculated at fetch time. We update it here
-        // To reflect what we just removed from the db.
-        pool.setConsumed(pool.getConsumed() - entitlement.getQuantity());
-        if (consumer.getType().isManifest()) {
-            pool.setExported(pool.getExported() - entitlement.getQuantity());
+        // Counters are only maintained here and in addOrUpdateEntitlement, while
+        // holding the pool lock.
+        long exported = consumer.getType().isManifest() ? entitlement.getQuantity() : 0;
+        if (optimistic) {
+            poolCurator.updateConsumed(pool, -entitlement.getQuantity(), -exported);
+        }
+        else {
+            pool.setConsumed(pool.getConsumed() - entitlement.getQuantity());
+            pool.setExported(pool.getExported() - exported);
         }
         // post unbind actions
         PoolHelper poolHelper = new PoolHelper(this, productCache, entitlement);
@@ -848,6 +933,7 @@ public class CandlepinPoolManager implements PoolManager {
     @Transactional
     public void revokeEntitlement(Entitlement entitlement) {
         entCertAdapter.revokeEntitlementCertificates(entitlement);
+        crlPublisher.markStale();
         removeEntitlement(entitlement, true);
     }
 
@@ -860,6 +946,7 @@ public class CandlepinPoolManager implements PoolManager {
             removeEntitlement(e, false);
             count++;
         }
+        crlPublisher.markStale();
         return count;
     }
 
@@ -897,6 +984,7 @@ public class CandlepinPoolManager implements PoolManager {
         }
 
         poolCurator.delete(pool);
+        poolIndex.invalidate(pool.getOwner());
         sink.sendEvent(event);
     }
 
@@ -916,6 +1004,7 @@ public class CandlepinPoolManager implements PoolManager {
             newCount = 0;
         }
         pool.setQuantity(newCount);
+        poolIndex.invalidate(pool.getOwner());
         return poolCurator.merge(pool);
     }
 
@@ -931,6 +1020,7 @@ public class CandlepinPoolManager implements PoolManager {
     public Pool setPoolQuantity(Pool pool, long set) {
         pool = poolCurator.lockAndLoad(pool);
         pool.setQuantity(set);
+        poolIndex.invalidate(pool.getOwner());
         return poolCurator.merge(pool);
     }
 
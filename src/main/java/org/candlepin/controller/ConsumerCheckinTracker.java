@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerCurator;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.persist.UnitOfWork;
+
+/**
+ * ConsumerCheckinTracker
+ *
+ * Coalesces consumer check ins in memory and writes them in batches, so that
+ * authenticating a consumer does not turn every request into a write
+ * transaction on cp_consumer.
+ *
+ * Pending check ins are flushed by ConsumerCheckinTask, and on shutdown. Since
+ * the task only runs on one node of a clustered deployment, a check in also
+ * starts a flush on a background thread once nothing has been flushed for
+ * {@link ConfigProperties#CONSUMER_CHECKIN_MAX_DELAY} seconds, which bounds how
+ * stale a consumer's last check in can be on every node. The request itself
+ * never waits on the write. A max delay of 0 writes every check in
+ * immediately.
+ */
+@Singleton
+public class ConsumerCheckinTracker {
+    private static Logger log = Logger.getLogger(ConsumerCheckinTracker.class);
+
+    private ConsumerCurator consumerCurator;
+    private UnitOfWork unitOfWork;
+    private long maxDelay;
+    // at most one flush running and one waiting, further requests are dropped
+    private ExecutorService flusher;
+
+    private ConcurrentMap<String, Date> pending = new ConcurrentHashMap<String, Date>();
+    private AtomicLong lastFlush = new AtomicLong(System.currentTimeMillis());
+
+    @Inject
+    public ConsumerCheckinTracker(ConsumerCurator consumerCurator,
+        UnitOfWork unitOfWork, Config config) {
+        this.consumerCurator = consumerCurator;
+        this.unitOfWork = unitOfWork;
+        this.maxDelay = config.getInt(ConfigProperties.CONSUMER_CHECKIN_MAX_DELAY) *
+            1000L;
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(1), new FlusherThreadFactory(),
+            new ThreadPoolExecutor.DiscardPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        this.flusher = executor;
+    }
+
+    /**
+     * Records that the consumer checked in now.
+     *
+     * @param consumer consumer which checked in.
+     */
+    public void checkin(Consumer consumer) {
+        if (maxDelay <= 0) {
+            consumerCurator.updateLastCheckin(consumer);
+            return;
+        }
+
+        Date now = new Date();
+        consumer.setLastCheckin(now);
+        Date previous = pending.put(consumer.getId(), now);
+        // racing check ins of the same consumer must not go back in time
+        if (previous != null && previous.after(now)) {
+            pending.replace(consumer.getId(), now, previous);
+        }
+
+        long last = lastFlush.get();
+        if (System.currentTimeMillis() - last > maxDelay &&
+            lastFlush.compareAndSet(last, System.currentTimeMillis())) {
+            flusher.execute(new Runnable() {
+                public void run() {
+                    flushInUnitOfWork();
+                }
+            });
+        }
+    }
+
+    private void flushInUnitOfWork() {
+        unitOfWork.begin();
+        try {
+            flush();
+        }
+        catch (RuntimeException e) {
+            // retried on the next flush
+            log.error("Unable to flush consumer check ins", e);
+        }
+        finally {
+            unitOfWork.end();
+        }
+    }
+
+    /**
+     * @return the number of check ins waiting to be written.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Writes all pending check ins to the database.
+     *
+     * @return the number of consumers updated.
+     */
+    public int flush() {
+        lastFlush.set(System.currentTimeMillis());
+
+        Map<String, Date> checkins = new HashMap<String, Date>();
+        for (Entry<String, Date> entry : pending.entrySet()) {
+            // an entry replaced meanwhile is left for the next flush
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                checkins.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        try {
+            consumerCurator.updateLastCheckins(checkins);
+        }
+        catch (RuntimeException e) {
+            // put them back so they are retried, unless a newer one arrived
+            for (Entry<String, Date> entry : checkins.entrySet()) {
+                pending.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+            throw e;
+        }
+
+        if (log.isDebugEnabled() && !checkins.isEmpty()) {
+            log.debug("Flushed " + checkins.size() + " consumer check ins");
+        }
+        return checkins.size();
+    }
+
+    private static class FlusherThreadFactory implements ThreadFactory {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "consumer-checkin-flush");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -15,23 +15,25 @@
 package org.candlepin.controller;
 
 import static org.candlepin.util.Util.newList;
-import static org.candlepin.util.Util.newMap;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.cert.CRLException;
 import java.security.cert.X509CRL;
-import java.security.cert.X509CRLEntry;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialCurator;
 import org.candlepin.pki.PKIUtility;
 import org.candlepin.pki.X509CRLEntryWrapper;
+import org.candlepin.pki.X509CRLStreamWriter;
 import org.candlepin.util.OIDUtil;
 import org.candlepin.util.Util;
+import org.hibernate.ScrollableResults;
 
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
@@ -42,6 +44,10 @@ import com.google.inject.persist.Transactional;
  */
 public class CrlGenerator {
 
+    private static final int FETCH_SIZE = 1000;
+    // how far before the base crl was issued a delta crl starts looking
+    static final long DELTA_OVERLAP = 10 * 60 * 1000L;
+
     private PKIUtility pkiUtility;
     private CertificateSerialCurator certificateSerialCurator;
 
@@ -61,153 +67,93 @@ public class CrlGenerator {
     }
 
     /**
-     * Synchronizes the given crl with the values from the database. If the
-     * given crl is null, a new list will be created. The method will return
-     * an updated crl.
+     * Writes a complete, signed crl built from the revoked serials in the
+     * database to the given stream (DER encoded). Newly revoked serials are
+     * collected and expired ones deleted first, then the entries are streamed
+     * from a database cursor straight into the encoder instead of being loaded
+     * in memory.
      *
-     * @param x509crl the crl to sync (can be null).
-     * @return the updated crl
+     * @param crlNumber the crl number to give the crl
+     * @param out stream to write the DER encoded crl to
+     * @return the issue date (thisUpdate) of the crl
+     * @throws CRLException if the crl cannot be signed
+     * @throws IOException if the crl cannot be written
      */
     @Transactional
-    public X509CRL syncCRLWithDB(X509CRL x509crl) {
-        List<X509CRLEntryWrapper> crlEntries = null;
-        BigInteger no = getCRLNumber(x509crl);
+    public Date writeCRL(BigInteger crlNumber, OutputStream out)
+        throws CRLException, IOException {
+        int collected = this.certificateSerialCurator.collectRevokedSerials();
+        int expired = this.certificateSerialCurator.deleteExpiredSerials();
         if (log.isDebugEnabled()) {
-            log.debug("Old CRLNumber is : " + no);
+            log.debug("Collected " + collected + " new serials, deleted " + expired +
+                " expired serials");
         }
 
-        if (x509crl != null) {
-            crlEntries = this.toSimpleCRLEntries(removeExpiredSerials(x509crl
-                .getRevokedCertificates()));
+        X509CRLStreamWriter writer = pkiUtility.createX509CRLStreamWriter(crlNumber);
+        ScrollableResults serials =
+            this.certificateSerialCurator.scrollRevokedSerials(FETCH_SIZE);
+        try {
+            while (serials.next()) {
+                Date revoked = (Date) serials.get(1);
+                writer.add(Util.toBigInt((Long) serials.get(0)),
+                    revoked == null ? writer.getThisUpdate() : revoked);
+            }
+            writer.write(out);
+            return writer.getThisUpdate();
         }
-        else {
-            crlEntries = newList();
+        catch (GeneralSecurityException e) {
+            throw new CRLException(e.getMessage(), e);
+        }
+        finally {
+            serials.close();
+            writer.close();
         }
-
-        crlEntries.addAll(getNewSerialsToAppendAndSetThemConsumed());
-        this.certificateSerialCurator.deleteExpiredSerials();
-
-        return pkiUtility.createX509CRL(crlEntries, no
-            .add(BigInteger.ONE));
     }
 
     /**
-     * Gets the new serials to append and set them consumed.
+     * Put the given serials back in circulation. The next crl written will
+     * no longer contain them.
      *
-     * @return the new serials to append and set them consumed
+     * @param serials certificate serials to be unrevoked.
      */
-    protected List<X509CRLEntryWrapper> getNewSerialsToAppendAndSetThemConsumed() {
-        List<X509CRLEntryWrapper> entries = Util.newList();
-        List<CertificateSerial> serials =
-            this.certificateSerialCurator.retrieveTobeCollectedSerials();
+    @Transactional
+    public void unrevoke(List<CertificateSerial> serials) {
         for (CertificateSerial cs : serials) {
-            entries.add(new X509CRLEntryWrapper(cs.getSerial(),
-                   new Date()));
-            cs.setCollected(true);
-        }
-        if (log.isTraceEnabled()) {
-            log.trace("Added #" + serials.size() + " new entries to the CRL");
-        }
-        if (log.isTraceEnabled()) {
-            StringBuilder builder = new StringBuilder("[ ");
-            for (CertificateSerial cs : serials) {
-                builder.append(cs.getSerial()).append(", ");
-            }
-            builder.append(" ]");
-            log.trace("Newly added serials = " + builder.toString());
-        }
-        this.certificateSerialCurator.saveOrUpdateAll(serials);
-        if (log.isDebugEnabled()) {
-            log.debug("Total number of serials retrieved from db: #" +
-                entries.size());
+            cs.setCollected(false);
+            cs.setRevoked(false);
         }
-
-        return entries;
+        certificateSerialCurator.saveOrUpdateAll(serials);
     }
 
     /**
-     * Removes the expired serials.
+     * Creates a delta crl holding the serials revoked since the given base crl
+     * was issued. Serials are picked by revocation date rather than by whether
+     * they have been collected, because another node may roll its own base crl
+     * (collecting them) while this one still serves an older base. The window
+     * starts {@link #DELTA_OVERLAP} early to cover revocations which committed
+     * after the base was read, and clock skew between nodes; listing a serial
+     * which is also on the base crl is harmless.
      *
-     * @param revokedEntries the revoked entries
-     * @return the set
-     */
-    protected Set<? extends X509CRLEntry> removeExpiredSerials(
-        Set<? extends X509CRLEntry> revokedEntries) {
-        if (revokedEntries == null || revokedEntries.size() == 0) {
-            return Util.newSet();
-        }
-        Map<BigInteger, X509CRLEntry> map = newMap();
-        for (X509CRLEntry entry : revokedEntries) {
-            map.put(entry.getSerialNumber(), entry);
-        }
-        for (CertificateSerial cs : this.certificateSerialCurator
-            .getExpiredSerials()) {
-            X509CRLEntry entry = map.get(cs.getSerial());
-            if (entry != null) {
-                revokedEntries.remove(entry);
-                if (log.isTraceEnabled()) {
-                    log.trace("Serial #" + cs.getId() +
-                        " has expired. Removing it from CRL");
-                }
-            }
-        }
-        return revokedEntries;
-    }
-
-    /**
-     * Remove serials inadvertently added to the CRL.
-     * @param x509crl to be repaired.
-     * @param serials certificate serials to be removed.
-     * @return updated CRL with the given entries removed.
+     * @param baseCrlNumber the crl number of the base crl
+     * @param baseIssued the issue date (thisUpdate) of the base crl
+     * @param deltaCrlNumber the crl number to give the delta crl
+     * @return the delta crl
      */
     @Transactional
-    public X509CRL removeEntries(X509CRL x509crl, List<CertificateSerial> serials) {
-        List<X509CRLEntryWrapper> crlEntries = null;
-        BigInteger no = getCRLNumber(x509crl);
-        if (log.isDebugEnabled()) {
-            log.debug("Old CRLNumber is : " + no);
-        }
-
-        if (x509crl != null) {
-            Set<? extends X509CRLEntry> revokedEntries = x509crl
-                .getRevokedCertificates();
-            Set<X509CRLEntry> toKeep = Util.newSet();
-
-            Map<BigInteger, X509CRLEntry> map = newMap();
-
-            if (revokedEntries == null || revokedEntries.isEmpty()) {
-                return x509crl;
-            }
-
-            // map them to make it easier to find
-            for (X509CRLEntry entry : revokedEntries) {
-                map.put(entry.getSerialNumber(), entry);
-            }
-
-            for (CertificateSerial cs : serials) {
-                X509CRLEntry entry = map.get(cs.getSerial());
-                if (entry != null) {
-                    map.remove(cs.getSerial());
-                    if (log.isTraceEnabled()) {
-                        log.trace("Serial #" + cs.getId() +
-                            " has been found. Removing it from CRL");
-                    }
-                    // put them back in circulation
-                    cs.setCollected(false);
-                    cs.setRevoked(false);
-                }
-            }
-
-            certificateSerialCurator.saveOrUpdateAll(serials);
-
-            toKeep.addAll(map.values());
-            crlEntries = toSimpleCRLEntries(toKeep);
+    public X509CRL createDeltaCRL(BigInteger baseCrlNumber, Date baseIssued,
+        BigInteger deltaCrlNumber) {
+        Date since = new Date(baseIssued.getTime() - DELTA_OVERLAP);
+        List<X509CRLEntryWrapper> entries = newList();
+        for (CertificateSerial cs :
+            this.certificateSerialCurator.retrieveRevokedSince(since)) {
+            // revoking a serial is its last update, as in writeCRL
+            entries.add(new X509CRLEntryWrapper(cs.getSerial(), cs.getUpdated()));
         }
-        else {
-            crlEntries = newList();
+        if (log.isDebugEnabled()) {
+            log.debug("Delta CRL #" + deltaCrlNumber + " against base #" +
+                baseCrlNumber + " has " + entries.size() + " entries");
         }
-
-        return pkiUtility.createX509CRL(crlEntries, no.add(BigInteger.ONE));
+        return pkiUtility.createX509DeltaCRL(entries, deltaCrlNumber, baseCrlNumber);
     }
 
     /**
@@ -224,20 +170,4 @@ public class CrlGenerator {
             x509crl.getExtensionValue(OIDUtil.CRL_NUMBER)));
     }
 
-    /**
-     * To simple crl entries.
-     *
-     * @param entries the entries
-     * @return the list
-     */
-    private List<X509CRLEntryWrapper> toSimpleCRLEntries(
-        Set<? extends X509CRLEntry> entries) {
-        List<X509CRLEntryWrapper> crlEntries = newList();
-        for (X509CRLEntry entry : entries) {
-            crlEntries.add(new X509CRLEntryWrapper(entry.getSerialNumber(),
-                entry.getRevocationDate()));
-        }
-        return crlEntries;
-    }
-
 }
@@ -0,0 +1,314 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509CRL;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.exceptions.IseException;
+import org.candlepin.model.CertificateSerial;
+import org.candlepin.model.CrlSequenceCurator;
+import org.candlepin.model.TransactionHooks;
+import org.candlepin.util.CrlFileUtil;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * CrlPublisher
+ *
+ * Holds the most recently signed CRL in memory so it can be served without
+ * touching the database or the CA key. The CRL is only rebuilt and re-signed
+ * when it has been marked stale (i.e. certificates were revoked), when it is
+ * older than the configured maximum age, or when the pinsetter CRL task forces
+ * a refresh. All regeneration is serialized through this class, so concurrent
+ * readers of a stale CRL result in a single sync/sign.
+ *
+ * When delta CRLs are enabled, revocations only regenerate the (small) delta
+ * CRL against the published base CRL, and the base CRL is only rolled by
+ * CertificateRevocationListTask. The delta lists every serial revoked since the
+ * base CRL this node serves was issued, so a base rolled on another node does
+ * not hide revocations from it.
+ *
+ * Base and delta CRLs take their numbers from a sequence in the database, so
+ * numbers are never reused across restarts or between nodes.
+ */
+@Singleton
+public class CrlPublisher {
+
+    private static Logger log = Logger.getLogger(CrlPublisher.class);
+
+    private CrlGenerator crlGenerator;
+    private CrlFileUtil crlFileUtil;
+    private CrlSequenceCurator crlSequenceCurator;
+    private TransactionHooks transactionHooks;
+    private Config config;
+
+    private volatile PublishedCrl current;
+    private AtomicBoolean stale = new AtomicBoolean(true);
+
+    private volatile PublishedCrl currentDelta;
+    private AtomicBoolean deltaStale = new AtomicBoolean(true);
+
+    @Inject
+    public CrlPublisher(CrlGenerator crlGenerator, CrlFileUtil crlFileUtil,
+        CrlSequenceCurator crlSequenceCurator, TransactionHooks transactionHooks,
+        Config config) {
+        this.crlGenerator = crlGenerator;
+        this.crlFileUtil = crlFileUtil;
+        this.crlSequenceCurator = crlSequenceCurator;
+        this.transactionHooks = transactionHooks;
+        this.config = config;
+    }
+
+    /**
+     * Flags the published CRL as out of date. The next request for the CRL
+     * will sync it with the database. Revocations are only visible to that
+     * sync once their transaction commits, so the CRL is flagged again then;
+     * a sync in between would otherwise publish it without them.
+     */
+    public void markStale() {
+        flagStale();
+        transactionHooks.afterCommit(new Runnable() {
+            public void run() {
+                flagStale();
+            }
+        });
+    }
+
+    private void flagStale() {
+        if (isDeltaEnabled()) {
+            deltaStale.set(true);
+        }
+        else {
+            stale.set(true);
+        }
+    }
+
+    /**
+     * @return the currently published CRL, refreshing it first if it is stale
+     * or has exceeded its maximum age.
+     * @throws CRLException if there is an issue generating the CRL
+     * @throws CertificateException if the CRL file cannot be parsed
+     * @throws IOException if there is a problem reading or writing the CRL file
+     */
+    public PublishedCrl getCurrent()
+        throws CRLException, CertificateException, IOException {
+        PublishedCrl published = current;
+        if (published == null || stale.get() || isExpired(published)) {
+            return refresh(false);
+        }
+        return published;
+    }
+
+    /**
+     * Syncs the CRL with the database, signs it, writes it to disk and
+     * publishes it.
+     *
+     * @param force refresh even if another thread just published a fresh CRL.
+     * @return the newly published CRL
+     * @throws CRLException if there is an issue generating the CRL
+     * @throws CertificateException if the CRL file cannot be parsed
+     * @throws IOException if there is a problem reading or writing the CRL file
+     */
+    public synchronized PublishedCrl refresh(boolean force)
+        throws CRLException, CertificateException, IOException {
+        // Another thread may have refreshed while we were waiting on the lock.
+        if (!force && current != null && !stale.get() && !isExpired(current)) {
+            return current;
+        }
+
+        // Clear the flag before syncing so revocations that happen during the
+        // sync will trigger another one.
+        stale.set(false);
+
+        File crlFile = getCrlFile();
+        BigInteger floor = BigInteger.ZERO;
+        if (current == null) {
+            // a crl written before the sequence existed may be ahead of it.
+            // This is the only time the crl is ever parsed.
+            floor = crlGenerator.getCRLNumber(crlFileUtil.readCRLFile(crlFile));
+        }
+
+        BigInteger crlNumber = crlSequenceCurator.next(floor);
+        ByteArrayOutputStream pem = new ByteArrayOutputStream();
+        OutputStream der = CrlFileUtil.pemEncodingStream(pem);
+        Date thisUpdate = crlGenerator.writeCRL(crlNumber, der);
+        der.close();
+
+        byte[] encoded = pem.toByteArray();
+        crlFileUtil.writeCRLFile(crlFile, encoded);
+        return publish(encoded, crlNumber, thisUpdate);
+    }
+
+    /**
+     * @return the delta CRL against the currently published base CRL,
+     * regenerating it first if certificates have been revoked since it was
+     * signed.
+     * @throws CRLException if there is an issue generating the CRL
+     * @throws CertificateException if the CRL file cannot be parsed
+     * @throws IOException if there is a problem reading or writing the CRL file
+     */
+    public PublishedCrl getCurrentDelta()
+        throws CRLException, CertificateException, IOException {
+        PublishedCrl base = getCurrent();
+        PublishedCrl delta = currentDelta;
+        if (delta == null || deltaStale.get() || isExpired(delta) ||
+            !base.getCrlNumber().equals(delta.getBaseCrlNumber())) {
+            return refreshDelta();
+        }
+        return delta;
+    }
+
+    private synchronized PublishedCrl refreshDelta()
+        throws CRLException, CertificateException, IOException {
+        PublishedCrl base = current;
+        if (base == null) {
+            base = refresh(false);
+        }
+
+        PublishedCrl delta = currentDelta;
+        if (delta != null && !deltaStale.get() && !isExpired(delta) &&
+            base.getCrlNumber().equals(delta.getBaseCrlNumber())) {
+            return delta;
+        }
+        deltaStale.set(false);
+
+        BigInteger deltaNumber = crlSequenceCurator.next(base.getCrlNumber());
+        X509CRL crl = crlGenerator.createDeltaCRL(base.getCrlNumber(),
+            base.getLastModified(), deltaNumber);
+        delta = new PublishedCrl(crlFileUtil.getPemEncoded(crl), deltaNumber,
+            crl.getThisUpdate(), base.getCrlNumber());
+        this.currentDelta = delta;
+        if (log.isDebugEnabled()) {
+            log.debug("Published delta CRL number: " + deltaNumber);
+        }
+        return delta;
+    }
+
+    /**
+     * Remove serials inadvertently added to the CRL and publish the result.
+     *
+     * @param serials certificate serials to be removed.
+     * @throws CRLException if there is an issue generating the CRL
+     * @throws CertificateException if the CRL file cannot be parsed
+     * @throws IOException if there is a problem reading or writing the CRL file
+     */
+    public synchronized void removeEntries(List<CertificateSerial> serials)
+        throws CRLException, CertificateException, IOException {
+        crlGenerator.unrevoke(serials);
+        refresh(true);
+        deltaStale.set(true);
+    }
+
+    private PublishedCrl publish(byte[] encoded, BigInteger crlNumber,
+        Date thisUpdate) {
+        PublishedCrl published = new PublishedCrl(encoded, crlNumber, thisUpdate);
+        this.current = published;
+        if (log.isDebugEnabled()) {
+            log.debug("Published CRL number: " + published.getCrlNumber());
+        }
+        return published;
+    }
+
+    private boolean isExpired(PublishedCrl published) {
+        // with deltas enabled the base crl is rolled on the task's schedule
+        if (published.getBaseCrlNumber() == null && isDeltaEnabled()) {
+            return false;
+        }
+        long maxAge = config.getInt(ConfigProperties.CRL_MAX_AGE) * 1000L;
+        return System.currentTimeMillis() - published.getPublished().getTime() > maxAge;
+    }
+
+    private boolean isDeltaEnabled() {
+        return config.getBoolean(ConfigProperties.CRL_DELTA_ENABLED);
+    }
+
+    private File getCrlFile() {
+        String filePath = config.getString(ConfigProperties.CRL_FILE_PATH);
+
+        if (filePath == null) {
+            throw new IseException("CRL file path not defined in config file");
+        }
+
+        return new File(filePath);
+    }
+
+    /**
+     * PublishedCrl - an immutable, PEM encoded snapshot of a signed CRL.
+     */
+    public static class PublishedCrl {
+        private final byte[] encoded;
+        private final BigInteger crlNumber;
+        private final BigInteger baseCrlNumber;
+        private final Date lastModified;
+        private final Date published;
+
+        public PublishedCrl(byte[] encoded, BigInteger crlNumber, Date lastModified) {
+            this(encoded, crlNumber, lastModified, null);
+        }
+
+        public PublishedCrl(byte[] encoded, BigInteger crlNumber, Date lastModified,
+            BigInteger baseCrlNumber) {
+            this.encoded = encoded;
+            this.crlNumber = crlNumber;
+            this.baseCrlNumber = baseCrlNumber;
+            this.lastModified = lastModified;
+            this.published = new Date();
+        }
+
+        public byte[] getEncoded() {
+            return encoded;
+        }
+
+        public BigInteger getCrlNumber() {
+            return crlNumber;
+        }
+
+        /**
+         * @return the number of the base crl if this is a delta crl, null otherwise.
+         */
+        public BigInteger getBaseCrlNumber() {
+            return baseCrlNumber;
+        }
+
+        public Date getLastModified() {
+            return lastModified;
+        }
+
+        public Date getPublished() {
+            return published;
+        }
+
+        /**
+         * @return an entity tag which changes whenever a new CRL is signed.
+         */
+        public String getEtag() {
+            return crlNumber.toString(16);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.candlepin.audit.EventSink;
+import org.candlepin.auth.Principal;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.guice.CandlepinSingletonScope;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.EntitlementCurator;
+import org.candlepin.model.JobCurator;
+import org.candlepin.pinsetter.core.model.JobStatus;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import com.google.inject.persist.Transactional;
+import com.google.inject.persist.UnitOfWork;
+
+/**
+ * EntitlementCertRegenerator
+ *
+ * Regenerates the certificates of large numbers of entitlements for the regen
+ * jobs. The entitlements are flagged dirty up front and split into chunks of
+ * {@link ConfigProperties#ENTITLEMENT_REGEN_CHUNK_SIZE}, which are regenerated
+ * by a pool of {@link ConfigProperties#ENTITLEMENT_REGEN_THREADS} worker threads
+ * shared by all regen jobs. Each chunk is committed in its own transaction, and
+ * its events are only sent once it has been committed. Progress is recorded in
+ * the result of the job's {@link JobStatus}.
+ *
+ * An entitlement is only regenerated while it is still dirty, so a job which
+ * Quartz refires right away carries on where the last attempt left off. That is
+ * the only resume there is: the regen jobs are not recovered after a restart and
+ * no progress marker is kept. Whatever a lost job left dirty is regenerated the
+ * next time its consumer fetches certificates.
+ */
+@Singleton
+public class EntitlementCertRegenerator {
+
+    private static Logger log = Logger.getLogger(EntitlementCertRegenerator.class);
+
+    private Injector injector;
+    private CandlepinSingletonScope singletonScope;
+    private UnitOfWork unitOfWork;
+    private EntitlementCurator entitlementCurator;
+    private JobCurator jobCurator;
+    private int chunkSize;
+    private ExecutorService workers;
+
+    @Inject
+    public EntitlementCertRegenerator(Injector injector,
+        CandlepinSingletonScope singletonScope, UnitOfWork unitOfWork,
+        EntitlementCurator entitlementCurator, JobCurator jobCurator, Config config) {
+        this.injector = injector;
+        this.singletonScope = singletonScope;
+        this.unitOfWork = unitOfWork;
+        this.entitlementCurator = entitlementCurator;
+        this.jobCurator = jobCurator;
+        this.chunkSize = Math.max(1,
+            config.getInt(ConfigProperties.ENTITLEMENT_REGEN_CHUNK_SIZE));
+        int threads = Math.max(1,
+            config.getInt(ConfigProperties.ENTITLEMENT_REGEN_THREADS));
+        // idle workers go away, so the pool costs nothing between jobs
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new DaemonThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        this.workers = executor;
+    }
+
+    /**
+     * Regenerates the certificates of the given entitlements, blocking until
+     * every chunk has been processed. Chunks which fail are left dirty, and
+     * the first failure is rethrown once the other chunks are done.
+     *
+     * @param entitlements entitlements whose certificates need regenerating
+     * @param jobId id of the job to report progress to, may be null
+     * @param resume true if this is an immediate refire of an attempt which was
+     * interrupted, only the entitlements it left dirty are regenerated.
+     * @return the number of entitlements regenerated.
+     */
+    public int regenerate(Collection<Entitlement> entitlements, String jobId,
+        boolean resume) {
+        List<List<String>> chunks = partition(entitlements);
+        if (chunks.isEmpty()) {
+            return 0;
+        }
+        if (!resume) {
+            markDirty(chunks);
+        }
+        log.info("Regenerating certificates for " + entitlements.size() +
+            " entitlements in " + chunks.size() + " chunks");
+
+        Principal principal = ResteasyProviderFactory.getContextData(Principal.class);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (List<String> chunk : chunks) {
+            results.add(workers.submit(new RegenerateChunk(chunk, principal)));
+        }
+
+        int done = 0;
+        int regenerated = 0;
+        RuntimeException failure = null;
+        try {
+            for (int i = 0; i < chunks.size(); i++) {
+                try {
+                    regenerated += results.get(i).get();
+                }
+                catch (ExecutionException e) {
+                    log.error("Unable to regenerate certificates for a chunk of " +
+                        chunks.get(i).size() + " entitlements", e.getCause());
+                    if (failure == null) {
+                        failure = e.getCause() instanceof RuntimeException ?
+                            (RuntimeException) e.getCause() :
+                            new RuntimeException(e.getCause());
+                    }
+                }
+                done += chunks.get(i).size();
+                reportProgress(jobId, "Regenerated certificates for " + done +
+                    " of " + entitlements.size() + " entitlements");
+            }
+        }
+        catch (InterruptedException e) {
+            log.warn("Interrupted after regenerating " + regenerated +
+                " entitlements, the rest are left dirty");
+            Thread.currentThread().interrupt();
+            for (Future<Integer> result : results) {
+                result.cancel(true);
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        return regenerated;
+    }
+
+    @Transactional
+    protected void markDirty(List<List<String>> chunks) {
+        for (List<String> chunk : chunks) {
+            entitlementCurator.markDirty(chunk);
+        }
+    }
+
+    /**
+     * Runs in a worker thread, inside its own unit of work.
+     */
+    @Transactional
+    protected int regenerateChunk(PoolManager poolManager, List<String> ids) {
+        int regenerated = 0;
+        for (String id : ids) {
+            Entitlement e = entitlementCurator.find(id);
+            // revoked, or regenerated when its consumer last fetched certificates
+            if (e == null || !e.getDirty()) {
+                continue;
+            }
+            poolManager.regenerateCertificatesOf(e, false, false);
+            regenerated++;
+        }
+        return regenerated;
+    }
+
+    @Transactional
+    protected void reportProgress(String jobId, String message) {
+        if (jobId == null) {
+            return;
+        }
+        JobStatus status = jobCurator.find(jobId);
+        if (status != null) {
+            status.setResult(message);
+            jobCurator.merge(status);
+        }
+    }
+
+    private List<List<String>> partition(Collection<Entitlement> entitlements) {
+        List<List<String>> chunks = new ArrayList<List<String>>();
+        List<String> chunk = null;
+        for (Entitlement e : entitlements) {
+            if (chunk == null || chunk.size() == chunkSize) {
+                chunk = new ArrayList<String>(chunkSize);
+                chunks.add(chunk);
+            }
+            chunk.add(e.getId());
+        }
+        return chunks;
+    }
+
+    /**
+     * The pool manager's rules and product cache may only be used by one
+     * thread, so each chunk gets its own, the same way jobs do.
+     */
+    private PoolManager createPoolManager() {
+        singletonScope.enter();
+        try {
+            return injector.getInstance(PoolManager.class);
+        }
+        finally {
+            singletonScope.exit();
+        }
+    }
+
+    /**
+     * Regenerates one chunk of entitlements in a worker thread.
+     */
+    private class RegenerateChunk implements Callable<Integer> {
+        private List<String> ids;
+        private Principal principal;
+
+        RegenerateChunk(List<String> ids, Principal principal) {
+            this.ids = ids;
+            this.principal = principal;
+        }
+
+        public Integer call() {
+            ResteasyProviderFactory.pushContext(Principal.class, principal);
+            EventSink sink = injector.getInstance(EventSink.class);
+
+            unitOfWork.begin();
+            sink.beginBatch();
+            try {
+                return regenerateChunk(createPoolManager(), ids);
+            }
+            finally {
+                // only events of committed entitlements were held
+                sink.sendEvents();
+                unitOfWork.end();
+                ResteasyProviderFactory.popContextData(Principal.class);
+            }
+        }
+    }
+
+    /**
+     * Workers must not keep the server from shutting down.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "entitlement-regen-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
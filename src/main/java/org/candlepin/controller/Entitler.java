@@ -28,7 +28,9 @@ import org.candlepin.model.Entitlement;
 import org.candlepin.model.Owner;
 import org.candlepin.model.Pool;
 import org.candlepin.model.PoolQuantity;
+import org.candlepin.model.TransactionHooks;
 import org.candlepin.policy.EntitlementRefusedException;
+import org.hibernate.StaleStateException;
 import org.xnap.commons.i18n.I18n;
 
 import java.util.ArrayList;
@@ -36,27 +38,40 @@ import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 
+import javax.persistence.OptimisticLockException;
+
 /**
  * entitler
+ *
+ * A bind which loses an optimistic locking race, e.g. with a concurrent update
+ * of one of the pools it touches, is rolled back as a whole. When the bind ran
+ * in a transaction of its own it is tried again, with a fresh consumer and
+ * pool, up to MAX_BIND_ATTEMPTS times and with a growing pause in between.
+ * Inside a caller's transaction the failure is passed on, as that transaction
+ * is lost as well.
  */
 public class Entitler {
     private static Logger log = Logger.getLogger(Entitler.class);
+    private static final int MAX_BIND_ATTEMPTS = 3;
+    private static final long BIND_RETRY_WAIT = 100L;
 
     private PoolManager poolManager;
     private I18n i18n;
     private EventFactory evtFactory;
     private EventSink sink;
     private ConsumerCurator consumerCurator;
+    private TransactionHooks transactionHooks;
 
     @Inject
     public Entitler(PoolManager pm, ConsumerCurator cc, I18n i18n,
-        EventFactory evtFactory, EventSink sink) {
+        EventFactory evtFactory, EventSink sink, TransactionHooks transactionHooks) {
 
         this.poolManager = pm;
         this.i18n = i18n;
         this.evtFactory = evtFactory;
         this.sink = sink;
         this.consumerCurator = cc;
+        this.transactionHooks = transactionHooks;
     }
 
     public List<Entitlement> bindByPool(String poolId, String consumeruuid,
@@ -67,22 +82,33 @@ public class Entitler {
 
     public List<Entitlement> bindByPool(String poolId, Consumer consumer,
         Integer quantity) {
-        Pool pool = poolManager.find(poolId);
         List<Entitlement> entitlementList = new LinkedList<Entitlement>();
 
-        if (log.isDebugEnabled() && pool != null) {
-            log.debug("pool: id[" + pool.getId() + "], consumed[" +
-                pool.getConsumed() + "], qty [" + pool.getQuantity() + "]");
-        }
+        for (int attempt = 1;; attempt++) {
+            Pool pool = poolManager.find(poolId);
 
-        if (pool == null) {
-            throw new BadRequestException(i18n.tr(
-                "Subscription pool {0} does not exist.", poolId));
-        }
+            if (log.isDebugEnabled() && pool != null) {
+                log.debug("pool: id[" + pool.getId() + "], consumed[" +
+                    pool.getConsumed() + "], qty [" + pool.getQuantity() + "]");
+            }
 
-        // Attempt to create an entitlement:
-        entitlementList.add(createEntitlementByPool(consumer, pool, quantity));
-        return entitlementList;
+            if (pool == null) {
+                throw new BadRequestException(i18n.tr(
+                    "Subscription pool {0} does not exist.", poolId));
+            }
+
+            // Attempt to create an entitlement:
+            try {
+                entitlementList.add(createEntitlementByPool(consumer, pool, quantity));
+                return entitlementList;
+            }
+            catch (RuntimeException e) {
+                if (!retryBind(e, attempt)) {
+                    throw e;
+                }
+                consumer = consumerCurator.findByUuid(consumer.getUuid());
+            }
+        }
     }
 
     private Entitlement createEntitlementByPool(Consumer consumer, Pool pool,
@@ -197,6 +223,21 @@ public class Entitler {
         Consumer consumer, Date entitleDate) {
 
         // Attempt to create entitlements:
+        for (int attempt = 1;; attempt++) {
+            try {
+                return createEntitlementsByProducts(productIds, consumer, entitleDate);
+            }
+            catch (RuntimeException e) {
+                if (!retryBind(e, attempt)) {
+                    throw e;
+                }
+                consumer = consumerCurator.findByUuid(consumer.getUuid());
+            }
+        }
+    }
+
+    private List<Entitlement> createEntitlementsByProducts(String[] productIds,
+        Consumer consumer, Date entitleDate) {
         try {
             List<Entitlement> entitlements = poolManager.entitleByProducts(
                 consumer, productIds, entitleDate);
@@ -237,6 +278,39 @@ public class Entitler {
         }
     }
 
+    /**
+     * Decides whether a failed bind is tried again, pausing before it is.
+     *
+     * @param e failure of the bind
+     * @param attempt number of attempts made so far
+     * @return true if the bind should be tried again.
+     */
+    private boolean retryBind(RuntimeException e, int attempt) {
+        if (attempt >= MAX_BIND_ATTEMPTS || !isStale(e) || transactionHooks.isActive()) {
+            return false;
+        }
+        log.info("Bind conflicted with a concurrent update, retrying (attempt " +
+            attempt + "): " + e);
+        try {
+            Thread.sleep(BIND_RETRY_WAIT * attempt);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isStale(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof StaleStateException ||
+                cause instanceof OptimisticLockException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Entitles the given Consumer to the given Product. Will seek out pools
      * which provide access to this product, either directly or as a child, and
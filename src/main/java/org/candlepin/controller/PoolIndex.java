@@ -0,0 +1,249 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Owner;
+import org.candlepin.model.PoolCurator;
+import org.candlepin.model.TransactionHooks;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * PoolIndex
+ *
+ * Read-mostly, per owner index of the active pools which provide each product.
+ * Bind and autobind use it to find candidate pool ids without querying every pool
+ * of the owner; the candidates are then loaded by primary key and checked against
+ * the database as usual.
+ *
+ * An owner's index is built from two projection queries the first time it is
+ * needed, and dropped whenever {@link CandlepinPoolManager} creates, deletes or
+ * updates one of the owner's pools. It is dropped again once that transaction is
+ * over, as a lookup in the meantime may have rebuilt it from rows which were about
+ * to change, or from the transaction's own uncommitted ones. Pools changed through
+ * another node are picked up once the index is older than
+ * {@link ConfigProperties#POOL_INDEX_MAX_AGE}.
+ *
+ * Quantities are deliberately not indexed, they change with every bind and are
+ * checked by the rules against the locked pool.
+ */
+@Singleton
+public class PoolIndex {
+    private static Logger log = Logger.getLogger(PoolIndex.class);
+
+    private PoolCurator poolCurator;
+    private TransactionHooks transactionHooks;
+    private long maxAge;
+
+    private ConcurrentMap<String, OwnerPools> owners =
+        new ConcurrentHashMap<String, OwnerPools>();
+    // bumped on every invalidation, so a build which raced with one is discarded
+    private ConcurrentMap<String, AtomicLong> versions =
+        new ConcurrentHashMap<String, AtomicLong>();
+
+    @Inject
+    public PoolIndex(PoolCurator poolCurator, TransactionHooks transactionHooks,
+        Config config) {
+        this.poolCurator = poolCurator;
+        this.transactionHooks = transactionHooks;
+        this.maxAge = config.getInt(ConfigProperties.POOL_INDEX_MAX_AGE) * 1000L;
+    }
+
+    /**
+     * @return true if pools should be looked up through the index.
+     */
+    public boolean isEnabled() {
+        return maxAge > 0;
+    }
+
+    /**
+     * Finds the active pools of the owner which are for, or provide, any of the
+     * given products.
+     *
+     * @param owner owner whose pools should be searched.
+     * @param productIds products to look for.
+     * @param activeOn only include pools valid on this date. Null for no date
+     *        filtering.
+     * @return ids of the matching pools.
+     */
+    public Set<String> getPoolIds(Owner owner, String[] productIds, Date activeOn) {
+        OwnerPools pools = getOwnerPools(owner);
+
+        Set<String> poolIds = new LinkedHashSet<String>();
+        for (String productId : productIds) {
+            List<IndexedPool> providing = pools.byProduct.get(productId);
+            if (providing == null) {
+                continue;
+            }
+            for (IndexedPool pool : providing) {
+                if (pool.isActiveOn(activeOn)) {
+                    poolIds.add(pool.id);
+                }
+            }
+        }
+        return poolIds;
+    }
+
+    /**
+     * Drops the index of the given owner, it is rebuilt the next time it is used.
+     *
+     * @param owner owner whose pools changed.
+     */
+    public void invalidate(Owner owner) {
+        if (owner == null || owner.getId() == null) {
+            return;
+        }
+        final String ownerId = owner.getId();
+        drop(ownerId);
+        transactionHooks.afterCompletion(new Runnable() {
+            public void run() {
+                drop(ownerId);
+            }
+        });
+    }
+
+    private void drop(String ownerId) {
+        getVersion(ownerId).incrementAndGet();
+        owners.remove(ownerId);
+    }
+
+    /**
+     * Drops the index of every owner.
+     */
+    public void invalidateAll() {
+        for (AtomicLong version : versions.values()) {
+            version.incrementAndGet();
+        }
+        owners.clear();
+    }
+
+    private OwnerPools getOwnerPools(Owner owner) {
+        long now = System.currentTimeMillis();
+        long version = getVersion(owner.getId()).get();
+
+        OwnerPools pools = owners.get(owner.getId());
+        if (pools != null && pools.version == version && now - pools.built <= maxAge) {
+            return pools;
+        }
+
+        pools = build(owner, version, now);
+        // Only publish if nothing changed while building, otherwise use it for this
+        // lookup and let the next one rebuild.
+        if (getVersion(owner.getId()).get() == version) {
+            owners.put(owner.getId(), pools);
+        }
+        return pools;
+    }
+
+    private OwnerPools build(Owner owner, long version, long now) {
+        Map<String, IndexedPool> byId = new HashMap<String, IndexedPool>();
+        Map<String, List<IndexedPool>> byProduct = new HashMap<String, List<IndexedPool>>();
+
+        for (Object[] row : poolCurator.listActivePoolDates(owner)) {
+            IndexedPool pool = new IndexedPool((String) row[0], (Date) row[2],
+                (Date) row[3]);
+            byId.put(pool.id, pool);
+            addProduct(byProduct, (String) row[1], pool);
+        }
+        for (Object[] row : poolCurator.listActiveProvidedProducts(owner)) {
+            IndexedPool pool = byId.get(row[0]);
+            if (pool != null) {
+                addProduct(byProduct, (String) row[1], pool);
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Indexed " + byId.size() + " pools providing " +
+                byProduct.size() + " products for owner: " + owner.getKey());
+        }
+        return new OwnerPools(byProduct, version, now);
+    }
+
+    private void addProduct(Map<String, List<IndexedPool>> byProduct, String productId,
+        IndexedPool pool) {
+        List<IndexedPool> pools = byProduct.get(productId);
+        if (pools == null) {
+            pools = new ArrayList<IndexedPool>();
+            byProduct.put(productId, pools);
+        }
+        if (!pools.contains(pool)) {
+            pools.add(pool);
+        }
+    }
+
+    private AtomicLong getVersion(String ownerId) {
+        AtomicLong version = versions.get(ownerId);
+        if (version == null) {
+            version = new AtomicLong();
+            AtomicLong existing = versions.putIfAbsent(ownerId, version);
+            if (existing != null) {
+                version = existing;
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Immutable snapshot of one owner's pools.
+     */
+    private static class OwnerPools {
+        private final Map<String, List<IndexedPool>> byProduct;
+        private final long version;
+        private final long built;
+
+        OwnerPools(Map<String, List<IndexedPool>> byProduct, long version,
+            long built) {
+            this.byProduct = Collections.unmodifiableMap(byProduct);
+            this.version = version;
+            this.built = built;
+        }
+    }
+
+    /**
+     * The parts of a pool needed to pick candidates.
+     */
+    private static class IndexedPool {
+        private final String id;
+        private final Date startDate;
+        private final Date endDate;
+
+        IndexedPool(String id, Date startDate, Date endDate) {
+            this.id = id;
+            this.startDate = startDate;
+            this.endDate = endDate;
+        }
+
+        boolean isActiveOn(Date date) {
+            return date == null ||
+                (!startDate.after(date) && !endDate.before(date));
+        }
+    }
+}
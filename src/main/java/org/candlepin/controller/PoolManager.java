@@ -113,6 +113,20 @@ public interface PoolManager {
 
     void regenerateCertificatesOf(String productId, boolean lazy);
 
+    /**
+     * @param env environment where the content was promoted/demoted
+     * @param contentIds content set ids promoted/demoted
+     * @return entitlements in the environment whose certificates carry the content.
+     */
+    Set<Entitlement> listEntitlementsForRegeneration(Environment env,
+        Set<String> contentIds);
+
+    /**
+     * @param productId product whose certificates need regenerating
+     * @return entitlements from the currently active pools for the product.
+     */
+    List<Entitlement> listEntitlementsForRegeneration(String productId);
+
     void regenerateEntitlementCertificates(Consumer consumer, boolean lazy);
 
     int revokeAllEntitlements(Consumer consumer);
@@ -35,10 +35,14 @@ import com.google.inject.Binding;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Module;
+import com.google.inject.persist.UnitOfWork;
 import com.google.inject.util.Modules;
 
+import org.apache.log4j.Logger;
 import org.candlepin.audit.HornetqContextListener;
+import org.candlepin.controller.ConsumerCheckinTracker;
 import org.candlepin.pinsetter.core.PinsetterContextListener;
+import org.candlepin.pki.KeyPairPool;
 
 /**
  * Customized Candlepin version of
@@ -52,6 +56,8 @@ import org.candlepin.pinsetter.core.PinsetterContextListener;
  */
 public class CandlepinContextListener extends
         GuiceResteasyBootstrapServletContextListener {
+    private static Logger log = Logger.getLogger(CandlepinContextListener.class);
+
     private HornetqContextListener hornetqListener;
     private PinsetterContextListener pinsetterListener;
     private Injector injector;
@@ -82,12 +88,29 @@ public class CandlepinContextListener extends
         hornetqListener.contextInitialized(injector);
         pinsetterListener = injector.getInstance(PinsetterContextListener.class);
         pinsetterListener.contextInitialized();
+        injector.getInstance(KeyPairPool.class).start();
     }
 
     @Override
     public void contextDestroyed(ServletContextEvent event) {
+        flushCheckins();
         hornetqListener.contextDestroyed();
         pinsetterListener.contextDestroyed();
+        injector.getInstance(KeyPairPool.class).shutdown();
+    }
+
+    private void flushCheckins() {
+        UnitOfWork unitOfWork = injector.getInstance(UnitOfWork.class);
+        unitOfWork.begin();
+        try {
+            injector.getInstance(ConsumerCheckinTracker.class).flush();
+        }
+        catch (RuntimeException e) {
+            log.error("Unable to flush consumer check ins on shutdown", e);
+        }
+        finally {
+            unitOfWork.end();
+        }
     }
 
     /**
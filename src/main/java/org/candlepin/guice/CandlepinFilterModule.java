@@ -19,6 +19,7 @@ import com.google.inject.servlet.ServletModule;
 import org.candlepin.servlet.filter.CandlepinPersistFilter;
 import org.candlepin.servlet.filter.CandlepinScopeFilter;
 import org.candlepin.servlet.filter.ContentTypeHackFilter;
+import org.candlepin.servlet.filter.EventFilter;
 import org.candlepin.servlet.filter.logging.LoggingFilter;
 import org.jboss.resteasy.plugins.server.servlet.HttpServletDispatcher;
 
@@ -31,6 +32,7 @@ public class CandlepinFilterModule extends ServletModule {
     protected void configureServlets() {
         filter("/*").through(CandlepinScopeFilter.class);
         filter("/*").through(CandlepinPersistFilter.class);
+        filter("/*").through(EventFilter.class);
         filter("/*").through(LoggingFilter.class);
         filter("/*").through(ContentTypeHackFilter.class);
 
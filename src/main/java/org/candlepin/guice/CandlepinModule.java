@@ -21,6 +21,7 @@ import org.candlepin.auth.interceptor.SecurityInterceptor;
 import org.candlepin.config.Config;
 import org.candlepin.controller.CandlepinPoolManager;
 import org.candlepin.controller.CrlGenerator;
+import org.candlepin.controller.CrlPublisher;
 import org.candlepin.controller.Entitler;
 import org.candlepin.controller.PoolManager;
 import org.candlepin.exceptions.mappers.BadRequestExceptionMapper;
@@ -132,6 +133,7 @@ public class CandlepinModule extends AbstractModule {
         bind(PKIReader.class).to(BouncyCastlePKIReader.class).asEagerSingleton();
         bind(X509ExtensionUtil.class);
         bind(CrlGenerator.class);
+        bind(CrlPublisher.class);
         bind(ConsumerResource.class);
         bind(HypervisorResource.class);
         bind(ConsumerTypeResource.class);
@@ -15,8 +15,13 @@
 package org.candlepin.model;
 
 import org.candlepin.util.Util;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.criterion.Restrictions;
 
+import com.google.inject.persist.Transactional;
+
+import java.util.Date;
 import java.util.List;
 
 
@@ -29,6 +34,21 @@ public class CertificateSerialCurator extends AbstractHibernateCurator<Certifica
         super(CertificateSerial.class);
     }
 
+    /**
+     * Assigns the serial its number and queues its insert without the flush
+     * done by {@link #create}. Serial numbers come from SerialNumberGenerator
+     * in memory, so the id is usable as soon as this returns, and the row is
+     * written alongside the certificate that references it.
+     *
+     * @param serial new serial to persist
+     * @return the serial, with its id assigned
+     */
+    @Transactional
+    public CertificateSerial reserve(CertificateSerial serial) {
+        getEntityManager().persist(serial);
+        return serial;
+    }
+
     /**
      * @return list of certificate serials which are revoked but not yet collected
      * and put into crl
@@ -40,6 +60,49 @@ public class CertificateSerialCurator extends AbstractHibernateCurator<Certifica
             .add(Restrictions.eq("collected", false)).list();
     }
 
+    /**
+     * @param since earliest revocation (last update) date to include
+     * @return list of certificate serials revoked on or after the given date,
+     * whether or not they have been collected into a crl
+     */
+    @SuppressWarnings("unchecked")
+    public List<CertificateSerial> retrieveRevokedSince(Date since) {
+        return this.currentSession().createCriteria(CertificateSerial.class)
+            .add(Restrictions.eq("revoked", true))
+            .add(Restrictions.ge("updated", since)).list();
+    }
+
+    /**
+     * Marks every revoked serial as collected into the crl.
+     *
+     * @return the number of serials newly collected.
+     */
+    public int collectRevokedSerials() {
+        return this.currentSession().createQuery(
+            "update CertificateSerial set collected = :collected" +
+                " where revoked = :revoked and collected = :notCollected")
+                .setBoolean("collected", true)
+                .setBoolean("revoked", true)
+                .setBoolean("notCollected", false).executeUpdate();
+    }
+
+    /**
+     * Opens a forward only, read only cursor over the ids and last update dates
+     * of all revoked serials. Rows are returned as Object[] {Long, Date} and are
+     * not attached to the session, so the cursor can cover any number of serials.
+     *
+     * @param fetchSize number of rows to fetch per round-trip
+     * @return cursor over the revoked serials, to be closed by the caller.
+     */
+    public ScrollableResults scrollRevokedSerials(int fetchSize) {
+        return this.currentSession().createQuery(
+            "select id, updated from CertificateSerial where revoked = :revoked")
+                .setBoolean("revoked", true)
+                .setReadOnly(true)
+                .setFetchSize(fetchSize)
+                .scroll(ScrollMode.FORWARD_ONLY);
+    }
+
     @SuppressWarnings("unchecked")
     public List<CertificateSerial> getExpiredSerials() {
         //TODO - Should date fields be truncated when checking expiration?
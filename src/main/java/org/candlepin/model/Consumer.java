@@ -560,6 +560,46 @@ public class Consumer extends AbstractHibernateObject implements Linkable, Owned
         return new Release(releaseVer);
     }
 
+    /**
+     * A detached, shallow copy of this consumer, for recording its state before
+     * an update. The facts, installed products and guest ids are updated in
+     * place, so the copy gets its own collections.
+     *
+     * @return a copy of this consumer which is never persisted.
+     */
+    public Consumer snapshot() {
+        Consumer copy = new Consumer();
+        copy.id = id;
+        copy.uuid = uuid;
+        copy.name = name;
+        copy.username = username;
+        copy.entitlementStatus = entitlementStatus;
+        copy.serviceLevel = serviceLevel;
+        copy.releaseVer = releaseVer;
+        copy.idCert = idCert;
+        copy.type = type;
+        copy.owner = owner;
+        copy.environment = environment;
+        copy.entitlementCount = entitlementCount;
+        copy.keyPair = keyPair;
+        copy.lastCheckin = lastCheckin;
+        copy.canActivate = canActivate;
+        copy.autoheal = autoheal;
+        copy.setCreated(getCreated());
+        copy.setUpdated(getUpdated());
+        if (facts != null) {
+            copy.facts = new HashMap<String, String>(facts);
+        }
+        if (installedProducts != null) {
+            copy.installedProducts =
+                new HashSet<ConsumerInstalledProduct>(installedProducts);
+        }
+        if (guestIds != null) {
+            copy.guestIds = new ArrayList<GuestId>(guestIds);
+        }
+        return copy;
+    }
+
     @Transient
     public boolean isManifest() {
         return getType().isManifest();
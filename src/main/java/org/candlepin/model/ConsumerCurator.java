@@ -14,6 +14,10 @@
  */
 package org.candlepin.model;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -24,6 +28,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
+import org.candlepin.auth.ConsumerPrincipalCache;
 import org.candlepin.auth.interceptor.EnforceAccessControl;
 import org.candlepin.config.Config;
 import org.candlepin.config.ConfigProperties;
@@ -32,6 +37,7 @@ import org.hibernate.Criteria;
 import org.hibernate.Query;
 import org.hibernate.ReplicationMode;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.jdbc.Work;
 import org.xnap.commons.i18n.I18n;
 
 import com.google.inject.Inject;
@@ -45,6 +51,9 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
     @Inject private EntitlementCurator entitlementCurator;
     @Inject private ConsumerTypeCurator consumerTypeCurator;
     @Inject private DeletedConsumerCurator deletedConsumerCurator;
+    @Inject private DeletedConsumerFilter deletedConsumerFilter;
+    @Inject private ConsumerPrincipalCache principalCache;
+    @Inject private TransactionHooks transactionHooks;
     @Inject private Config config;
     @Inject private I18n i18n;
     private static final int NAME_LENGTH = 250;
@@ -86,6 +95,21 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
         else {
             deletedConsumerCurator.create(dc);
         }
+        deletedConsumerFilter.add(dc.getConsumerUuid());
+        invalidatePrincipal(dc.getConsumerUuid());
+    }
+
+    /**
+     * Evicts the cached principal now, and again once the transaction commits,
+     * as a concurrent request may have cached the old consumer meanwhile.
+     */
+    private void invalidatePrincipal(final String uuid) {
+        principalCache.invalidate(uuid);
+        transactionHooks.afterCommit(new Runnable() {
+            public void run() {
+                principalCache.invalidate(uuid);
+            }
+        });
     }
 
     protected void validate(Consumer entity) {
@@ -248,6 +272,7 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
     @Transactional
     @EnforceAccessControl
     public Consumer update(Consumer updatedConsumer) {
+        invalidatePrincipal(updatedConsumer.getUuid());
         Consumer existingConsumer = find(updatedConsumer.getId());
         if (existingConsumer == null) {
             return create(updatedConsumer);
@@ -279,11 +304,49 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
      */
     @Transactional
     public Consumer updateLastCheckin(Consumer consumer) {
-        consumer.setLastCheckin(new Date());
-        save(consumer);
+        // the consumer may be a cached instance from an earlier session, so
+        // update the row directly rather than merging it
+        Date now = new Date();
+        consumer.setLastCheckin(now);
+        currentSession().createQuery(
+            "update Consumer set lastCheckin = :date, updated = :date where id = :id")
+            .setTimestamp("date", now)
+            .setString("id", consumer.getId())
+            .executeUpdate();
         return consumer;
     }
 
+    /**
+     * Writes the given check in times in a single JDBC batch.
+     *
+     * @param checkins check in time keyed by consumer id
+     */
+    @Transactional
+    public void updateLastCheckins(final Map<String, Date> checkins) {
+        if (checkins.isEmpty()) {
+            return;
+        }
+        currentSession().doWork(new Work() {
+            public void execute(Connection connection) throws SQLException {
+                PreparedStatement stmt = connection.prepareStatement(
+                    "update cp_consumer set lastcheckin = ?, updated = ? where id = ?");
+                try {
+                    for (Entry<String, Date> checkin : checkins.entrySet()) {
+                        Timestamp date = new Timestamp(checkin.getValue().getTime());
+                        stmt.setTimestamp(1, date);
+                        stmt.setTimestamp(2, date);
+                        stmt.setString(3, checkin.getKey());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+                finally {
+                    stmt.close();
+                }
+            }
+        });
+    }
+
     private boolean factsChanged(Map<String, String> updatedFacts,
         Map<String, String> existingFacts) {
         return !existingFacts.equals(updatedFacts);
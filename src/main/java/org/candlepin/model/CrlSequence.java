@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * CrlSequence: the number of the last crl issued. There is a single row, shared
+ * by every candlepin node, so crl numbers keep increasing across restarts and
+ * nodes as RFC 5280 requires.
+ */
+@Entity
+@Table(name = "cp_crl_sequence")
+public class CrlSequence extends AbstractHibernateObject {
+
+    /** id of the one and only row */
+    public static final String CRL = "crl";
+
+    @Id
+    @Column(length = 32)
+    private String id;
+
+    @Column(name = "last_number", nullable = false)
+    private Long lastNumber;
+
+    /**
+     * Default constructor for serialization - DO NOT REMOVE!
+     */
+    public CrlSequence() {
+    }
+
+    public CrlSequence(String id, Long lastNumber) {
+        this.id = id;
+        this.lastNumber = lastNumber;
+    }
+
+    @Override
+    public Serializable getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Long getLastNumber() {
+        return lastNumber;
+    }
+
+    public void setLastNumber(Long lastNumber) {
+        this.lastNumber = lastNumber;
+    }
+}
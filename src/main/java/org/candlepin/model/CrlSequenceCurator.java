@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import java.math.BigInteger;
+import java.util.Date;
+
+import com.google.inject.persist.Transactional;
+
+/**
+ * CrlSequenceCurator - hands out crl numbers.
+ */
+public class CrlSequenceCurator extends AbstractHibernateCurator<CrlSequence> {
+
+    protected CrlSequenceCurator() {
+        super(CrlSequence.class);
+    }
+
+    /**
+     * Issues the next crl number. The sequence row is incremented in place,
+     * which locks it until the transaction ends, so callers on any node always
+     * get distinct, increasing numbers.
+     *
+     * @param floor the number issued is also greater than this, so numbering
+     * continues after a crl issued before the sequence existed.
+     * @return the new crl number
+     */
+    @Transactional
+    public BigInteger next(BigInteger floor) {
+        long min = floor.longValue();
+        this.currentSession().createQuery(
+            "update CrlSequence set lastNumber = :floor" +
+                " where id = :id and lastNumber < :floor")
+                .setLong("floor", min)
+                .setString("id", CrlSequence.CRL).executeUpdate();
+        int updated = this.currentSession().createQuery(
+            "update CrlSequence set lastNumber = lastNumber + 1, updated = :now" +
+                " where id = :id")
+                .setTimestamp("now", new Date())
+                .setString("id", CrlSequence.CRL).executeUpdate();
+
+        if (updated == 0) {
+            // the changelog inserts the row, but schemas built by hibernate lack it
+            save(new CrlSequence(CrlSequence.CRL, min + 1));
+            return BigInteger.valueOf(min + 1);
+        }
+        Long number = (Long) this.currentSession().createQuery(
+            "select lastNumber from CrlSequence where id = :id")
+                .setString("id", CrlSequence.CRL).uniqueResult();
+        return BigInteger.valueOf(number);
+    }
+}
@@ -14,6 +14,8 @@
  */
 package org.candlepin.model;
 
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 
@@ -60,4 +62,24 @@ public class DeletedConsumerCurator extends
                         .setProjection(Projections.rowCount()).uniqueResult();
 
     }
+
+    public int countAll() {
+        return (Integer) currentSession().createCriteria(DeletedConsumer.class)
+            .setProjection(Projections.rowCount()).uniqueResult();
+    }
+
+    /**
+     * Opens a forward only, read only cursor over the uuids of all deleted
+     * consumers.
+     *
+     * @param fetchSize number of rows to fetch per round-trip
+     * @return cursor over the uuids, to be closed by the caller.
+     */
+    public ScrollableResults scrollConsumerUuids(int fetchSize) {
+        return currentSession().createQuery(
+            "select consumerUuid from DeletedConsumer")
+                .setReadOnly(true)
+                .setFetchSize(fetchSize)
+                .scroll(ScrollMode.FORWARD_ONLY);
+    }
 }
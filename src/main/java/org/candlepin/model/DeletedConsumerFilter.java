@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.candlepin.util.BloomFilter;
+import org.hibernate.ScrollableResults;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * DeletedConsumerFilter
+ *
+ * In memory filter over the uuids of deleted consumers, so that authenticating
+ * a consumer only has to check the cp_deleted_consumers table for the few uuids
+ * which might be in it.
+ *
+ * The filter is loaded from the database on first use, and is kept up to date
+ * with consumers deleted through this node by {@link ConsumerCurator#delete}.
+ * Consumers deleted through other nodes are picked up when it is reloaded, which
+ * happens every {@link #RELOAD_INTERVAL} ms or once it is full.
+ */
+@Singleton
+public class DeletedConsumerFilter {
+    private static Logger log = Logger.getLogger(DeletedConsumerFilter.class);
+
+    static final long RELOAD_INTERVAL = 60 * 60 * 1000L;
+    private static final int MIN_CAPACITY = 10000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int FETCH_SIZE = 1000;
+
+    private DeletedConsumerCurator deletedConsumerCurator;
+
+    // guarded by this
+    private BloomFilter filter;
+    private long loaded;
+    private boolean loading;
+    private List<String> addedWhileLoading = new ArrayList<String>();
+
+    @Inject
+    public DeletedConsumerFilter(DeletedConsumerCurator deletedConsumerCurator) {
+        this.deletedConsumerCurator = deletedConsumerCurator;
+    }
+
+    /**
+     * @param uuid consumer uuid
+     * @return false if the consumer has definitely not been deleted.
+     */
+    public boolean mightBeDeleted(String uuid) {
+        BloomFilter current = getFilter();
+        if (current == null) {
+            // still loading, err on the side of checking
+            return true;
+        }
+        synchronized (this) {
+            return current.mightContain(uuid);
+        }
+    }
+
+    /**
+     * Records a deleted consumer.
+     *
+     * @param uuid uuid of the deleted consumer
+     */
+    public synchronized void add(String uuid) {
+        if (filter != null) {
+            filter.add(uuid);
+        }
+        if (loading) {
+            addedWhileLoading.add(uuid);
+        }
+    }
+
+    private BloomFilter getFilter() {
+        synchronized (this) {
+            boolean stale = filter == null || filter.isFull() ||
+                System.currentTimeMillis() - loaded > RELOAD_INTERVAL;
+            if (!stale || loading) {
+                return filter;
+            }
+            loading = true;
+        }
+
+        // other threads keep using the old filter while this one loads
+        BloomFilter loadedFilter = null;
+        try {
+            loadedFilter = load();
+        }
+        catch (RuntimeException e) {
+            log.error("Unable to load deleted consumers", e);
+        }
+
+        synchronized (this) {
+            if (loadedFilter != null) {
+                for (String uuid : addedWhileLoading) {
+                    loadedFilter.add(uuid);
+                }
+                filter = loadedFilter;
+                loaded = System.currentTimeMillis();
+            }
+            addedWhileLoading.clear();
+            loading = false;
+            return filter;
+        }
+    }
+
+    private BloomFilter load() {
+        int count = deletedConsumerCurator.countAll();
+        BloomFilter loadedFilter = new BloomFilter(Math.max(MIN_CAPACITY, count * 2),
+            FALSE_POSITIVE_RATE);
+
+        ScrollableResults uuids = deletedConsumerCurator.scrollConsumerUuids(FETCH_SIZE);
+        try {
+            while (uuids.next()) {
+                loadedFilter.add((String) uuids.get(0));
+            }
+        }
+        finally {
+            uuids.close();
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Loaded " + loadedFilter.getCount() + " deleted consumers");
+        }
+        return loadedFilter;
+    }
+}
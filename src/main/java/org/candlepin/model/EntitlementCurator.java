@@ -14,6 +14,7 @@
  */
 package org.candlepin.model;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -68,6 +69,24 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
         return toReturn;
     }
 
+    /**
+     * Flags entitlements as needing their certificates regenerated, without
+     * loading them.
+     *
+     * @param entitlementIds ids of the entitlements to flag
+     * @return the number of entitlements updated.
+     */
+    @Transactional
+    public int markDirty(Collection<String> entitlementIds) {
+        if (entitlementIds.isEmpty()) {
+            return 0;
+        }
+        return this.currentSession().createQuery(
+            "update Entitlement set dirty = :dirty where id in (:ids)")
+                .setBoolean("dirty", true)
+                .setParameterList("ids", entitlementIds).executeUpdate();
+    }
+
     public List<Entitlement> listByConsumer(Consumer consumer) {
         DetachedCriteria query = DetachedCriteria.forClass(Entitlement.class)
             .add(Restrictions.eq("consumer", consumer));
@@ -14,15 +14,19 @@
  */
 package org.candlepin.model;
 
-
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 import org.candlepin.audit.Event;
 import org.candlepin.auth.interceptor.EnforceAccessControl;
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 
+import com.google.inject.persist.Transactional;
+
 /**
  * AttributeCurator
  */
@@ -33,37 +37,108 @@ public class EventCurator extends AbstractHibernateCurator<Event> {
     }
 
     /**
-     * Query events, most recent first.
+     * Stores the events in one transaction. Nothing is flushed until the
+     * transaction commits, so the inserts go out as JDBC batches.
      *
-     * @return List of events.
+     * @param events events to be stored
      */
-    @SuppressWarnings("unchecked")
-    public List<Event> listMostRecent(int limit) {
-        Criteria crit = createEventCriteria(limit);
-        return crit.list();
+    @Transactional
+    public void createAll(List<Event> events) {
+        for (Event event : events) {
+            getEntityManager().persist(event);
+        }
     }
 
     /**
-     * @param limit
-     * @return
+     * Query one page of events, most recent first. Pages are keyed on the
+     * last event of the previous page rather than an offset, so each page is
+     * a range scan of the timestamp indexes no matter how deep it is.
+     *
+     * @param limit maximum number of events to return, 0 for no limit
+     * @param before id of the last event of the previous page, or null for
+     * the first page
+     * @return List of events older than the given event.
      */
-    private Criteria createEventCriteria(int limit) {
-        return currentSession().createCriteria(Event.class)
-            .setMaxResults(limit).addOrder(Order.desc("timestamp"));
+    @SuppressWarnings("unchecked")
+    public List<Event> listMostRecent(int limit, String before) {
+        Criteria crit = createEventCriteria(limit, before);
+        return crit == null ? Collections.<Event>emptyList() : crit.list();
     }
 
     @SuppressWarnings("unchecked")
     @EnforceAccessControl
-    public List<Event> listMostRecent(int limit, Owner owner) {
-        return createEventCriteria(limit).add(
-            Restrictions.eq("ownerId", owner.getId())).list();
+    public List<Event> listMostRecent(int limit, Owner owner, String before) {
+        Criteria crit = createEventCriteria(limit, before);
+        if (crit == null) {
+            return Collections.emptyList();
+        }
+        return crit.add(Restrictions.eq("ownerId", owner.getId())).list();
     }
 
     @SuppressWarnings("unchecked")
     @EnforceAccessControl
-    public List<Event> listMostRecent(int limit, Consumer consumer) {
-        return createEventCriteria(limit).add(
-            Restrictions.eq("consumerId", consumer.getId())).list();
+    public List<Event> listMostRecent(int limit, Consumer consumer, String before) {
+        Criteria crit = createEventCriteria(limit, before);
+        if (crit == null) {
+            return Collections.emptyList();
+        }
+        return crit.add(Restrictions.eq("consumerId", consumer.getId())).list();
+    }
+
+    /**
+     * @return the timestamp of the oldest stored event, or null if there are
+     * no events.
+     */
+    public Date getOldestTimestamp() {
+        return (Date) currentSession().createCriteria(Event.class)
+            .setProjection(Projections.min("timestamp")).uniqueResult();
+    }
+
+    /**
+     * Deletes all events older than the given date in their own transaction.
+     * Callers should move the date forward a bucket at a time so no single
+     * delete runs for long.
+     *
+     * @param date events stamped before this are deleted
+     * @return number of events deleted
+     */
+    @Transactional
+    public int deleteBefore(Date date) {
+        return currentSession().createQuery(
+            "delete from Event where timestamp < :date")
+            .setTimestamp("date", date)
+            .executeUpdate();
+    }
+
+    /**
+     * @param limit maximum number of events, 0 for no limit
+     * @param before id of the event to page from, may be null
+     * @return criteria for the page, or null if the event to page from no
+     * longer exists.
+     */
+    private Criteria createEventCriteria(int limit, String before) {
+        Criteria crit = currentSession().createCriteria(Event.class)
+            .addOrder(Order.desc("timestamp"))
+            .addOrder(Order.desc("id"));
+        if (limit > 0) {
+            crit.setMaxResults(limit);
+        }
+        if (before == null) {
+            return crit;
+        }
+
+        Date timestamp = (Date) currentSession().createCriteria(Event.class)
+            .add(Restrictions.idEq(before))
+            .setProjection(Projections.property("timestamp"))
+            .uniqueResult();
+        if (timestamp == null) {
+            return null;
+        }
+        // ids break ties between events stamped in the same millisecond
+        return crit.add(Restrictions.or(
+            Restrictions.lt("timestamp", timestamp),
+            Restrictions.and(Restrictions.eq("timestamp", timestamp),
+                Restrictions.lt("id", before))));
     }
 
 }
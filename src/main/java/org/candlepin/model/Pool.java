@@ -21,11 +21,11 @@ import org.codehaus.jackson.map.annotate.JsonFilter;
 
 import org.hibernate.annotations.Cascade;
 import org.hibernate.annotations.ForeignKey;
-import org.hibernate.annotations.Formula;
 import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Index;
 import org.hibernate.annotations.LazyCollection;
 import org.hibernate.annotations.LazyCollectionOption;
+import org.hibernate.annotations.OptimisticLock;
 
 import java.util.Date;
 import java.util.HashSet;
@@ -54,6 +54,9 @@ import javax.xml.bind.annotation.XmlTransient;
 @XmlRootElement(name = "pool")
 @XmlAccessorType(XmlAccessType.PROPERTY)
 @Entity
+// only write changed columns, so writers of other fields never put back counters
+// they read before a concurrent bind
+@org.hibernate.annotations.Entity(dynamicUpdate = true)
 @Table(name = "cp_pool", uniqueConstraints = {
         @UniqueConstraint(columnNames = {"subscriptionid", "subscriptionsubkey"})})
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -131,6 +134,8 @@ public class Pool extends AbstractHibernateObject implements Persisted, Owned {
 
     @OneToMany(mappedBy = "pool", cascade = CascadeType.ALL)
     @LazyCollection(LazyCollectionOption.EXTRA)
+    // binds and unbinds must not conflict with writers of the pool itself
+    @OptimisticLock(excluded = true)
     private Set<Entitlement> entitlements = new HashSet<Entitlement>();
 
     private String restrictedToUsername;
@@ -138,14 +143,17 @@ public class Pool extends AbstractHibernateObject implements Persisted, Owned {
     private String contractNumber;
     private String accountNumber;
 
-    @Formula("(select sum(ent.quantity) from cp_entitlement ent " +
-             "where ent.pool_id = id)")
-    private Long consumed;
+    // maintained by the pool manager under the pool lock, repaired by PoolCounterTask.
+    // Every bind and unbind moves them, so they leave the version alone: refreshing
+    // pools and other writers which do not take the pool lock would otherwise fail
+    // with stale pools whenever a consumer binds at the same time.
+    @Column(nullable = false)
+    @OptimisticLock(excluded = true)
+    private Long consumed = 0L;
 
-    @Formula("(select sum(ent.quantity) from cp_entitlement ent, cp_consumer cons, " +
-        "cp_consumer_type ctype where ent.pool_id = id and ent.consumer_id = cons.id " +
-        "and cons.type_id = ctype.id and ctype.manifest = 'Y')")
-    private Long exported;
+    @Column(nullable = false)
+    @OptimisticLock(excluded = true)
+    private Long exported = 0L;
 
     // TODO: May not still be needed, iirc a temporary hack for client.
     private String productName;
@@ -238,8 +246,6 @@ public class Pool extends AbstractHibernateObject implements Persisted, Owned {
      * @param consumed set the activate uses.
      */
     public void setConsumed(Long consumed) {
-        // Even tho this is calculated at DB fetch time, we allow
-        // setting it for changes in a single txn
         this.consumed = consumed;
     }
 
@@ -254,8 +260,6 @@ public class Pool extends AbstractHibernateObject implements Persisted, Owned {
      * @param exported set the activate uses.
      */
     public void setExported(Long exported) {
-        // Even tho this is calculated at DB fetch time, we allow
-        // setting it for changes in a single txn
         this.exported = exported;
     }
 
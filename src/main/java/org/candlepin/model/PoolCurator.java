@@ -23,7 +23,6 @@ import org.candlepin.auth.interceptor.EnforceAccessControl;
 import org.candlepin.policy.ValidationResult;
 import org.candlepin.policy.js.ProductCache;
 import org.candlepin.policy.js.entitlement.Enforcer;
-import org.candlepin.policy.js.entitlement.PreEntHelper;
 import org.candlepin.policy.criteria.CriteriaRules;
 import org.hibernate.Criteria;
 import org.hibernate.Filter;
@@ -35,14 +34,18 @@ import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
 import org.hibernate.impl.FilterImpl;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -52,6 +55,14 @@ import java.util.TreeSet;
 public class PoolCurator extends AbstractHibernateCurator<Pool> {
 
     private static Logger log = Logger.getLogger(PoolCurator.class);
+
+    private static final String CONSUMED_SUM = "(select coalesce(sum(ent.quantity), 0) " +
+        "from cp_entitlement ent where ent.pool_id = p.id)";
+    private static final String EXPORTED_SUM = "(select coalesce(sum(ent.quantity), 0) " +
+        "from cp_entitlement ent, cp_consumer cons, cp_consumer_type ctype " +
+        "where ent.pool_id = p.id and ent.consumer_id = cons.id " +
+        "and cons.type_id = ctype.id and ctype.manifest = 'Y')";
+
     private Enforcer enforcer;
     private CriteriaRules poolCriteria;
     @Inject
@@ -167,11 +178,103 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
      *        triggered a rule warning. (errors will still be excluded)
      * @return List of entitlement pools.
      */
-    @SuppressWarnings("unchecked")
     @Transactional
     @EnforceAccessControl
     public List<Pool> listAvailableEntitlementPools(Consumer c, Owner o,
             String productId, Date activeOn, boolean activeOnly, boolean includeWarnings) {
+        List<String> productIds = null;
+        if (productId != null) {
+            productIds = Collections.singletonList(productId);
+        }
+        return listAvailableEntitlementPoolsForProducts(c, o, productIds, activeOn,
+            activeOnly, includeWarnings);
+    }
+
+    /**
+     * List entitlement pools which provide any of the given products.
+     *
+     * The product filtering is done by the database, so only pools which are
+     * for, or provide, one of the products are loaded.
+     *
+     * If a consumer is specified, a pass through the rules will be done for
+     * each potentially usable pool.
+     *
+     * @param c Consumer being entitled.
+     * @param o Owner whose subscriptions should be inspected.
+     * @param productIds only entitlements which provide one of these products are
+     *        included. Set to null for no product filtering.
+     * @param activeOn Indicates to return only pools valid on this date.
+     *        Set to null for no date filtering.
+     * @param activeOnly if true, only active entitlements are included.
+     * @param includeWarnings When filtering by consumer, include pools that
+     *        triggered a rule warning. (errors will still be excluded)
+     * @return List of entitlement pools.
+     */
+    @Transactional
+    @EnforceAccessControl
+    public List<Pool> listAvailableEntitlementPoolsForProducts(Consumer c, Owner o,
+            Collection<String> productIds, Date activeOn, boolean activeOnly,
+            boolean includeWarnings) {
+
+        if (log.isDebugEnabled()) {
+            log.debug("Listing available pools for products: " + productIds);
+        }
+
+        Criterion filter = null;
+        if (productIds != null) {
+            if (productIds.isEmpty()) {
+                // nothing can provide an empty set of products
+                return new ArrayList<Pool>();
+            }
+
+            // Either a direct match, or one of the products is provided by the
+            // product this pool is for:
+            DetachedCriteria provided = DetachedCriteria.forClass(ProvidedProduct.class)
+                .add(Restrictions.in("productId", productIds))
+                .setProjection(Projections.property("pool.id"));
+            filter = Restrictions.or(Restrictions.in("productId", productIds),
+                Subqueries.propertyIn("id", provided));
+        }
+        return listAvailable(c, o, filter, activeOn, activeOnly, includeWarnings);
+    }
+
+    /**
+     * List the given entitlement pools, if they are still available.
+     *
+     * Used with ids from the in-memory pool index, the pools are looked up by primary
+     * key, and still go through the same date, owner and rules filtering as
+     * {@link #listAvailableEntitlementPools}.
+     *
+     * @param c Consumer being entitled.
+     * @param o Owner whose subscriptions should be inspected.
+     * @param poolIds ids of the pools to consider.
+     * @param activeOn Indicates to return only pools valid on this date.
+     *        Set to null for no date filtering.
+     * @param activeOnly if true, only active entitlements are included.
+     * @param includeWarnings When filtering by consumer, include pools that
+     *        triggered a rule warning. (errors will still be excluded)
+     * @return List of entitlement pools.
+     */
+    @Transactional
+    @EnforceAccessControl
+    public List<Pool> listAvailableEntitlementPoolsById(Consumer c, Owner o,
+            Collection<String> poolIds, Date activeOn, boolean activeOnly,
+            boolean includeWarnings) {
+
+        if (log.isDebugEnabled()) {
+            log.debug("Listing " + poolIds.size() + " available pools by id");
+        }
+
+        if (poolIds.isEmpty()) {
+            return new ArrayList<Pool>();
+        }
+        return listAvailable(c, o, Restrictions.in("id", poolIds), activeOn, activeOnly,
+            includeWarnings);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Pool> listAvailable(Consumer c, Owner o, Criterion filter,
+            Date activeOn, boolean activeOnly, boolean includeWarnings) {
 
         if (o == null && c != null) {
             o = c.getOwner();
@@ -182,7 +285,6 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
             log.debug("Listing available pools for:");
             log.debug("   consumer: " + c);
             log.debug("   owner: " + o);
-            log.debug("   product: " + productId);
         }
 
         Criteria crit = currentSession().createCriteria(Pool.class);
@@ -214,40 +316,20 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
             crit.add(Restrictions.le("startDate", activeOn));
             crit.add(Restrictions.ge("endDate", activeOn));
         }
+        if (filter != null) {
+            crit.add(filter);
+        }
 
         // FIXME: sort by enddate?
         List<Pool> results = crit.list();
 
-        if (log.isDebugEnabled()) {
-            log.debug("Loaded " + results.size() + " pools from database.");
-        }
-
         if (results == null) {
             log.debug("no results");
             return new ArrayList<Pool>();
         }
 
         if (log.isDebugEnabled()) {
-            log.debug("active pools for owner: " + results.size());
-        }
-
-        // crit.add(Restrictions.or(Restrictions.eq("productId", productId),
-        // Restrictions.in("", results)))
-        // Filter for product we want:
-        if (productId != null) {
-
-            List<Pool> newResults = new LinkedList<Pool>();
-            for (Pool p : results) {
-                // Provides will check if the products are a direct match, or if the
-                // desired product is provided by the product this pool is for:
-                if (p.provides(productId)) {
-                    newResults.add(p);
-                    if (log.isDebugEnabled()) {
-                        log.debug("Pool provides " + productId + ": " + p);
-                    }
-                }
-            }
-            results = newResults;
+            log.debug("Loaded " + results.size() + " pools from database.");
         }
 
         // If querying for pools available to a specific consumer, we need
@@ -257,9 +339,10 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
         // request still could fail.
         if (c != null) {
             List<Pool> newResults = new LinkedList<Pool>();
+            Map<Pool, ValidationResult> validations =
+                enforcer.preEntitlement(c, results, 1);
             for (Pool p : results) {
-                PreEntHelper helper = enforcer.preEntitlement(c, p, 1);
-                ValidationResult result = helper.getResult();
+                ValidationResult result = validations.get(p);
                 if (result.isSuccessful() && (!result.hasWarnings() || includeWarnings)) {
                     newResults.add(p);
                 }
@@ -287,6 +370,45 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
                 .add(Restrictions.eq("restrictedToUsername", username)));
     }
 
+    /**
+     * Lists the id, product ID, start date and end date of each active pool of
+     * the given owner, excluding the ueber pool. Rows are returned as
+     * Object[] {String, String, Date, Date} and are not attached to the session.
+     *
+     * @param o Owner whose pools should be listed.
+     * @return one row per pool.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> listActivePoolDates(Owner o) {
+        return currentSession().createQuery(
+            "select p.id, p.productId, p.startDate, p.endDate from Pool p " +
+            "where p.owner = :owner and p.activeSubscription = :active " +
+            "and p.productName != :ueber")
+            .setParameter("owner", o)
+            .setBoolean("active", true)
+            .setString("ueber", Product.ueberProductNameForOwner(o))
+            .setReadOnly(true)
+            .list();
+    }
+
+    /**
+     * Lists the products provided by the active pools of the given owner. Rows
+     * are returned as Object[] {String poolId, String productId}.
+     *
+     * @param o Owner whose pools should be listed.
+     * @return one row per provided product.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> listActiveProvidedProducts(Owner o) {
+        return currentSession().createQuery(
+            "select pp.pool.id, pp.productId from ProvidedProduct pp " +
+            "where pp.pool.owner = :owner and pp.pool.activeSubscription = :active")
+            .setParameter("owner", o)
+            .setBoolean("active", true)
+            .setReadOnly(true)
+            .list();
+    }
+
     @Transactional
     @EnforceAccessControl
     public Pool findUeberPool(Owner o) {
@@ -454,6 +576,78 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
         return pool;
     }
 
+    /**
+     * Adds to the consumed and exported counters of the pool with a single
+     * update, which the database evaluates against the latest committed row.
+     * When consuming, the update only succeeds if the pool still has the
+     * quantity available. The counters are not part of the pool's version, so
+     * the version is left alone, and the pool is refreshed afterwards.
+     *
+     * @param pool pool to update
+     * @param consumed quantity to add to the consumed count, negative to release.
+     * @param exported quantity to add to the exported count, negative to release.
+     * @return false if the pool did not have the quantity available.
+     */
+    @Transactional
+    public boolean updateConsumed(Pool pool, long consumed, long exported) {
+        String hql = "update Pool set consumed = consumed + :consumed, " +
+            "exported = exported + :exported where id = :id";
+        if (consumed > 0) {
+            hql += " and (quantity < 0 or consumed + :consumed <= quantity)";
+        }
+
+        // write out entitlement changes before the pool is refreshed
+        flush();
+        int updated = currentSession().createQuery(hql)
+            .setLong("consumed", consumed)
+            .setLong("exported", exported)
+            .setString("id", pool.getId())
+            .executeUpdate();
+        refresh(pool);
+        return updated > 0;
+    }
+
+    /**
+     * @return ids of the pools whose consumed or exported counters do not match
+     * their entitlements.
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> listPoolIdsWithCounterDrift() {
+        return currentSession().createSQLQuery(
+            "select p.id from cp_pool p where p.consumed <> " + CONSUMED_SUM +
+            " or p.exported <> " + EXPORTED_SUM).list();
+    }
+
+    /**
+     * Recalculates the consumed and exported counters of the pool from its
+     * entitlements, under the pool lock.
+     *
+     * @param pool pool to reconcile
+     * @return true if the counters had drifted and were corrected.
+     */
+    @Transactional
+    public boolean reconcileCounters(Pool pool) {
+        lockAndLoad(pool);
+        Object[] sums = (Object[]) currentSession().createSQLQuery(
+            "select " + CONSUMED_SUM + ", " + EXPORTED_SUM +
+            " from cp_pool p where p.id = :id")
+            .setString("id", pool.getId())
+            .uniqueResult();
+        long consumed = ((Number) sums[0]).longValue();
+        long exported = ((Number) sums[1]).longValue();
+
+        if (pool.getConsumed() == consumed && pool.getExported() == exported) {
+            return false;
+        }
+        log.warn("Correcting counters of pool " + pool.getId() + ": consumed " +
+            pool.getConsumed() + " -> " + consumed + ", exported " +
+            pool.getExported() + " -> " + exported);
+        pool.setConsumed(consumed);
+        pool.setExported(exported);
+        flush();
+        return true;
+    }
+
     public List<ActivationKey> getActivationKeysForPool(Pool p) {
         List<ActivationKey> activationKeys = new ArrayList<ActivationKey>();
         List<ActivationKeyPool> activationKeyPools = currentSession().createCriteria(
@@ -47,6 +47,7 @@ public class ProvidedProduct extends AbstractHibernateObject {
     private String id;
 
     @Column(name = "product_id", nullable = false)
+    @Index(name = "cp_pool_products_product_id_idx")
     private String productId;
 
     @Column(name = "product_name")
@@ -80,6 +80,16 @@ public class RulesCurator extends AbstractHibernateCurator<Rules> {
 
     }
 
+    /**
+     * @param rules rules to check
+     * @return true if the rules are the default rules shipped with this server,
+     * rather than rules which were uploaded or imported.
+     */
+    public boolean isDefault(Rules rules) {
+        return rules.getRules().equals(
+            rulesFromFile(getDefaultRulesFile()).getRules());
+    }
+
     private Date getUpdatedFromDB() {
         @SuppressWarnings("unchecked")
         List<Date> result = getEntityManager().createQuery("SELECT updated FROM Rules")
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.apache.log4j.Logger;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+/**
+ * TransactionHooks
+ *
+ * Defers work until the current transaction has committed. In memory state
+ * which is rebuilt from the database, such as the CRL, the pool index or the
+ * consumer principal cache, must only be dropped once the change is visible
+ * to other sessions. Dropping it earlier lets a concurrent request rebuild it
+ * from the old rows and publish that again.
+ */
+public class TransactionHooks {
+    private static Logger log = Logger.getLogger(TransactionHooks.class);
+
+    private Provider<EntityManager> entityManager;
+
+    @Inject
+    public TransactionHooks(Provider<EntityManager> entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * @return true if a transaction is in progress.
+     */
+    public boolean isActive() {
+        Session session = (Session) entityManager.get().getDelegate();
+        Transaction tx = session.getTransaction();
+        return tx != null && tx.isActive();
+    }
+
+    /**
+     * Runs the action once the current transaction commits. The action is
+     * dropped if the transaction rolls back, and run right away if there is no
+     * transaction in progress.
+     *
+     * @param action work to run after the commit
+     */
+    public void afterCommit(Runnable action) {
+        register(action, true);
+    }
+
+    /**
+     * Runs the action once the current transaction is over, whether it
+     * committed or rolled back, or right away if there is no transaction in
+     * progress.
+     *
+     * @param action work to run after the transaction
+     */
+    public void afterCompletion(Runnable action) {
+        register(action, false);
+    }
+
+    private void register(final Runnable action, final boolean commitOnly) {
+        Session session = (Session) entityManager.get().getDelegate();
+        Transaction tx = session.getTransaction();
+        if (tx == null || !tx.isActive()) {
+            action.run();
+            return;
+        }
+
+        tx.registerSynchronization(new Synchronization() {
+            public void beforeCompletion() {
+                // nothing to do
+            }
+
+            public void afterCompletion(int status) {
+                if (commitOnly && status != Status.STATUS_COMMITTED) {
+                    return;
+                }
+                try {
+                    action.run();
+                }
+                catch (RuntimeException e) {
+                    // the transaction is already over, nothing to undo
+                    log.error("Post transaction action failed", e);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import org.apache.log4j.Logger;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.EventCurator;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+
+import com.google.inject.Inject;
+
+/**
+ * EventCleanerTask prunes audit events older than the configured retention.
+ * Events are dropped a day at a time, oldest first, so each delete only
+ * touches one bucket of the timestamp index and commits on its own.
+ */
+public class EventCleanerTask implements Job {
+
+    public static final String DEFAULT_SCHEDULE = "0 0 2 * * ?";
+
+    private static Logger log = Logger.getLogger(EventCleanerTask.class);
+
+    private EventCurator eventCurator;
+    private Config config;
+
+    @Inject
+    public EventCleanerTask(EventCurator eventCurator, Config config) {
+        this.eventCurator = eventCurator;
+        this.config = config;
+    }
+
+    @Override
+    public void execute(JobExecutionContext ctx) throws JobExecutionException {
+        int retention = config.getInt(ConfigProperties.AUDIT_RETENTION_DAYS);
+        if (retention <= 0) {
+            return;
+        }
+
+        Date cutoff = addDays(startOfDay(new Date()), -retention);
+        int deleted = 0;
+        Date oldest = eventCurator.getOldestTimestamp();
+        while (oldest != null && oldest.before(cutoff)) {
+            Date bucketEnd = addDays(startOfDay(oldest), 1);
+            if (bucketEnd.after(cutoff)) {
+                bucketEnd = cutoff;
+            }
+            deleted += eventCurator.deleteBefore(bucketEnd);
+            oldest = eventCurator.getOldestTimestamp();
+        }
+        log.info("Deleted " + deleted + " events older than " + cutoff);
+    }
+
+    private static Date startOfDay(Date date) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(date);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTime();
+    }
+
+    private static Date addDays(Date date, int days) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(date);
+        cal.add(Calendar.DAY_OF_MONTH, days);
+        return cal.getTime();
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import org.apache.log4j.Logger;
+import org.candlepin.model.Pool;
+import org.candlepin.model.PoolCurator;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+
+import com.google.inject.Inject;
+
+/**
+ * PoolCounterTask repairs the consumed and exported counters of pools which no
+ * longer match their entitlements, e.g. after entitlements were created or
+ * removed without going through the pool manager.
+ */
+public class PoolCounterTask implements Job {
+
+    public static final String DEFAULT_SCHEDULE = "0 30 3 * * ?";
+
+    private static Logger log = Logger.getLogger(PoolCounterTask.class);
+
+    private PoolCurator poolCurator;
+
+    @Inject
+    public PoolCounterTask(PoolCurator poolCurator) {
+        this.poolCurator = poolCurator;
+    }
+
+    @Override
+    public void execute(JobExecutionContext ctx) throws JobExecutionException {
+        int corrected = 0;
+        for (String id : poolCurator.listPoolIdsWithCounterDrift()) {
+            Pool pool = poolCurator.find(id);
+            // the drift may have been a bind in progress, which the lock waits out
+            if (pool != null && poolCurator.reconcileCounters(pool)) {
+                corrected++;
+            }
+        }
+        log.info("Corrected the counters of " + corrected + " pools");
+    }
+}
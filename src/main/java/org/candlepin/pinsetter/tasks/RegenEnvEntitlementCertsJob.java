@@ -21,6 +21,7 @@ import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 
 import com.google.inject.Inject;
+import org.candlepin.controller.EntitlementCertRegenerator;
 import org.candlepin.controller.PoolManager;
 import org.candlepin.model.Environment;
 
@@ -33,13 +34,16 @@ import org.candlepin.model.Environment;
 public class RegenEnvEntitlementCertsJob implements Job {
 
     private PoolManager poolManager;
+    private EntitlementCertRegenerator regenerator;
     public static final String ENV = "env_id";
     public static final String CONTENT = "content_ids";
     public static final String LAZY_REGEN = "lazy_regen";
 
     @Inject
-    public RegenEnvEntitlementCertsJob(PoolManager poolManager) {
+    public RegenEnvEntitlementCertsJob(PoolManager poolManager,
+        EntitlementCertRegenerator regenerator) {
         this.poolManager = poolManager;
+        this.regenerator = regenerator;
     }
 
     @Override
@@ -50,6 +54,16 @@ public class RegenEnvEntitlementCertsJob implements Job {
             arg0.getJobDetail().getJobDataMap().get(CONTENT);
         Boolean lazy = arg0.getMergedJobDataMap().getBoolean(LAZY_REGEN);
 
-        this.poolManager.regenerateCertificatesOf(env, contentIds, lazy);
+        if (lazy) {
+            this.poolManager.regenerateCertificatesOf(env, contentIds, lazy);
+            return;
+        }
+
+        // an immediately refired job only has to finish off what the last
+        // attempt left dirty, these jobs are not recovered after a restart
+        int regenerated = regenerator.regenerate(
+            poolManager.listEntitlementsForRegeneration(env, contentIds),
+            arg0.getJobDetail().getKey().getName(), arg0.getRefireCount() > 0);
+        arg0.setResult("Regenerated certificates for " + regenerated + " entitlements");
     }
 }
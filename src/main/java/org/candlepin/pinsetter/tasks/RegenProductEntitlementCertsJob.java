@@ -19,6 +19,7 @@ import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 
 import com.google.inject.Inject;
+import org.candlepin.controller.EntitlementCertRegenerator;
 import org.candlepin.controller.PoolManager;
 
 /**
@@ -27,12 +28,15 @@ import org.candlepin.controller.PoolManager;
 public class RegenProductEntitlementCertsJob implements Job {
 
     private PoolManager poolManager;
+    private EntitlementCertRegenerator regenerator;
     public static final String PROD_ID = "product_id";
     public static final String LAZY_REGEN = "lazy_regen";
 
     @Inject
-    public RegenProductEntitlementCertsJob(PoolManager poolManager) {
+    public RegenProductEntitlementCertsJob(PoolManager poolManager,
+        EntitlementCertRegenerator regenerator) {
         this.poolManager = poolManager;
+        this.regenerator = regenerator;
     }
 
     @Override
@@ -40,6 +44,16 @@ public class RegenProductEntitlementCertsJob implements Job {
         String prodId = arg0.getJobDetail().getJobDataMap().getString(
             PROD_ID);
         boolean lazy = arg0.getJobDetail().getJobDataMap().getBoolean(LAZY_REGEN);
-        this.poolManager.regenerateCertificatesOf(prodId, lazy);
+        if (lazy) {
+            this.poolManager.regenerateCertificatesOf(prodId, lazy);
+            return;
+        }
+
+        // an immediately refired job only has to finish off what the last
+        // attempt left dirty, these jobs are not recovered after a restart
+        int regenerated = regenerator.regenerate(
+            poolManager.listEntitlementsForRegeneration(prodId),
+            arg0.getJobDetail().getKey().getName(), arg0.getRefireCount() > 0);
+        arg0.setResult("Regenerated certificates for " + regenerated + " entitlements");
     }
 }
@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki;
+
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * KeyPairPool
+ *
+ * Bounded pool of RSA key pairs generated ahead of time by background threads,
+ * so registering a consumer does not have to wait on key generation. Whenever
+ * a take leaves no more than {@link ConfigProperties#KEYPAIR_POOL_LOW_WATERMARK}
+ * pairs available the pool is topped back up to
+ * {@link ConfigProperties#KEYPAIR_POOL_SIZE}. If the pool is empty, or its size
+ * is 0, the key pair is generated inline as before.
+ */
+@Singleton
+public class KeyPairPool {
+
+    private static Logger log = Logger.getLogger(KeyPairPool.class);
+
+    private PKIUtility pki;
+    private int lowWatermark;
+    private int threads;
+    private BlockingQueue<KeyPair> pool;
+    // guarded by this
+    private ExecutorService executor;
+    private boolean stopped;
+
+    // number of refill workers still running
+    private AtomicInteger refilling = new AtomicInteger();
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+    private AtomicLong generated = new AtomicLong();
+
+    @Inject
+    public KeyPairPool(PKIUtility pki, Config config) {
+        this.pki = pki;
+        int size = config.getInt(ConfigProperties.KEYPAIR_POOL_SIZE);
+        this.lowWatermark = Math.min(size,
+            config.getInt(ConfigProperties.KEYPAIR_POOL_LOW_WATERMARK));
+        this.threads = Math.max(1, config.getInt(ConfigProperties.KEYPAIR_POOL_THREADS));
+        if (size > 0) {
+            this.pool = new ArrayBlockingQueue<KeyPair>(size);
+        }
+    }
+
+    /**
+     * @return true if key pairs are generated ahead of time.
+     */
+    public boolean isEnabled() {
+        return pool != null;
+    }
+
+    /**
+     * Starts filling the pool in the background.
+     */
+    public void start() {
+        if (isEnabled()) {
+            refill();
+        }
+    }
+
+    /**
+     * Hands out a new key pair, from the pool if one is ready.
+     *
+     * @return a key pair not handed out before.
+     * @throws NoSuchAlgorithmException if RSA is not available
+     */
+    public KeyPair take() throws NoSuchAlgorithmException {
+        if (!isEnabled()) {
+            return pki.generateNewKeyPair();
+        }
+
+        KeyPair pair = pool.poll();
+        if (pool.size() <= lowWatermark) {
+            refill();
+        }
+
+        if (pair != null) {
+            hits.incrementAndGet();
+            return pair;
+        }
+
+        misses.incrementAndGet();
+        if (log.isDebugEnabled()) {
+            log.debug("Key pair pool is empty, generating key pair inline");
+        }
+        return pki.generateNewKeyPair();
+    }
+
+    /**
+     * Stops the refill threads. Pairs already in the pool are still handed out.
+     */
+    public synchronized void shutdown() {
+        stopped = true;
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * @return number of key pairs ready to be handed out.
+     */
+    public int getAvailable() {
+        return isEnabled() ? pool.size() : 0;
+    }
+
+    /**
+     * @return number of takes served from the pool.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of takes which had to generate the key pair inline.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of key pairs generated by the refill threads.
+     */
+    public long getGenerated() {
+        return generated.get();
+    }
+
+    private synchronized void refill() {
+        if (stopped || !refilling.compareAndSet(0, threads)) {
+            return;
+        }
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory());
+        }
+        for (int i = 0; i < threads; i++) {
+            executor.execute(new Refill());
+        }
+    }
+
+    /**
+     * Generates key pairs until the pool is full.
+     */
+    private class Refill implements Runnable {
+        public void run() {
+            try {
+                while (pool.remainingCapacity() > 0 &&
+                    !Thread.currentThread().isInterrupted()) {
+                    if (!pool.offer(pki.generateNewKeyPair())) {
+                        break;
+                    }
+                    generated.incrementAndGet();
+                }
+            }
+            catch (NoSuchAlgorithmException e) {
+                log.error("Unable to pre-generate key pairs", e);
+            }
+            catch (RuntimeException e) {
+                log.error("Unable to pre-generate key pairs", e);
+            }
+            finally {
+                if (refilling.decrementAndGet() == 0 && log.isDebugEnabled()) {
+                    log.debug("Key pair pool refilled: " + pool.size() +
+                        " available, " + hits.get() + " hits, " + misses.get() +
+                        " misses");
+                }
+            }
+        }
+    }
+
+    /**
+     * Refill threads must not keep the server from shutting down.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "keypair-pool-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
+}
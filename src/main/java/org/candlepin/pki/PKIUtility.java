@@ -43,6 +43,7 @@ import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.candlepin.config.ConfigProperties;
+import org.candlepin.util.Util;
 
 /**
  * PKIUtility
@@ -76,6 +77,32 @@ public abstract class PKIUtility {
     public abstract X509CRL createX509CRL(List<X509CRLEntryWrapper> entries,
         BigInteger crlNumber);
 
+    /**
+     * Generate a delta crl (RFC 5280 section 5.2.4) against the given base crl.
+     *
+     * @param entries the entries revoked since the base crl was issued
+     * @param crlNumber the crl number of the delta
+     * @param baseCrlNumber the crl number of the base crl
+     * @return the x509 delta crl
+     */
+    public abstract X509CRL createX509DeltaCRL(List<X509CRLEntryWrapper> entries,
+        BigInteger crlNumber, BigInteger baseCrlNumber);
+
+    /**
+     * Creates a writer which streams a crl, issued now and valid until
+     * tomorrow, without holding its entries in memory. The crl is signed with
+     * the same algorithm as every other crl and certificate.
+     *
+     * @param crlNumber the crl number
+     * @return the crl writer
+     * @throws IOException if the writer cannot create its spool file
+     */
+    public X509CRLStreamWriter createX509CRLStreamWriter(BigInteger crlNumber)
+        throws IOException {
+        return new X509CRLStreamWriter(reader, SIGNATURE_ALGO, crlNumber, new Date(),
+            Util.tomorrow());
+    }
+
     public KeyPair decodeKeys(byte[] privKeyBits, byte[] pubKeyBits)
         throws InvalidKeySpecException, NoSuchAlgorithmException {
 
@@ -123,9 +150,7 @@ public abstract class PKIUtility {
 
     public byte[] getSHA256WithRSAHash(InputStream input) {
         try {
-            Signature signature = Signature.getInstance("SHA256withRSA");
-            signature.initSign(reader.getCaKey());
-
+            Signature signature = getSHA256WithRSASigner();
             updateSignature(input, signature);
             return signature.sign();
         }
@@ -134,6 +159,21 @@ public abstract class PKIUtility {
         }
     }
 
+    /**
+     * @return a SHA256withRSA signature initialized with the CA key, so data
+     * can be signed as it is written instead of being read back afterwards.
+     */
+    public Signature getSHA256WithRSASigner() {
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(reader.getCaKey());
+            return signature;
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public boolean verifySHA256WithRSAHashWithUpstreamCACert(
         InputStream input, byte[] signedHash) throws CertificateException, IOException {
         return verifySHA256WithRSAHash(input, signedHash, reader.getUpstreamCACert());
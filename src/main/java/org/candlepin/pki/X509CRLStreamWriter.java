@@ -0,0 +1,309 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.DERObjectIdentifier;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERInteger;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.asn1.x509.X509ExtensionsGenerator;
+import org.bouncycastle.x509.extension.AuthorityKeyIdentifierStructure;
+
+/**
+ * X509CRLStreamWriter
+ *
+ * Writes a signed X.509 v2 CRL without ever holding its entries in memory.
+ * Revoked entries are DER encoded one at a time as they are added and spooled
+ * to a temporary file. {@link #write(OutputStream)} then streams the spooled
+ * entries twice, once through the signature and once to the output, so heap
+ * usage stays flat regardless of the size of the CRL.
+ *
+ * The encoding matches what {@link PKIUtility#createX509CRL} produces: every
+ * entry carries a privilegeWithdrawn reason code, and the CRL carries the
+ * authority key identifier and CRL number extensions. The CRL is signed with
+ * the algorithm the PKIUtility signs everything else with.
+ */
+public class X509CRLStreamWriter {
+    private static Logger log = Logger.getLogger(X509CRLStreamWriter.class);
+
+    private static final int SEQUENCE = 0x30;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // RSA signature algorithms the CA key can sign with, by JCA name
+    private static final Map<String, DERObjectIdentifier> ALGORITHMS =
+        new HashMap<String, DERObjectIdentifier>();
+
+    static {
+        ALGORITHMS.put("MD5WITHRSA", PKCSObjectIdentifiers.md5WithRSAEncryption);
+        ALGORITHMS.put("SHA1WITHRSA", PKCSObjectIdentifiers.sha1WithRSAEncryption);
+        ALGORITHMS.put("SHA256WITHRSA", PKCSObjectIdentifiers.sha256WithRSAEncryption);
+        ALGORITHMS.put("SHA384WITHRSA", PKCSObjectIdentifiers.sha384WithRSAEncryption);
+        ALGORITHMS.put("SHA512WITHRSA", PKCSObjectIdentifiers.sha512WithRSAEncryption);
+    }
+
+    private PKIReader reader;
+    private String signatureAlgorithm;
+    private BigInteger crlNumber;
+    private Date thisUpdate;
+    private Date nextUpdate;
+
+    private byte[] entryExtensions;
+    private File spool;
+    private OutputStream spoolOut;
+    private long entriesLength;
+    private int count;
+
+    /**
+     * @param reader source of the CA certificate and key used to sign the CRL
+     * @param signatureAlgorithm JCA name of the RSA algorithm to sign with,
+     * e.g. SHA1WITHRSA
+     * @param crlNumber the crl number
+     * @param thisUpdate the issue date of the CRL
+     * @param nextUpdate the date by which the next CRL will be issued
+     * @throws IOException if the temporary spool file cannot be created
+     */
+    public X509CRLStreamWriter(PKIReader reader, String signatureAlgorithm,
+        BigInteger crlNumber, Date thisUpdate, Date nextUpdate) throws IOException {
+        this.reader = reader;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.crlNumber = crlNumber;
+        this.thisUpdate = thisUpdate;
+        this.nextUpdate = nextUpdate;
+
+        // every entry has the same reason code, so encode it only once
+        X509ExtensionsGenerator extGen = new X509ExtensionsGenerator();
+        extGen.addExtension(X509Extensions.ReasonCode, false,
+            new CRLReason(CRLReason.privilegeWithdrawn));
+        this.entryExtensions = extGen.generate().getDEREncoded();
+
+        this.spool = File.createTempFile("candlepin-crl", ".der");
+        this.spoolOut = new BufferedOutputStream(new FileOutputStream(spool),
+            BUFFER_SIZE);
+    }
+
+    /**
+     * Encodes a revoked entry and appends it to the CRL.
+     *
+     * @param serial the serial number of the revoked certificate
+     * @param revocationDate the date the certificate was revoked
+     * @throws IOException if the entry cannot be spooled
+     */
+    public void add(BigInteger serial, Date revocationDate) throws IOException {
+        byte[] serialBytes = new DERInteger(serial).getDEREncoded();
+        byte[] dateBytes = new Time(revocationDate).getDEREncoded();
+        int length = serialBytes.length + dateBytes.length + entryExtensions.length;
+
+        spoolOut.write(SEQUENCE);
+        entriesLength += 1 + writeLength(spoolOut, length);
+        spoolOut.write(serialBytes);
+        spoolOut.write(dateBytes);
+        spoolOut.write(entryExtensions);
+        entriesLength += length;
+        count++;
+    }
+
+    /**
+     * @return the issue date of the CRL
+     */
+    public Date getThisUpdate() {
+        return thisUpdate;
+    }
+
+    /**
+     * @return the number of entries added so far
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Signs the CRL and writes its DER encoding to the given stream.
+     *
+     * @param out stream to write the CRL to
+     * @throws IOException if the CRL cannot be written
+     * @throws GeneralSecurityException if the CRL cannot be signed, or the
+     * signature algorithm is not supported
+     */
+    public void write(OutputStream out) throws IOException, GeneralSecurityException {
+        spoolOut.close();
+
+        DERObjectIdentifier sigOid = ALGORITHMS.get(signatureAlgorithm.toUpperCase());
+        if (sigOid == null) {
+            throw new NoSuchAlgorithmException("Unsupported CRL signature algorithm: " +
+                signatureAlgorithm);
+        }
+        X509Certificate caCert = reader.getCACert();
+        AlgorithmIdentifier sigAlg = new AlgorithmIdentifier(sigOid, DERNull.INSTANCE);
+
+        // version, signature, issuer, thisUpdate, nextUpdate
+        ByteArrayOutputStream prefixOut = new ByteArrayOutputStream();
+        prefixOut.write(new DERInteger(1).getDEREncoded());
+        prefixOut.write(sigAlg.getDEREncoded());
+        prefixOut.write(caCert.getIssuerX500Principal().getEncoded());
+        prefixOut.write(new Time(thisUpdate).getDEREncoded());
+        prefixOut.write(new Time(nextUpdate).getDEREncoded());
+        byte[] prefix = prefixOut.toByteArray();
+
+        // revokedCertificates is omitted entirely when there are no entries
+        ByteArrayOutputStream revokedOut = new ByteArrayOutputStream();
+        if (count > 0) {
+            revokedOut.write(SEQUENCE);
+            writeLength(revokedOut, entriesLength);
+        }
+        byte[] revokedHeader = revokedOut.toByteArray();
+
+        X509ExtensionsGenerator extGen = new X509ExtensionsGenerator();
+        extGen.addExtension(X509Extensions.AuthorityKeyIdentifier, false,
+            new AuthorityKeyIdentifierStructure(caCert));
+        extGen.addExtension(X509Extensions.CRLNumber, false, new CRLNumber(crlNumber));
+        byte[] suffix = new DERTaggedObject(true, 0, extGen.generate()).getDEREncoded();
+
+        long tbsLength = prefix.length + revokedHeader.length +
+            (count > 0 ? entriesLength : 0) + suffix.length;
+        ByteArrayOutputStream tbsOut = new ByteArrayOutputStream();
+        tbsOut.write(SEQUENCE);
+        writeLength(tbsOut, tbsLength);
+        byte[] tbsHeader = tbsOut.toByteArray();
+
+        // first pass: sign the TBSCertList
+        Signature signature = Signature.getInstance(signatureAlgorithm);
+        signature.initSign(reader.getCaKey());
+        signature.update(tbsHeader);
+        signature.update(prefix);
+        signature.update(revokedHeader);
+        InputStream in = openSpool();
+        try {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                signature.update(buf, 0, read);
+            }
+        }
+        finally {
+            in.close();
+        }
+        signature.update(suffix);
+
+        ASN1EncodableVector sigVector = new ASN1EncodableVector();
+        sigVector.add(sigAlg);
+        sigVector.add(new DERBitString(signature.sign()));
+        // the algorithm identifier and signature value, without the sequence header
+        byte[] sigSequence = new DERSequence(sigVector).getDEREncoded();
+        int sigHeaderLength = headerLength(sigSequence);
+
+        // second pass: write the CertificateList
+        long total = tbsHeader.length + tbsLength + sigSequence.length - sigHeaderLength;
+        out.write(SEQUENCE);
+        writeLength(out, total);
+        out.write(tbsHeader);
+        out.write(prefix);
+        out.write(revokedHeader);
+        in = openSpool();
+        try {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                out.write(buf, 0, read);
+            }
+        }
+        finally {
+            in.close();
+        }
+        out.write(suffix);
+        out.write(sigSequence, sigHeaderLength, sigSequence.length - sigHeaderLength);
+        out.flush();
+
+        if (log.isDebugEnabled()) {
+            log.debug("Wrote CRL #" + crlNumber + " with " + count + " entries");
+        }
+    }
+
+    /**
+     * Removes the temporary spool file.
+     */
+    public void close() {
+        try {
+            spoolOut.close();
+        }
+        catch (IOException e) {
+            log.warn("Unable to close CRL spool file: " + spool, e);
+        }
+        if (!spool.delete()) {
+            log.warn("Unable to delete CRL spool file: " + spool);
+        }
+    }
+
+    private InputStream openSpool() throws IOException {
+        return new BufferedInputStream(new FileInputStream(spool), BUFFER_SIZE);
+    }
+
+    /**
+     * Writes a DER definite length.
+     *
+     * @return the number of bytes written
+     */
+    private static int writeLength(OutputStream out, long length) throws IOException {
+        if (length < 128) {
+            out.write((int) length);
+            return 1;
+        }
+
+        int size = 0;
+        for (long val = length; val > 0; val >>>= 8) {
+            size++;
+        }
+        out.write(0x80 | size);
+        for (int i = (size - 1) * 8; i >= 0; i -= 8) {
+            out.write((int) (length >> i));
+        }
+        return size + 1;
+    }
+
+    /**
+     * @return the length of the tag and length octets of the given DER object
+     */
+    private static int headerLength(byte[] der) {
+        int first = der[1] & 0xff;
+        return first < 128 ? 2 : 2 + (first & 0x7f);
+    }
+}
@@ -170,6 +170,17 @@ public class BouncyCastlePKIUtility extends PKIUtility {
 
     @Override
     public X509CRL createX509CRL(List<X509CRLEntryWrapper> entries, BigInteger crlNumber) {
+        return createCRL(entries, crlNumber, null);
+    }
+
+    @Override
+    public X509CRL createX509DeltaCRL(List<X509CRLEntryWrapper> entries,
+        BigInteger crlNumber, BigInteger baseCrlNumber) {
+        return createCRL(entries, crlNumber, baseCrlNumber);
+    }
+
+    private X509CRL createCRL(List<X509CRLEntryWrapper> entries, BigInteger crlNumber,
+        BigInteger baseCrlNumber) {
 
         try {
             X509Certificate caCert = reader.getCACert();
@@ -188,6 +199,11 @@ public class BouncyCastlePKIUtility extends PKIUtility {
                 false, new AuthorityKeyIdentifierStructure(caCert));
             generator.addExtension(X509Extensions.CRLNumber, false,
                 new CRLNumber(crlNumber));
+            if (baseCrlNumber != null) {
+                // the delta crl indicator must be critical, see RFC 5280 5.2.4
+                generator.addExtension(X509Extensions.DeltaCRLIndicator, true,
+                    new CRLNumber(baseCrlNumber));
+            }
             return generator.generate(reader.getCaKey());
         }
         catch (Exception e) {
@@ -44,10 +44,50 @@ public class JsRunner {
     private String namespace;
     private Scriptable scope;
 
+    private long rulesVersion;
+    private boolean defaultRules;
+
     private boolean initialized = false;
 
     public JsRunner(Scriptable scope) {
+        this(scope, 0L);
+    }
+
+    /**
+     * @param scope the request scope to run the rules in
+     * @param rulesVersion identifies the compiled rules backing the scope, 0 if unknown
+     */
+    public JsRunner(Scriptable scope, long rulesVersion) {
+        this(scope, rulesVersion, false);
+    }
+
+    /**
+     * @param scope the request scope to run the rules in
+     * @param rulesVersion identifies the compiled rules backing the scope, 0 if unknown
+     * @param defaultRules true if the scope runs the rules shipped with this server
+     */
+    public JsRunner(Scriptable scope, long rulesVersion, boolean defaultRules) {
         this.scope = scope;
+        this.rulesVersion = rulesVersion;
+        this.defaultRules = defaultRules;
+    }
+
+    /**
+     * @return a number which changes whenever the rules are recompiled, or 0 if the
+     * version of the rules is unknown. Anything derived from the rules alone can be
+     * cached against this.
+     */
+    public long getRulesVersion() {
+        return rulesVersion;
+    }
+
+    /**
+     * @return true if the rules are exactly the ones shipped with this server, false
+     * if they were uploaded, imported or are unknown. Java implementations of rules
+     * functions may only stand in for the shipped rules.
+     */
+    public boolean isDefaultRules() {
+        return defaultRules;
     }
 
     /**
@@ -84,6 +124,23 @@ public class JsRunner {
         init(namespace);
     }
 
+    /**
+     * Switch to a namespace object previously returned by {@link #getNameSpace()} for
+     * the same rules version, without calling the namespace function again.
+     *
+     * @param namespace the javascript rules namespace
+     * @param nameSpaceObject the already initialized namespace object
+     */
+    public void reinitTo(String namespace, Object nameSpaceObject) {
+        this.namespace = namespace;
+        this.rulesNameSpace = nameSpaceObject;
+        this.initialized = true;
+    }
+
+    public Object getNameSpace() {
+        return rulesNameSpace;
+    }
+
     Object unwrapReturnValue(Object result) {
         if (result instanceof Wrapper) {
             result = ((Wrapper) result).unwrap();
@@ -15,12 +15,16 @@
 package org.candlepin.policy.js;
 
 import java.util.Date;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.log4j.Logger;
 import org.candlepin.auth.Principal;
 import org.candlepin.auth.SystemPrincipal;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Rules;
 import org.candlepin.model.RulesCurator;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.mozilla.javascript.Context;
@@ -37,17 +41,27 @@ import com.google.inject.Provider;
  * Reads/compiles our javascript rules and the standard js objects only
  * once across the jvm lifetime (and whenever the rules require a recompile), and creates
  * lightweight execution scopes per thread/request.
+ *
+ * The database is only asked whether the rules changed once per check interval, or
+ * right after {@link #invalidate()} is called by code that updates the rules. In
+ * between, creating a runner only reads the sealed global scope.
  */
 public class JsRunnerProvider implements Provider<JsRunner> {
     private static Logger log = Logger.getLogger(JsRunnerProvider.class);
 
     private RulesCurator rulesCurator;
 
+    // unique across providers, so runners from different providers never share a version
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
     private Script script;
-    private Scriptable scope;
-    private Date updated;
-    // Use this lock to access script, scope and updated
-    private ReadWriteLock scriptLock = new ReentrantReadWriteLock();
+    // sealed, and therefore immutable, once published
+    private volatile CompiledRules compiled;
+    private volatile Date updated;
+    private volatile long nextCheck;
+    private long checkInterval;
+    // Use this lock to serialize rules checks and recompiles
+    private Lock scriptLock = new ReentrantLock();
 
     /**
      * DynamicScopeContextFactory - replace the standard rhino context factory with one that
@@ -70,12 +84,41 @@ public class JsRunnerProvider implements Provider<JsRunner> {
     }
 
     @Inject
+    public JsRunnerProvider(RulesCurator rulesCurator, Config config) {
+        this(rulesCurator, config.getInt(ConfigProperties.RULES_CHECK_INTERVAL) * 1000L);
+    }
+
+    /**
+     * Creates a provider which checks for updated rules every time a runner is
+     * requested.
+     *
+     * @param rulesCurator
+     */
     public JsRunnerProvider(RulesCurator rulesCurator) {
+        this(rulesCurator, 0L);
+    }
+
+    private JsRunnerProvider(RulesCurator rulesCurator, long checkInterval) {
         this.rulesCurator = rulesCurator;
+        this.checkInterval = checkInterval;
 
         log.debug("Compiling rules for initial load");
         this.updated = new Date(0L);
-        compileRules(rulesCurator);
+        scriptLock.lock();
+        try {
+            compileRules(rulesCurator);
+        }
+        finally {
+            scriptLock.unlock();
+        }
+    }
+
+    /**
+     * Forces the next runner request to check the database for updated rules.
+     * Should be called whenever the rules are uploaded, imported or deleted.
+     */
+    public void invalidate() {
+        this.nextCheck = 0L;
     }
 
     /**
@@ -86,37 +129,39 @@ public class JsRunnerProvider implements Provider<JsRunner> {
      * @param rulesCurator
      */
     private void compileRules(RulesCurator rulesCurator) {
-        scriptLock.writeLock().lock();
-
         // XXX: we need a principal to access the rules,
         // but pushing and popping system principal could be a bad idea
         Principal systemPrincipal = new SystemPrincipal();
         ResteasyProviderFactory.pushContext(Principal.class, systemPrincipal);
-        // Check to see if we need to recompile. we do this inside the write lock just to
-        // avoid race conditions where we might double compile
-        Date newUpdated = rulesCurator.getUpdated();
-        if (newUpdated.equals(this.updated)) {
-            scriptLock.writeLock().unlock();
-            ResteasyProviderFactory.popContextData(Principal.class);
-            return;
-        }
+        try {
+            // Check to see if we need to recompile. we do this inside the lock just to
+            // avoid race conditions where we might double compile
+            Date newUpdated = rulesCurator.getUpdated();
+            this.nextCheck = System.currentTimeMillis() + checkInterval;
+            if (newUpdated.equals(this.updated)) {
+                return;
+            }
 
-        log.debug("Recompiling rules with timestamp: " + newUpdated);
+            log.debug("Recompiling rules with timestamp: " + newUpdated);
 
-        Context context = Context.enter();
-        context.setOptimizationLevel(9);
-        scope = context.initStandardObjects(null, true);
-        try {
-            script = context.compileString(rulesCurator.getRules().getRules(), "rules", 1,
-                null);
-            script.exec(context, scope);
-            ((ScriptableObject) scope).sealObject();
-            this.updated = newUpdated;
+            Context context = Context.enter();
+            try {
+                context.setOptimizationLevel(9);
+                Scriptable newScope = context.initStandardObjects(null, true);
+                Rules rules = rulesCurator.getRules();
+                script = context.compileString(rules.getRules(), "rules", 1, null);
+                script.exec(context, newScope);
+                ((ScriptableObject) newScope).sealObject();
+                this.compiled = new CompiledRules(newScope, VERSIONS.incrementAndGet(),
+                    rulesCurator.isDefault(rules));
+                this.updated = newUpdated;
+            }
+            finally {
+                Context.exit();
+            }
         }
         finally {
-            Context.exit();
             ResteasyProviderFactory.popContextData(Principal.class);
-            scriptLock.writeLock().unlock();
         }
     }
 
@@ -125,22 +170,46 @@ public class JsRunnerProvider implements Provider<JsRunner> {
          * Create a new thread/request local javascript scope for the JsRules,
          * based on the preinitialized global one (which contains our js rules).
          */
-        // try and recompile (if needed) first
-        compileRules(this.rulesCurator);
-        Scriptable rulesScope;
-        scriptLock.readLock().lock();
+        // try and recompile (if needed) first. If another thread is already
+        // checking, carry on with the current rules rather than queue up behind it.
+        if (System.currentTimeMillis() >= nextCheck && scriptLock.tryLock()) {
+            try {
+                if (System.currentTimeMillis() >= nextCheck) {
+                    compileRules(this.rulesCurator);
+                }
+            }
+            finally {
+                scriptLock.unlock();
+            }
+        }
+
+        CompiledRules rules = this.compiled;
+        Context context = Context.enter();
         try {
-            Context context = Context.enter();
-            rulesScope = context.newObject(scope);
-            rulesScope.setPrototype(scope);
+            Scriptable rulesScope = context.newObject(rules.scope);
+            rulesScope.setPrototype(rules.scope);
             rulesScope.setParentScope(null);
-            Context.exit();
+            return new JsRunner(rulesScope, rules.version, rules.defaultRules);
         }
         finally {
-            scriptLock.readLock().unlock();
+            Context.exit();
         }
+    }
 
-        return new JsRunner(rulesScope);
+    /**
+     * CompiledRules - the sealed global scope, the version it was compiled as and
+     * whether it holds the shipped rules.
+     */
+    private static class CompiledRules {
+        private final Scriptable scope;
+        private final long version;
+        private final boolean defaultRules;
+
+        CompiledRules(Scriptable scope, long version, boolean defaultRules) {
+            this.scope = scope;
+            this.version = version;
+            this.defaultRules = defaultRules;
+        }
     }
 
 }
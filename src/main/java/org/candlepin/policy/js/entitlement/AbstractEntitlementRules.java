@@ -24,6 +24,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 import org.candlepin.config.Config;
@@ -70,11 +71,39 @@ public abstract class AbstractEntitlementRules implements Enforcer {
     protected static final String GLOBAL_PRE_FUNCTION = PRE_PREFIX + "global";
     protected static final String GLOBAL_POST_FUNCTION = POST_PREFIX + "global";
 
-    protected void rulesInit() {
+    protected static final String ENTITLEMENT_NAME_SPACE = "entitlement_name_space";
+    protected static final String UNBIND_NAME_SPACE = "unbind_name_space";
+
+    // namespace objects and parsed attribute mappings for the last rules version seen
+    private static final Map<String, InitializedRules> INITIALIZED_RULES =
+        new ConcurrentHashMap<String, InitializedRules>();
+
+    /**
+     * Switch the rules to the given namespace and load its attribute mappings.
+     * Both only depend on the rules themselves, so they are computed once per rules
+     * version and shared.
+     *
+     * @param namespace the javascript rules namespace to run
+     */
+    protected void rulesInit(String namespace) {
+        long version = jsRules.getRulesVersion();
+        InitializedRules cached = INITIALIZED_RULES.get(namespace);
+        if (version != 0 && cached != null && cached.version == version) {
+            jsRules.reinitTo(namespace, cached.nameSpace);
+            this.attributesToRules = cached.attributesToRules;
+            return;
+        }
+
+        jsRules.reinitTo(namespace);
         String mappings;
         try {
             mappings = jsRules.invokeMethod("attribute_mappings");
-            this.attributesToRules = parseAttributeMappings(mappings);
+            this.attributesToRules = Collections.unmodifiableMap(
+                parseAttributeMappings(mappings));
+            if (version != 0) {
+                INITIALIZED_RULES.put(namespace, new InitializedRules(version,
+                    jsRules.getNameSpace(), this.attributesToRules));
+            }
         }
         catch (RhinoException e) {
             // TODO Auto-generated catch block
@@ -243,6 +272,23 @@ public abstract class AbstractEntitlementRules implements Enforcer {
     }
 
 
+    /**
+     * InitializedRules - the entitlement namespace object and attribute mappings
+     * for one version of the rules.
+     */
+    private static class InitializedRules {
+        private final long version;
+        private final Object nameSpace;
+        private final Map<String, Set<Rule>> attributesToRules;
+
+        InitializedRules(long version, Object nameSpace,
+            Map<String, Set<Rule>> attributesToRules) {
+            this.version = version;
+            this.nameSpace = nameSpace;
+            this.attributesToRules = attributesToRules;
+        }
+    }
+
     /**
      * RuleOrderComparator
      */
@@ -399,22 +445,19 @@ public abstract class AbstractEntitlementRules implements Enforcer {
     public PoolHelper postEntitlement(
             Consumer consumer, PoolHelper postEntHelper, Entitlement ent) {
 
-        jsRules.reinitTo("entitlement_name_space");
-        rulesInit();
+        rulesInit(ENTITLEMENT_NAME_SPACE);
 
         runPostEntitlement(postEntHelper, ent);
         return postEntHelper;
     }
 
     public PreUnbindHelper preUnbind(Consumer consumer, Pool entitlementPool) {
-        jsRules.reinitTo("unbind_name_space");
-        rulesInit();
+        rulesInit(UNBIND_NAME_SPACE);
         return new PreUnbindHelper(consumerCurator);
     }
 
     public PoolHelper postUnbind(Consumer c, PoolHelper postHelper, Entitlement ent) {
-        jsRules.reinitTo("unbind_name_space");
-        rulesInit();
+        rulesInit(UNBIND_NAME_SPACE);
         runPostUnbind(postHelper, ent);
         return postHelper;
     }
@@ -423,8 +466,7 @@ public abstract class AbstractEntitlementRules implements Enforcer {
     public PreEntHelper preEntitlement(Consumer consumer, Pool entitlementPool,
         Integer quantity) {
 
-        jsRules.reinitTo("entitlement_name_space");
-        rulesInit();
+        rulesInit(ENTITLEMENT_NAME_SPACE);
 
         return new PreEntHelper(1, null);
     }
@@ -436,8 +478,7 @@ public abstract class AbstractEntitlementRules implements Enforcer {
         Set<String> exemptList)
         throws RuleExecutionException {
 
-        jsRules.reinitTo("entitlement_name_space");
-        rulesInit();
+        rulesInit(ENTITLEMENT_NAME_SPACE);
 
         if (pools.isEmpty()) {
             return null;
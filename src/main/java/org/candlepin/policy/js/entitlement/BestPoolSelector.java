@@ -0,0 +1,697 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.entitlement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.Pool;
+import org.candlepin.model.ProductPoolAttribute;
+import org.candlepin.model.ProvidedProduct;
+import org.candlepin.policy.js.ReadOnlyConsumer;
+import org.candlepin.policy.js.compliance.ComplianceStatus;
+
+/**
+ * BestPoolSelector
+ *
+ * Picks the pools, and the quantity from each, that best cover a set of requested
+ * products for a consumer. Used for autobind and healing.
+ *
+ * Pools which provide the same subset of the requested products are grouped into a
+ * class, in exactly the order select_pool_global builds its classes: a pool goes to
+ * the front of its class if it is better than the first pool, otherwise to the end,
+ * and the scan over the pools then carries on from the index it was inserted at, as
+ * the rules reuse their loop variable. Some pools are therefore looked at twice, or
+ * not at all, just as in the rules. Within a class, stacking determines which pools and
+ * quantities are used. Classes are then combined so that the most requested products
+ * are covered, with the fewest entitlements, without two classes providing the same
+ * product (unless it allows multi-entitlement).
+ *
+ * Choosing the classes is a set cover problem. A greedy pass finds a good answer
+ * straight away, and a branch and bound search then improves on it, visiting at most
+ * {@link #MAX_SEARCH_NODES} nodes so the cost stays polynomial in the number of pools.
+ * A search which hits the limit is logged.
+ *
+ * This stands in for select_pool_global of the default rules only. Uploaded or
+ * imported rules still run their own select_pool_global, see EntitlementRules.
+ */
+public class BestPoolSelector {
+    private static Logger log = Logger.getLogger(BestPoolSelector.class);
+
+    static final String SOCKET_FACT = "cpu.cpu_socket(s)";
+    static final int MAX_SEARCH_NODES = 10000;
+
+    private static final String PROD_ARCHITECTURE_SEPARATOR = ",";
+
+    private ReadOnlyConsumer consumer;
+    private List<String> productIds;
+    private ComplianceStatus compliance;
+    private Set<String> exemptLevels;
+
+    /**
+     * @param consumer the consumer being entitled, with any service level override
+     * @param productIds the products to cover
+     * @param compliance the consumer's current compliance status
+     * @param exemptLevels service levels which apply to any consumer
+     */
+    public BestPoolSelector(ReadOnlyConsumer consumer, String[] productIds,
+        ComplianceStatus compliance, Set<String> exemptLevels) {
+        this.consumer = consumer;
+        this.productIds = new ArrayList<String>(
+            new LinkedHashSet<String>(Arrays.asList(productIds)));
+        this.compliance = compliance;
+        this.exemptLevels = exemptLevels == null ? new HashSet<String>() : exemptLevels;
+    }
+
+    /**
+     * @param pools pools the consumer may use
+     * @return quantity to take from each selected pool. Empty if no pool can be used.
+     */
+    public Map<Pool, Integer> selectBestPools(List<Pool> pools) {
+        List<PoolClass> candidates = new ArrayList<PoolClass>();
+        for (PoolClass poolClass : groupPools(pools)) {
+            // classes that provide nothing requested, or whose pools are all unusable,
+            // can never improve a selection
+            if (!poolClass.coverage.isEmpty() && !poolClass.selection.isEmpty()) {
+                candidates.add(poolClass);
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Selecting " + productIds.size() + " products from " +
+                candidates.size() + " pool classes");
+        }
+
+        Selection best = new Search(candidates).run();
+
+        Map<Pool, Integer> selected = new LinkedHashMap<Pool, Integer>();
+        for (PoolClass poolClass : best.classes) {
+            selected.putAll(poolClass.selection);
+        }
+
+        if (log.isDebugEnabled()) {
+            for (Pool pool : selected.keySet()) {
+                log.debug("Selected pool: " + pool.getId());
+            }
+        }
+        return selected;
+    }
+
+    /*
+     * Groups the usable pools by the requested products they provide, keeping the
+     * classes in the order their first pool was seen. This follows the grouping loop
+     * of select_pool_global step for step, see the class comment.
+     */
+    private List<PoolClass> groupPools(List<Pool> pools) {
+        String consumerSLA = consumer.getServiceLevel();
+        Map<BitSet, PoolClass> classes = new LinkedHashMap<BitSet, PoolClass>();
+
+        for (int i = 0; i < pools.size(); i++) {
+            Pool pool = pools.get(i);
+
+            // If the SLA of the consumer does not match that of the pool
+            // we do not consider the pool unless the level is exempt
+            String poolSLA = getProductAttribute(pool, "support_level");
+            if (!isLevelExempt(poolSLA) && consumerSLA != null &&
+                !consumerSLA.equals("") && !consumerSLA.equalsIgnoreCase(poolSLA)) {
+                log.debug("Skipping pool " + pool.getId() +
+                    " since SLA does not match that of the consumer.");
+                continue;
+            }
+
+            if (!architectureMatches(pool)) {
+                continue;
+            }
+
+            BitSet coverage = new BitSet(productIds.size());
+            for (int i = 0; i < productIds.size(); i++) {
+                if (pool.provides(productIds.get(i))) {
+                    coverage.set(i);
+                }
+            }
+
+            PoolClass poolClass = classes.get(coverage);
+            if (poolClass == null) {
+                poolClass = new PoolClass(classes.size(), coverage);
+                classes.put(coverage, poolClass);
+                poolClass.pools.add(pool);
+            }
+            else {
+                // the rules continue from the insertion index, not the next pool
+                i = poolClass.add(pool);
+            }
+        }
+
+        List<PoolClass> result = new ArrayList<PoolClass>(classes.values());
+        for (PoolClass poolClass : result) {
+            poolClass.selection = findStackingPools(poolClass.pools);
+            for (Integer quantity : poolClass.selection.values()) {
+                poolClass.entitlements += quantity;
+            }
+            poolClass.products = getProducts(poolClass.pools.get(0));
+        }
+        return result;
+    }
+
+    private boolean isLevelExempt(String level) {
+        for (String exemptLevel : exemptLevels) {
+            if (exemptLevel.equalsIgnoreCase(level)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean architectureMatches(Pool pool) {
+        // Non-system consumers without an architecture fact can pass this rule
+        // regardless what arch the product requires.
+        if (!consumer.hasFact("uname.machine") && !consumer.getType().equals("system")) {
+            return true;
+        }
+
+        String archString = getProductAttribute(pool, "arch");
+        if (archString == null) {
+            return true;
+        }
+
+        Set<String> supportedArches = new HashSet<String>(Arrays.asList(
+            archString.toUpperCase().split(PROD_ARCHITECTURE_SEPARATOR)));
+
+        // If X86 is supported, add all variants to this list:
+        if (supportedArches.contains("X86")) {
+            supportedArches.add("I386");
+            supportedArches.add("I586");
+            supportedArches.add("I686");
+        }
+
+        return supportedArches.contains("ALL") || (consumer.hasFact("uname.machine") &&
+            supportedArches.contains(consumer.getFact("uname.machine").toUpperCase()));
+    }
+
+    /*
+     * Given two pools offering the same products, returns true if pool1 is a better
+     * choice than pool2.
+     */
+    private static boolean isBetter(Pool pool1, Pool pool2) {
+        boolean virtOnly1 = "true".equals(pool1.getAttributeValue("virt_only"));
+        boolean virtOnly2 = "true".equals(pool2.getAttributeValue("virt_only"));
+
+        // Prefer a virt_only pool over a regular pool. At this point virt_only pools
+        // will have already been filtered out by the pre rules for non virt machines.
+        if (virtOnly1 != virtOnly2) {
+            return virtOnly1;
+        }
+
+        // If both virt_only, prefer one with host_requires. We know that the host
+        // must match as pools are filtered before even being passed in.
+        if (virtOnly1) {
+            boolean requiresHost1 = pool1.getAttributeValue("requires_host") != null;
+            boolean requiresHost2 = pool2.getAttributeValue("requires_host") != null;
+            if (requiresHost1 != requiresHost2) {
+                return requiresHost1;
+            }
+        }
+
+        // Otherwise select the pool that expires first
+        return pool2.getEndDate().after(pool1.getEndDate());
+    }
+
+    /*
+     * Check to see if a pool provides any products that are already compliant
+     */
+    private boolean hasInstalledOverlap(Pool pool) {
+        Map<String, Set<Entitlement>> compliant = compliance.getCompliantProducts();
+        if (compliant == null) {
+            return false;
+        }
+        for (Entry<String, Boolean> product : getProducts(pool).entrySet()) {
+            if (!product.getValue() && compliant.containsKey(product.getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Determine the pools in a class, and the quantity of each, needed to satisfy
+     * any stacking for the consumer.
+     *
+     * If we find a pool that has no stacking requirements and covers the consumer,
+     * just use that one (as we'll only need a quantity of one). Otherwise, group the
+     * pools by stack id, then select the grouping which comes closest to fully
+     * stacking. We only stack within the same class.
+     */
+    private Map<Pool, Integer> findStackingPools(List<Pool> pools) {
+        double consumerSockets = 1;
+        if (consumer.hasFact(SOCKET_FACT)) {
+            consumerSockets = parseNumber(consumer.getFact(SOCKET_FACT));
+        }
+
+        Map<String, Double> stackToEntitledSockets = new HashMap<String, Double>();
+        Map<String, Map<Pool, Integer>> stackToPoolMap =
+            new LinkedHashMap<String, Map<Pool, Integer>>();
+        List<Pool> notStackable = new LinkedList<Pool>();
+
+        // Existing partial stacks: map each product to the stack covering it, so we
+        // can build upon the stack, and start counting from the sockets it covers.
+        Map<String, String> productIdToStackId = new HashMap<String, String>();
+        Map<String, Set<Entitlement>> partialStacks = compliance.getPartialStacks();
+        if (partialStacks != null) {
+            for (Entry<String, Set<Entitlement>> stack : partialStacks.entrySet()) {
+                double coveredSockets = 0;
+                for (Entitlement entitlement : stack.getValue()) {
+                    Pool pool = entitlement.getPool();
+                    coveredSockets += entitlement.getQuantity() * getPoolSockets(pool);
+                    productIdToStackId.put(pool.getProductId(), stack.getKey());
+                    for (ProvidedProduct product : pool.getProvidedProducts()) {
+                        productIdToStackId.put(product.getProductId(), stack.getKey());
+                    }
+                }
+                stackToEntitledSockets.put(stack.getKey(), coveredSockets);
+            }
+        }
+
+        for (Pool pool : pools) {
+            // ignore any pools that clash with installed compliant products
+            if (hasInstalledOverlap(pool)) {
+                log.debug("installed overlap found, skipping: " + pool.getId());
+                continue;
+            }
+
+            String stackId = getProductAttribute(pool, "stacking_id");
+            if (isEmpty(getProductAttribute(pool, "multi-entitlement")) ||
+                isEmpty(stackId)) {
+                // not stackable, just take one.
+                notStackable.add(pool);
+                continue;
+            }
+
+            // make sure the pool doesn't build on a different stack already on the
+            // system, or on more than one
+            Set<String> installedStackIds = new HashSet<String>();
+            for (String productId : getProducts(pool).keySet()) {
+                if (productIdToStackId.containsKey(productId)) {
+                    installedStackIds.add(productIdToStackId.get(productId));
+                }
+            }
+            if (installedStackIds.size() > 1 ||
+                (installedStackIds.size() == 1 && !installedStackIds.contains(stackId))) {
+                continue;
+            }
+
+            if (!stackToPoolMap.containsKey(stackId)) {
+                stackToPoolMap.put(stackId, new HashMap<Pool, Integer>());
+
+                // we might already have the partial stack from compliance
+                if (!stackToEntitledSockets.containsKey(stackId)) {
+                    stackToEntitledSockets.put(stackId, 0.0);
+                }
+            }
+
+            // if this stack is already done, no need to add more to it.
+            double entitledSockets = stackToEntitledSockets.get(stackId);
+            if (entitledSockets >= consumerSockets) {
+                continue;
+            }
+
+            double poolSockets = getPoolSockets(pool);
+            int quantity = 0;
+            double productSockets = 0;
+            while (entitledSockets + productSockets < consumerSockets) {
+                productSockets += poolSockets;
+                quantity++;
+            }
+
+            // don't take more entitlements than are available!
+            long available = pool.getQuantity() - pool.getConsumed();
+            if (quantity > available) {
+                quantity = (int) available;
+            }
+
+            stackToEntitledSockets.put(stackId, entitledSockets + quantity * poolSockets);
+            stackToPoolMap.get(stackId).put(pool, quantity);
+        }
+
+        boolean foundPool = false;
+        double notStackedSockets = 0;
+        Map<Pool, Integer> notStackedPoolMap = new HashMap<Pool, Integer>();
+        for (Pool pool : notStackable) {
+            double coveredSockets = getPoolSockets(pool);
+            if (coveredSockets > notStackedSockets) {
+                foundPool = true;
+                notStackedPoolMap = new HashMap<Pool, Integer>();
+                notStackedPoolMap.put(pool, 1);
+                notStackedSockets = coveredSockets;
+            }
+        }
+
+        // if an unstacked pool can cover all our sockets, take that.
+        if (notStackedSockets >= consumerSockets) {
+            return notStackedPoolMap;
+        }
+
+        // take the first stack that covers all sockets,
+        // else take the stack that covers the most sockets.
+        double bestSockets = 0;
+        String bestStack = null;
+        for (String stackId : stackToPoolMap.keySet()) {
+            foundPool = true;
+            double entitledSockets = stackToEntitledSockets.get(stackId);
+            if (entitledSockets >= consumerSockets) {
+                return stackToPoolMap.get(stackId);
+            }
+            else if (entitledSockets > bestSockets) {
+                bestStack = stackId;
+                bestSockets = entitledSockets;
+            }
+        }
+
+        // All possible pools may have overlapped with existing products
+        // so return nothing!
+        if (!foundPool) {
+            return new HashMap<Pool, Integer>();
+        }
+
+        // we can't fully cover the consumer. either select the best non stacker,
+        // or the best stacker.
+        if (notStackedSockets >= bestSockets) {
+            return notStackedPoolMap;
+        }
+        return stackToPoolMap.get(bestStack);
+    }
+
+    /*
+     * Get the number of sockets that each entitlement from a pool covers.
+     * If sockets is set to 0 or is not set, it is considered to be unlimited.
+     */
+    private static double getPoolSockets(Pool pool) {
+        String sockets = getProductAttribute(pool, "sockets");
+        if (isEmpty(sockets)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double value = parseNumber(sockets);
+        if (value <= 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.floor(value);
+    }
+
+    private static double parseNumber(String value) {
+        try {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /*
+     * @return ids of all the products a pool provides, mapped to whether the
+     * product may be entitled more than once.
+     */
+    private static Map<String, Boolean> getProducts(Pool pool) {
+        Map<String, Boolean> products = new HashMap<String, Boolean>();
+        for (ProvidedProduct provided : pool.getProvidedProducts()) {
+            products.put(provided.getProductId(), Boolean.FALSE);
+        }
+        products.put(pool.getProductId(),
+            "yes".equals(getProductAttribute(pool, "multi-entitlement")));
+        return products;
+    }
+
+    private static String getProductAttribute(Pool pool, String name) {
+        ProductPoolAttribute attribute = pool.getProductAttribute(name);
+        return attribute == null ? null : attribute.getValue();
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.length() == 0;
+    }
+
+    /**
+     * PoolClass - pools providing the same subset of the requested products.
+     */
+    private static class PoolClass {
+        private final int index;
+        private final BitSet coverage;
+        private final List<Pool> pools = new ArrayList<Pool>();
+        private Map<Pool, Integer> selection;
+        private Map<String, Boolean> products;
+        private int entitlements;
+
+        PoolClass(int index, BitSet coverage) {
+            this.index = index;
+            this.coverage = coverage;
+        }
+
+        /*
+         * Insert the pool first if it is better than the current first pool, else
+         * last. Only the first pool is compared against, as in the rules.
+         *
+         * @return the index the pool was inserted at
+         */
+        int add(Pool pool) {
+            int i = isBetter(pool, pools.get(0)) ? 0 : pools.size();
+            pools.add(i, pool);
+            return i;
+        }
+
+        /*
+         * Two classes can't be used together if they both provide a product which
+         * can't be entitled more than once.
+         */
+        boolean overlaps(PoolClass other) {
+            for (Entry<String, Boolean> product : products.entrySet()) {
+                Boolean otherMulti = other.products.get(product.getKey());
+                if (otherMulti != null && !(product.getValue() && otherMulti)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Selection - a set of non-overlapping pool classes.
+     */
+    private static class Selection {
+        private final List<PoolClass> classes;
+        private final BitSet covered;
+        private final int entitlements;
+
+        Selection(List<PoolClass> classes, BitSet covered, int entitlements) {
+            this.classes = classes;
+            this.covered = covered;
+            this.entitlements = entitlements;
+        }
+
+        /*
+         * We prefer the selection that covers the most products, then the one using
+         * the fewest entitlements, then the fewest pool classes. Remaining ties go to
+         * the selection with the later classes, as the rules always have.
+         */
+        boolean isBetterThan(Selection other) {
+            int diff = covered.cardinality() - other.covered.cardinality();
+            if (diff == 0) {
+                diff = other.entitlements - entitlements;
+            }
+            if (diff == 0) {
+                diff = other.classes.size() - classes.size();
+            }
+            if (diff == 0) {
+                diff = compareIndexes(other);
+            }
+            return diff > 0;
+        }
+
+        private int compareIndexes(Selection other) {
+            BitSet mine = indexes();
+            BitSet theirs = other.indexes();
+            int highest = Math.max(mine.length(), theirs.length()) - 1;
+            if (highest < 0 || mine.get(highest) != theirs.get(highest)) {
+                return mine.length() - theirs.length();
+            }
+            // same latest class, prefer the one with fewer/earlier others
+            mine.clear(highest);
+            theirs.clear(highest);
+            for (int i = highest - 1; i >= 0; i--) {
+                if (mine.get(i) != theirs.get(i)) {
+                    return theirs.get(i) ? 1 : -1;
+                }
+            }
+            return 0;
+        }
+
+        private BitSet indexes() {
+            BitSet indexes = new BitSet();
+            for (PoolClass poolClass : classes) {
+                indexes.set(poolClass.index);
+            }
+            return indexes;
+        }
+    }
+
+    /**
+     * Search - greedy set cover, improved by a bounded branch and bound.
+     */
+    private static class Search {
+        private final List<PoolClass> candidates;
+        private final boolean[][] overlaps;
+        private Selection best;
+        private int nodes;
+
+        Search(List<PoolClass> candidates) {
+            this.candidates = new ArrayList<PoolClass>(candidates);
+            // try the classes covering the most first, later classes first on ties
+            Collections.sort(this.candidates, new Comparator<PoolClass>() {
+                public int compare(PoolClass c1, PoolClass c2) {
+                    int diff = c2.coverage.cardinality() - c1.coverage.cardinality();
+                    if (diff == 0) {
+                        diff = c1.entitlements - c2.entitlements;
+                    }
+                    return diff != 0 ? diff : c2.index - c1.index;
+                }
+            });
+
+            int size = this.candidates.size();
+            overlaps = new boolean[size][size];
+            for (int i = 0; i < size; i++) {
+                PoolClass candidate = this.candidates.get(i);
+                for (int j = i + 1; j < size; j++) {
+                    overlaps[i][j] = candidate.overlaps(this.candidates.get(j));
+                    overlaps[j][i] = overlaps[i][j];
+                }
+            }
+        }
+
+        Selection run() {
+            best = greedy();
+            search(0, new LinkedList<Integer>(), new BitSet(), 0);
+            if (nodes >= MAX_SEARCH_NODES) {
+                // the greedy answer, or the best improvement found on it, is used
+                log.warn("Pool selection over " + candidates.size() +
+                    " pool classes stopped after " + nodes + " nodes, the " +
+                    "selection may not be the best possible");
+            }
+            return best;
+        }
+
+        /*
+         * Repeatedly take the class adding the most uncovered products.
+         */
+        private Selection greedy() {
+            List<Integer> chosen = new LinkedList<Integer>();
+            BitSet covered = new BitSet();
+            int entitlements = 0;
+            while (true) {
+                int bestIndex = -1;
+                int bestGain = 0;
+                for (int i = 0; i < candidates.size(); i++) {
+                    if (conflicts(i, chosen)) {
+                        continue;
+                    }
+                    int gain = gain(candidates.get(i), covered);
+                    if (gain > bestGain) {
+                        bestIndex = i;
+                        bestGain = gain;
+                    }
+                }
+                if (bestIndex < 0) {
+                    break;
+                }
+                chosen.add(bestIndex);
+                covered.or(candidates.get(bestIndex).coverage);
+                entitlements += candidates.get(bestIndex).entitlements;
+            }
+            return toSelection(chosen, covered, entitlements);
+        }
+
+        private void search(int start, LinkedList<Integer> chosen, BitSet covered,
+            int entitlements) {
+            if (++nodes >= MAX_SEARCH_NODES) {
+                return;
+            }
+
+            Selection current = toSelection(chosen, covered, entitlements);
+            if (current.isBetterThan(best)) {
+                best = current;
+            }
+
+            // Bound: the most we could still cover from here
+            BitSet reachable = (BitSet) covered.clone();
+            for (int i = start; i < candidates.size(); i++) {
+                if (!conflicts(i, chosen)) {
+                    reachable.or(candidates.get(i).coverage);
+                }
+            }
+            int bestCovered = best.covered.cardinality();
+            if (reachable.cardinality() < bestCovered ||
+                (reachable.cardinality() == bestCovered &&
+                entitlements > best.entitlements)) {
+                return;
+            }
+
+            for (int i = start; i < candidates.size() && nodes < MAX_SEARCH_NODES; i++) {
+                PoolClass candidate = candidates.get(i);
+                if (conflicts(i, chosen) || gain(candidate, covered) == 0) {
+                    continue;
+                }
+                BitSet newCovered = (BitSet) covered.clone();
+                newCovered.or(candidate.coverage);
+                chosen.addLast(i);
+                search(i + 1, chosen, newCovered, entitlements + candidate.entitlements);
+                chosen.removeLast();
+            }
+        }
+
+        private boolean conflicts(int candidate, List<Integer> chosen) {
+            for (Integer i : chosen) {
+                if (i == candidate || overlaps[candidate][i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int gain(PoolClass candidate, BitSet covered) {
+            BitSet added = (BitSet) candidate.coverage.clone();
+            added.andNot(covered);
+            return added.cardinality();
+        }
+
+        private Selection toSelection(List<Integer> chosen, BitSet covered,
+            int entitlements) {
+            List<PoolClass> classes = new ArrayList<PoolClass>(chosen.size());
+            for (Integer i : chosen) {
+                classes.add(candidates.get(i));
+            }
+            return new Selection(classes, (BitSet) covered.clone(), entitlements);
+        }
+    }
+}
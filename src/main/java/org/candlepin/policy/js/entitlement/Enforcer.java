@@ -18,11 +18,14 @@ import org.candlepin.model.Consumer;
 import org.candlepin.model.Entitlement;
 import org.candlepin.model.Pool;
 import org.candlepin.model.PoolQuantity;
+import org.candlepin.policy.ValidationResult;
 import org.candlepin.policy.js.RuleExecutionException;
 import org.candlepin.policy.js.compliance.ComplianceStatus;
 import org.candlepin.policy.js.pool.PoolHelper;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -47,6 +50,21 @@ public interface Enforcer {
      */
     PreEntHelper preEntitlement(Consumer consumer, Pool entitlementPool, Integer quantity);
 
+    /**
+     * Run pre-entitlement checks for each of the given pools.
+     *
+     * Gives the same results as calling preEntitlement for each pool in turn, but
+     * the per-consumer setup is only done once for the whole list. Use this when
+     * checking which of many pools a consumer could use.
+     *
+     * @param consumer Consumer who wishes to consume an entitlement.
+     * @param pools Entitlement pools to check.
+     * @param quantity number of entitlements to consume from each pool.
+     * @return the validation result for each pool, in the order given.
+     */
+    Map<Pool, ValidationResult> preEntitlement(Consumer consumer, Collection<Pool> pools,
+        Integer quantity);
+
     /**
      * Run post-entitlement actions.
      *
@@ -14,13 +14,16 @@
  */
 package org.candlepin.policy.js.entitlement;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.candlepin.model.Consumer;
 import org.candlepin.model.Entitlement;
 import org.candlepin.model.Pool;
 import org.candlepin.model.PoolQuantity;
+import org.candlepin.policy.ValidationResult;
 import org.candlepin.policy.js.RuleExecutionException;
 import org.candlepin.policy.js.compliance.ComplianceStatus;
 import org.candlepin.policy.js.pool.PoolHelper;
@@ -64,6 +67,17 @@ public class EnforcerDispatcher implements Enforcer {
         return jsEnforcer.preEntitlement(consumer, entitlementPool, quantity);
     }
 
+    @Override
+    public Map<Pool, ValidationResult> preEntitlement(Consumer consumer,
+        Collection<Pool> pools, Integer quantity) {
+
+        if (consumer.getType().isManifest()) {
+            return manifestEnforcer.preEntitlement(consumer, pools, quantity);
+        }
+
+        return jsEnforcer.preEntitlement(consumer, pools, quantity);
+    }
+
 
     @Override
     public List<PoolQuantity> selectBestPools(Consumer consumer, String[] productIds,
@@ -27,6 +27,7 @@ import org.candlepin.model.PoolQuantity;
 import org.candlepin.model.Product;
 import org.candlepin.model.ProvidedProduct;
 import org.candlepin.policy.ValidationError;
+import org.candlepin.policy.ValidationResult;
 import org.candlepin.policy.ValidationWarning;
 import org.candlepin.policy.js.JsRunner;
 import org.candlepin.policy.js.ReadOnlyConsumer;
@@ -37,11 +38,15 @@ import org.candlepin.policy.js.RuleExecutionException;
 import org.candlepin.policy.js.compliance.ComplianceStatus;
 import org.candlepin.util.DateSource;
 import org.candlepin.util.X509ExtensionUtil;
+import org.mozilla.javascript.Context;
 import org.mozilla.javascript.RhinoException;
 import org.xnap.commons.i18n.I18n;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -77,11 +82,45 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
     public PreEntHelper preEntitlement(Consumer consumer, Pool entitlementPool,
         Integer quantity) {
 
-        jsRules.reinitTo("entitlement_name_space");
-        rulesInit();
+        rulesInit(ENTITLEMENT_NAME_SPACE);
 
-        PreEntHelper preHelper = runPreEntitlement(consumer, entitlementPool,
-            quantity);
+        return preEntitlement(consumer, new ReadOnlyConsumer(consumer), entitlementPool,
+            quantity, new HashMap<Set<String>, List<Rule>>());
+    }
+
+    @Override
+    public Map<Pool, ValidationResult> preEntitlement(Consumer consumer,
+        Collection<Pool> pools, Integer quantity) {
+
+        rulesInit(ENTITLEMENT_NAME_SPACE);
+
+        ReadOnlyConsumer roConsumer = new ReadOnlyConsumer(consumer);
+        // pools with the same attribute names run the same rules
+        Map<Set<String>, List<Rule>> rulesCache = new HashMap<Set<String>, List<Rule>>();
+        Map<Pool, ValidationResult> results = new LinkedHashMap<Pool, ValidationResult>();
+
+        // Hold one rhino context for the whole batch, rather than creating one for
+        // every rule invoked.
+        Context.enter();
+        try {
+            for (Pool pool : pools) {
+                PreEntHelper preHelper = preEntitlement(consumer, roConsumer, pool,
+                    quantity, rulesCache);
+                results.put(pool, preHelper.getResult());
+            }
+        }
+        finally {
+            Context.exit();
+        }
+
+        return results;
+    }
+
+    private PreEntHelper preEntitlement(Consumer consumer, ReadOnlyConsumer roConsumer,
+        Pool entitlementPool, Integer quantity, Map<Set<String>, List<Rule>> rulesCache) {
+
+        PreEntHelper preHelper = runPreEntitlement(consumer, roConsumer, entitlementPool,
+            quantity, rulesCache);
 
         if (entitlementPool.isExpired(dateSource)) {
             preHelper.getResult().addError(
@@ -93,7 +132,8 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
         return preHelper;
     }
 
-    private PreEntHelper runPreEntitlement(Consumer consumer, Pool pool, Integer quantity) {
+    private PreEntHelper runPreEntitlement(Consumer consumer, ReadOnlyConsumer roConsumer,
+        Pool pool, Integer quantity, Map<Set<String>, List<Rule>> rulesCache) {
         PreEntHelper preHelper = new PreEntHelper(quantity, consumerCurator);
 
         // Provide objects for the script:
@@ -104,7 +144,7 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
         Map<String, String> allAttributes = jsRules.getFlattenedAttributes(pool);
 
         Map<String, Object> args = new HashMap<String, Object>();
-        args.put("consumer", new ReadOnlyConsumer(consumer));
+        args.put("consumer", roConsumer);
         args.put("product", product);
         args.put("pool", new ReadOnlyPool(pool));
         args.put("pre", preHelper);
@@ -115,8 +155,11 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
 
         log.debug("Running pre-entitlement rules for: " + consumer.getUuid() +
             " product: " + topLevelProductId);
-        List<Rule> matchingRules
-            = rulesForAttributes(allAttributes.keySet(), attributesToRules);
+        List<Rule> matchingRules = rulesCache.get(allAttributes.keySet());
+        if (matchingRules == null) {
+            matchingRules = rulesForAttributes(allAttributes.keySet(), attributesToRules);
+            rulesCache.put(new HashSet<String>(allAttributes.keySet()), matchingRules);
+        }
 
         callPreEntitlementRules(matchingRules, args);
 
@@ -137,9 +180,6 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
         List<Pool> pools, ComplianceStatus compliance, String serviceLevelOverride,
         Set<String> exemptLevels) {
 
-        jsRules.reinitTo("entitlement_name_space");
-        rulesInit();
-
         int poolsBeforeContentFilter = pools.size();
         pools = filterPoolsForV1Certificates(consumer, pools);
 
@@ -157,6 +197,55 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
                     "due to too much content");
             }
         }
+
+        Map<Pool, Integer> result;
+        if (jsRules.isDefaultRules()) {
+            // same selection as the shipped select_pool_global, without enumerating
+            // every combination of pools
+            BestPoolSelector selector = new BestPoolSelector(
+                new ReadOnlyConsumer(consumer, serviceLevelOverride), productIds,
+                compliance, exemptLevels);
+            result = selector.selectBestPools(pools);
+        }
+        else {
+            // uploaded or imported rules may select pools their own way
+            result = selectBestPoolsWithRules(consumer, productIds, pools, compliance,
+                serviceLevelOverride, exemptLevels);
+            if (result == null) {
+                return selectBestPoolDefault(pools);
+            }
+        }
+
+        List<PoolQuantity> bestPools = new ArrayList<PoolQuantity>();
+        for (Pool p : pools) {
+            Integer quantity = result.get(p);
+            if (quantity != null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Best pool: " + p);
+                }
+
+                bestPools.add(new PoolQuantity(p, quantity));
+            }
+        }
+
+        if (bestPools.size() > 0) {
+            return bestPools;
+        }
+        else {
+            return null;
+        }
+    }
+
+    /*
+     * Runs the select_pool_global function of the rules. Returns null if the rules
+     * do not define one.
+     */
+    private Map<Pool, Integer> selectBestPoolsWithRules(Consumer consumer,
+        String[] productIds, List<Pool> pools, ComplianceStatus compliance,
+        String serviceLevelOverride, Set<String> exemptLevels) {
+
+        rulesInit(ENTITLEMENT_NAME_SPACE);
+
         List<ReadOnlyPool> readOnlyPools = ReadOnlyPool.fromCollection(pools);
 
         /*
@@ -199,7 +288,7 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
         catch (NoSuchMethodException e) {
             log.warn("No default rule found: " + GLOBAL_SELECT_POOL_FUNCTION);
             log.warn("Resorting to default pool selection behavior.");
-            return selectBestPoolDefault(pools);
+            return null;
         }
         catch (RhinoException e) {
             throw new RuleExecutionException(e);
@@ -210,26 +299,15 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
                 "Rule did not select a pool for products: " + Arrays.toString(productIds));
         }
 
-        List<PoolQuantity> bestPools = new ArrayList<PoolQuantity>();
+        Map<Pool, Integer> selected = new HashMap<Pool, Integer>();
         for (Pool p : pools) {
             for (Entry<ReadOnlyPool, Integer> entry : result.entrySet()) {
                 if (p.getId().equals(entry.getKey().getId())) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Best pool: " + p);
-                    }
-
-                    int quantity = entry.getValue();
-                    bestPools.add(new PoolQuantity(p, quantity));
+                    selected.put(p, entry.getValue());
                 }
             }
         }
-
-        if (bestPools.size() > 0) {
-            return bestPools;
-        }
-        else {
-            return null;
-        }
+        return selected;
     }
 
     /*
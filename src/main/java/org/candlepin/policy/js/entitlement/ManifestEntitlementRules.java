@@ -14,7 +14,9 @@
  */
 package org.candlepin.policy.js.entitlement;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
@@ -23,6 +25,7 @@ import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.Pool;
 import org.candlepin.policy.ValidationError;
+import org.candlepin.policy.ValidationResult;
 import org.candlepin.policy.ValidationWarning;
 import org.candlepin.policy.js.JsRunner;
 import org.candlepin.policy.js.ReadOnlyConsumer;
@@ -30,6 +33,7 @@ import org.candlepin.policy.js.ReadOnlyPool;
 import org.candlepin.policy.js.ReadOnlyProduct;
 import org.candlepin.policy.js.ProductCache;
 import org.candlepin.util.DateSource;
+import org.mozilla.javascript.Context;
 import org.xnap.commons.i18n.I18n;
 
 import com.google.inject.Inject;
@@ -63,25 +67,50 @@ public class ManifestEntitlementRules extends AbstractEntitlementRules implement
     public PreEntHelper preEntitlement(Consumer consumer, Pool entitlementPool,
         Integer quantity) {
 
-        jsRules.reinitTo("entitlement_name_space");
-        rulesInit();
+        rulesInit(ENTITLEMENT_NAME_SPACE);
 
-        PreEntHelper preHelper = runPreEntitlement(consumer, entitlementPool,
-            quantity);
+        PreEntHelper preHelper = runPreEntitlement(new ReadOnlyConsumer(consumer),
+            consumer, entitlementPool, quantity);
 
         return preHelper;
     }
 
+    @Override
+    public Map<Pool, ValidationResult> preEntitlement(Consumer consumer,
+        Collection<Pool> pools, Integer quantity) {
+
+        rulesInit(ENTITLEMENT_NAME_SPACE);
+
+        ReadOnlyConsumer roConsumer = new ReadOnlyConsumer(consumer);
+        Map<Pool, ValidationResult> results = new LinkedHashMap<Pool, ValidationResult>();
+
+        Context.enter();
+        try {
+            for (Pool pool : pools) {
+                PreEntHelper preHelper = runPreEntitlement(roConsumer, consumer, pool,
+                    quantity);
+                results.put(pool, preHelper.getResult());
+            }
+        }
+        finally {
+            Context.exit();
+        }
+
+        return results;
+    }
+
     /**
      * The standard pre entitlement runs both the global and the attribute rules
      *    Here we have limited it to the global only as the exclusions based on
      *    attribute values do not apply to export scenarios.
+     * @param roConsumer
      * @param consumer
      * @param pool
      * @param quantity
      * @return
      */
-    private PreEntHelper runPreEntitlement(Consumer consumer, Pool pool, Integer quantity) {
+    private PreEntHelper runPreEntitlement(ReadOnlyConsumer roConsumer, Consumer consumer,
+        Pool pool, Integer quantity) {
         PreEntHelper preHelper = new PreEntHelper(quantity, consumerCurator);
 
         // Provide objects for the script:
@@ -92,7 +121,7 @@ public class ManifestEntitlementRules extends AbstractEntitlementRules implement
         Map<String, String> allAttributes = jsRules.getFlattenedAttributes(pool);
 
         Map<String, Object> args = new HashMap<String, Object>();
-        args.put("consumer", new ReadOnlyConsumer(consumer));
+        args.put("consumer", roConsumer);
         args.put("product", product);
         args.put("pool", new ReadOnlyPool(pool));
         args.put("pre", preHelper);
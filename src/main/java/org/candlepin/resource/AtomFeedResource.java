@@ -27,6 +27,7 @@ import java.util.List;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 
 /**
@@ -46,13 +47,15 @@ public class AtomFeedResource {
     }
 
     /**
+     * @param before id of the last event of the previous page, omit for the
+     * most recent events.
      * @return a Feed
      * @httpcode 200
      */
     @GET
     @Produces({"application/atom+xml", MediaType.APPLICATION_JSON})
-    public Feed getFeed() {
-        List<Event> events = eventCurator.listMostRecent(ATOM_FEED_LIMIT);
+    public Feed getFeed(@QueryParam("before") String before) {
+        List<Event> events = eventCurator.listMostRecent(ATOM_FEED_LIMIT, before);
         Feed feed = this.adapter.toFeed(events, "/atom");
         feed.setTitle("Event Feed");
         return feed;
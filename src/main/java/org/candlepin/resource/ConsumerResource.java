@@ -14,7 +14,6 @@
  */
 package org.candlepin.resource;
 
-import java.io.File;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
@@ -31,6 +30,7 @@ import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HttpMethod;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
@@ -38,8 +38,12 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.log4j.Logger;
 import org.candlepin.audit.Event;
@@ -102,8 +106,11 @@ import org.candlepin.service.IdentityCertServiceAdapter;
 import org.candlepin.service.ProductServiceAdapter;
 import org.candlepin.service.SubscriptionServiceAdapter;
 import org.candlepin.service.UserServiceAdapter;
+import org.candlepin.sync.ExportArchive;
 import org.candlepin.sync.ExportCreationException;
 import org.candlepin.sync.Exporter;
+import org.candlepin.sync.ManifestCache;
+import org.candlepin.sync.ManifestCache.CachedManifest;
 import org.candlepin.util.Util;
 import org.candlepin.version.CertVersionConflictException;
 import org.jboss.resteasy.annotations.providers.jaxb.Wrapped;
@@ -148,6 +155,7 @@ public class ConsumerResource {
     private DeletedConsumerCurator deletedConsumerCurator;
     private EnvironmentCurator environmentCurator;
     private Config config;
+    private ManifestCache manifestCache;
 
     @Inject
     public ConsumerResource(ConsumerCurator consumerCurator,
@@ -164,7 +172,8 @@ public class ConsumerResource {
         OwnerCurator ownerCurator, ActivationKeyCurator activationKeyCurator,
         Entitler entitler, ComplianceRules complianceRules,
         DeletedConsumerCurator deletedConsumerCurator,
-        EnvironmentCurator environmentCurator, Config config) {
+        EnvironmentCurator environmentCurator, Config config,
+        ManifestCache manifestCache) {
 
         this.consumerCurator = consumerCurator;
         this.consumerTypeCurator = consumerTypeCurator;
@@ -195,6 +204,7 @@ public class ConsumerResource {
         this.consumerSystemNamePattern =
             Pattern.compile(config.getString("candlepin.consumer_system_name_pattern"));
         this.config = config;
+        this.manifestCache = manifestCache;
     }
     /**
      * List available Consumers
@@ -1072,7 +1082,7 @@ public class ConsumerResource {
     }
 
     /**
-     * @return a File of exported certificates
+     * @return a zip archive of exported certificates
      * @httpcode 500
      * @httpcode 404
      * @httpcode 200
@@ -1080,7 +1090,7 @@ public class ConsumerResource {
     @GET
     @Produces("application/zip")
     @Path("/{consumer_uuid}/certificates")
-    public File exportCertificates(
+    public ExportArchive exportCertificates(
         @Context HttpServletResponse response,
         @PathParam("consumer_uuid") @Verify(Consumer.class) String consumerUuid,
         @QueryParam("serials") String serials) {
@@ -1100,18 +1110,25 @@ public class ConsumerResource {
             serialSet = null;
         }
 
-        File archive;
+        ExportArchive archive;
         try {
             archive = exporter.getEntitlementExport(consumer, serialSet);
-            response.addHeader("Content-Disposition", "attachment; filename=" +
-                archive.getName());
-
-            return archive;
         }
         catch (ExportCreationException e) {
             throw new IseException(
                 i18n.tr("Unable to create entitlement certificate archive"), e);
         }
+
+        try {
+            response.addHeader("Content-Disposition", "attachment; filename=" +
+                archive.getName());
+            return archive;
+        }
+        catch (RuntimeException e) {
+            // the archive is only cleaned up once it has been written out
+            archive.delete();
+            throw e;
+        }
     }
 
     private Set<Long> extractSerials(String serials) {
@@ -1513,6 +1530,8 @@ public class ConsumerResource {
     }
 
     /**
+     * @param before id of the last event of the previous page, omit for the
+     * most recent events.
      * @return a list of Event objects
      * @httpcode 404
      * @httpcode 200
@@ -1521,10 +1540,11 @@ public class ConsumerResource {
     @Produces(MediaType.APPLICATION_JSON)
     @Path("{consumer_uuid}/events")
     public List<Event> getConsumerEvents(
-        @PathParam("consumer_uuid") @Verify(Consumer.class) String consumerUuid) {
+        @PathParam("consumer_uuid") @Verify(Consumer.class) String consumerUuid,
+        @QueryParam("before") String before) {
         Consumer consumer = verifyAndLookupConsumer(consumerUuid);
         List<Event> events = this.eventCurator.listMostRecent(FEED_LIMIT,
-            consumer);
+            consumer, before);
         if (events != null) {
             eventAdapter.addMessageText(events);
         }
@@ -1552,17 +1572,30 @@ public class ConsumerResource {
     }
 
     /**
-     * @return a File
+     * Returns a signed zip archive of the consumer's data. The previous
+     * archive is served again, and If-None-Match honored, for as long as the
+     * consumer's entitlements, their products, the rules and the consumer
+     * types stay the same.
+     *
+     * A manifest served again keeps the created date of the first download.
+     * Importing it into an owner which already imported that manifest is
+     * rejected with the MANIFEST_SAME conflict, the same as importing the
+     * same file twice; use force=MANIFEST_SAME to import it anyway. Set
+     * candlepin.sync.manifest_cache_max to 0 to sign every download anew.
+     *
+     * @return a signed zip archive of the consumer's data
      * @httpcode 403
      * @httpcode 500
      * @httpcode 404
+     * @httpcode 304
      * @httpcode 200
      */
     @GET
     @Produces("application/zip")
     @Path("{consumer_uuid}/export")
-    public File exportData(
+    public Response exportData(
         @Context HttpServletResponse response,
+        @Context Request request,
         @PathParam("consumer_uuid")
         @Verify(value = Consumer.class, require = Access.ALL) String consumerUuid) {
 
@@ -1578,14 +1611,46 @@ public class ConsumerResource {
         poolManager.regenerateDirtyEntitlements(
             entitlementCurator.listByConsumer(consumer));
 
-        File archive;
         try {
-            archive = exporter.getFullExport(consumer);
-            response.addHeader("Content-Disposition", "attachment; filename=" +
-                archive.getName());
+            String fingerprint = exporter.getFullExportFingerprint(consumer);
+            EntityTag tag = new EntityTag(fingerprint, true);
+            if (request != null) {
+                ResponseBuilder notModified = request.evaluatePreconditions(tag);
+                if (notModified != null) {
+                    return notModified.tag(tag).build();
+                }
+                if (HttpMethod.HEAD.equals(request.getMethod())) {
+                    // the body would never be written, don't build it
+                    return Response.ok().tag(tag).build();
+                }
+            }
 
-            sink.sendEvent(eventFactory.exportCreated(consumer));
-            return archive;
+            CachedManifest cached = manifestCache.get(consumerUuid, fingerprint);
+            StreamingOutput archive = cached;
+            String name;
+            ExportArchive export = null;
+            if (cached != null) {
+                name = cached.getName();
+            }
+            else {
+                export = exporter.getFullExport(consumer);
+                name = export.getName();
+                archive = manifestCache.put(consumerUuid, fingerprint, export);
+            }
+
+            try {
+                response.addHeader("Content-Disposition", "attachment; filename=" +
+                    name);
+                sink.sendEvent(eventFactory.exportCreated(consumer));
+                return Response.ok(archive).tag(tag).build();
+            }
+            catch (RuntimeException e) {
+                // the archive is only cleaned up once it has been written out
+                if (export != null) {
+                    export.delete();
+                }
+                throw e;
+            }
         }
         catch (ExportCreationException e) {
             throw new IseException(i18n.tr("Unable to create export archive"),
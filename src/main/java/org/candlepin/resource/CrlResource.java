@@ -17,19 +17,15 @@ package org.candlepin.resource;
 import com.google.inject.Inject;
 
 import org.candlepin.auth.Principal;
-import org.candlepin.config.Config;
-import org.candlepin.config.ConfigProperties;
-import org.candlepin.controller.CrlGenerator;
+import org.candlepin.controller.CrlPublisher;
+import org.candlepin.controller.CrlPublisher.PublishedCrl;
 import org.candlepin.exceptions.IseException;
 import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialCurator;
-import org.candlepin.util.CrlFileUtil;
 
-import java.io.File;
 import java.io.IOException;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
-import java.security.cert.X509CRL;
 import java.util.List;
 
 import javax.ws.rs.DELETE;
@@ -38,7 +34,11 @@ import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 
 /**
  * CrlResource
@@ -46,49 +46,80 @@ import javax.ws.rs.core.MediaType;
 @Path("/crl")
 public class CrlResource {
 
-    private CrlGenerator crlGenerator;
-    private CrlFileUtil crlFileUtil;
-    private Config config;
+    private CrlPublisher crlPublisher;
     private CertificateSerialCurator certificateSerialCurator;
 
 
     @Inject
-    public CrlResource(CrlGenerator crlGenerator,
-        CrlFileUtil crlFileUtil, Config config,
+    public CrlResource(CrlPublisher crlPublisher,
         CertificateSerialCurator certificateSerialCurator) {
 
-        this.crlGenerator = crlGenerator;
-        this.crlFileUtil = crlFileUtil;
-        this.config = config;
+        this.crlPublisher = crlPublisher;
         this.certificateSerialCurator = certificateSerialCurator;
     }
 
     /**
+     * Returns the current CRL, PEM encoded, as text/plain. The CRL is served
+     * from memory and honors If-None-Match and If-Modified-Since.
+     *
      * @return the current CRL
      * @throws CRLException if there is issue generating the CRL
      * @throws IOException if there is a problem serializing the CRL
      * @httpcode 200
+     * @httpcode 304
      */
     @GET
     @Produces({ MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN })
-    public String getCurrentCrl(@Context Principal principal)
+    public Response getCurrentCrl(@Context Principal principal,
+        @Context Request request)
         throws CRLException, IOException {
 
-        String filePath = getCrlFilePath();
-        File crlFile = new File(filePath);
+        try {
+            return buildResponse(crlPublisher.getCurrent(), request);
+        }
+        catch (CertificateException e) {
+            throw new IseException(e.getMessage(), e);
+        }
+    }
 
-        byte[] encoded = null;
+    /**
+     * Returns the delta CRL (RFC 5280 deltaCRLIndicator) listing the
+     * certificates revoked since the current base CRL was issued, PEM encoded,
+     * as text/plain.
+     *
+     * @return the current delta CRL
+     * @throws CRLException if there is issue generating the CRL
+     * @throws IOException if there is a problem serializing the CRL
+     * @httpcode 200
+     * @httpcode 304
+     */
+    @GET
+    @Path("delta")
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN })
+    public Response getCurrentDeltaCrl(@Context Principal principal,
+        @Context Request request)
+        throws CRLException, IOException {
 
         try {
-            X509CRL crl = crlFileUtil.readCRLFile(crlFile);
-            crl = crlGenerator.syncCRLWithDB(crl);
-            encoded = crlFileUtil.writeCRLFile(crlFile, crl);
+            return buildResponse(crlPublisher.getCurrentDelta(), request);
         }
         catch (CertificateException e) {
             throw new IseException(e.getMessage(), e);
         }
+    }
 
-        return new String(encoded);
+    private Response buildResponse(PublishedCrl crl, Request request) {
+        EntityTag tag = new EntityTag(crl.getEtag());
+        ResponseBuilder builder = null;
+        if (request != null) {
+            builder = request.evaluatePreconditions(crl.getLastModified(), tag);
+        }
+        if (builder == null) {
+            // the cached PEM bytes as they are, the CRL can be megabytes
+            builder = Response.ok(crl.getEncoded(), MediaType.TEXT_PLAIN_TYPE);
+        }
+
+        return builder.tag(tag).lastModified(crl.getLastModified()).build();
     }
 
     /**
@@ -102,33 +133,15 @@ public class CrlResource {
     public void unrevoke(@QueryParam("serial") String[] serialIds)
         throws CRLException, IOException {
 
-        String filePath = getCrlFilePath();
-        File crlFile = new File(filePath);
-
         try {
-            X509CRL crl = crlFileUtil.readCRLFile(crlFile);
-
-            // get crl file if it exists
             // lookup entitlement, find CertificateSerial
             List<CertificateSerial> serials =
                 certificateSerialCurator.listBySerialIds(serialIds);
 
-            crl = crlGenerator.removeEntries(crl, serials);
-
-            crlFileUtil.writeCRLFile(crlFile,  crl);
+            crlPublisher.removeEntries(serials);
         }
         catch (CertificateException e) {
             throw new IseException(e.getMessage(), e);
         }
     }
-
-    private String getCrlFilePath() {
-        String filePath = config.getString(ConfigProperties.CRL_FILE_PATH);
-
-        if (filePath == null) {
-            throw new IseException("CRL file path not defined in config file");
-        }
-
-        return filePath;
-    }
 }
@@ -16,6 +16,7 @@ package org.candlepin.resource;
 
 import org.candlepin.audit.Event;
 import org.candlepin.audit.EventAdapter;
+import org.candlepin.exceptions.BadRequestException;
 import org.candlepin.exceptions.NotFoundException;
 import org.candlepin.model.EventCurator;
 
@@ -26,10 +27,14 @@ import org.xnap.commons.i18n.I18n;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 
 /**
@@ -51,15 +56,35 @@ public class EventResource {
     }
 
     /**
-     * @return a list of Event objects
+     * Lists events, most recent first. All events are returned unless a limit
+     * is given. A full page carries a Link header with rel="next", pointing at
+     * the next page.
+     *
+     * @param limit maximum number of events to return, omit for all of them.
+     * @param before id of the last event of the previous page, omit to start
+     * from the most recent event.
+     * @return a list of Event objects, most recent first
+     * @httpcode 400
      * @httpcode 200
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public List<Event> listEvents() {
-        List<Event> events = eventCurator.listAll();
+    public List<Event> listEvents(@QueryParam("limit") Integer limit,
+        @QueryParam("before") String before,
+        @Context HttpServletRequest request,
+        @Context HttpServletResponse response) {
+        if (limit != null && limit < 1) {
+            throw new BadRequestException(i18n.tr("Limit must be a positive number."));
+        }
+        int max = limit == null ? 0 : limit;
+        List<Event> events = eventCurator.listMostRecent(max, before);
         if (events != null) {
             eventAdapter.addMessageText(events);
+            if (max > 0 && events.size() == max) {
+                String next = request.getRequestURL() + "?limit=" + max +
+                    "&before=" + events.get(max - 1).getId();
+                response.addHeader("Link", "<" + next + ">; rel=\"next\"");
+            }
         }
         return events;
     }
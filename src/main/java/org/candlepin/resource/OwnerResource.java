@@ -617,6 +617,8 @@ public class OwnerResource {
     }
 
     /**
+     * @param before id of the last event of the previous page, omit for the
+     * most recent events.
      * @return the owner Feed
      * @httpcode 404
      * @httpcode 200
@@ -625,16 +627,19 @@ public class OwnerResource {
     @Produces("application/atom+xml")
     @Path("{owner_key}/atom")
     public Feed getOwnerAtomFeed(@PathParam("owner_key")
-            @Verify(Owner.class) String ownerKey) {
+            @Verify(Owner.class) String ownerKey,
+        @QueryParam("before") String before) {
         Owner o = findOwner(ownerKey);
         String path = String.format("/owners/%s/atom", ownerKey);
         Feed feed = this.eventAdapter.toFeed(
-            this.eventCurator.listMostRecent(FEED_LIMIT, o), path);
+            this.eventCurator.listMostRecent(FEED_LIMIT, o, before), path);
         feed.setTitle("Event feed for owner " + o.getDisplayName());
         return feed;
     }
 
     /**
+     * @param before id of the last event of the previous page, omit for the
+     * most recent events.
      * @return the consumer Feed
      * @httpcode 404
      * @httpcode 200
@@ -644,16 +649,19 @@ public class OwnerResource {
     @Path("{owner_key}/consumers/{consumer_uuid}/atom")
     public Feed getConsumerAtomFeed(
         @PathParam("owner_key") @Verify(Owner.class) String ownerKey,
-        @PathParam("consumer_uuid") String consumerUuid) {
+        @PathParam("consumer_uuid") String consumerUuid,
+        @QueryParam("before") String before) {
         String path = String.format("/consumers/%s/atom", consumerUuid);
         Consumer consumer = findConsumer(consumerUuid);
         Feed feed = this.eventAdapter.toFeed(
-            this.eventCurator.listMostRecent(FEED_LIMIT, consumer), path);
+            this.eventCurator.listMostRecent(FEED_LIMIT, consumer, before), path);
         feed.setTitle("Event feed for consumer " + consumer.getUuid());
         return feed;
     }
 
     /**
+     * @param before id of the last event of the previous page, omit for the
+     * most recent events.
      * @return a list of Events
      * @httpcode 404
      * @httpcode 200
@@ -662,9 +670,10 @@ public class OwnerResource {
     @Produces(MediaType.APPLICATION_JSON)
     @Path("{owner_key}/events")
     public List<Event> getEvents(
-        @PathParam("owner_key") @Verify(Owner.class) String ownerKey) {
+        @PathParam("owner_key") @Verify(Owner.class) String ownerKey,
+        @QueryParam("before") String before) {
         Owner o = findOwner(ownerKey);
-        List<Event> events = this.eventCurator.listMostRecent(FEED_LIMIT, o);
+        List<Event> events = this.eventCurator.listMostRecent(FEED_LIMIT, o, before);
         if (events != null) {
             eventAdapter.addMessageText(events);
         }
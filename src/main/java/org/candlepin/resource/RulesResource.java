@@ -31,6 +31,7 @@ import org.candlepin.exceptions.ServiceUnavailableException;
 import org.candlepin.model.CuratorException;
 import org.candlepin.model.Rules;
 import org.candlepin.model.RulesCurator;
+import org.candlepin.policy.js.JsRunnerProvider;
 import org.candlepin.util.VersionUtil;
 import org.xnap.commons.i18n.I18n;
 
@@ -44,15 +45,18 @@ public class RulesResource {
     private static Logger log = Logger.getLogger(RulesResource.class);
     private RulesCurator rulesCurator;
     private I18n i18n;
+    private JsRunnerProvider jsProvider;
 
     /**
      * Default ctor
      * @param rulesCurator Curator used to interact with Rules.
      */
     @Inject
-    public RulesResource(RulesCurator rulesCurator, I18n i18n) {
+    public RulesResource(RulesCurator rulesCurator, I18n i18n,
+        JsRunnerProvider jsProvider) {
         this.rulesCurator = rulesCurator;
         this.i18n = i18n;
+        this.jsProvider = jsProvider;
     }
 
     /**
@@ -82,6 +86,7 @@ public class RulesResource {
                 i18n.tr("Error decoding the rules. The text should be base 64 encoded"));
         }
         rulesCurator.update(rules);
+        jsProvider.invalidate();
         return rulesBuffer;
     }
 
@@ -115,5 +120,6 @@ public class RulesResource {
     @Produces(MediaType.APPLICATION_JSON)
     public void delete() {
         rulesCurator.delete(rulesCurator.getRules());
+        jsProvider.invalidate();
     }
 }
@@ -22,13 +22,16 @@ import javax.ws.rs.ext.Provider;
 
 import org.apache.log4j.Logger;
 import org.candlepin.auth.ConsumerPrincipal;
+import org.candlepin.auth.ConsumerPrincipalCache;
 import org.candlepin.auth.NoAuthPrincipal;
 import org.candlepin.auth.Principal;
 import org.candlepin.auth.interceptor.SecurityHole;
 import org.candlepin.config.Config;
+import org.candlepin.controller.ConsumerCheckinTracker;
 import org.candlepin.exceptions.UnauthorizedException;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.DeletedConsumerCurator;
+import org.candlepin.model.DeletedConsumerFilter;
 import org.candlepin.model.OwnerCurator;
 import org.candlepin.service.UserServiceAdapter;
 import org.jboss.resteasy.annotations.interception.ServerInterceptor;
@@ -54,6 +57,9 @@ public class AuthInterceptor implements PreProcessInterceptor {
     private Injector injector;
     private ConsumerCurator consumerCurator;
     private DeletedConsumerCurator deletedConsumerCurator;
+    private DeletedConsumerFilter deletedConsumerFilter;
+    private ConsumerPrincipalCache principalCache;
+    private ConsumerCheckinTracker checkinTracker;
     private OwnerCurator ownerCurator;
     private Config config;
     private UserServiceAdapter userService;
@@ -63,8 +69,10 @@ public class AuthInterceptor implements PreProcessInterceptor {
     @Inject
     public AuthInterceptor(Config config, UserServiceAdapter userService,
         OwnerCurator ownerCurator, ConsumerCurator consumerCurator,
-        DeletedConsumerCurator deletedConsumerCurator, Injector injector,
-        I18n i18n) {
+        DeletedConsumerCurator deletedConsumerCurator,
+        DeletedConsumerFilter deletedConsumerFilter,
+        ConsumerPrincipalCache principalCache, ConsumerCheckinTracker checkinTracker,
+        Injector injector, I18n i18n) {
         super();
         this.consumerCurator = consumerCurator;
         this.injector = injector;
@@ -72,6 +80,9 @@ public class AuthInterceptor implements PreProcessInterceptor {
         this.userService = userService;
         this.ownerCurator = ownerCurator;
         this.deletedConsumerCurator = deletedConsumerCurator;
+        this.deletedConsumerFilter = deletedConsumerFilter;
+        this.principalCache = principalCache;
+        this.checkinTracker = checkinTracker;
         this.i18n = i18n;
         this.setupAuthStrategies();
     }
@@ -85,7 +96,8 @@ public class AuthInterceptor implements PreProcessInterceptor {
         if (config.oAuthEnabled()) {
             log.debug("OAuth Authentication is enabled.");
             TrustedConsumerAuth consumerAuth =
-                new TrustedConsumerAuth(consumerCurator, deletedConsumerCurator, i18n);
+                new TrustedConsumerAuth(consumerCurator, deletedConsumerCurator,
+                    deletedConsumerFilter, principalCache, i18n);
             TrustedUserAuth userAuth = new TrustedUserAuth(userService, injector);
             TrustedExternalSystemAuth systemAuth = new TrustedExternalSystemAuth();
             providers
@@ -103,6 +115,8 @@ public class AuthInterceptor implements PreProcessInterceptor {
             providers.add(
                 new SSLAuth(consumerCurator,
                     deletedConsumerCurator,
+                    deletedConsumerFilter,
+                    principalCache,
                     i18n));
         }
         // trusted headers
@@ -111,6 +125,8 @@ public class AuthInterceptor implements PreProcessInterceptor {
             providers.add(
                 new TrustedConsumerAuth(consumerCurator,
                     deletedConsumerCurator,
+                    deletedConsumerFilter,
+                    principalCache,
                     i18n));
             providers.add(new TrustedUserAuth(userService, injector));
         }
@@ -172,7 +188,7 @@ public class AuthInterceptor implements PreProcessInterceptor {
             // lest our security settings start getting upset when we try to
             // update a consumer without any roles:
             ConsumerPrincipal p = (ConsumerPrincipal) principal;
-            consumerCurator.updateLastCheckin(p.getConsumer());
+            checkinTracker.checkin(p.getConsumer());
         }
 
         return null;
@@ -16,10 +16,12 @@ package org.candlepin.resteasy.interceptor;
 
 import org.apache.log4j.Logger;
 import org.candlepin.auth.ConsumerPrincipal;
+import org.candlepin.auth.ConsumerPrincipalCache;
 import org.candlepin.exceptions.GoneException;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.DeletedConsumerCurator;
+import org.candlepin.model.DeletedConsumerFilter;
 import org.xnap.commons.i18n.I18n;
 
 import com.google.inject.Inject;
@@ -33,14 +35,20 @@ public abstract class ConsumerAuth implements AuthProvider {
 
     protected ConsumerCurator consumerCurator;
     protected DeletedConsumerCurator deletedConsumerCurator;
+    protected DeletedConsumerFilter deletedConsumerFilter;
+    protected ConsumerPrincipalCache principalCache;
     protected I18n i18n;
 
     @Inject
     ConsumerAuth(ConsumerCurator consumerCurator,
         DeletedConsumerCurator deletedConsumerCurator,
+        DeletedConsumerFilter deletedConsumerFilter,
+        ConsumerPrincipalCache principalCache,
         I18n i18n) {
         this.consumerCurator = consumerCurator;
         this.deletedConsumerCurator = deletedConsumerCurator;
+        this.deletedConsumerFilter = deletedConsumerFilter;
+        this.principalCache = principalCache;
         this.i18n = i18n;
     }
 
@@ -48,26 +56,47 @@ public abstract class ConsumerAuth implements AuthProvider {
         ConsumerPrincipal principal = null;
 
         if (consumerUuid != null) {
-            // If this UUID has been deleted, return a 410.
-            if (deletedConsumerCurator.countByConsumerUuid(consumerUuid) > 0) {
-                log.debug("Key " + consumerUuid + " is deleted, throwing GoneException");
-                throw new GoneException(
-                    i18n.tr("Consumer {0} has been deleted", consumerUuid), consumerUuid);
+            // If this UUID has been deleted, return a 410. The filter rules out
+            // almost every live consumer without a query.
+            boolean checked = deletedConsumerFilter.mightBeDeleted(consumerUuid);
+            if (checked) {
+                checkDeleted(consumerUuid);
+            }
+
+            principal = principalCache.get(consumerUuid);
+            if (principal != null) {
+                // Consumers deleted through another node are only in the filter
+                // once it reloads, until then their principal lives as long as
+                // its cache entry. After that the consumer is no longer found.
+                return principal;
             }
 
             Consumer consumer = this.consumerCurator.getConsumer(consumerUuid);
 
             if (consumer != null) {
                 principal = new ConsumerPrincipal(consumer);
+                principalCache.put(consumer);
 
                 if (log.isDebugEnabled() && principal != null) {
                     log.debug("principal created for consumer '" +
                             principal.getConsumer().getUuid());
                 }
             }
+            else if (!checked) {
+                // deleted through another node since the filter was loaded
+                checkDeleted(consumerUuid);
+            }
         }
 
         return principal;
     }
 
+    private void checkDeleted(String consumerUuid) {
+        if (deletedConsumerCurator.countByConsumerUuid(consumerUuid) > 0) {
+            log.debug("Key " + consumerUuid + " is deleted, throwing GoneException");
+            throw new GoneException(
+                i18n.tr("Consumer {0} has been deleted", consumerUuid), consumerUuid);
+        }
+    }
+
 }
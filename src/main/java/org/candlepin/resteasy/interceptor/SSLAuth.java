@@ -19,9 +19,11 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
+import org.candlepin.auth.ConsumerPrincipalCache;
 import org.candlepin.auth.Principal;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.DeletedConsumerCurator;
+import org.candlepin.model.DeletedConsumerFilter;
 
 import org.jboss.resteasy.spi.HttpRequest;
 import org.xnap.commons.i18n.I18n;
@@ -41,8 +43,11 @@ class SSLAuth extends ConsumerAuth {
     @Inject
     SSLAuth(ConsumerCurator consumerCurator,
         DeletedConsumerCurator deletedConsumerCurator,
+        DeletedConsumerFilter deletedConsumerFilter,
+        ConsumerPrincipalCache principalCache,
         I18n i18n) {
-        super(consumerCurator, deletedConsumerCurator, i18n);
+        super(consumerCurator, deletedConsumerCurator, deletedConsumerFilter,
+            principalCache, i18n);
     }
 
     public Principal getPrincipal(HttpRequest request) {
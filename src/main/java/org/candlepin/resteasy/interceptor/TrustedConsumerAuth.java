@@ -17,9 +17,11 @@ package org.candlepin.resteasy.interceptor;
 import java.util.List;
 
 import org.candlepin.auth.ConsumerPrincipal;
+import org.candlepin.auth.ConsumerPrincipalCache;
 import org.candlepin.auth.Principal;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.DeletedConsumerCurator;
+import org.candlepin.model.DeletedConsumerFilter;
 
 import org.jboss.resteasy.spi.HttpRequest;
 import org.xnap.commons.i18n.I18n;
@@ -38,8 +40,11 @@ class TrustedConsumerAuth extends ConsumerAuth {
     @Inject
     TrustedConsumerAuth(ConsumerCurator consumerCurator,
         DeletedConsumerCurator deletedConsumerCurator,
+        DeletedConsumerFilter deletedConsumerFilter,
+        ConsumerPrincipalCache principalCache,
         I18n i18n) {
-        super(consumerCurator, deletedConsumerCurator, i18n);
+        super(consumerCurator, deletedConsumerCurator, deletedConsumerFilter,
+            principalCache, i18n);
     }
 
     public Principal getPrincipal(HttpRequest request) {
@@ -28,6 +28,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.candlepin.config.Config;
+import org.candlepin.json.model.EntitlementBody;
 import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialCurator;
 import org.candlepin.model.Entitlement;
@@ -152,15 +153,7 @@ public class DefaultEntitlementCertServiceAdapter extends
         Subscription sub, Product product, BigInteger serialNumber,
         KeyPair keyPair, boolean useContentPrefix)
         throws GeneralSecurityException, IOException {
-
-        // oiduitl is busted at the moment, so do this manually
-        Set<X509ExtensionWrapper> extensions;
-        Set<X509ByteExtensionWrapper> byteExtensions =
-            new LinkedHashSet<X509ByteExtensionWrapper>();
-        Set<Product> products = new HashSet<Product>(getProvidedProducts(ent
-            .getPool(), sub));
-        products.add(product);
-
+        Set<Product> products = getProducts(ent, sub, product);
         Map<String, EnvironmentContent> promotedContent = getPromotedContent(ent);
         String contentPrefix = getContentPrefix(ent, useContentPrefix);
 
@@ -168,11 +161,34 @@ public class DefaultEntitlementCertServiceAdapter extends
         // the consumer's cert_version.
         verifySubscriptionSupport(ent, sub);
 
-        if (shouldGenerateV3(ent)) {
+        boolean v3 = shouldGenerateV3(ent);
+        EntitlementBody body = null;
+        if (v3) {
+            body = v3extensionUtil.createEntitlementBody(products, ent,
+                contentPrefix, promotedContent, sub);
+        }
+        return createX509Certificate(ent, sub, products, contentPrefix,
+            promotedContent, v3, body, serialNumber, keyPair);
+    }
+
+    /**
+     * @param body the V3 entitlement body, only used if v3 is true.
+     */
+    private X509Certificate createX509Certificate(Entitlement ent,
+        Subscription sub, Set<Product> products, String contentPrefix,
+        Map<String, EnvironmentContent> promotedContent, boolean v3,
+        EntitlementBody body, BigInteger serialNumber, KeyPair keyPair)
+        throws GeneralSecurityException, IOException {
+
+        // oiduitl is busted at the moment, so do this manually
+        Set<X509ExtensionWrapper> extensions;
+        Set<X509ByteExtensionWrapper> byteExtensions =
+            new LinkedHashSet<X509ByteExtensionWrapper>();
+
+        if (v3) {
             extensions = prepareV3Extensions(products, ent, contentPrefix,
                 promotedContent, sub);
-            byteExtensions = prepareV3ByteExtensions(products, ent, contentPrefix,
-                promotedContent, sub);
+            byteExtensions = v3extensionUtil.getByteExtensions(body);
         }
         else {
             extensions = prepareV1Extensions(products, ent, contentPrefix,
@@ -185,6 +201,14 @@ public class DefaultEntitlementCertServiceAdapter extends
         return x509Cert;
     }
 
+    private Set<Product> getProducts(Entitlement ent, Subscription sub,
+        Product product) {
+        Set<Product> products = new HashSet<Product>(getProvidedProducts(ent
+            .getPool(), sub));
+        products.add(product);
+        return products;
+    }
+
     private void verifySubscriptionSupport(Entitlement ent, Subscription sub) {
         // If cert V3 is disabled, do not create a certificate with anything
         // considered V3+ as it is not supported in V1.
@@ -379,30 +403,38 @@ public class DefaultEntitlementCertServiceAdapter extends
                 entitlement.getId(), entitlement.getEndDate(), sub.getId(),
                 sub.getEndDate());
 
+        // Everything the certificate is built from is worked out once, the V3
+        // extension and the entitlement data payload share the same body.
+        Set<Product> products = getProducts(entitlement, sub, product);
+        Map<String, EnvironmentContent> promotedContent = getPromotedContent(entitlement);
+        String contentPrefix = getContentPrefix(entitlement, !thisIsUeberCert);
+        verifySubscriptionSupport(entitlement, sub);
+
+        boolean v3 = shouldGenerateV3(entitlement);
+        EntitlementBody body = null;
+        if (v3) {
+            body = v3extensionUtil.createEntitlementBody(products, entitlement,
+                contentPrefix, promotedContent, sub);
+        }
+
         KeyPair keyPair = keyPairCurator.getConsumerKeyPair(entitlement.getConsumer());
         CertificateSerial serial = new CertificateSerial(entitlement.getEndDate());
-        // We need the sequence generated id before we create the EntitlementCertificate,
-        // otherwise we could have used cascading create
-        serial = serialCurator.create(serial);
+        // We need the generated id before we create the EntitlementCertificate,
+        // the insert itself is deferred until the certificate is flushed.
+        serial = serialCurator.reserve(serial);
 
         X509Certificate x509Cert = createX509Certificate(entitlement, sub,
-            product, BigInteger.valueOf(serial.getId()), keyPair, !thisIsUeberCert);
+            products, contentPrefix, promotedContent, v3, body,
+            BigInteger.valueOf(serial.getId()), keyPair);
 
         EntitlementCertificate cert = new EntitlementCertificate();
         cert.setSerial(serial);
         cert.setKeyAsBytes(pki.getPemEncoded(keyPair.getPrivate()));
 
-        Set<Product> products = new HashSet<Product>(getProvidedProducts(entitlement
-            .getPool(), sub));
-        products.add(product);
-        Map<String, EnvironmentContent> promotedContent = getPromotedContent(entitlement);
-        String contentPrefix = getContentPrefix(entitlement, !thisIsUeberCert);
-
         String pem = new String(this.pki.getPemEncoded(x509Cert));
 
-        if (shouldGenerateV3(entitlement)) {
-            byte[] payloadBytes = v3extensionUtil.createEntitlementDataPayload(products,
-                entitlement, contentPrefix, promotedContent, sub);
+        if (v3) {
+            byte[] payloadBytes = v3extensionUtil.createEntitlementDataPayload(body);
             String payload = "-----BEGIN ENTITLEMENT DATA-----\n";
             payload += Util.toBase64(payloadBytes);
             payload += "-----END ENTITLEMENT DATA-----\n";
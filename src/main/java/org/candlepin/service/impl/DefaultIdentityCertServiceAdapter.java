@@ -117,9 +117,9 @@ public class DefaultIdentityCertServiceAdapter implements
         Date endDate = this.endDateGenerator.apply(startDate);
 
         CertificateSerial serial = new CertificateSerial(endDate);
-        // We need the sequence generated id before we create the EntitlementCertificate,
-        // otherwise we could have used cascading create
-        serialCurator.create(serial);
+        // We need the generated id before we create the IdentityCertificate,
+        // the insert itself is deferred until the certificate is flushed.
+        serialCurator.reserve(serial);
 
         String dn = createDN(consumer);
         IdentityCertificate identityCert = new IdentityCertificate();
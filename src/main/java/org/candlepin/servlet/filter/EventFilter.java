@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.servlet.filter;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.candlepin.audit.EventSink;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * EventFilter
+ *
+ * Holds the events emitted while handling a request, and sends them all at once
+ * when the request is done. Only events whose transaction committed are held,
+ * so the response status does not matter: a request may fail after its changes
+ * were committed, and those events must still go out.
+ */
+@Singleton
+public class EventFilter implements Filter {
+
+    private EventSink eventSink;
+
+    @Inject
+    public EventFilter(EventSink eventSink) {
+        this.eventSink = eventSink;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response,
+        FilterChain chain) throws IOException, ServletException {
+        eventSink.beginBatch();
+        try {
+            chain.doFilter(request, response);
+        }
+        finally {
+            eventSink.sendEvents();
+        }
+    }
+
+    @Override
+    public void init(FilterConfig config) throws ServletException {
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
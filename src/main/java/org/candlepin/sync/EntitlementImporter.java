@@ -103,7 +103,7 @@ public class EntitlementImporter {
             cs.setRevoked(cert.getSerial().isRevoked());
             cs.setUpdated(cert.getSerial().getUpdated());
             cs.setCreated(cert.getSerial().getCreated());
-            csCurator.create(cs);
+            csCurator.reserve(cs);
             SubscriptionsCertificate sc = new SubscriptionsCertificate();
             sc.setKey(cert.getKey());
             sc.setCertAsBytes(cert.getCertAsBytes());
@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.sync;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.log4j.Logger;
+
+/**
+ * ExportArchive - a signed export archive, held in memory until it grows past
+ * a threshold and in a temp file after that. Writing the archive out, e.g. to
+ * the HTTP response, deletes the temp file.
+ */
+public class ExportArchive implements StreamingOutput {
+    private static Logger log = Logger.getLogger(ExportArchive.class);
+
+    private final String name;
+    private final File file;
+    private final DeferredFileOutputStream data;
+
+    ExportArchive(String name, File file, int threshold) {
+        this.name = name;
+        this.file = file;
+        this.data = new DeferredFileOutputStream(threshold, file);
+    }
+
+    OutputStream getOutputStream() {
+        return data;
+    }
+
+    /**
+     * @return file name the archive should be saved as.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return size of the archive in bytes.
+     */
+    public long getSize() {
+        return data.getByteCount();
+    }
+
+    /**
+     * @return true if the archive never spilled to disk.
+     */
+    public boolean isInMemory() {
+        return data.isInMemory();
+    }
+
+    /**
+     * @return the archive contents, or null if it spilled to disk.
+     */
+    byte[] getData() {
+        return data.isInMemory() ? data.getData() : null;
+    }
+
+    /**
+     * Copies the archive to the given stream and discards it.
+     *
+     * @param out stream to write the archive to
+     * @throws IOException if the archive cannot be read or written
+     */
+    @Override
+    public void write(OutputStream out) throws IOException {
+        try {
+            if (data.isInMemory()) {
+                out.write(data.getData());
+            }
+            else {
+                InputStream in = new FileInputStream(file);
+                try {
+                    IOUtils.copy(in, out);
+                }
+                finally {
+                    in.close();
+                }
+            }
+            out.flush();
+        }
+        finally {
+            delete();
+        }
+    }
+
+    /**
+     * Discards the archive, removing its temp file.
+     */
+    public void delete() {
+        try {
+            data.close();
+        }
+        catch (IOException e) {
+            // nothing to do, the file is going away
+        }
+        if (file.exists() && !file.delete()) {
+            log.warn("Unable to delete export archive: " + file.getAbsolutePath());
+        }
+    }
+}
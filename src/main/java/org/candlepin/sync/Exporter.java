@@ -19,6 +19,7 @@ import com.google.inject.Inject;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.guice.PrincipalProvider;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerType;
@@ -33,18 +34,25 @@ import org.candlepin.pki.PKIUtility;
 import org.candlepin.policy.js.export.ExportRules;
 import org.candlepin.service.EntitlementCertServiceAdapter;
 import org.candlepin.service.ProductServiceAdapter;
+import org.candlepin.util.ContentExtensionCache;
 import org.candlepin.util.VersionUtil;
 import org.codehaus.jackson.map.ObjectMapper;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.zip.ZipEntry;
@@ -56,6 +64,10 @@ import java.util.zip.ZipOutputStream;
 public class Exporter {
     private static Logger log = Logger.getLogger(Exporter.class);
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // exports are written out right after they are built, anything older leaked
+    private static final long STALE_ARCHIVE_AGE = 60 * 60 * 1000L;
+
     private ObjectMapper mapper;
 
     private MetaExporter meta;
@@ -107,174 +119,146 @@ public class Exporter {
         mapper = SyncUtils.getObjectMapper(this.config);
     }
 
-    public File getFullExport(Consumer consumer) throws ExportCreationException {
-        // TODO: need to delete tmpDir (which contains the archive,
-        // which we need to return...)
+    public ExportArchive getFullExport(Consumer consumer)
+        throws ExportCreationException {
+        ExportArchive archive = createArchive();
+        boolean done = false;
         try {
-            File tmpDir = new SyncUtils(config).makeTempDir("export");
-            File baseDir = new File(tmpDir.getAbsolutePath(), "export");
-            baseDir.mkdir();
-
-            exportMeta(baseDir);
-            exportConsumer(baseDir, consumer);
-            exportEntitlements(baseDir, consumer);
-            exportEntitlementsCerts(baseDir, consumer, null, true);
-            exportProducts(baseDir, consumer);
-            exportConsumerTypes(baseDir);
-            exportRules(baseDir);
-            return makeArchive(consumer, tmpDir, baseDir);
+            SignedArchiveWriter out = new SignedArchiveWriter(
+                archive.getOutputStream(), pki.getSHA256WithRSASigner(), consumer);
+            exportMeta(out);
+            exportConsumer(out, consumer);
+            exportEntitlements(out, consumer);
+            exportEntitlementsCerts(out, consumer, null, true);
+            exportProducts(out, consumer);
+            exportConsumerTypes(out);
+            exportRules(out);
+            out.close();
+            done = true;
+            return archive;
         }
         catch (IOException e) {
             log.error("Error generating entitlement export", e);
             throw new ExportCreationException("Unable to create export archive", e);
         }
+        finally {
+            if (!done) {
+                archive.delete();
+            }
+        }
     }
 
-    public File getEntitlementExport(Consumer consumer,
+    public ExportArchive getEntitlementExport(Consumer consumer,
                         Set<Long> serials) throws ExportCreationException {
-        // TODO: need to delete tmpDir (which contains the archive,
-        // which we need to return...)
+        ExportArchive archive = createArchive();
+        boolean done = false;
         try {
-            File tmpDir = new SyncUtils(config).makeTempDir("export");
-            File baseDir = new File(tmpDir.getAbsolutePath(), "export");
-            baseDir.mkdir();
-
-            exportMeta(baseDir);
-            exportEntitlementsCerts(baseDir, consumer, serials, false);
-            return makeArchive(consumer, tmpDir, baseDir);
+            SignedArchiveWriter out = new SignedArchiveWriter(
+                archive.getOutputStream(), pki.getSHA256WithRSASigner(), consumer);
+            exportMeta(out);
+            exportEntitlementsCerts(out, consumer, serials, false);
+            out.close();
+            done = true;
+            return archive;
         }
         catch (IOException e) {
             log.error("Error generating entitlement export", e);
             throw new ExportCreationException("Unable to create export archive", e);
         }
+        finally {
+            if (!done) {
+                archive.delete();
+            }
+        }
     }
 
     /**
-     * Create a tar.gz archive of the exported directory.
+     * Fingerprints everything that goes into a full export except the creation
+     * date and principal recorded in meta.json. Products are fingerprinted by
+     * their exported JSON and certificate, as they are not reliably stamped
+     * with an update date. Exports with the same fingerprint are
+     * interchangeable, so a previously signed archive can be served instead of
+     * building a new one.
      *
-     * @param exportDir Directory where Candlepin data was exported.
-     * @return File reference to the new archive zip.
+     * @param consumer consumer being exported
+     * @return a stable fingerprint of the export contents
+     * @throws ExportCreationException if the version cannot be determined
      */
-    private File makeArchive(Consumer consumer, File tempDir, File exportDir)
-        throws IOException {
-        String exportFileName = exportDir.getName() + ".zip";
-        log.info("Creating archive of " + exportDir.getAbsolutePath() + " in: " +
-            exportFileName);
-
-        File archive = createZipArchiveWithDir(
-            tempDir, exportDir, "consumer_export.zip",
-            "Candlepin export for " + consumer.getUuid());
-
-        InputStream archiveInputStream = null;
+    public String getFullExportFingerprint(Consumer consumer)
+        throws ExportCreationException {
+        List<String> parts = new ArrayList<String>();
         try {
-            archiveInputStream = new FileInputStream(archive);
-            File signedArchive = createSignedZipArchive(
-                tempDir, archive, exportFileName,
-                pki.getSHA256WithRSAHash(archiveInputStream),
-                "signed Candlepin export for " + consumer.getUuid());
-
-            log.debug("Returning file: " + archive.getAbsolutePath());
-            return signedArchive;
+            parts.add("version:" + getVersion());
         }
-        finally {
-            if (archiveInputStream != null) {
-                try {
-                    archiveInputStream.close();
-                }
-                catch (Exception e) {
-                    // nothing to do
-                }
-            }
+        catch (IOException e) {
+            throw new ExportCreationException("Unable to fingerprint export", e);
         }
-    }
+        parts.add("prefix:" + getWebAppPrefix());
+        parts.add("consumer:" + consumer.getUuid() + ":" + consumer.getName() + ":" +
+            consumer.getType().getLabel());
+        parts.add("rules:" + stamp(rules.getUpdated()));
 
-    private File createZipArchiveWithDir(File tempDir, File exportDir,
-        String exportFileName, String comment)
-        throws FileNotFoundException, IOException {
-
-        File archive = new File(tempDir, exportFileName);
-        ZipOutputStream out = null;
-        try {
-            out = new ZipOutputStream(new FileOutputStream(archive));
-            out.setComment(comment);
-            addFilesToArchive(out, exportDir.getParent().length() + 1, exportDir);
+        for (ConsumerType type : consumerTypeCurator.listAll()) {
+            parts.add("type:" + type.getId() + ":" + type.getLabel());
         }
-        finally {
-            if (out != null) {
-                out.close();
+
+        for (Entitlement ent : entitlementCurator.listByConsumer(consumer)) {
+            if (!this.exportRules.canExport(ent)) {
+                continue;
+            }
+            parts.add("entitlement:" + ent.getId() + ":" + ent.getQuantity() + ":" +
+                stamp(ent.getUpdated()) + ":" + stamp(ent.getPool().getUpdated()));
+            for (EntitlementCertificate cert : ent.getCertificates()) {
+                parts.add("serial:" + cert.getSerial().getId());
             }
         }
-        return archive;
-    }
-
-    private File createSignedZipArchive(File tempDir, File toAdd,
-        String exportFileName, byte[] signature, String comment)
-        throws FileNotFoundException, IOException {
 
-        File archive = new File(tempDir, exportFileName);
-        ZipOutputStream out = null;
+        // products carry no reliable timestamp, hash what gets written instead
         try {
-            out = new ZipOutputStream(new FileOutputStream(archive));
-            out.setComment(comment);
-            addFileToArchive(out, toAdd.getParent().length() + 1, toAdd);
-            addSignatureToArchive(out, signature);
-        }
-        finally {
-            if (out != null) {
-                out.close();
+            for (Product product : listProducts(consumer).values()) {
+                StringWriter writer = new StringWriter();
+                productExporter.export(mapper, writer, product);
+                ProductCertificate cert = getProductCertificate(product);
+                if (cert != null) {
+                    productCertExporter.export(writer, cert);
+                }
+                parts.add("product:" + product.getId() + ":" +
+                    ContentExtensionCache.fingerprint(
+                        Collections.singletonList(writer.toString())));
             }
         }
-        return archive;
+        catch (IOException e) {
+            throw new ExportCreationException("Unable to fingerprint export", e);
+        }
+        return ContentExtensionCache.fingerprint(parts);
     }
 
-
+    private static String stamp(Date date) {
+        return date == null ? "" : Long.toString(date.getTime());
+    }
 
     /**
-     * @param out
-     * @param exportDir
-     * @throws IOException
+     * The archive is built in memory, and only moves to a temp file in the
+     * sync work dir if it grows past the configured threshold. Temp files
+     * which were never written out, e.g. for HEAD requests or clients which
+     * went away, are swept up once they are STALE_ARCHIVE_AGE old.
      */
-    private void addFilesToArchive(ZipOutputStream out, int charsToDropFromName,
-        File directory) throws IOException {
-        for (File file : directory.listFiles()) {
-            if (file.isDirectory()) {
-                addFilesToArchive(out, charsToDropFromName, file);
-            }
-            else {
-                addFileToArchive(out, charsToDropFromName, file);
-            }
+    private ExportArchive createArchive() throws ExportCreationException {
+        try {
+            SyncUtils utils = new SyncUtils(config);
+            utils.deleteStaleTempFiles("export", STALE_ARCHIVE_AGE);
+            File file = utils.makeTempFile("export");
+            return new ExportArchive("export.zip", file,
+                config.getInt(ConfigProperties.SYNC_EXPORT_MEMORY_THRESHOLD));
         }
-    }
-
-    private void addFileToArchive(ZipOutputStream out, int charsToDropFromName,
-        File file) throws IOException, FileNotFoundException {
-        log.debug("Adding file to archive: " +
-            file.getAbsolutePath().substring(charsToDropFromName));
-        out.putNextEntry(new ZipEntry(
-            file.getAbsolutePath().substring(charsToDropFromName)));
-        FileInputStream in = new FileInputStream(file);
-
-        byte [] buf = new byte[1024];
-        int len;
-        while ((len = in.read(buf)) > 0) {
-            out.write(buf, 0, len);
+        catch (IOException e) {
+            log.error("Error generating entitlement export", e);
+            throw new ExportCreationException("Unable to create export archive", e);
         }
-        out.closeEntry();
-        in.close();
-    }
-
-    private void addSignatureToArchive(ZipOutputStream out, byte[] signature)
-        throws IOException, FileNotFoundException {
-
-        log.debug("Adding signature to archive.");
-        out.putNextEntry(new ZipEntry("signature"));
-        out.write(signature, 0, signature.length);
-        out.closeEntry();
     }
 
-    private void exportMeta(File baseDir) throws IOException {
-        File file = new File(baseDir.getCanonicalPath(), "meta.json");
-        FileWriter writer = new FileWriter(file);
+    private void exportMeta(SignedArchiveWriter out) throws IOException {
+        Writer writer = out.nextEntry("export/meta.json");
         Meta m = new Meta(getVersion(), new Date(),
             principalProvider.get().getPrincipalName(),
             getWebAppPrefix());
@@ -295,22 +279,19 @@ public class Exporter {
         return map.get("version") + "-" + map.get("release");
     }
 
-    private void exportConsumer(File baseDir, Consumer consumer) throws IOException {
-        File file = new File(baseDir.getCanonicalPath(), "consumer.json");
-        FileWriter writer = new FileWriter(file);
+    private void exportConsumer(SignedArchiveWriter out, Consumer consumer)
+        throws IOException {
+        Writer writer = out.nextEntry("export/consumer.json");
         this.consumerExporter.export(mapper, writer, consumer);
         writer.close();
     }
 
-    private void exportEntitlementsCerts(File baseDir,
+    private void exportEntitlementsCerts(SignedArchiveWriter out,
                                          Consumer consumer,
                                          Set<Long> serials,
                                          boolean manifest)
         throws IOException {
 
-        File entCertDir = new File(baseDir.getCanonicalPath(), "entitlement_certificates");
-        entCertDir.mkdir();
-
         for (EntitlementCertificate cert : entCertAdapter.listForConsumer(consumer)) {
             if (manifest && !this.exportRules.canExport(cert.getEntitlement())) {
                 if (log.isDebugEnabled()) {
@@ -322,20 +303,16 @@ public class Exporter {
 
             if ((serials == null) || (serials.contains(cert.getSerial().getId()))) {
                 log.debug("Exporting entitlement certificate: " + cert.getSerial());
-                File file = new File(entCertDir.getCanonicalPath(),
+                Writer writer = out.nextEntry("export/entitlement_certificates/" +
                     cert.getSerial().getId() + ".pem");
-                FileWriter writer = new FileWriter(file);
                 entCert.export(writer, cert);
                 writer.close();
             }
         }
     }
 
-    private void exportEntitlements(File baseDir, Consumer consumer)
+    private void exportEntitlements(SignedArchiveWriter out, Consumer consumer)
         throws IOException, ExportCreationException {
-        File entCertDir = new File(baseDir.getCanonicalPath(), "entitlements");
-        entCertDir.mkdir();
-
         for (Entitlement ent : entitlementCurator.listByConsumer(consumer)) {
             if (ent.getDirty()) {
                 log.error("Entitlement " + ent.getId() + " is marked as dirty.");
@@ -354,10 +331,9 @@ public class Exporter {
             if (log.isDebugEnabled()) {
                 log.debug("Exporting entitlement for product" + ent.getProductId());
             }
-            FileWriter writer = null;
+            Writer writer = null;
             try {
-                File file = new File(entCertDir.getCanonicalPath(), ent.getId() + ".json");
-                writer = new FileWriter(file);
+                writer = out.nextEntry("export/entitlements/" + ent.getId() + ".json");
                 entExporter.export(mapper, writer, ent);
             }
             finally {
@@ -368,10 +344,37 @@ public class Exporter {
         }
     }
 
-    private void exportProducts(File baseDir, Consumer consumer) throws IOException {
-        File productDir = new File(baseDir.getCanonicalPath(), "products");
-        productDir.mkdir();
+    private void exportProducts(SignedArchiveWriter out, Consumer consumer)
+        throws IOException {
+        Map<String, Product> products = listProducts(consumer);
+
+        for (Product product : products.values()) {
+            String productId = product.getId();
+            Writer writer = out.nextEntry("export/products/" + productId + ".json");
+            productExporter.export(mapper, writer, product);
+            writer.close();
+
+            ProductCertificate cert = getProductCertificate(product);
+            if (cert != null) {
+                writer = out.nextEntry("export/products/" + product.getId() + ".pem");
+                productCertExporter.export(writer, cert);
+                writer.close();
+            }
+        }
+    }
+
+    private ProductCertificate getProductCertificate(Product product) {
+        // Real products have a numeric id.
+        if (!StringUtils.isNumeric(product.getId())) {
+            return null;
+        }
+        // XXX: not all product adapters implement getProductCertificate,
+        // so just skip over this if we get null back
+        // XXX: need to decide if the cert should always be in the export, or never.
+        return productAdapter.getProductCertificate(product);
+    }
 
+    private Map<String, Product> listProducts(Consumer consumer) {
         Map<String, Product> products = new HashMap<String, Product>();
         for (Entitlement entitlement : consumer.getEntitlements()) {
 
@@ -390,51 +393,132 @@ public class Exporter {
                 products.put(productId, productAdapter.getProductById(productId));
             }
         }
+        return products;
+    }
 
-        for (Product product : products.values()) {
-            String path = productDir.getCanonicalPath();
-            String productId = product.getId();
-            File file = new File(path, productId + ".json");
-            FileWriter writer = new FileWriter(file);
-            productExporter.export(mapper, writer, product);
+    private void exportConsumerTypes(SignedArchiveWriter out) throws IOException {
+        for (ConsumerType type : consumerTypeCurator.listAll()) {
+            Writer writer = out.nextEntry(
+                "export/consumer_types/" + type.getLabel() + ".json");
+            consumerType.export(mapper, writer, type);
             writer.close();
+        }
+    }
 
-            // Real products have a numeric id.
-            if (StringUtils.isNumeric(product.getId())) {
-                ProductCertificate cert = productAdapter.getProductCertificate(product);
-                // XXX: not all product adapters implement getProductCertificate,
-                // so just skip over this if we get null back
-                // XXX: need to decide if the cert should always be in the export, or never.
-                if (cert != null) {
-                    file = new File(productDir.getCanonicalPath(),
-                        product.getId() + ".pem");
-                    writer = new FileWriter(file);
-                    productCertExporter.export(writer, cert);
-                    writer.close();
-                }
+    private void exportRules(SignedArchiveWriter out) throws IOException {
+        Writer writer = out.nextEntry("export/rules/rules.js");
+        rules.export(writer);
+        writer.close();
+    }
+
+    /**
+     * Writes the export zip straight into the consumer_export.zip entry of the
+     * signed archive, signing its bytes on the way through, then appends the
+     * signature entry. Nothing is written to disk or read back.
+     */
+    private static class SignedArchiveWriter {
+        private ZipOutputStream archive;
+        private ZipOutputStream export;
+        private Signature signature;
+
+        SignedArchiveWriter(OutputStream dest, Signature signature,
+            Consumer consumer) throws IOException {
+            this.signature = signature;
+            archive = new ZipOutputStream(new BufferedOutputStream(dest, BUFFER_SIZE));
+            archive.setComment("signed Candlepin export for " + consumer.getUuid());
+            archive.putNextEntry(new ZipEntry("consumer_export.zip"));
+            export = new ZipOutputStream(new SigningOutputStream(archive, signature));
+            export.setComment("Candlepin export for " + consumer.getUuid());
+        }
+
+        /**
+         * Starts the next file of the export. The writer must be closed before
+         * the next entry is started.
+         *
+         * @param name path of the file within the export
+         * @return writer for the file contents
+         */
+        Writer nextEntry(String name) throws IOException {
+            log.debug("Adding file to archive: " + name);
+            export.putNextEntry(new ZipEntry(name));
+            return new OutputStreamWriter(new EntryOutputStream(export));
+        }
+
+        void close() throws IOException {
+            export.close();
+            archive.closeEntry();
+
+            log.debug("Adding signature to archive.");
+            archive.putNextEntry(new ZipEntry("signature"));
+            try {
+                archive.write(signature.sign());
             }
+            catch (SignatureException e) {
+                throw new IOException("Unable to sign export", e);
+            }
+            archive.closeEntry();
+            archive.close();
         }
     }
 
-    private void exportConsumerTypes(File baseDir) throws IOException {
-        File typeDir = new File(baseDir.getCanonicalPath(), "consumer_types");
-        typeDir.mkdir();
+    /**
+     * Feeds everything written through to the signature. Closing it leaves
+     * the underlying stream open.
+     */
+    private static class SigningOutputStream extends FilterOutputStream {
+        private Signature signature;
 
-        for (ConsumerType type : consumerTypeCurator.listAll()) {
-            File file = new File(typeDir.getCanonicalPath(), type.getLabel() + ".json");
-            FileWriter writer = new FileWriter(file);
-            consumerType.export(mapper, writer, type);
-            writer.close();
+        SigningOutputStream(OutputStream out, Signature signature) {
+            super(out);
+            this.signature = signature;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                signature.update((byte) b);
+            }
+            catch (SignatureException e) {
+                throw new IOException("Unable to sign export", e);
+            }
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                signature.update(b, off, len);
+            }
+            catch (SignatureException e) {
+                throw new IOException("Unable to sign export", e);
+            }
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
         }
     }
 
-    private void exportRules(File baseDir) throws IOException {
-        File file = new File(baseDir.getCanonicalPath(), "rules");
-        file.mkdir();
+    /**
+     * The exporters close their writers (and jackson closes its target), which
+     * must end the current entry rather than the whole zip.
+     */
+    private static class EntryOutputStream extends FilterOutputStream {
+
+        EntryOutputStream(OutputStream out) {
+            super(out);
+        }
 
-        file = new File(file.getCanonicalPath(), "rules.js");
-        FileWriter writer = new FileWriter(file);
-        rules.export(writer);
-        writer.close();
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the next entry or the end of the export closes the zip entry
+        }
     }
 }
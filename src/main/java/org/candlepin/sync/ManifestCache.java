@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.sync;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * ManifestCache
+ *
+ * Keeps the most recently signed manifest of each distributor consumer, so
+ * downloading it again does not rebuild and re-sign the archive. Each manifest
+ * is stored with the fingerprint of the export it was built from, see
+ * {@link Exporter#getFullExportFingerprint(Consumer)}, and is only served while
+ * the fingerprint still matches. Binds, unbinds and certificate regeneration
+ * drop the consumer's manifest right away.
+ *
+ * The cache is bounded by the total size of the manifests held, least recently
+ * used first out. Manifests which spilled to disk while being built are never
+ * cached.
+ *
+ * A cached manifest keeps the created date recorded in its meta.json, so an
+ * owner which already imported it gets a MANIFEST_SAME conflict when importing
+ * the repeated download, see Importer.
+ */
+@Singleton
+public class ManifestCache {
+
+    // guarded by itself
+    private final Map<String, CachedManifest> manifests;
+    private final long maxSize;
+    // guarded by manifests
+    private long size;
+
+    @Inject
+    public ManifestCache(Config config) {
+        this.maxSize = config.getInt(ConfigProperties.SYNC_MANIFEST_CACHE_MAX);
+        this.manifests = new LinkedHashMap<String, CachedManifest>(16, 0.75f, true);
+    }
+
+    /**
+     * @return true if manifests should be cached.
+     */
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * @param consumerUuid uuid of the exported consumer
+     * @param fingerprint fingerprint of the consumer's current export
+     * @return the cached manifest, or null if there is none for this
+     * fingerprint.
+     */
+    public CachedManifest get(String consumerUuid, String fingerprint) {
+        synchronized (manifests) {
+            CachedManifest manifest = manifests.get(consumerUuid);
+            if (manifest == null) {
+                return null;
+            }
+            if (!manifest.getFingerprint().equals(fingerprint)) {
+                remove(consumerUuid);
+                return null;
+            }
+            return manifest;
+        }
+    }
+
+    /**
+     * Caches a newly built manifest if it is small enough.
+     *
+     * @param consumerUuid uuid of the exported consumer
+     * @param fingerprint fingerprint of the export the archive was built from
+     * @param archive the signed archive
+     * @return the manifest to send to the client, either the cached copy or
+     * the archive itself.
+     */
+    public StreamingOutput put(String consumerUuid, String fingerprint,
+        ExportArchive archive) {
+        byte[] data = archive.getData();
+        if (!isEnabled() || data == null || data.length > maxSize) {
+            return archive;
+        }
+        archive.delete();
+
+        CachedManifest manifest = new CachedManifest(fingerprint, archive.getName(),
+            data);
+        synchronized (manifests) {
+            remove(consumerUuid);
+            manifests.put(consumerUuid, manifest);
+            size += data.length;
+
+            Iterator<CachedManifest> eldest = manifests.values().iterator();
+            while (size > maxSize && eldest.hasNext()) {
+                size -= eldest.next().getSize();
+                eldest.remove();
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Drops the consumer's manifest, if one is cached.
+     *
+     * @param consumer consumer whose entitlements changed
+     */
+    public void invalidate(Consumer consumer) {
+        if (!isEnabled() || consumer == null) {
+            return;
+        }
+        synchronized (manifests) {
+            remove(consumer.getUuid());
+        }
+    }
+
+    /**
+     * @return total bytes of the cached manifests.
+     */
+    public long getSize() {
+        synchronized (manifests) {
+            return size;
+        }
+    }
+
+    // caller holds the lock on manifests
+    private void remove(String consumerUuid) {
+        CachedManifest removed = manifests.remove(consumerUuid);
+        if (removed != null) {
+            size -= removed.getSize();
+        }
+    }
+
+    /**
+     * CachedManifest - an immutable, signed manifest which can be written out
+     * any number of times.
+     */
+    public static class CachedManifest implements StreamingOutput {
+        private final String fingerprint;
+        private final String name;
+        private final byte[] data;
+
+        CachedManifest(String fingerprint, String name, byte[] data) {
+            this.fingerprint = fingerprint;
+            this.name = name;
+            this.data = data;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getSize() {
+            return data.length;
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            out.write(data);
+            out.flush();
+        }
+    }
+}
@@ -14,8 +14,8 @@
  */
 package org.candlepin.sync;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 
 import org.candlepin.model.ProductCertificate;
 
@@ -24,7 +24,7 @@ import org.candlepin.model.ProductCertificate;
  */
 public class ProductCertExporter {
 
-    public void export(FileWriter writer, ProductCertificate productCert)
+    public void export(Writer writer, ProductCertificate productCert)
         throws IOException {
         writer.write(productCert.getCert());
     }
@@ -16,6 +16,7 @@ package org.candlepin.sync;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Date;
 
 import org.candlepin.model.RulesCurator;
 
@@ -37,4 +38,11 @@ public class RulesExporter {
         writer.write(rulesCurator.getRules().getRules());
     }
 
+    /**
+     * @return when the exported rules last changed.
+     */
+    Date getUpdated() {
+        return rulesCurator.getUpdated();
+    }
+
 }
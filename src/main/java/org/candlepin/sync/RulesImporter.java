@@ -21,6 +21,7 @@ import java.io.Reader;
 import org.apache.log4j.Logger;
 import org.candlepin.model.Rules;
 import org.candlepin.model.RulesCurator;
+import org.candlepin.policy.js.JsRunnerProvider;
 
 import com.google.inject.Inject;
 
@@ -31,17 +32,21 @@ public class RulesImporter {
     private static Logger log = Logger.getLogger(RulesImporter.class);
 
     private RulesCurator curator;
+    private JsRunnerProvider jsProvider;
 
     @Inject
-    RulesImporter(RulesCurator curator) {
+    RulesImporter(RulesCurator curator, JsRunnerProvider jsProvider) {
         this.curator = curator;
+        this.jsProvider = jsProvider;
     }
 
     public Rules importObject(Reader reader, String candlepinVersion) throws IOException {
         log.debug("Importing rules file");
         new BufferedReader(reader);
 
-        return curator.update(new Rules(StringFromReader.asString(reader),
+        Rules rules = curator.update(new Rules(StringFromReader.asString(reader),
             candlepinVersion));
+        jsProvider.invalidate();
+        return rules;
     }
 }
@@ -15,8 +15,11 @@
 package org.candlepin.sync;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.io.IOException;
 
+import org.apache.log4j.Logger;
+
 import org.codehaus.jackson.map.AnnotationIntrospector;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.SerializationConfig;
@@ -33,6 +36,7 @@ import org.candlepin.jackson.ExportBeanPropertyFilter;
  * SyncUtils
  */
 class SyncUtils {
+    private static Logger log = Logger.getLogger(SyncUtils.class);
 
     private final File baseDir;
     SyncUtils(Config config) {
@@ -83,4 +87,34 @@ class SyncUtils {
 
         return (tmp);
     }
+
+    File makeTempFile(String baseName) throws IOException {
+        return File.createTempFile(baseName, Long.toString(System.nanoTime()),
+            baseDir);
+    }
+
+    /**
+     * Removes temp files made by {@link #makeTempFile(String)} which are older
+     * than maxAge, i.e. were never cleaned up by whoever made them.
+     *
+     * @param baseName base name the files were made with
+     * @param maxAge age in milliseconds after which a file is abandoned
+     */
+    void deleteStaleTempFiles(final String baseName, long maxAge) {
+        final long cutoff = System.currentTimeMillis() - maxAge;
+        File[] stale = baseDir.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().startsWith(baseName) &&
+                    file.lastModified() < cutoff;
+            }
+        });
+        if (stale == null) {
+            return;
+        }
+        for (File file : stale) {
+            if (!file.delete()) {
+                log.warn("Unable to delete stale temp file: " + file.getAbsolutePath());
+            }
+        }
+    }
 }
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import java.util.BitSet;
+
+/**
+ * BloomFilter
+ *
+ * A fixed size set of strings which can answer "definitely not present" without
+ * holding the strings themselves. Membership tests can return false positives at
+ * roughly the rate the filter was sized for, but never false negatives.
+ *
+ * Not thread safe.
+ */
+public class BloomFilter {
+
+    private final BitSet bits;
+    private final int size;
+    private final int hashes;
+    private final int capacity;
+    private int count;
+
+    /**
+     * @param capacity number of strings the filter is sized for.
+     * @param falsePositiveRate acceptable false positive rate once the filter holds
+     *        capacity strings, between 0 and 1.
+     */
+    public BloomFilter(int capacity, double falsePositiveRate) {
+        this.capacity = Math.max(capacity, 1);
+        double ln2 = Math.log(2);
+        this.size = Math.max(64,
+            (int) Math.ceil(-this.capacity * Math.log(falsePositiveRate) / (ln2 * ln2)));
+        this.hashes = Math.max(1, (int) Math.round((double) size / this.capacity * ln2));
+        this.bits = new BitSet(size);
+    }
+
+    public void add(String value) {
+        long hash = hash64(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            bits.set(index(h1 + i * h2));
+        }
+        count++;
+    }
+
+    /**
+     * @return false if the value was definitely never added.
+     */
+    public boolean mightContain(String value) {
+        long hash = hash64(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            if (!bits.get(index(h1 + i * h2))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true once more strings were added than the filter was sized for.
+     */
+    public boolean isFull() {
+        return count > capacity;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    private int index(int hash) {
+        return (hash & Integer.MAX_VALUE) % size;
+    }
+
+    /*
+     * 64 bit FNV-1a, split into the two hashes used for double hashing.
+     */
+    private static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Hex;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * ContentExtensionCache
+ *
+ * Bounded, least recently used cache of encoded V3 content extensions. Most
+ * entitlements share one of a small number of content sets, so the path tree
+ * and huffman coding only need to be worked out once per distinct set.
+ *
+ * Entries are keyed by a digest of the content urls being encoded, after the
+ * content prefix and environment have been applied. The key changes with the
+ * content itself, so products or content being updated never return a stale
+ * extension, the old entry just ages out.
+ */
+@Singleton
+public class ContentExtensionCache {
+
+    // guarded by itself
+    private final Map<String, byte[]> extensions;
+    private final int maxSize;
+
+    @Inject
+    public ContentExtensionCache(Config config) {
+        this.maxSize = config.getInt(ConfigProperties.CONTENT_EXTENSION_CACHE_MAX);
+        this.extensions = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return true if content extensions should be cached.
+     */
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * @param key fingerprint of the content urls
+     * @return the cached extension value, or null if there is none.
+     */
+    public byte[] get(String key) {
+        synchronized (extensions) {
+            return extensions.get(key);
+        }
+    }
+
+    /**
+     * @param key fingerprint of the content urls
+     * @param value encoded extension value, must not be modified afterwards.
+     */
+    public void put(String key, byte[] value) {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (extensions) {
+            extensions.put(key, value);
+        }
+    }
+
+    /**
+     * @return number of cached extensions.
+     */
+    public int size() {
+        synchronized (extensions) {
+            return extensions.size();
+        }
+    }
+
+    /**
+     * The encoding does not depend on the order of the urls, so neither does
+     * the fingerprint.
+     *
+     * @param paths content urls to be encoded
+     * @return a stable fingerprint of the urls
+     */
+    public static String fingerprint(Collection<String> paths) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        List<String> sorted = new ArrayList<String>(paths);
+        Collections.sort(sorted);
+        try {
+            for (String path : sorted) {
+                md.update(path.getBytes("UTF-8"));
+                md.update((byte) 0);
+            }
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        return new String(Hex.encodeHex(md.digest()));
+    }
+}
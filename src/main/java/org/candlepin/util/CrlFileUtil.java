@@ -18,13 +18,16 @@ import org.candlepin.pki.PKIUtility;
 
 import com.google.inject.Inject;
 
+import org.apache.commons.codec.binary.Base64OutputStream;
 import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
@@ -35,6 +38,8 @@ import java.security.cert.X509CRL;
  */
 public class CrlFileUtil {
     private static Logger log = Logger.getLogger(CrlFileUtil.class);
+    private static final String PEM_HEADER = "-----BEGIN X509 CRL-----\n";
+    private static final String PEM_FOOTER = "-----END X509 CRL-----\n";
     private PKIUtility pkiUtility;
 
     @Inject
@@ -85,6 +90,44 @@ public class CrlFileUtil {
         }
     }
 
+    /**
+     * Writes an already encoded CRL to disk.
+     *
+     * @param file to the CRL
+     * @param encoded the PEM encoded CRL
+     * @throws IOException thrown if there's general I/O problems
+     */
+    public void writeCRLFile(File file, byte[] encoded) throws IOException {
+        log.info("Completed generating CRL. Writing it to disk");
+        FileUtils.writeByteArrayToFile(file, encoded);
+    }
+
+    /**
+     * Wraps the given stream so that the DER encoded CRL written to it is PEM
+     * encoded on the fly. The PEM footer is written when the returned stream is
+     * closed, which also closes the given stream.
+     *
+     * @param out stream receiving the PEM encoded CRL
+     * @return stream accepting the DER encoded CRL
+     * @throws IOException thrown if there's general I/O problems
+     */
+    public static OutputStream pemEncodingStream(OutputStream out)
+        throws IOException {
+        out.write(PEM_HEADER.getBytes());
+        // the encoder does not chunk, PemLineOutputStream wraps the lines
+        return new Base64OutputStream(new PemLineOutputStream(out), true, 0,
+            "\n".getBytes());
+    }
+
+    /**
+     * @param crl the CRL to encode
+     * @return the PEM encoding of the given CRL
+     * @throws IOException thrown if there's a problem encoding the CRL
+     */
+    public byte[] getPemEncoded(X509CRL crl) throws IOException {
+        return pkiUtility.getPemEncoded(crl);
+    }
+
     public byte[] writeCRLFile(File file, X509CRL crl)
         throws CRLException, CertificateException, IOException {
 
@@ -110,4 +153,35 @@ public class CrlFileUtil {
 
         return encoded;
     }
+
+    /**
+     * Breaks base64 output into 64 character lines and appends the PEM footer
+     * on close.
+     */
+    private static class PemLineOutputStream extends FilterOutputStream {
+        private static final int LINE_LENGTH = 64;
+        private int column;
+
+        public PemLineOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (++column == LINE_LENGTH) {
+                out.write('\n');
+                column = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (column > 0) {
+                out.write('\n');
+            }
+            out.write(PEM_FOOTER.getBytes());
+            super.close();
+        }
+    }
 }
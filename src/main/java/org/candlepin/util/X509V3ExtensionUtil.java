@@ -21,13 +21,16 @@ import java.io.UnsupportedEncodingException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
@@ -64,18 +67,22 @@ public class X509V3ExtensionUtil extends X509Util{
     private static Logger log = Logger.getLogger(X509V3ExtensionUtil.class);
     private Config config;
     private EntitlementCurator entCurator;
+    private ContentExtensionCache contentCache;
     private String thisVersion = "3.2";
 
-    private long pathNodeId = 0;
-    private long huffNodeId = 0;
+    // shared by concurrent requests, node ids only need to be unique
+    private AtomicLong pathNodeId = new AtomicLong();
+    private AtomicLong huffNodeId = new AtomicLong();
     private static final Object END_NODE = new Object();
     private static boolean treeDebug = false;
 
     @Inject
-    public X509V3ExtensionUtil(Config config, EntitlementCurator entCurator) {
+    public X509V3ExtensionUtil(Config config, EntitlementCurator entCurator,
+        ContentExtensionCache contentCache) {
         // Output everything in UTC
         this.config = config;
         this.entCurator = entCurator;
+        this.contentCache = contentCache;
     }
 
     public Set<X509ExtensionWrapper> getExtensions(Set<Product> products,
@@ -98,12 +105,23 @@ public class X509V3ExtensionUtil extends X509Util{
         Entitlement ent, String contentPrefix,
         Map<String, EnvironmentContent> promotedContent,
         org.candlepin.model.Subscription sub) throws IOException {
+        return getByteExtensions(createEntitlementBodyContent(products, ent,
+            contentPrefix, promotedContent, sub));
+    }
+
+    /**
+     * Builds the huffman encoded content extension from an entitlement body
+     * which has already been built, only its products are used.
+     *
+     * @param eb entitlement body for the certificate
+     * @return the entitlement data extension
+     * @throws IOException if the content cannot be encoded
+     */
+    public Set<X509ByteExtensionWrapper> getByteExtensions(EntitlementBody eb)
+        throws IOException {
         Set<X509ByteExtensionWrapper> toReturn =
             new LinkedHashSet<X509ByteExtensionWrapper>();
 
-        EntitlementBody eb = createEntitlementBodyContent(products, ent,
-            contentPrefix, promotedContent, sub);
-
         X509ByteExtensionWrapper bodyExtension =
             new X509ByteExtensionWrapper(OIDUtil.REDHAT_OID + "." +
                 OIDUtil.TOPLEVEL_NAMESPACES.get(OIDUtil.ENTITLEMENT_DATA_KEY),
@@ -119,16 +137,42 @@ public class X509V3ExtensionUtil extends X509Util{
         org.candlepin.model.Subscription sub)
         throws UnsupportedEncodingException, IOException {
 
-        EntitlementBody map = createEntitlementBody(products, ent,
-            contentPrefix, promotedContent, sub);
+        return createEntitlementDataPayload(createEntitlementBody(products, ent,
+            contentPrefix, promotedContent, sub));
+    }
 
-        String json = toJson(map);
+    /**
+     * @param eb entitlement body for the certificate
+     * @return the deflated json encoding of the entitlement body
+     * @throws IOException if the payload cannot be compressed
+     */
+    public byte[] createEntitlementDataPayload(EntitlementBody eb)
+        throws IOException {
+        String json = toJson(eb);
         return processPayload(json);
     }
 
 
     private byte[] retreiveContentValue(EntitlementBody eb) throws IOException {
         List<Content> contentList = getContentList(eb);
+        if (!contentCache.isEnabled()) {
+            return encodeContent(contentList);
+        }
+
+        List<String> paths = new ArrayList<String>(contentList.size());
+        for (Content c : contentList) {
+            paths.add(c.getPath());
+        }
+        String key = ContentExtensionCache.fingerprint(paths);
+        byte[] value = contentCache.get(key);
+        if (value == null) {
+            value = encodeContent(contentList);
+            contentCache.put(key, value);
+        }
+        return value;
+    }
+
+    private byte[] encodeContent(List<Content> contentList) throws IOException {
         PathNode treeRoot = makePathTree(contentList, new PathNode());
         List<String> nodeStrings = orderStrings(treeRoot);
         if (nodeStrings.size() == 0) {
@@ -538,14 +582,13 @@ public class X509V3ExtensionUtil extends X509Util{
 
     private void condenseSubTreeNodes(PathNode location) {
         // "equivalent" parents are merged
-        List<PathNode> parentResult = new ArrayList<PathNode>();
-        parentResult.addAll(location.getParents());
+        Set<PathNode> removed = new HashSet<PathNode>();
         for (PathNode parent1 : location.getParents()) {
-            if (!parentResult.contains(parent1)) {
+            if (removed.contains(parent1)) {
                 continue;
             }
             for (PathNode parent2 : location.getParents()) {
-                if (!parentResult.contains(parent2) ||
+                if (removed.contains(parent2) ||
                     parent2.getId() == parent1.getId()) {
                     continue;
                 }
@@ -579,10 +622,16 @@ public class X509V3ExtensionUtil extends X509Util{
                             }
                         }
                     }
-                    parentResult.remove(toRemove);
+                    removed.add(toRemove);
                 }
             }
         }
+        List<PathNode> parentResult = new ArrayList<PathNode>();
+        for (PathNode pn : location.getParents()) {
+            if (!removed.contains(pn)) {
+                parentResult.add(pn);
+            }
+        }
         location.setParents(parentResult);
         for (PathNode pn : location.getParents()) {
             condenseSubTreeNodes(pn);
@@ -592,27 +641,20 @@ public class X509V3ExtensionUtil extends X509Util{
     public List<String> orderStrings(PathNode parent) throws IOException {
         List<String> parts = new ArrayList<String>();
         // walk tree to make string map
-        Map<String, Integer> segments =  new HashMap<String, Integer>();
+        final Map<String, Integer> segments =  new HashMap<String, Integer>();
         Set<PathNode> nodes =  new HashSet<PathNode>();
         buildSegments(segments, nodes, parent);
         for (String part : segments.keySet()) {
             if (!part.equals("")) {
-                int count = segments.get(part);
-                if (parts.size() == 0) {
-                    parts.add(part);
-                }
-                else {
-                    int pos = parts.size();
-                    for (int i = 0; i < parts.size(); i++) {
-                        if (count < segments.get(parts.get(i))) {
-                            pos = i;
-                            break;
-                        }
-                    }
-                    parts.add(pos, part);
-                }
+                parts.add(part);
             }
         }
+        // least used first, the sort is stable so ties keep their map order
+        Collections.sort(parts, new Comparator<String>() {
+            public int compare(String part1, String part2) {
+                return segments.get(part1).compareTo(segments.get(part2));
+            }
+        });
         if (treeDebug) {
             log.debug("Parts List: " + parts);
         }
@@ -635,26 +677,16 @@ public class X509V3ExtensionUtil extends X509Util{
     }
 
     private List<PathNode> orderNodes(PathNode treeRoot) {
-        List<PathNode> result = new ArrayList<PathNode>();
-
-        // walk tree to make string map
-        Set<PathNode> nodes =  getPathNodes(treeRoot);
-        for (PathNode pn : nodes) {
-            int count = pn.getParents().size();
-            if (nodes.size() == 0) {
-                nodes.add(pn);
-            }
-            else {
-                int pos = result.size();
-                for (int i = 0; i < result.size(); i++) {
-                    if (count <= result.get(i).getParents().size()) {
-                        pos = i;
-                        break;
-                    }
-                }
-                result.add(pos, pn);
+        List<PathNode> result = new ArrayList<PathNode>(getPathNodes(treeRoot));
+
+        // fewest parents first, nodes with the same number of parents are in
+        // the reverse of set order.
+        Collections.reverse(result);
+        Collections.sort(result, new Comparator<PathNode>() {
+            public int compare(PathNode node1, PathNode node2) {
+                return node1.getParents().size() - node2.getParents().size();
             }
-        }
+        });
         if (treeDebug) {
             log.debug(result);
         }
@@ -663,13 +695,19 @@ public class X509V3ExtensionUtil extends X509Util{
 
     private Set<PathNode> getPathNodes(PathNode treeRoot) {
         Set<PathNode> nodes = new HashSet<PathNode>();
-        nodes.add(treeRoot);
-        for (NodePair np : treeRoot.getChildren()) {
-            nodes.addAll(getPathNodes(np.getConnection()));
-        }
+        addPathNodes(nodes, treeRoot);
         return nodes;
     }
 
+    private void addPathNodes(Set<PathNode> nodes, PathNode node) {
+        // nodes are shared once the tree is condensed, only walk each once
+        if (nodes.add(node)) {
+            for (NodePair np : node.getChildren()) {
+                addPathNodes(nodes, np.getConnection());
+            }
+        }
+    }
+
     private byte[] makeNodeDictionary(HuffNode stringParent,
         HuffNode pathNodeParent, List<PathNode> pathNodes)
         throws UnsupportedEncodingException, IOException {
@@ -695,36 +733,32 @@ public class X509V3ExtensionUtil extends X509Util{
         else {
             baos.write(nodeSize);
         }
-        StringBuffer bits = new StringBuffer();
-        String endNodeLocation = findHuffPath(stringParent, END_NODE);
+        Map<Object, String> stringCodes = getHuffCodes(stringParent);
+        Map<Object, String> pathNodeCodes = getHuffCodes(pathNodeParent);
+        StringBuilder bits = new StringBuilder();
+        String endNodeLocation = stringCodes.get(END_NODE);
         for (PathNode pn : pathNodes) {
             for (NodePair np : pn.getChildren()) {
-                bits.append(findHuffPath(stringParent, np.getName()));
-                bits.append(findHuffPath(pathNodeParent, np.getConnection()));
+                bits.append(stringCodes.get(np.getName()));
+                bits.append(pathNodeCodes.get(np.getConnection()));
             }
             bits.append(endNodeLocation);
-            while (bits.length() >= 8) {
-                int next = 0;
-                for (int i = 0; i < 8; i++) {
-                    next = (byte) next << 1;
-                    if (bits.charAt(i) == '1') {
-                        next++;
-                    }
-                }
-                baos.write(next);
-                bits.delete(0, 8);
-            }
         }
 
-        if (bits.length() > 0) {
-            int next = 0;
-            for (int i = 0;  i < 8; i++) {
-                next = (byte) next << 1;
-                if (i < bits.length() && bits.charAt(i) == '1') {
-                    next++;
-                }
+        // pack the bits, the last byte is padded with zeros
+        int next = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            next = next << 1;
+            if (bits.charAt(i) == '1') {
+                next++;
             }
-            baos.write(next);
+            if (i % 8 == 7) {
+                baos.write(next);
+                next = 0;
+            }
+        }
+        if (bits.length() % 8 != 0) {
+            baos.write(next << (8 - bits.length() % 8));
         }
         byte[] result = baos.toByteArray();
         if (treeDebug) {
@@ -747,6 +781,32 @@ public class X509V3ExtensionUtil extends X509Util{
             (byte) value};
     }
 
+    /**
+     * @param trie huffman trie
+     * @return the code of every value in the trie, a trie holding a single
+     * value encodes it in no bits at all.
+     */
+    private Map<Object, String> getHuffCodes(HuffNode trie) {
+        Map<Object, String> codes = new HashMap<Object, String>();
+        addHuffCodes(codes, trie, "");
+        return codes;
+    }
+
+    private void addHuffCodes(Map<Object, String> codes, HuffNode node, String code) {
+        if (node.getLeft() == null && node.getRight() == null) {
+            if (node.getValue() != null) {
+                codes.put(node.getValue(), code);
+            }
+            return;
+        }
+        if (node.getLeft() != null) {
+            addHuffCodes(codes, node.getLeft(), code + "0");
+        }
+        if (node.getRight() != null) {
+            addHuffCodes(codes, node.getRight(), code + "1");
+        }
+    }
+
     public String findHuffPath(HuffNode trie, Object need) {
         HuffNode left = trie.getLeft();
         HuffNode right = trie.getRight();
@@ -827,32 +887,30 @@ public class X509V3ExtensionUtil extends X509Util{
         if (nodesList.get(0).getValue() instanceof PathNode) {
             nodesList.remove(0);
         }
-        while (nodesList.size() > 1) {
-            int node1 = findSmallest(-1, nodesList);
-            int node2 = findSmallest(node1, nodesList);
-            HuffNode hn1 = nodesList.get(node1);
-            HuffNode hn2 = nodesList.get(node2);
-            HuffNode merged = mergeNodes(hn1, hn2);
-            nodesList.remove(hn1);
-            nodesList.remove(hn2);
-            nodesList.add(merged);
+
+        // The two lightest nodes are merged until one is left. Ties go to the
+        // node which has been waiting longest, merged nodes joining at the back,
+        // the decoder has to rebuild exactly the same trie from the dictionary.
+        PriorityQueue<HuffNode> queue = new PriorityQueue<HuffNode>(
+            Math.max(1, nodesList.size()), HUFF_NODE_ORDER);
+        int sequence = 0;
+        for (HuffNode node : nodesList) {
+            node.sequence = sequence++;
+            queue.add(node);
         }
-        if (treeDebug) {
-            printTrie(nodesList.get(0), 0);
+        while (queue.size() > 1) {
+            HuffNode merged = mergeNodes(queue.poll(), queue.poll());
+            merged.sequence = sequence++;
+            queue.add(merged);
         }
-        return nodesList.get(0);
-    }
 
-    private int findSmallest(int exclude, List<HuffNode> nodes) {
-        int smallest = -1;
-        for (int index = 0; index < nodes.size(); index++) {
-            if (index == exclude) { continue; }
-            if (smallest == -1 || nodes.get(index).getWeight() <
-                nodes.get(smallest).getWeight()) {
-                smallest = index;
-            }
+        HuffNode trie = queue.poll();
+        nodesList.clear();
+        nodesList.add(trie);
+        if (treeDebug) {
+            printTrie(trie, 0);
         }
-        return smallest;
+        return trie;
     }
 
     private HuffNode mergeNodes(HuffNode node1, HuffNode node2) {
@@ -874,15 +932,14 @@ public class X509V3ExtensionUtil extends X509Util{
         ios.finish();
         long read = i.getBytesRead();
 
-        String name = "";
+        byte[] strings = baos.toByteArray();
+        int start = 0;
         int weight = 1;
-        for (byte b : baos.toByteArray()) {
-            if (b == '\0') {
+        for (int k = 0; k < strings.length; k++) {
+            if (strings[k] == '\0') {
+                String name = new String(strings, start, k - start, "UTF-8");
                 pathDictionary.add(new HuffNode(name, weight++));
-                name = "";
-            }
-            else {
-                name += (char) b;
+                start = k + 1;
             }
         }
         pathDictionary.add(new HuffNode(END_NODE, weight));
@@ -890,7 +947,7 @@ public class X509V3ExtensionUtil extends X509Util{
         triePathDictionary.addAll(pathDictionary);
         HuffNode pathTrie = makeTrie(triePathDictionary);
 
-        StringBuffer nodeBits = new StringBuffer();
+        StringBuilder nodeBits = new StringBuilder();
         ByteArrayInputStream bais = new ByteArrayInputStream(payload,
             (new Long(read)).intValue(), (new Long(payload.length - read).intValue()));
         int value = bais.read();
@@ -960,55 +1017,47 @@ public class X509V3ExtensionUtil extends X509Util{
     }
 
     private Set<PathNode> populatePathNodes(List<HuffNode> nodeDictionary,
-        HuffNode pathTrie, HuffNode nodeTrie, StringBuffer nodeBits) {
+        HuffNode pathTrie, HuffNode nodeTrie, CharSequence nodeBits) {
         Set<PathNode> pathNodes = new HashSet<PathNode>();
+        int pos = 0;
+        int length = nodeBits.length();
         for (HuffNode node : nodeDictionary) {
-            pathNodes.add((PathNode) node.getValue());
-            boolean stillNode = true;
-            while (stillNode) {
-                // get first child name
-                // if its END_NODE we are done
-                String nameValue = null;
-                StringBuffer nameBits = new StringBuffer();
-                while (nameValue == null && stillNode) {
-                    nameBits.append(nodeBits.charAt(0));
-                    nodeBits.deleteCharAt(0);
-                    Object lookupValue = findHuffNodeValueByBits(pathTrie,
-                        nameBits.toString());
-                    if (lookupValue != null) {
-                        if (lookupValue.equals(END_NODE)) {
-                            stillNode = false;
-                            break;
-                        }
-                        nameValue = (String) lookupValue;
-                    }
-                    if (nodeBits.length() == 0) {
-                        stillNode = false;
-                    }
+            PathNode parent = (PathNode) node.getValue();
+            pathNodes.add(parent);
+            while (pos < length) {
+                // child name, END_NODE once the node has no more children
+                HuffNode name = pathTrie;
+                while (name.getValue() == null && pos < length) {
+                    name = nextHuffNode(name, nodeBits.charAt(pos++));
+                }
+                if (name.getValue() == null || name.getValue().equals(END_NODE) ||
+                    pos == length) {
+                    break;
                 }
 
-                PathNode nodeValue = null;
-                StringBuffer pathBits = new StringBuffer();
-                while (nodeValue == null && stillNode) {
-                    pathBits.append(nodeBits.charAt(0));
-                    nodeBits.deleteCharAt(0);
-                    PathNode lookupValue = (PathNode) findHuffNodeValueByBits(nodeTrie,
-                        pathBits.toString());
-                    if (lookupValue != null) {
-                        nodeValue = lookupValue;
-                        nodeValue.addParent((PathNode) node.getValue());
-                        ((PathNode) node.getValue()).addChild(
-                            new NodePair(nameValue, nodeValue));
-                    }
-                    if (nodeBits.length() == 0) {
-                        stillNode = false;
-                    }
+                HuffNode child = nodeTrie;
+                while (child.getValue() == null && pos < length) {
+                    child = nextHuffNode(child, nodeBits.charAt(pos++));
+                }
+                if (child.getValue() == null) {
+                    break;
                 }
+                PathNode childNode = (PathNode) child.getValue();
+                childNode.addParent(parent);
+                parent.addChild(new NodePair((String) name.getValue(), childNode));
             }
         }
         return pathNodes;
     }
 
+    private HuffNode nextHuffNode(HuffNode node, char bit) {
+        HuffNode next = bit == '0' ? node.getLeft() : node.getRight();
+        if (next == null) {
+            throw new RuntimeException("Encoded path not in trie");
+        }
+        return next;
+    }
+
     private void makeURLs(PathNode root, List<String> urls, StringBuffer aPath) {
         if (root.getChildren().size() == 0) {
             urls.add(aPath.toString());
@@ -1031,12 +1080,24 @@ public class X509V3ExtensionUtil extends X509Util{
         return baos.toByteArray();
     }
 
+    private static final Comparator<HuffNode> HUFF_NODE_ORDER =
+        new Comparator<HuffNode>() {
+            public int compare(HuffNode node1, HuffNode node2) {
+                if (node1.weight != node2.weight) {
+                    return node1.weight < node2.weight ? -1 : 1;
+                }
+                return node1.sequence - node2.sequence;
+            }
+        };
+
     /**
      *
      * HuffNode
      */
     public class HuffNode {
         private long id = 0;
+        // position in the merge order, only used while building the trie
+        private int sequence = 0;
         private Object value = null;
         private int weight = 0;
         private HuffNode left = null;
@@ -1047,12 +1108,12 @@ public class X509V3ExtensionUtil extends X509Util{
             this.weight = weight;
             this.left = left;
             this.right = right;
-            this.id = huffNodeId++;
+            this.id = huffNodeId.getAndIncrement();
         }
         public HuffNode(Object value, int weight) {
             this.value = value;
             this.weight = weight;
-            this.id = huffNodeId++;
+            this.id = huffNodeId.getAndIncrement();
         }
 
         public Object getValue() {
@@ -1095,7 +1156,7 @@ public class X509V3ExtensionUtil extends X509Util{
         private List<PathNode> parents = new ArrayList<PathNode>();
 
         public PathNode() {
-            this.id = pathNodeId++;
+            this.id = pathNodeId.getAndIncrement();
         }
 
         public long getId() {
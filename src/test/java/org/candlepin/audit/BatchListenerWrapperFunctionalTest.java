@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.List;
+
+import org.candlepin.auth.PrincipalData;
+import org.candlepin.test.DatabaseTestFixture;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientSession;
+import org.junit.Test;
+
+/**
+ * BatchListenerWrapperFunctionalTest - batches stored through the real
+ * DatabaseListener.
+ */
+public class BatchListenerWrapperFunctionalTest extends DatabaseTestFixture {
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void badEventIsIsolatedFromItsBatch() throws Exception {
+        ClientSession session = mock(ClientSession.class);
+        ClientConsumer consumer = mock(ClientConsumer.class);
+        ClientMessage good = message(eventJson("good", "entity"));
+        // entityId is not nullable, so this one can never be stored
+        ClientMessage bad = message(eventJson("bad", null));
+        when(consumer.receive(anyLong())).thenReturn(good, bad);
+        BatchListenerWrapper wrapper = new BatchListenerWrapper(
+            injector.getInstance(DatabaseListener.class), session, consumer, mapper,
+            2, 1000);
+        // the listener runs its own unit of work, as it does on its own thread
+        unitOfWork.end();
+
+        assertEquals(2, wrapper.receiveBatch());
+
+        verify(good).acknowledge();
+        verify(bad).acknowledge();
+        verify(session).commit();
+        verify(session, never()).rollback();
+        assertEquals(1, wrapper.getEvents());
+        assertEquals(1, wrapper.getDropped());
+        List<Event> stored = eventCurator.listAll();
+        assertEquals(1, stored.size());
+        assertEquals("good", stored.get(0).getConsumerId());
+    }
+
+    private ClientMessage message(String body) {
+        HornetQBuffer buffer = HornetQBuffers.dynamicBuffer(body.length() * 2);
+        buffer.writeString(body);
+        ClientMessage msg = mock(ClientMessage.class);
+        when(msg.getBodyBuffer()).thenReturn(buffer);
+        return msg;
+    }
+
+    private String eventJson(String consumerId, String entityId) throws Exception {
+        Event e = new Event();
+        e.setType(Event.Type.CREATED);
+        e.setTarget(Event.Target.CONSUMER);
+        e.setTimestamp(new Date());
+        e.setOwnerId("owner");
+        e.setConsumerId(consumerId);
+        e.setEntityId(entityId);
+        e.setPrincipal(new PrincipalData("5678", "910112"));
+        return mapper.writeValueAsString(e);
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.candlepin.auth.PrincipalData;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientSession;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/**
+ * BatchListenerWrapperTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class BatchListenerWrapperTest {
+
+    @Mock private BatchEventListener listener;
+    @Mock private ClientSession session;
+    @Mock private ClientConsumer consumer;
+    private ObjectMapper mapper = new ObjectMapper();
+    private BatchListenerWrapper wrapper;
+
+    @Before
+    public void init() {
+        wrapper = new BatchListenerWrapper(listener, session, consumer, mapper, 2, 200);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void batchIsAcknowledgedAfterListener() throws Exception {
+        ClientMessage first = message(eventJson("1"));
+        ClientMessage second = message(eventJson("2"));
+        when(consumer.receive(anyLong())).thenReturn(first, second, null);
+        wrapper = new BatchListenerWrapper(listener, session, consumer, mapper, 10,
+            1000);
+
+        assertEquals(2, wrapper.receiveBatch());
+
+        ArgumentCaptor<List> events = ArgumentCaptor.forClass(List.class);
+        InOrder inOrder = Mockito.inOrder(listener, first, second, session);
+        inOrder.verify(listener).onEvents(events.capture());
+        inOrder.verify(first).acknowledge();
+        inOrder.verify(second).acknowledge();
+        inOrder.verify(session).commit();
+        assertEquals(2, events.getValue().size());
+        assertEquals(2, wrapper.getEvents());
+        assertEquals(1, wrapper.getBatches());
+    }
+
+    @Test
+    public void batchStopsAtBatchSize() throws Exception {
+        ClientMessage third = message(eventJson("3"));
+        when(consumer.receive(anyLong())).thenReturn(message(eventJson("1")),
+            message(eventJson("2")), third);
+
+        assertEquals(2, wrapper.receiveBatch());
+        verify(third, never()).acknowledge();
+    }
+
+    @Test
+    public void failedBatchIsRolledBack() throws Exception {
+        ClientMessage msg = message(eventJson("1"));
+        when(consumer.receive(anyLong())).thenReturn(msg, (ClientMessage) null);
+        doThrow(new RuntimeException("db down")).when(listener)
+            .onEvents(anyListOf(Event.class));
+
+        assertEquals(1, wrapper.receiveBatch());
+        verify(msg, never()).acknowledge();
+        verify(session, never()).commit();
+        verify(session).rollback();
+        assertEquals(1, wrapper.getFailures());
+        assertEquals(0, wrapper.getEvents());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void badEventDoesNotHoldUpItsBatch() throws Exception {
+        ClientMessage good = message(eventJson("good"));
+        ClientMessage bad = message(eventJson("bad"));
+        when(consumer.receive(anyLong())).thenReturn(good, bad);
+        // fails for the whole batch and for the bad event on its own
+        doThrow(new RuntimeException("bad event")).when(listener).onEvents(
+            argThat(new ArgumentMatcher<List>() {
+                public boolean matches(Object events) {
+                    for (Object e : (List) events) {
+                        if ("bad".equals(((Event) e).getConsumerId())) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            }));
+
+        assertEquals(2, wrapper.receiveBatch());
+        verify(listener, times(3)).onEvents(anyListOf(Event.class));
+        verify(good).acknowledge();
+        verify(bad).acknowledge();
+        verify(session).commit();
+        verify(session, never()).rollback();
+        assertEquals(1, wrapper.getEvents());
+        assertEquals(1, wrapper.getDropped());
+        assertEquals(0, wrapper.getFailures());
+    }
+
+    @Test
+    public void batchIsRedeliveredWhenNoEventGoesThrough() throws Exception {
+        ClientMessage first = message(eventJson("1"));
+        ClientMessage second = message(eventJson("2"));
+        when(consumer.receive(anyLong())).thenReturn(first, second);
+        doThrow(new RuntimeException("db down")).when(listener)
+            .onEvents(anyListOf(Event.class));
+
+        assertEquals(2, wrapper.receiveBatch());
+        verify(first, never()).acknowledge();
+        verify(session, never()).commit();
+        verify(session).rollback();
+        assertEquals(0, wrapper.getDropped());
+        assertEquals(1, wrapper.getFailures());
+    }
+
+    @Test
+    public void unreadableMessageIsDropped() throws Exception {
+        ClientMessage msg = message("not an event");
+        when(consumer.receive(anyLong())).thenReturn(msg, (ClientMessage) null);
+
+        assertEquals(1, wrapper.receiveBatch());
+        verify(listener, never()).onEvents(anyListOf(Event.class));
+        verify(msg).acknowledge();
+        verify(session).commit();
+    }
+
+    @Test
+    public void nothingToReceive() throws Exception {
+        assertEquals(0, wrapper.receiveBatch());
+        verify(session, never()).commit();
+        verify(listener, never()).onEvent(any(Event.class));
+    }
+
+    private ClientMessage message(String body) {
+        HornetQBuffer buffer = HornetQBuffers.dynamicBuffer(body.length() * 2);
+        buffer.writeString(body);
+        ClientMessage msg = mock(ClientMessage.class);
+        when(msg.getBodyBuffer()).thenReturn(buffer);
+        return msg;
+    }
+
+    private String eventJson(String consumerId) throws Exception {
+        Event e = new Event();
+        e.setConsumerId(consumerId);
+        e.setPrincipal(new PrincipalData("5678", "910112"));
+        return mapper.writeValueAsString(e);
+    }
+}
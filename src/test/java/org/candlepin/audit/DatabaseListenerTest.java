@@ -15,18 +15,26 @@
 package org.candlepin.audit;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.candlepin.model.EventCurator;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import com.google.inject.persist.UnitOfWork;
+
 
 /**
  * DatabaseListenerTest
@@ -36,11 +44,12 @@ public class DatabaseListenerTest {
 
     @Mock private EventCurator ec;
     @Mock private Event event;
+    @Mock private UnitOfWork unitOfWork;
     private DatabaseListener dl;
 
     @Before
     public void init() {
-        dl = new DatabaseListener(ec);
+        dl = new DatabaseListener(ec, unitOfWork);
     }
 
     @Test
@@ -58,7 +67,30 @@ public class DatabaseListenerTest {
 
     @Test(expected = NullPointerException.class)
     public void curatorNull() {
-        DatabaseListener localdl = new DatabaseListener(null);
+        DatabaseListener localdl = new DatabaseListener(null, unitOfWork);
         localdl.onEvent(event);
     }
+
+    @Test
+    public void onEventsStoresBatchInOneUnitOfWork() {
+        List<Event> events = Arrays.asList(event, event);
+        dl.onEvents(events);
+
+        InOrder inOrder = Mockito.inOrder(unitOfWork, ec);
+        inOrder.verify(unitOfWork).begin();
+        inOrder.verify(ec).createAll(events);
+        inOrder.verify(unitOfWork).end();
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void onEventsEndsUnitOfWorkOnFailure() {
+        List<Event> events = Arrays.asList(event);
+        doThrow(new RuntimeException("db down")).when(ec).createAll(events);
+        try {
+            dl.onEvents(events);
+        }
+        finally {
+            verify(unitOfWork).end();
+        }
+    }
 }
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.guice.PrincipalProvider;
+import org.candlepin.model.Consumer;
+import org.candlepin.test.TestUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/**
+ * EventFactoryTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class EventFactoryTest {
+
+    @Mock private PrincipalProvider principalProvider;
+    private EventFactory factory;
+
+    @Before
+    public void init() {
+        when(principalProvider.get()).thenReturn(TestUtil.createOwnerPrincipal());
+        factory = new EventFactory(principalProvider);
+    }
+
+    @Test
+    public void consumerModifiedKeepsStateBeforeUpdate() {
+        Consumer consumer = TestUtil.createConsumer();
+        consumer.setFact("cpu.cpu_socket(s)", "2");
+        Consumer incoming = new Consumer();
+        incoming.setType(consumer.getType());
+        incoming.setFact("cpu.cpu_socket(s)", "4");
+
+        Event event = factory.consumerModified(consumer, incoming);
+        consumer.setFacts(incoming.getFacts());
+        consumer.setName("renamed");
+
+        String old = event.getOldEntity();
+        assertTrue(old.contains("\"cpu.cpu_socket(s)\":\"2\""));
+        assertFalse(old.contains("renamed"));
+        assertTrue(event.getNewEntity().contains("\"cpu.cpu_socket(s)\":\"4\""));
+        assertEquals(consumer.getId(), event.getEntityId());
+    }
+
+    @Test
+    public void consumerCreatedRendersCurrentState() {
+        Consumer consumer = TestUtil.createConsumer();
+        Event event = factory.consumerCreated(consumer);
+        consumer.setName("renamed");
+
+        assertNull(event.getOldEntity());
+        assertTrue(event.getNewEntity().contains("renamed"));
+    }
+
+    @Test
+    public void setEntityReplacesDeferredJson() {
+        Event event = factory.consumerCreated(TestUtil.createConsumer());
+        event.setNewEntity("{}");
+        assertEquals("{}", event.getNewEntity());
+    }
+}
@@ -25,6 +25,7 @@ import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.ArgumentCaptor;
@@ -35,6 +36,7 @@ import org.candlepin.model.ActivationKey;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.Owner;
 import org.candlepin.model.Pool;
+import org.candlepin.model.TransactionHooks;
 import org.candlepin.test.TestUtil;
 import org.codehaus.jackson.JsonGenerationException;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -52,6 +54,7 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * EventSinkImplTest
@@ -69,19 +72,23 @@ public class EventSinkImplTest {
     private EventSinkImpl eventSinkImpl;
     private Principal principal;
     private ObjectMapper mapper;
+    // post commit actions of the current test transaction
+    private List<Runnable> afterCommit;
 
     @Before
     public void init() throws Exception {
         this.factory = new EventFactory(mockPrincipalProvider);
         this.principal = TestUtil.createOwnerPrincipal();
         when(mockPrincipalProvider.get()).thenReturn(this.principal);
-        when(mockSessionFactory.createSession()).thenReturn(mockClientSession);
+        when(mockSessionFactory.createSession(anyBoolean(), anyBoolean())).thenReturn(
+            mockClientSession);
         when(mockClientSession.createProducer(anyString())).thenReturn(mockClientProducer);
         when(mockClientSession.createMessage(anyBoolean())).thenReturn(mockClientMessage);
         when(mockClientMessage.getBodyBuffer()).thenReturn(
             HornetQBuffers.fixedBuffer(2000));
         when(mockSessionFactory.getServerLocator()).thenReturn(mockLocator);
         this.mapper = spy(new ObjectMapper());
+        this.afterCommit = new ArrayList<Runnable>();
         this.eventSinkImpl = createEventSink(mockSessionFactory);
     }
 
@@ -89,7 +96,13 @@ public class EventSinkImplTest {
      * @return
      */
     private EventSinkImpl createEventSink(final ClientSessionFactory sessionFactory) {
-        return new EventSinkImpl(factory, mapper) {
+        TransactionHooks hooks = new TransactionHooks(null) {
+            @Override
+            public void afterCommit(Runnable action) {
+                afterCommit.add(action);
+            }
+        };
+        return new EventSinkImpl(factory, mapper, hooks) {
             @Override
             protected ClientSessionFactory createClientSessionFactory() {
                 return sessionFactory;
@@ -97,6 +110,13 @@ public class EventSinkImplTest {
         };
     }
 
+    private void commitTransaction() {
+        for (Runnable action : afterCommit) {
+            action.run();
+        }
+        afterCommit.clear();
+    }
+
     /**Set up the {@link ClientSessionFactory} to throw an exception when
      * {@link ClientSessionFactory#createSession()} is called.
      * Make sure, we throw up our hands saying "I am not dealing with this".
@@ -106,7 +126,8 @@ public class EventSinkImplTest {
     public void eventSinkShouldThrowExceptionWhenSessionCreationFailsInConstructor()
         throws Exception {
         final ClientSessionFactory csFactory = mock(ClientSessionFactory.class);
-        doThrow(new HornetQException()).when(csFactory.createSession());
+        doThrow(new HornetQException()).when(csFactory.createSession(anyBoolean(),
+            anyBoolean()));
         createEventSink(csFactory);
         fail("Runtime exception should have been thrown.");
     }
@@ -207,5 +228,85 @@ public class EventSinkImplTest {
         eventSinkImpl.emitActivationKeyCreated(key);
         verify(mockClientProducer).send(any(ClientMessage.class));
     }
+    @Test
+    public void eventsAreCommittedAsSoonAsSentOutsideBatch() throws Exception {
+        eventSinkImpl.emitOwnerCreated(new Owner("owner"));
+        eventSinkImpl.emitOwnerCreated(new Owner("other"));
+        verify(mockClientProducer, times(2)).send(any(ClientMessage.class));
+        verify(mockClientSession, times(2)).commit();
+    }
+
+    @Test
+    public void batchedEventsAreCommittedOnce() throws Exception {
+        eventSinkImpl.beginBatch();
+        eventSinkImpl.emitOwnerCreated(new Owner("owner"));
+        eventSinkImpl.emitOwnerCreated(new Owner("other"));
+        commitTransaction();
+        verify(mockClientSession, never()).commit();
 
+        eventSinkImpl.sendEvents();
+        verify(mockClientProducer, times(2)).send(any(ClientMessage.class));
+        verify(mockClientSession, times(1)).commit();
+    }
+
+    @Test
+    public void eventsOfRolledBackTransactionAreDropped() throws Exception {
+        eventSinkImpl.beginBatch();
+        eventSinkImpl.emitOwnerCreated(new Owner("owner"));
+        // transaction rolled back, the post commit actions never run
+        afterCommit.clear();
+        eventSinkImpl.sendEvents();
+        verify(mockClientProducer, never()).send(any(ClientMessage.class));
+        verify(mockClientSession, never()).commit();
+
+        // back to sending immediately
+        eventSinkImpl.emitOwnerCreated(new Owner("other"));
+        verify(mockClientSession, times(1)).commit();
+    }
+
+    @Test
+    public void eventsCommittedAfterBatchAreSentImmediately() throws Exception {
+        eventSinkImpl.beginBatch();
+        eventSinkImpl.emitOwnerCreated(new Owner("owner"));
+        eventSinkImpl.sendEvents();
+        verify(mockClientProducer, never()).send(any(ClientMessage.class));
+
+        commitTransaction();
+        verify(mockClientProducer).send(any(ClientMessage.class));
+        verify(mockClientSession, times(1)).commit();
+    }
+
+    @Test
+    public void batchedEventsAreSerializedWhenSent() throws Exception {
+        eventSinkImpl.beginBatch();
+        eventSinkImpl.emitConsumerCreated(TestUtil.createConsumer());
+        commitTransaction();
+        verify(mapper, never()).writeValueAsString(any());
+
+        eventSinkImpl.sendEvents();
+        verify(mapper, times(1)).writeValueAsString(any());
+        verify(mockClientProducer).send(any(ClientMessage.class));
+    }
+
+    @Test
+    public void sessionIsReusedAcrossSends() throws Exception {
+        eventSinkImpl.emitOwnerCreated(new Owner("owner"));
+        eventSinkImpl.beginBatch();
+        eventSinkImpl.emitOwnerCreated(new Owner("other"));
+        commitTransaction();
+        eventSinkImpl.sendEvents();
+        verify(mockSessionFactory, times(1)).createSession(anyBoolean(), anyBoolean());
+        verify(mockClientSession, never()).close();
+    }
+
+    @Test
+    public void brokenSessionIsClosedAndReplaced() throws Exception {
+        doThrow(new HornetQException()).doNothing().when(mockClientSession).commit();
+        doThrow(new HornetQException()).when(mockClientSession).rollback();
+        eventSinkImpl.emitOwnerCreated(new Owner("owner"));
+        verify(mockClientSession).close();
+
+        eventSinkImpl.emitOwnerCreated(new Owner("other"));
+        verify(mockSessionFactory, times(2)).createSession(anyBoolean(), anyBoolean());
+    }
 }
@@ -150,4 +150,24 @@ public class EventSourceTest {
         verify(this.clientSession).stop();
     }
 
+
+    @Test
+    public void batchListenerGetsItsOwnSession() throws Exception {
+        ClientSession batchSession = mock(ClientSession.class);
+        ClientConsumer batchConsumer = mock(ClientConsumer.class);
+        when(clientSessionFactory.createSession(eq(true), eq(false)))
+            .thenReturn(batchSession);
+        when(batchSession.createConsumer(anyString())).thenReturn(batchConsumer);
+        EventSource eventSource = createEventSourceStubbedWithFactoryCreation();
+
+        eventSource.registerListener(mock(BatchEventListener.class));
+
+        verify(clientSession).createQueue(anyString(), anyString());
+        verify(clientSession, never()).createConsumer(anyString());
+        verify(batchSession).start();
+        verify(batchConsumer, never()).setMessageHandler(any(ListenerWrapper.class));
+
+        eventSource.shutDown();
+        verify(batchSession).close();
+    }
 }
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Owner;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * ConsumerPrincipalCacheTest
+ */
+public class ConsumerPrincipalCacheTest {
+
+    private Config config;
+    private Consumer consumer;
+
+    @Before
+    public void init() {
+        config = mock(Config.class);
+        when(config.getInt(ConfigProperties.CONSUMER_PRINCIPAL_CACHE_MAX_AGE))
+            .thenReturn(60);
+        when(config.getInt(ConfigProperties.CONSUMER_PRINCIPAL_CACHE_MAX)).thenReturn(10);
+
+        Owner owner = new Owner("owner");
+        owner.setId("owner-id");
+        consumer = new Consumer("name", "user", owner, null);
+        consumer.setId("consumer-id");
+    }
+
+    @Test
+    public void hitsGetTheirOwnConsumer() {
+        ConsumerPrincipalCache cache = new ConsumerPrincipalCache(config);
+        cache.put(consumer);
+
+        ConsumerPrincipal first = cache.get(consumer.getUuid());
+        ConsumerPrincipal second = cache.get(consumer.getUuid());
+        assertNotSame(consumer, first.getConsumer());
+        assertNotSame(first.getConsumer(), second.getConsumer());
+
+        Consumer cached = first.getConsumer();
+        assertEquals("consumer-id", cached.getId());
+        assertEquals(consumer.getUuid(), cached.getUuid());
+        assertEquals("name", cached.getName());
+        assertEquals("owner", cached.getOwner().getKey());
+        assertEquals("owner-id", cached.getOwner().getId());
+    }
+
+    @Test
+    public void invalidate() {
+        ConsumerPrincipalCache cache = new ConsumerPrincipalCache(config);
+        cache.put(consumer);
+        cache.invalidate(consumer.getUuid());
+        assertNull(cache.get(consumer.getUuid()));
+    }
+
+    @Test
+    public void disabled() {
+        when(config.getInt(ConfigProperties.CONSUMER_PRINCIPAL_CACHE_MAX_AGE))
+            .thenReturn(0);
+        ConsumerPrincipalCache cache = new ConsumerPrincipalCache(config);
+        cache.put(consumer);
+        assertNull(cache.get(consumer.getUuid()));
+    }
+}
@@ -47,6 +47,9 @@ public class CandlepinCommonTestConfig extends Config {
             throw new RuntimeException("Error loading cert/key resources!", e);
         }
 
+        // no background key generation, every test gets its own pool
+        properties.put(ConfigProperties.KEYPAIR_POOL_SIZE, "0");
+
         return properties;
     }
 
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerCurator;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.inject.persist.UnitOfWork;
+
+/**
+ * ConsumerCheckinTrackerTest
+ */
+public class ConsumerCheckinTrackerTest {
+
+    @Mock private ConsumerCurator consumerCurator;
+    @Mock private UnitOfWork unitOfWork;
+    @Mock private Config config;
+
+    private Consumer consumer;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        consumer = new Consumer();
+        consumer.setId("consumer-id");
+    }
+
+    @Test
+    public void coalescesCheckins() {
+        when(config.getInt(eq(ConfigProperties.CONSUMER_CHECKIN_MAX_DELAY)))
+            .thenReturn(3600);
+        ConsumerCheckinTracker tracker = new ConsumerCheckinTracker(consumerCurator,
+            unitOfWork, config);
+
+        tracker.checkin(consumer);
+        tracker.checkin(consumer);
+        assertNotNull(consumer.getLastCheckin());
+        assertEquals(1, tracker.getPendingCount());
+        verify(consumerCurator, never()).updateLastCheckin(any(Consumer.class));
+        verify(consumerCurator, never()).updateLastCheckins(anyMap());
+
+        Map<String, Date> expected = new HashMap<String, Date>();
+        expected.put("consumer-id", consumer.getLastCheckin());
+        assertEquals(1, tracker.flush());
+        verify(consumerCurator).updateLastCheckins(eq(expected));
+        assertEquals(0, tracker.getPendingCount());
+    }
+
+    @Test
+    public void failedFlushIsRetried() {
+        when(config.getInt(eq(ConfigProperties.CONSUMER_CHECKIN_MAX_DELAY)))
+            .thenReturn(3600);
+        ConsumerCheckinTracker tracker = new ConsumerCheckinTracker(consumerCurator,
+            unitOfWork, config);
+        doThrow(new RuntimeException()).when(consumerCurator)
+            .updateLastCheckins(anyMap());
+
+        tracker.checkin(consumer);
+        try {
+            tracker.flush();
+        }
+        catch (RuntimeException e) {
+            // expected
+        }
+        assertEquals(1, tracker.getPendingCount());
+    }
+
+    @Test
+    public void writesImmediatelyWithoutDelay() {
+        when(config.getInt(eq(ConfigProperties.CONSUMER_CHECKIN_MAX_DELAY)))
+            .thenReturn(0);
+        ConsumerCheckinTracker tracker = new ConsumerCheckinTracker(consumerCurator,
+            unitOfWork, config);
+
+        tracker.checkin(consumer);
+        verify(consumerCurator).updateLastCheckin(eq(consumer));
+        assertEquals(0, tracker.getPendingCount());
+    }
+
+    @Test
+    public void overdueCheckinsAreFlushedInTheBackground() throws Exception {
+        when(config.getInt(eq(ConfigProperties.CONSUMER_CHECKIN_MAX_DELAY)))
+            .thenReturn(1);
+        ConsumerCheckinTracker tracker = new ConsumerCheckinTracker(consumerCurator,
+            unitOfWork, config);
+        final AtomicReference<Thread> flushedOn = new AtomicReference<Thread>();
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) {
+                flushedOn.set(Thread.currentThread());
+                return null;
+            }
+        }).when(consumerCurator).updateLastCheckins(anyMap());
+
+        Thread.sleep(1100);
+        tracker.checkin(consumer);
+
+        verify(unitOfWork, timeout(5000)).end();
+        assertNotSame(Thread.currentThread(), flushedOn.get());
+        InOrder inOrder = Mockito.inOrder(unitOfWork, consumerCurator);
+        inOrder.verify(unitOfWork).begin();
+        inOrder.verify(consumerCurator).updateLastCheckins(anyMap());
+        inOrder.verify(unitOfWork).end();
+    }
+}
@@ -15,9 +15,14 @@
 package org.candlepin.controller;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -29,26 +34,28 @@ import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialCurator;
 import org.candlepin.pki.PKIReader;
 import org.candlepin.pki.PKIUtility;
-import org.candlepin.pki.X509CRLEntryWrapper;
 import org.candlepin.pki.impl.BouncyCastlePKIUtility;
 import org.candlepin.pki.impl.DefaultSubjectKeyIdentifierWriter;
 import org.candlepin.util.Util;
+import org.hibernate.ScrollableResults;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.math.BigInteger;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateFactory;
 import java.security.cert.X509CRL;
 import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
@@ -135,185 +142,89 @@ public class CrlGeneratorTest {
     }
 
     @Test
-    public void serialsTransfered() {
+    public void deltaCRLHoldsSerialsRevokedSinceBase() throws Exception {
         List<CertificateSerial> serials = getStubCSList();
-
-        when(this.curator.retrieveTobeCollectedSerials())
-            .thenReturn(serials);
-        List<X509CRLEntryWrapper> entries = this.generator
-            .getNewSerialsToAppendAndSetThemConsumed();
-        assertEquals(entries.size(), serials.size());
-        verify(this.curator).saveOrUpdateAll(serials);
-        for (int i = 0; i < serials.size(); i++) {
-            CertificateSerial cs = serials.get(i);
-            assertEquals(cs.getSerial(), entries.get(i).getSerialNumber());
+        for (CertificateSerial cs : serials) {
+            cs.setUpdated(new Date());
         }
-    }
-
-    @Test
-    public void serialsEmptyList() {
-        when(this.curator.retrieveTobeCollectedSerials())
-            .thenReturn(new ArrayList<CertificateSerial>());
-        List<X509CRLEntryWrapper> entries = this.generator
-            .getNewSerialsToAppendAndSetThemConsumed();
-        assertEquals(0, entries.size());
-    }
-
-    @Test
-    @SuppressWarnings("serial")
-    public void emptyExpiredSerials() {
-        Set<? extends X509CRLEntry> set = stubX509CRLEntries();
-
-        when(this.curator.getExpiredSerials())
-            .thenReturn(new ArrayList<CertificateSerial>() {
-                {
-                    add(stubCS(1L, new Date()));
-                    add(stubCS(10L, new Date()));
-                }
-            });
-        Set<? extends X509CRLEntry> result = this.generator.removeExpiredSerials(set);
-        assertEquals(1, result.size());
-
-        X509CRLEntry entry = result.iterator().next();
-        assertEquals(BigInteger.ZERO, entry.getSerialNumber());
-    }
-
-    @Test
-    @SuppressWarnings("serial")
-    public void expiredSerials() {
-        Set<? extends X509CRLEntry> set = stubX509CRLEntries();
-
-        when(this.curator.getExpiredSerials())
-            .thenReturn(new ArrayList<CertificateSerial>() {
-                {
-                    add(stubCS(12L, new Date()));
-                    add(stubCS(13L, new Date()));
-                }
-            });
-        Set<? extends X509CRLEntry> result = this.generator.removeExpiredSerials(set);
-        assertEquals(set.size(), result.size());
-    }
-
-    @Test
-    public void emptyRevocationsReturnsUntouched() throws Exception {
-        // there's gotta be a way to reduce to a set of mocks
-
-        KeyPair kp = CrlGeneratorTest.generateKP();
-        X509V2CRLGenerator g = new X509V2CRLGenerator();
-        g.setIssuerDN(new X500Principal("CN=test, UID=" + UUID.randomUUID()));
-        g.setThisUpdate(new Date());
-        g.setNextUpdate(Util.tomorrow());
-        g.setSignatureAlgorithm("SHA1withRSA");
-        g.addExtension(X509Extensions.CRLNumber, false,
-            new CRLNumber(BigInteger.TEN));
-        X509CRL x509crl = g.generate(kp.getPrivate());
-
-        // now we need to remove one of those serials
-        List<CertificateSerial> toremove = new ArrayList<CertificateSerial>() {
-            {
-                add(stubCS(100L, new Date()));
-            }
-        };
+        Date baseIssued = new Date();
+        when(this.curator.retrieveRevokedSince(
+            eq(new Date(baseIssued.getTime() - CrlGenerator.DELTA_OVERLAP))))
+            .thenReturn(serials);
 
-        X509CRL untouchedcrl = generator.removeEntries(x509crl, toremove);
-        assertEquals(x509crl, untouchedcrl);
+        X509CRL delta = this.generator.createDeltaCRL(BigInteger.TEN, baseIssued,
+            new BigInteger("11"));
+
+        assertEquals(new BigInteger("11"), this.generator.getCRLNumber(delta));
+        assertEquals("10", pkiUtility.decodeDERValue(delta.getExtensionValue(
+            X509Extensions.DeltaCRLIndicator.getId())));
+        assertTrue(delta.getCriticalExtensionOIDs().contains(
+            X509Extensions.DeltaCRLIndicator.getId()));
+        assertEquals(serials.size(), delta.getRevokedCertificates().size());
+        for (CertificateSerial cs : serials) {
+            assertFalse(cs.isCollected());
+        }
+        verify(this.curator, never()).saveOrUpdateAll(serials);
     }
 
     @Test
-    @SuppressWarnings("serial")
-    public void removeEntries() throws Exception {
-        // there's gotta be a way to reduce to a set of mocks
-
-        KeyPair kp = CrlGeneratorTest.generateKP();
-        X509V2CRLGenerator g = new X509V2CRLGenerator();
-        g.setIssuerDN(new X500Principal("CN=test, UID=" + UUID.randomUUID()));
-        g.setThisUpdate(new Date());
-        g.setNextUpdate(Util.tomorrow());
-        g.setSignatureAlgorithm("SHA1withRSA");
-        g.addExtension(X509Extensions.CRLNumber, false,
-            new CRLNumber(BigInteger.TEN));
-        X509CRL x509crl = g.generate(kp.getPrivate());
-
+    public void deltaCRLUsesStoredRevocationDates() throws Exception {
         List<CertificateSerial> serials = getStubCSList();
-        List<X509CRLEntryWrapper> entries = Util.newList();
-        for (CertificateSerial serial : serials) {
-            entries.add(new X509CRLEntryWrapper(serial.getSerial(),
-                new Date()));
-            serial.setCollected(true);
+        Date revoked = Util.yesterday();
+        for (CertificateSerial cs : serials) {
+            cs.setUpdated(revoked);
         }
+        when(this.curator.retrieveRevokedSince(any(Date.class))).thenReturn(serials);
 
-        x509crl = pkiUtility.createX509CRL(entries, BigInteger.TEN);
-        assertEquals(3, x509crl.getRevokedCertificates().size());
-
-
-        // now we need to remove one of those serials
-        List<CertificateSerial> toremove = new ArrayList<CertificateSerial>() {
-            {
-                add(stubCS(100L, new Date()));
-            }
-        };
+        X509CRL delta = this.generator.createDeltaCRL(BigInteger.TEN, new Date(),
+            new BigInteger("11"));
 
-        X509CRL updatedcrl = generator.removeEntries(x509crl, toremove);
-        Set<? extends X509CRLEntry> revoked = updatedcrl.getRevokedCertificates();
-        assertEquals(2, revoked.size());
+        for (X509CRLEntry entry : delta.getRevokedCertificates()) {
+            // encoded with a precision of seconds
+            assertEquals(revoked.getTime() / 1000,
+                entry.getRevocationDate().getTime() / 1000);
+        }
     }
 
     @Test
-    public void updateCRLWithNullInput() {
-        List<CertificateSerial> serials = getStubCSList();
-        when(this.curator.retrieveTobeCollectedSerials())
-            .thenReturn(serials);
-        X509CRL x509crl = this.generator.syncCRLWithDB((X509CRL) null);
+    public void writeCRLStreamsRevokedSerials() throws Exception {
+        ScrollableResults serials = mock(ScrollableResults.class);
+        when(serials.next()).thenReturn(true, true, true, false);
+        when(serials.get(0)).thenReturn(1L, 100L, 1235465L);
+        when(serials.get(1)).thenReturn(new Date(), null, new Date());
+        when(this.curator.scrollRevokedSerials(anyInt())).thenReturn(serials);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.generator.writeCRL(new BigInteger("11"), out);
+
+        verify(this.curator).collectRevokedSerials();
         verify(this.curator).deleteExpiredSerials();
-        assertEquals(BigInteger.ONE, this.generator.getCRLNumber(x509crl));
-        Set<? extends X509CRLEntry> entries = x509crl.getRevokedCertificates();
+        verify(serials).close();
+
+        X509CRL x509crl = (X509CRL) CertificateFactory.getInstance("X.509")
+            .generateCRL(new ByteArrayInputStream(out.toByteArray()));
+        x509crl.verify(KP.getPublic());
+        assertEquals(new BigInteger("11"), this.generator.getCRLNumber(x509crl));
         Set<BigInteger> nos = Util.newSet();
-        for (X509CRLEntry entry : entries) {
+        for (X509CRLEntry entry : x509crl.getRevokedCertificates()) {
             nos.add(entry.getSerialNumber());
         }
-        assertTrue(nos.contains(BigInteger.ONE));
-        assertTrue(nos.contains(new BigInteger("100")));
+        assertEquals(3, nos.size());
         assertTrue(nos.contains(new BigInteger("1235465")));
     }
 
     @Test
-    @SuppressWarnings({ "unchecked", "serial", "rawtypes" })
-    public void testUpdateCRLWithMockedCRL() {
-        X509CRL oldCert = mock(X509CRL.class);
-        Set<? extends X509CRLEntry> crls = stubX509CRLEntries(); //0, 1, 10,
-
-        // byte array captured from previous runs - represents 1
-        when(oldCert.getExtensionValue("2.5.29.20"))
-            .thenReturn(new byte[] {4, 3, 2, 1, 1});
-        when(oldCert.getRevokedCertificates())
-            .thenReturn((Set) crls);
-        when(this.curator.getExpiredSerials())
-            .thenReturn(getStubCSList());  //1, 100, 1235465
-        when(this.curator.retrieveTobeCollectedSerials()) //1001, 1002
-            .thenReturn(new ArrayList<CertificateSerial>() {
-                {
-                    add(stubCS(1001L, new Date()));
-                    add(stubCS(1002L, new Date()));
-                }
-            });
-        X509CRL newCRL = this.generator.syncCRLWithDB(oldCert);
-
-        verify(this.curator, times(1)).retrieveTobeCollectedSerials();
-        verify(this.curator, times(1)).deleteExpiredSerials();
-        verify(this.curator, times(1)).getExpiredSerials();
-
-        assertEquals(new BigInteger("2"), this.generator.getCRLNumber(newCRL));
-
-        Set<? extends X509CRLEntry> entries = newCRL.getRevokedCertificates();
-        Set<BigInteger> nos = Util.newSet();
-        for (X509CRLEntry entry : entries) {
-            nos.add(entry.getSerialNumber());
-        }
-        long [] expectedSerials = new long[] { 1001, 1002, 0, 10};
-        assertEquals(nos.size(), expectedSerials.length);
-        for (int i = 0; i < expectedSerials.length; i++) {
-            nos.contains(Util.toBigInt(expectedSerials[i]));
-        }
+    public void writeEmptyCRL() throws Exception {
+        ScrollableResults serials = mock(ScrollableResults.class);
+        when(this.curator.scrollRevokedSerials(anyInt())).thenReturn(serials);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.generator.writeCRL(BigInteger.ONE, out);
+
+        X509CRL x509crl = (X509CRL) CertificateFactory.getInstance("X.509")
+            .generateCRL(new ByteArrayInputStream(out.toByteArray()));
+        x509crl.verify(KP.getPublic());
+        assertNull(x509crl.getRevokedCertificates());
     }
 
     @Test
@@ -369,19 +280,4 @@ public class CrlGeneratorTest {
         cs.setCollected(false);
         return cs;
     }
-
-    private Set<? extends X509CRLEntry> stubX509CRLEntries() {
-        Set<X509CRLEntry> set = new LinkedHashSet<X509CRLEntry>();
-        set.add(mockCRL(BigInteger.ONE, new Date()));
-        set.add(mockCRL(BigInteger.TEN, new Date()));
-        set.add(mockCRL(BigInteger.ZERO, new Date()));
-        return set;
-    }
-
-    private X509CRLEntry mockCRL(BigInteger serial, Date dt) {
-        X509CRLEntry entry = mock(X509CRLEntry.class);
-        when(entry.getSerialNumber()).thenReturn(serial);
-        when(entry.getRevocationDate()).thenReturn(dt);
-        return entry;
-    }
 }
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.controller.CrlPublisher.PublishedCrl;
+import org.candlepin.model.CertificateSerial;
+import org.candlepin.model.CrlSequenceCurator;
+import org.candlepin.model.TransactionHooks;
+import org.candlepin.test.DatabaseTestFixture;
+import org.candlepin.util.CrlFileUtil;
+import org.candlepin.util.Util;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * CrlPublisherFunctionalTest - two publishers, as on two nodes, sharing one
+ * database.
+ */
+public class CrlPublisherFunctionalTest extends DatabaseTestFixture {
+
+    private List<File> crlFiles = Util.newList();
+
+    @After
+    public void removeCrlFiles() {
+        for (File f : crlFiles) {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void revocationSurvivesBaseRollOnAnotherNode() throws Exception {
+        CrlPublisher taskNode = createPublisher();
+        CrlPublisher otherNode = createPublisher();
+        CertificateSerial serial =
+            certSerialCurator.create(new CertificateSerial(Util.tomorrow()));
+        taskNode.getCurrentDelta();
+        PublishedCrl base = otherNode.getCurrent();
+        otherNode.getCurrentDelta();
+
+        serial.setRevoked(true);
+        certSerialCurator.merge(serial);
+        // the crl task rolls the base crl, collecting the serial
+        taskNode.refresh(true);
+        otherNode.markStale();
+
+        // the other node still serves its older base crl
+        assertEquals(base.getCrlNumber(), otherNode.getCurrent().getCrlNumber());
+        PublishedCrl delta = otherNode.getCurrentDelta();
+        assertEquals(base.getCrlNumber(), delta.getBaseCrlNumber());
+        X509CRL crl = (X509CRL) CertificateFactory.getInstance("X.509")
+            .generateCRL(new ByteArrayInputStream(delta.getEncoded()));
+        assertNotNull(crl.getRevokedCertificate(serial.getSerial()));
+        assertTrue(delta.getCrlNumber().compareTo(
+            taskNode.getCurrent().getCrlNumber()) > 0);
+    }
+
+    private CrlPublisher createPublisher() throws IOException {
+        final File crlFile = File.createTempFile("test-crl", ".crl");
+        crlFiles.add(crlFile);
+        Config config = new Config(new HashMap<String, String>() {
+            private static final long serialVersionUID = 1L;
+            {
+                this.put(ConfigProperties.CRL_FILE_PATH, crlFile.getAbsolutePath());
+                this.put(ConfigProperties.CRL_MAX_AGE, "3600");
+                this.put(ConfigProperties.CRL_DELTA_ENABLED, "true");
+            }
+        });
+        return new CrlPublisher(injector.getInstance(CrlGenerator.class),
+            injector.getInstance(CrlFileUtil.class),
+            injector.getInstance(CrlSequenceCurator.class),
+            injector.getInstance(TransactionHooks.class), config);
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.controller.CrlPublisher.PublishedCrl;
+import org.candlepin.model.CrlSequenceCurator;
+import org.candlepin.model.TransactionHooks;
+import org.candlepin.util.CrlFileUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.cert.X509CRL;
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * CrlPublisherTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CrlPublisherTest {
+
+    @Mock private CrlGenerator generator;
+    @Mock private CrlFileUtil fileUtil;
+    @Mock private X509CRL crl;
+    @Mock private X509CRL delta;
+    @Mock private TransactionHooks transactionHooks;
+    @Mock private CrlSequenceCurator sequence;
+    private BigInteger lastNumber = BigInteger.ZERO;
+    private CrlPublisher publisher;
+
+    @Before
+    public void init() throws Exception {
+        publisher = new CrlPublisher(generator, fileUtil, sequence, transactionHooks,
+            buildConfig("false"));
+        when(sequence.next(any(BigInteger.class))).thenAnswer(new Answer<BigInteger>() {
+            public BigInteger answer(InvocationOnMock invocation) {
+                BigInteger floor = (BigInteger) invocation.getArguments()[0];
+                lastNumber = lastNumber.max(floor).add(BigInteger.ONE);
+                return lastNumber;
+            }
+        });
+        when(fileUtil.readCRLFile(any(File.class))).thenReturn(crl);
+        when(generator.getCRLNumber(eq(crl))).thenReturn(BigInteger.TEN);
+        when(generator.writeCRL(any(BigInteger.class), any(OutputStream.class)))
+            .thenReturn(new Date());
+        when(delta.getThisUpdate()).thenReturn(new Date());
+        when(generator.createDeltaCRL(any(BigInteger.class), any(Date.class),
+            any(BigInteger.class))).thenReturn(delta);
+        when(fileUtil.getPemEncoded(eq(delta))).thenReturn("delta".getBytes());
+    }
+
+    private Config buildConfig(final String deltaEnabled) {
+        return new Config(new HashMap<String, String>() {
+            private static final long serialVersionUID = 1L;
+            {
+                this.put(ConfigProperties.CRL_FILE_PATH, "/tmp/test-crl.crl");
+                this.put(ConfigProperties.CRL_MAX_AGE, "3600");
+                this.put(ConfigProperties.CRL_DELTA_ENABLED, deltaEnabled);
+            }
+        });
+    }
+
+    @Test
+    public void servesFromMemoryOnceSigned() throws Exception {
+        PublishedCrl first = publisher.getCurrent();
+        PublishedCrl second = publisher.getCurrent();
+
+        assertSame(first, second);
+        assertEquals("b", first.getEtag());
+        verify(generator, times(1)).writeCRL(eq(BigInteger.valueOf(11)),
+            any(OutputStream.class));
+        verify(fileUtil, times(1)).readCRLFile(any(File.class));
+    }
+
+    @Test
+    public void resyncsWhenStale() throws Exception {
+        publisher.getCurrent();
+        publisher.markStale();
+        publisher.getCurrent();
+        publisher.getCurrent();
+
+        verify(generator, times(2)).writeCRL(any(BigInteger.class),
+            any(OutputStream.class));
+        verify(fileUtil, times(2)).writeCRLFile(any(File.class), any(byte[].class));
+        verify(fileUtil, times(1)).readCRLFile(any(File.class));
+    }
+
+    @Test
+    public void markedStaleAgainAfterCommit() throws Exception {
+        publisher.getCurrent();
+        publisher.markStale();
+        ArgumentCaptor<Runnable> afterCommit = ArgumentCaptor.forClass(Runnable.class);
+        verify(transactionHooks).afterCommit(afterCommit.capture());
+
+        // synced while the revoking transaction was still open
+        publisher.getCurrent();
+        afterCommit.getValue().run();
+        publisher.getCurrent();
+
+        verify(generator, times(3)).writeCRL(any(BigInteger.class),
+            any(OutputStream.class));
+    }
+
+    @Test
+    public void forcedRefreshAlwaysResyncs() throws Exception {
+        publisher.getCurrent();
+        PublishedCrl published = publisher.refresh(true);
+
+        assertEquals(BigInteger.valueOf(12), published.getCrlNumber());
+        verify(generator, times(2)).writeCRL(any(BigInteger.class),
+            any(OutputStream.class));
+    }
+
+    @Test
+    public void deltaNumberedAfterBase() throws Exception {
+        publisher = new CrlPublisher(generator, fileUtil, sequence, transactionHooks,
+            buildConfig("true"));
+        PublishedCrl published = publisher.getCurrentDelta();
+
+        assertEquals(BigInteger.valueOf(11), published.getBaseCrlNumber());
+        assertEquals(BigInteger.valueOf(12), published.getCrlNumber());
+        verify(generator).createDeltaCRL(eq(BigInteger.valueOf(11)), any(Date.class),
+            eq(BigInteger.valueOf(12)));
+    }
+
+    @Test
+    public void revocationsOnlyRegenerateDelta() throws Exception {
+        publisher = new CrlPublisher(generator, fileUtil, sequence, transactionHooks,
+            buildConfig("true"));
+        publisher.getCurrentDelta();
+        publisher.markStale();
+        publisher.getCurrent();
+        PublishedCrl published = publisher.getCurrentDelta();
+
+        assertEquals(BigInteger.valueOf(13), published.getCrlNumber());
+        verify(generator, times(1)).writeCRL(any(BigInteger.class),
+            any(OutputStream.class));
+        verify(generator, times(2)).createDeltaCRL(eq(BigInteger.valueOf(11)),
+            any(Date.class), any(BigInteger.class));
+    }
+
+    @Test
+    public void numberedFromTheSharedSequence() throws Exception {
+        // another node has issued crls since the one on disk
+        lastNumber = BigInteger.valueOf(20);
+        PublishedCrl published = publisher.getCurrent();
+
+        assertEquals(BigInteger.valueOf(21), published.getCrlNumber());
+        verify(sequence).next(eq(BigInteger.TEN));
+        verify(generator).writeCRL(eq(BigInteger.valueOf(21)), any(OutputStream.class));
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.candlepin.audit.EventSink;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.guice.CandlepinSingletonScope;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.EntitlementCurator;
+import org.candlepin.model.JobCurator;
+import org.candlepin.pinsetter.core.model.JobStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.google.inject.Injector;
+import com.google.inject.persist.UnitOfWork;
+
+/**
+ * EntitlementCertRegeneratorTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class EntitlementCertRegeneratorTest {
+
+    @Mock private Injector injector;
+    @Mock private UnitOfWork unitOfWork;
+    @Mock private EntitlementCurator entitlementCurator;
+    @Mock private JobCurator jobCurator;
+    @Mock private Config config;
+    @Mock private PoolManager poolManager;
+    @Mock private EventSink sink;
+
+    private EntitlementCertRegenerator regenerator;
+    private List<Entitlement> ents;
+
+    @Before
+    public void init() {
+        when(config.getInt(eq(ConfigProperties.ENTITLEMENT_REGEN_CHUNK_SIZE)))
+            .thenReturn(2);
+        // one worker, mockito does not record invocations from several threads
+        when(config.getInt(eq(ConfigProperties.ENTITLEMENT_REGEN_THREADS)))
+            .thenReturn(1);
+        when(injector.getInstance(eq(PoolManager.class))).thenReturn(poolManager);
+        when(injector.getInstance(eq(EventSink.class))).thenReturn(sink);
+
+        regenerator = new EntitlementCertRegenerator(injector,
+            new CandlepinSingletonScope(), unitOfWork, entitlementCurator, jobCurator,
+            config);
+
+        ents = new ArrayList<Entitlement>();
+        for (int i = 0; i < 5; i++) {
+            Entitlement e = new Entitlement();
+            e.setId("ent" + i);
+            e.setDirty(true);
+            ents.add(e);
+            when(entitlementCurator.find(eq(e.getId()))).thenReturn(e);
+        }
+    }
+
+    @Test
+    public void regeneratesInChunks() {
+        JobStatus status = new JobStatus();
+        when(jobCurator.find(eq("job"))).thenReturn(status);
+
+        assertEquals(5, regenerator.regenerate(ents, "job", false));
+
+        verify(entitlementCurator).markDirty(eq(Arrays.asList("ent0", "ent1")));
+        verify(entitlementCurator).markDirty(eq(Arrays.asList("ent2", "ent3")));
+        verify(entitlementCurator).markDirty(eq(Arrays.asList("ent4")));
+        for (Entitlement e : ents) {
+            verify(poolManager).regenerateCertificatesOf(eq(e), eq(false), eq(false));
+        }
+        verify(unitOfWork, times(3)).begin();
+        verify(unitOfWork, times(3)).end();
+        verify(sink, times(3)).beginBatch();
+        verify(sink, times(3)).sendEvents();
+        verify(jobCurator, times(3)).merge(eq(status));
+        assertEquals("Regenerated certificates for 5 of 5 entitlements",
+            status.getResult());
+    }
+
+    @Test
+    public void resumeOnlyRegeneratesDirty() {
+        ents.get(0).setDirty(false);
+        ents.get(3).setDirty(false);
+        when(entitlementCurator.find(eq("ent4"))).thenReturn(null);
+
+        assertEquals(2, regenerator.regenerate(ents, null, true));
+
+        verify(entitlementCurator, never()).markDirty(anyCollection());
+        verify(poolManager).regenerateCertificatesOf(eq(ents.get(1)), eq(false),
+            eq(false));
+        verify(poolManager).regenerateCertificatesOf(eq(ents.get(2)), eq(false),
+            eq(false));
+        verify(poolManager, times(2)).regenerateCertificatesOf(any(Entitlement.class),
+            anyBoolean(), anyBoolean());
+        verify(jobCurator, never()).find(any(String.class));
+    }
+
+    @Test
+    public void failedChunkDoesNotStopOthers() {
+        RuntimeException failure = new RuntimeException("sign failed");
+        doThrow(failure).when(poolManager).regenerateCertificatesOf(eq(ents.get(2)),
+            eq(false), eq(false));
+
+        try {
+            regenerator.regenerate(ents, null, false);
+            fail("expected the chunk failure to be rethrown");
+        }
+        catch (RuntimeException e) {
+            assertEquals(failure, e);
+        }
+
+        verify(poolManager).regenerateCertificatesOf(eq(ents.get(4)), eq(false),
+            eq(false));
+        verify(sink, times(3)).sendEvents();
+        verify(unitOfWork, times(3)).end();
+    }
+
+    @Test
+    public void nothingToRegenerate() {
+        assertEquals(0, regenerator.regenerate(new ArrayList<Entitlement>(), "job",
+            false));
+        verify(entitlementCurator, never()).markDirty(anyCollection());
+        verify(unitOfWork, never()).begin();
+    }
+}
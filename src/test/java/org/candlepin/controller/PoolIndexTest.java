@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Owner;
+import org.candlepin.model.PoolCurator;
+import org.candlepin.model.TransactionHooks;
+import org.candlepin.test.TestUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * PoolIndexTest
+ */
+public class PoolIndexTest {
+
+    @Mock private PoolCurator poolCurator;
+    @Mock private Config config;
+    @Mock private TransactionHooks transactionHooks;
+
+    private Owner owner;
+    private PoolIndex index;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(config.getInt(eq(ConfigProperties.POOL_INDEX_MAX_AGE))).thenReturn(3600);
+
+        owner = new Owner("key", "displayname");
+        owner.setId("owner-id");
+
+        List<Object[]> pools = new ArrayList<Object[]>();
+        pools.add(new Object[] {"pool1", "product1",
+            TestUtil.createDate(2010, 1, 1), TestUtil.createDate(2020, 1, 1)});
+        pools.add(new Object[] {"pool2", "product2",
+            TestUtil.createDate(2010, 1, 1), TestUtil.createDate(2011, 1, 1)});
+        List<Object[]> provided = new ArrayList<Object[]>();
+        provided.add(new Object[] {"pool1", "provided1"});
+        provided.add(new Object[] {"pool2", "provided1"});
+        when(poolCurator.listActivePoolDates(owner)).thenReturn(pools);
+        when(poolCurator.listActiveProvidedProducts(owner)).thenReturn(provided);
+
+        index = new PoolIndex(poolCurator, transactionHooks, config);
+    }
+
+    @Test
+    public void findsDirectAndProvidedProducts() {
+        Set<String> ids = index.getPoolIds(owner,
+            new String[] {"product1", "provided1"}, null);
+        assertEquals(2, ids.size());
+        assertTrue(ids.contains("pool1"));
+        assertTrue(ids.contains("pool2"));
+
+        assertTrue(index.getPoolIds(owner, new String[] {"unknown"}, null).isEmpty());
+    }
+
+    @Test
+    public void filtersByDate() {
+        Set<String> ids = index.getPoolIds(owner, new String[] {"provided1"},
+            TestUtil.createDate(2015, 1, 1));
+        assertEquals(1, ids.size());
+        assertTrue(ids.contains("pool1"));
+    }
+
+    @Test
+    public void buildsOnceUntilInvalidated() {
+        index.getPoolIds(owner, new String[] {"product1"}, null);
+        index.getPoolIds(owner, new String[] {"product2"}, null);
+        verify(poolCurator, times(1)).listActivePoolDates(owner);
+
+        index.invalidate(owner);
+        index.getPoolIds(owner, new String[] {"product1"}, null);
+        verify(poolCurator, times(2)).listActivePoolDates(owner);
+    }
+
+    @Test
+    public void droppedAgainWhenTransactionIsOver() {
+        index.invalidate(owner);
+        ArgumentCaptor<Runnable> after = ArgumentCaptor.forClass(Runnable.class);
+        verify(transactionHooks).afterCompletion(after.capture());
+
+        // rebuilt while the invalidating transaction was still running
+        index.getPoolIds(owner, new String[] {"product1"}, null);
+        after.getValue().run();
+        index.getPoolIds(owner, new String[] {"product1"}, null);
+        verify(poolCurator, times(2)).listActivePoolDates(owner);
+    }
+
+    @Test
+    public void disabledWithNoMaxAge() {
+        when(config.getInt(eq(ConfigProperties.POOL_INDEX_MAX_AGE))).thenReturn(0);
+        assertFalse(new PoolIndex(poolCurator, transactionHooks, config).isEnabled());
+        assertTrue(index.isEnabled());
+    }
+}
@@ -20,6 +20,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
@@ -34,8 +35,10 @@ import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.candlepin.audit.Event;
@@ -57,6 +60,7 @@ import org.candlepin.model.PoolCurator;
 import org.candlepin.model.PoolQuantity;
 import org.candlepin.model.Product;
 import org.candlepin.model.Subscription;
+import org.candlepin.policy.EntitlementRefusedException;
 import org.candlepin.policy.ValidationResult;
 import org.candlepin.policy.criteria.CriteriaRules;
 import org.candlepin.policy.js.ProductCache;
@@ -70,6 +74,7 @@ import org.candlepin.policy.js.pool.PoolUpdate;
 import org.candlepin.service.EntitlementCertServiceAdapter;
 import org.candlepin.service.ProductServiceAdapter;
 import org.candlepin.service.SubscriptionServiceAdapter;
+import org.candlepin.sync.ManifestCache;
 import org.candlepin.test.TestUtil;
 import org.candlepin.util.Util;
 import org.junit.Before;
@@ -110,6 +115,12 @@ public class PoolManagerTest {
     private ConsumerCurator consumerCuratorMock;
     @Mock
     private EnvironmentCurator envCurator;
+    @Mock
+    private CrlPublisher crlPublisher;
+    @Mock
+    private PoolIndex poolIndex;
+    @Mock
+    private ManifestCache manifestCache;
 
     @Mock
     private EventFactory eventFactory;
@@ -139,7 +150,8 @@ public class PoolManagerTest {
         this.manager = spy(new CandlepinPoolManager(mockPoolCurator, mockSubAdapter,
             productCache, entCertAdapterMock, mockEventSink, eventFactory,
             mockConfig, enforcerMock, poolRulesMock, entitlementCurator,
-            consumerCuratorMock, certCuratorMock, complianceRules, envCurator));
+            consumerCuratorMock, certCuratorMock, complianceRules, envCurator,
+            crlPublisher, poolIndex, manifestCache));
 
         when(entCertAdapterMock.generateEntitlementCert(any(Entitlement.class),
             any(Subscription.class), any(Product.class))).thenReturn(
@@ -355,12 +367,14 @@ public class PoolManagerTest {
 
         ValidationResult result = mock(ValidationResult.class);
 
-        when(mockPoolCurator.listAvailableEntitlementPools(any(Consumer.class),
-            any(Owner.class), any(String.class), eq(now), anyBoolean(),
-            anyBoolean())).thenReturn(pools);
+        when(mockPoolCurator.listAvailableEntitlementPoolsForProducts(
+            any(Consumer.class), any(Owner.class), anyCollection(), eq(now),
+            anyBoolean(), anyBoolean())).thenReturn(pools);
         when(mockPoolCurator.lockAndLoad(any(Pool.class))).thenReturn(pool1);
         when(enforcerMock.preEntitlement(any(Consumer.class), any(Pool.class), anyInt()))
             .thenReturn(helper);
+        when(enforcerMock.preEntitlement(any(Consumer.class), anyCollection(), anyInt()))
+            .thenReturn(validationsFor(pools, result));
 
         when(helper.getResult()).thenReturn(result);
         when(result.isSuccessful()).thenReturn(true);
@@ -379,6 +393,36 @@ public class PoolManagerTest {
         assertEquals(e.size(), 1);
     }
 
+    @Test
+    public void testOptimisticEntitleClaimsQuantityLast() throws Exception {
+        mockOptimisticEntitle();
+        when(mockPoolCurator.updateConsumed(eq(pool), eq(2L), eq(0L))).thenReturn(true);
+
+        Entitlement e = manager.entitleByPool(TestUtil.createConsumer(o), pool, 2);
+
+        assertNotNull(e);
+        verify(mockPoolCurator, never()).lockAndLoad(any(Pool.class));
+        verify(mockPoolCurator).updateConsumed(eq(pool), eq(2L), eq(0L));
+        assertEquals(Long.valueOf(0), pool.getConsumed());
+    }
+
+    @Test(expected = EntitlementRefusedException.class)
+    public void testOptimisticEntitleRefusedWhenPoolUsedUp() throws Exception {
+        mockOptimisticEntitle();
+        when(mockPoolCurator.updateConsumed(eq(pool), eq(2L), eq(0L))).thenReturn(false);
+
+        manager.entitleByPool(TestUtil.createConsumer(o), pool, 2);
+    }
+
+    private void mockOptimisticEntitle() {
+        when(mockConfig.getBoolean(eq(ConfigProperties.POOL_OPTIMISTIC_LOCKING)))
+            .thenReturn(true);
+        PreEntHelper helper = mock(PreEntHelper.class);
+        when(helper.getResult()).thenReturn(new ValidationResult());
+        when(enforcerMock.preEntitlement(any(Consumer.class), any(Pool.class), anyInt()))
+            .thenReturn(helper);
+    }
+
     @Test
     public void testRefreshPoolsRemovesExpiredSubscriptionsAlongWithItsPoolsAndEnts() {
         PreUnbindHelper preHelper =  mock(PreUnbindHelper.class);
@@ -468,6 +512,16 @@ public class PoolManagerTest {
         verify(mockEventSink, times(3)).sendEvent((Event) any());
     }
 
+    private Map<Pool, ValidationResult> validationsFor(List<Pool> pools,
+        ValidationResult result) {
+        Map<Pool, ValidationResult> validations =
+            new LinkedHashMap<Pool, ValidationResult>();
+        for (Pool pool : pools) {
+            validations.put(pool, result);
+        }
+        return validations;
+    }
+
     private Pool createPoolWithEntitlements() {
         Pool newPool = TestUtil.createPool(o, product);
         Entitlement e1 = new Entitlement(newPool, TestUtil.createConsumer(o),
@@ -503,13 +557,15 @@ public class PoolManagerTest {
         when(complianceRules.getStatus(any(Consumer.class),
             any(Date.class))).thenReturn(mockCompliance);
 
-        when(mockPoolCurator.listAvailableEntitlementPools(any(Consumer.class),
-            any(Owner.class), anyString(), eq(now),
+        when(mockPoolCurator.listAvailableEntitlementPoolsForProducts(
+            any(Consumer.class), any(Owner.class), anyCollection(), eq(now),
             anyBoolean(), anyBoolean())).thenReturn(pools);
 
         when(mockPoolCurator.lockAndLoad(any(Pool.class))).thenReturn(pool1);
         when(enforcerMock.preEntitlement(any(Consumer.class), any(Pool.class), anyInt()))
             .thenReturn(helper);
+        when(enforcerMock.preEntitlement(any(Consumer.class), anyCollection(), anyInt()))
+            .thenReturn(validationsFor(pools, result));
 
         when(helper.getResult()).thenReturn(result);
         when(result.isSuccessful()).thenReturn(true);
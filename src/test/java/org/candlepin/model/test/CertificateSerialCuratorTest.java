@@ -214,6 +214,16 @@ public class CertificateSerialCuratorTest extends DatabaseTestFixture {
         assertNotNull(values.get(serial1.getSerial()));
     }
 
+    @Test
+    public void reserveAssignsIdBeforeFlush() {
+        CertificateSerial serial = certSerialCurator.reserve(
+            new CertificateSerial(tomorrow()));
+        assertNotNull(serial.getId());
+
+        entityManager().clear();
+        assertNotNull(certSerialCurator.find(serial.getId()));
+    }
+
     @Test
     public void givenNullReturnsNull() {
         assertEquals(null, certSerialCurator.listBySerialIds(null));
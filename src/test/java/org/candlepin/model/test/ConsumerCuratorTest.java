@@ -195,6 +195,20 @@ public class ConsumerCuratorTest extends DatabaseTestFixture {
         assertTrue(consumer.getLastCheckin().after(date));
     }
 
+    @Test
+    public void updateLastCheckins() throws Exception {
+        Consumer consumer = new Consumer("hostConsumer", "testUser", owner, ct);
+        consumer = consumerCurator.create(consumer);
+        Date date = new Date(System.currentTimeMillis() - 60000);
+
+        Map<String, Date> checkins = new HashMap<String, Date>();
+        checkins.put(consumer.getId(), date);
+        consumerCurator.updateLastCheckins(checkins);
+
+        consumerCurator.refresh(consumer);
+        assertEquals(date.getTime(), consumer.getLastCheckin().getTime());
+    }
+
     @Test
     public void delete() {
         Consumer consumer = new Consumer("testConsumer", "testUser", owner, ct);
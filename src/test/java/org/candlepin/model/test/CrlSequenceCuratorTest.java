@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.candlepin.model.CrlSequenceCurator;
+import org.candlepin.test.DatabaseTestFixture;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+/**
+ * CrlSequenceCuratorTest
+ */
+public class CrlSequenceCuratorTest extends DatabaseTestFixture {
+
+    private CrlSequenceCurator crlSequenceCurator;
+
+    @Before
+    public void setUpCurator() {
+        crlSequenceCurator = injector.getInstance(CrlSequenceCurator.class);
+    }
+
+    @Test
+    public void numbersIncrease() {
+        assertEquals(BigInteger.ONE, crlSequenceCurator.next(BigInteger.ZERO));
+        assertEquals(BigInteger.valueOf(2), crlSequenceCurator.next(BigInteger.ZERO));
+        assertEquals(BigInteger.valueOf(3), crlSequenceCurator.next(BigInteger.ONE));
+    }
+
+    @Test
+    public void numbersContinueAfterFloor() {
+        assertEquals(BigInteger.valueOf(11), crlSequenceCurator.next(BigInteger.TEN));
+        assertEquals(BigInteger.valueOf(21),
+            crlSequenceCurator.next(BigInteger.valueOf(20)));
+        assertEquals(BigInteger.valueOf(22), crlSequenceCurator.next(BigInteger.TEN));
+    }
+}
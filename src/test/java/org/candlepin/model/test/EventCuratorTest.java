@@ -17,11 +17,14 @@ package org.candlepin.model.test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import org.candlepin.audit.Event;
 import org.candlepin.audit.EventFactory;
+import org.candlepin.audit.Event.Target;
 import org.candlepin.audit.Event.Type;
 import org.candlepin.auth.Access;
+import org.candlepin.auth.SystemPrincipal;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerType;
 import org.candlepin.model.Owner;
@@ -30,6 +33,8 @@ import org.candlepin.test.DatabaseTestFixture;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Date;
+import java.util.List;
 
 public class EventCuratorTest extends DatabaseTestFixture {
 
@@ -59,4 +64,79 @@ public class EventCuratorTest extends DatabaseTestFixture {
         assertNotNull(lookedUp.getId());
     }
 
+    @Test
+    public void pagesMostRecentFirst() {
+        Date now = new Date();
+        Event oldest = createEvent("c1", new Date(now.getTime() - 2000));
+        Event middle = createEvent("c1", new Date(now.getTime() - 1000));
+        Event newest = createEvent("c1", now);
+
+        List<Event> page = eventCurator.listMostRecent(2, owner, null);
+        assertEquals(2, page.size());
+        assertEquals(newest.getId(), page.get(0).getId());
+        assertEquals(middle.getId(), page.get(1).getId());
+
+        page = eventCurator.listMostRecent(2, owner, middle.getId());
+        assertEquals(1, page.size());
+        assertEquals(oldest.getId(), page.get(0).getId());
+
+        assertTrue(eventCurator.listMostRecent(2, owner, oldest.getId()).isEmpty());
+    }
+
+    @Test
+    public void pagesEventsWithTheSameTimestamp() {
+        Date now = new Date();
+        for (int i = 0; i < 5; i++) {
+            createEvent("c1", now);
+        }
+
+        int seen = 0;
+        String before = null;
+        List<Event> page;
+        do {
+            page = eventCurator.listMostRecent(2, before);
+            seen += page.size();
+            if (!page.isEmpty()) {
+                before = page.get(page.size() - 1).getId();
+            }
+        } while (!page.isEmpty());
+        assertEquals(5, seen);
+    }
+
+    @Test
+    public void noLimitListsAllEvents() {
+        Date now = new Date();
+        for (int i = 0; i < 5; i++) {
+            createEvent("c1", now);
+        }
+        assertEquals(5, eventCurator.listMostRecent(0, null).size());
+    }
+
+    @Test
+    public void unknownCursorReturnsNothing() {
+        createEvent("c1", new Date());
+        assertTrue(eventCurator.listMostRecent(10, "unknown").isEmpty());
+    }
+
+    @Test
+    public void deleteBefore() {
+        Date now = new Date();
+        Event old = createEvent("c1", new Date(now.getTime() - 10000));
+        Event recent = createEvent("c1", now);
+
+        assertEquals(old.getTimestamp(), eventCurator.getOldestTimestamp());
+        assertEquals(1, eventCurator.deleteBefore(new Date(now.getTime() - 5000)));
+        entityManager().clear();
+        assertNull(eventCurator.find(old.getId()));
+        assertNotNull(eventCurator.find(recent.getId()));
+        assertEquals(recent.getTimestamp(), eventCurator.getOldestTimestamp());
+    }
+
+    private Event createEvent(String consumerId, Date timestamp) {
+        Event event = new Event(Type.CREATED, Target.CONSUMER, "consumer",
+            new SystemPrincipal(), owner.getId(), consumerId, consumerId,
+            null, null, null, null);
+        event.setTimestamp(timestamp);
+        return eventCurator.create(event);
+    }
 }
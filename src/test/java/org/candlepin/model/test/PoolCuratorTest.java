@@ -15,6 +15,7 @@
 package org.candlepin.model.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import org.candlepin.auth.NoAuthPrincipal;
@@ -37,6 +38,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -172,6 +174,37 @@ public class PoolCuratorTest extends DatabaseTestFixture {
         assertEquals(1, results.size());
     }
 
+    @Test
+    public void testListForProductsMatchesDirectAndProvided() {
+        Product parent = TestUtil.createProduct();
+        productCurator.create(parent);
+        Product provided = TestUtil.createProduct();
+        productCurator.create(provided);
+        Product unrelated = TestUtil.createProduct();
+        productCurator.create(unrelated);
+
+        Set<ProvidedProduct> providedProducts = new HashSet<ProvidedProduct>();
+        ProvidedProduct providedProduct = new ProvidedProduct(
+            provided.getId(), "Test Provided Product");
+        providedProducts.add(providedProduct);
+        Pool providing = TestUtil.createPool(owner, parent, providedProducts, 5);
+        providedProduct.setPool(providing);
+        poolCurator.create(providing);
+
+        Pool direct = TestUtil.createPool(owner, product);
+        poolCurator.create(direct);
+        poolCurator.create(TestUtil.createPool(owner, unrelated));
+
+        List<Pool> results = poolCurator.listAvailableEntitlementPoolsForProducts(null,
+            owner, Arrays.asList(product.getId(), provided.getId()), null, false, false);
+        assertEquals(2, results.size());
+        assertTrue(results.contains(providing));
+        assertTrue(results.contains(direct));
+
+        assertEquals(0, poolCurator.listAvailableEntitlementPoolsForProducts(null,
+            owner, new ArrayList<String>(), null, false, false).size());
+    }
+
     @Test
     public void testPoolProducts() {
         Product another = TestUtil.createProduct();
@@ -239,6 +272,7 @@ public class PoolCuratorTest extends DatabaseTestFixture {
 
         Entitlement e = new Entitlement(pool, consumer, pool.getStartDate(),
             pool.getEndDate(), 1);
+        pool.setConsumed(pool.getConsumed() + e.getQuantity());
         entitlementCurator.create(e);
 
         assertEquals(0, poolCurator.lookupOversubscribedBySubscriptionId(
@@ -246,6 +280,7 @@ public class PoolCuratorTest extends DatabaseTestFixture {
 
         e = new Entitlement(pool, consumer, pool.getStartDate(),
             pool.getEndDate(), 1);
+        pool.setConsumed(pool.getConsumed() + e.getQuantity());
         entitlementCurator.create(e);
         assertEquals(1, poolCurator.lookupOversubscribedBySubscriptionId(
             subid, e).size());
@@ -262,6 +297,7 @@ public class PoolCuratorTest extends DatabaseTestFixture {
 
         Entitlement sourceEnt = new Entitlement(pool, consumer, pool.getStartDate(),
             pool.getEndDate(), 1);
+        pool.setConsumed(pool.getConsumed() + sourceEnt.getQuantity());
         entitlementCurator.create(sourceEnt);
 
         // Create derived pool referencing the entitlement just made:
@@ -279,6 +315,7 @@ public class PoolCuratorTest extends DatabaseTestFixture {
         // Oversubscribe to the derived pool:
         Entitlement derivedEnt = new Entitlement(derivedPool, consumer,
             derivedPool.getStartDate(), derivedPool.getEndDate(), 2);
+        derivedPool.setConsumed(derivedPool.getConsumed() + derivedEnt.getQuantity());
         entitlementCurator.create(derivedEnt);
 
         // Passing the source entitlement should find the oversubscribed derived pool:
@@ -302,6 +339,7 @@ public class PoolCuratorTest extends DatabaseTestFixture {
 
         Entitlement e = new Entitlement(pool, consumer, pool.getStartDate(),
             pool.getEndDate(), 1);
+        pool.setConsumed(pool.getConsumed() + e.getQuantity());
         entitlementCurator.create(e);
 
         assertEquals(0, poolCurator.lookupOversubscribedBySubscriptionId(
@@ -309,11 +347,63 @@ public class PoolCuratorTest extends DatabaseTestFixture {
 
         e = new Entitlement(pool, consumer, pool.getStartDate(),
             pool.getEndDate(), 1);
+        pool.setConsumed(pool.getConsumed() + e.getQuantity());
         entitlementCurator.create(e);
         assertEquals(0, poolCurator.lookupOversubscribedBySubscriptionId(
             subid, e).size());
     }
 
+    @Test
+    public void testReconcileCounters() {
+        Pool pool = createPoolAndSub(owner, product, 10L,
+            TestUtil.createDate(2050, 3, 2), TestUtil.createDate(2055, 3, 2));
+        Entitlement e = new Entitlement(pool, consumer, pool.getStartDate(),
+            pool.getEndDate(), 3);
+        entitlementCurator.create(e);
+
+        assertEquals(1, poolCurator.listPoolIdsWithCounterDrift().size());
+        assertTrue(poolCurator.reconcileCounters(pool));
+        assertEquals(Long.valueOf(3), pool.getConsumed());
+        assertEquals(Long.valueOf(0), pool.getExported());
+
+        assertEquals(0, poolCurator.listPoolIdsWithCounterDrift().size());
+        assertFalse(poolCurator.reconcileCounters(pool));
+    }
+
+    @Test
+    public void testUpdateConsumedChecksQuantity() {
+        Pool pool = createPoolAndSub(owner, product, 3L,
+            TestUtil.createDate(2050, 3, 2), TestUtil.createDate(2055, 3, 2));
+        assertTrue(poolCurator.updateConsumed(pool, 2, 2));
+        assertEquals(Long.valueOf(2), pool.getConsumed());
+        assertEquals(Long.valueOf(2), pool.getExported());
+
+        assertFalse(poolCurator.updateConsumed(pool, 2, 0));
+        assertEquals(Long.valueOf(2), pool.getConsumed());
+
+        assertTrue(poolCurator.updateConsumed(pool, -1, -1));
+        assertTrue(poolCurator.updateConsumed(pool, 2, 0));
+        assertEquals(Long.valueOf(3), pool.getConsumed());
+        assertEquals(Long.valueOf(1), pool.getExported());
+    }
+
+    @Test
+    public void testUpdateConsumedLeavesVersionAlone() {
+        Pool pool = createPoolAndSub(owner, product, 3L,
+            TestUtil.createDate(2050, 3, 2), TestUtil.createDate(2055, 3, 2));
+        Object version = poolVersion(pool);
+
+        assertTrue(poolCurator.updateConsumed(pool, 2, 0));
+        assertEquals(version, poolVersion(pool));
+    }
+
+    private Object poolVersion(Pool pool) {
+        return entityManager().createQuery(
+            "select p.version from Pool p where p.id = :id")
+            .setParameter("id", pool.getId())
+            .getSingleResult();
+    }
+
     @Test
     public void testListByActiveOnIncludesSameStartDay() {
         Date activeOn = TestUtil.createDate(2011, 2, 2);
@@ -21,6 +21,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -35,9 +36,11 @@ import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.Entitlement;
 import org.candlepin.model.Pool;
+import org.candlepin.model.TransactionHooks;
 import org.candlepin.policy.EntitlementRefusedException;
 import org.candlepin.policy.ValidationError;
 import org.candlepin.policy.ValidationResult;
+import org.hibernate.StaleObjectStateException;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -48,6 +51,8 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+
+import javax.persistence.PersistenceException;
 /**
  * EntitlerTest
  */
@@ -59,6 +64,7 @@ public class EntitlerTest {
     private Entitler entitler;
     private Consumer consumer;
     private ConsumerCurator cc;
+    private TransactionHooks hooks;
 
     private ValidationResult fakeOutResult(String msg) {
         ValidationResult result = new ValidationResult();
@@ -73,13 +79,14 @@ public class EntitlerTest {
         ef = mock(EventFactory.class);
         sink = mock(EventSink.class);
         cc = mock(ConsumerCurator.class);
+        hooks = mock(TransactionHooks.class);
         consumer = mock(Consumer.class);
         i18n = I18nFactory.getI18n(
             getClass(),
             Locale.US,
             I18nFactory.READ_PROPERTIES | I18nFactory.FALLBACK
         );
-        entitler = new Entitler(pm, cc, i18n, ef, sink);
+        entitler = new Entitler(pm, cc, i18n, ef, sink, hooks);
     }
 
     @Test
@@ -111,6 +118,46 @@ public class EntitlerTest {
         assertEquals(ent, ents.get(0));
     }
 
+    @Test
+    public void staleBindIsRetried() throws EntitlementRefusedException {
+        String poolid = "pool10";
+        Pool pool = mock(Pool.class);
+        Entitlement ent = mock(Entitlement.class);
+
+        when(consumer.getUuid()).thenReturn("abcd1234");
+        when(cc.findByUuid(eq("abcd1234"))).thenReturn(consumer);
+        when(pm.find(eq(poolid))).thenReturn(pool);
+        when(pm.entitleByPool(eq(consumer), eq(pool), eq(1)))
+            .thenThrow(new PersistenceException(
+                new StaleObjectStateException("Pool", poolid)))
+            .thenReturn(ent);
+
+        List<Entitlement> ents = entitler.bindByPool(poolid, consumer, 1);
+        assertEquals(ent, ents.get(0));
+        verify(pm, times(2)).find(eq(poolid));
+    }
+
+    @Test
+    public void staleBindInCallersTransactionIsNotRetried()
+        throws EntitlementRefusedException {
+        String[] pids = {"prod1"};
+        PersistenceException stale = new PersistenceException(
+            new StaleObjectStateException("Pool", "pool10"));
+        when(hooks.isActive()).thenReturn(true);
+        when(pm.entitleByProducts(eq(consumer), eq(pids), eq((Date) null)))
+            .thenThrow(stale);
+
+        try {
+            entitler.bindByProducts(pids, consumer, null);
+            fail("expected the stale bind to fail");
+        }
+        catch (PersistenceException e) {
+            assertEquals(stale, e);
+        }
+        verify(pm, times(1)).entitleByProducts(eq(consumer), eq(pids),
+            eq((Date) null));
+    }
+
     @Test
     public void bindByProductsString() throws EntitlementRefusedException {
         String[] pids = {"prod1", "prod2", "prod3"};
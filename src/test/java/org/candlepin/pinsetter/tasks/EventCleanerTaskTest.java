@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.EventCurator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * EventCleanerTaskTest
+ */
+public class EventCleanerTaskTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private EventCurator curator;
+    private Config config;
+    private EventCleanerTask task;
+
+    @Before
+    public void init() {
+        curator = mock(EventCurator.class);
+        config = mock(Config.class);
+        task = new EventCleanerTask(curator, config);
+    }
+
+    @Test
+    public void disabledByDefault() throws Exception {
+        when(config.getInt(ConfigProperties.AUDIT_RETENTION_DAYS)).thenReturn(0);
+        task.execute(null);
+        verifyZeroInteractions(curator);
+    }
+
+    @Test
+    public void nothingToDelete() throws Exception {
+        when(config.getInt(ConfigProperties.AUDIT_RETENTION_DAYS)).thenReturn(30);
+        when(curator.getOldestTimestamp()).thenReturn(new Date());
+        task.execute(null);
+        verify(curator, never()).deleteBefore(any(Date.class));
+    }
+
+    @Test
+    public void deletesOneDayAtATime() throws Exception {
+        long now = System.currentTimeMillis();
+        when(config.getInt(ConfigProperties.AUDIT_RETENTION_DAYS)).thenReturn(30);
+        when(curator.getOldestTimestamp()).thenReturn(
+            new Date(now - 33 * DAY), new Date(now - 32 * DAY),
+            new Date(now - 31 * DAY), new Date(now - 29 * DAY));
+
+        task.execute(null);
+
+        ArgumentCaptor<Date> ends = ArgumentCaptor.forClass(Date.class);
+        verify(curator, times(3)).deleteBefore(ends.capture());
+        List<Date> dates = ends.getAllValues();
+        for (int i = 1; i < dates.size(); i++) {
+            assertTrue(dates.get(i).after(dates.get(i - 1)));
+        }
+        // never deletes anything within the retention period
+        assertTrue(dates.get(2).getTime() <= now - 30 * DAY);
+    }
+}
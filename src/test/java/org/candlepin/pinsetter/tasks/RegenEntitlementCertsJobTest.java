@@ -14,17 +14,25 @@
  */
 package org.candlepin.pinsetter.tasks;
 
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.candlepin.controller.CandlepinPoolManager;
+import org.candlepin.controller.EntitlementCertRegenerator;
+import org.candlepin.model.Entitlement;
 
 import org.junit.Test;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
 import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
 
 
 /**
@@ -46,10 +54,36 @@ public class RegenEntitlementCertsJobTest {
         when(jec.getJobDetail()).thenReturn(detail);
 
         // test
-        RegenProductEntitlementCertsJob recj = new RegenProductEntitlementCertsJob(pm);
+        RegenProductEntitlementCertsJob recj = new RegenProductEntitlementCertsJob(pm,
+            mock(EntitlementCertRegenerator.class));
         recj.execute(jec);
 
         // verification
         verify(pm).regenerateCertificatesOf(eq("foobarbaz"), eq(true));
     }
+
+    @Test
+    public void executeUsesRegenerator() throws Exception {
+        CandlepinPoolManager pm = mock(CandlepinPoolManager.class);
+        EntitlementCertRegenerator regenerator = mock(EntitlementCertRegenerator.class);
+        JobExecutionContext jec = mock(JobExecutionContext.class);
+        JobDetail detail = mock(JobDetail.class);
+        JobDataMap jdm = mock(JobDataMap.class);
+        List<Entitlement> ents = new ArrayList<Entitlement>();
+
+        when(jdm.getString(eq("product_id"))).thenReturn("foobarbaz");
+        when(jdm.getBoolean(eq("lazy_regen"))).thenReturn(false);
+        when(detail.getJobDataMap()).thenReturn(jdm);
+        when(detail.getKey()).thenReturn(new JobKey("regen_job"));
+        when(jec.getJobDetail()).thenReturn(detail);
+        when(jec.getRefireCount()).thenReturn(1);
+        when(pm.listEntitlementsForRegeneration(eq("foobarbaz"))).thenReturn(ents);
+        when(regenerator.regenerate(eq(ents), eq("regen_job"), eq(true)))
+            .thenReturn(3);
+
+        new RegenProductEntitlementCertsJob(pm, regenerator).execute(jec);
+
+        verify(pm, never()).regenerateCertificatesOf(eq("foobarbaz"), anyBoolean());
+        verify(jec).setResult(eq("Regenerated certificates for 3 entitlements"));
+    }
 }
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.security.KeyPair;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * KeyPairPoolTest
+ */
+public class KeyPairPoolTest {
+
+    @Mock private PKIUtility pki;
+    @Mock private Config config;
+
+    private KeyPairPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(pki.generateNewKeyPair()).thenAnswer(new Answer<KeyPair>() {
+            public KeyPair answer(InvocationOnMock invocation) {
+                return new KeyPair(null, null);
+            }
+        });
+        when(config.getInt(eq(ConfigProperties.KEYPAIR_POOL_LOW_WATERMARK)))
+            .thenReturn(2);
+        when(config.getInt(eq(ConfigProperties.KEYPAIR_POOL_THREADS))).thenReturn(2);
+    }
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void disabledGeneratesInline() throws Exception {
+        when(config.getInt(eq(ConfigProperties.KEYPAIR_POOL_SIZE))).thenReturn(0);
+        pool = new KeyPairPool(pki, config);
+
+        assertFalse(pool.isEnabled());
+        assertNotNull(pool.take());
+        verify(pki, times(1)).generateNewKeyPair();
+        assertEquals(0, pool.getAvailable());
+    }
+
+    @Test
+    public void takesFromFilledPool() throws Exception {
+        when(config.getInt(eq(ConfigProperties.KEYPAIR_POOL_SIZE))).thenReturn(5);
+        pool = new KeyPairPool(pki, config);
+        pool.start();
+        waitForAvailable(5);
+
+        KeyPair first = pool.take();
+        KeyPair second = pool.take();
+        assertNotSame(first, second);
+        assertEquals(2, pool.getHits());
+        assertEquals(0, pool.getMisses());
+    }
+
+    @Test
+    public void refillsBelowWatermark() throws Exception {
+        when(config.getInt(eq(ConfigProperties.KEYPAIR_POOL_SIZE))).thenReturn(5);
+        pool = new KeyPairPool(pki, config);
+        pool.start();
+        waitForAvailable(5);
+
+        for (int i = 0; i < 4; i++) {
+            pool.take();
+        }
+        assertEquals(4, pool.getHits());
+        waitForAvailable(5);
+    }
+
+    @Test
+    public void emptyPoolGeneratesInline() throws Exception {
+        when(config.getInt(eq(ConfigProperties.KEYPAIR_POOL_SIZE))).thenReturn(5);
+        pool = new KeyPairPool(pki, config);
+        pool.shutdown();
+
+        assertNotNull(pool.take());
+        assertEquals(0, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(0, pool.getGenerated());
+    }
+
+    private void waitForAvailable(int count) throws InterruptedException {
+        for (int i = 0; i < 500 && pool.getAvailable() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, pool.getAvailable());
+    }
+}
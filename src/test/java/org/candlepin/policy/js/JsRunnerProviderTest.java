@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Rules;
+import org.candlepin.model.RulesCurator;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * JsRunnerProviderTest
+ */
+public class JsRunnerProviderTest {
+
+    @Mock private RulesCurator rulesCurator;
+    @Mock private Config config;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(rulesCurator.getUpdated()).thenReturn(new Date(1000L));
+        when(rulesCurator.getRules()).thenReturn(new Rules("var a = 1;", "0.0.0"));
+        when(config.getInt(eq(ConfigProperties.RULES_CHECK_INTERVAL))).thenReturn(3600);
+    }
+
+    @Test
+    public void checksForUpdatesOncePerInterval() {
+        JsRunnerProvider provider = new JsRunnerProvider(rulesCurator, config);
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(provider.get());
+        }
+        verify(rulesCurator, times(1)).getUpdated();
+        verify(rulesCurator, times(1)).getRules();
+    }
+
+    @Test
+    public void invalidateForcesCheck() {
+        JsRunnerProvider provider = new JsRunnerProvider(rulesCurator, config);
+        provider.get();
+
+        when(rulesCurator.getUpdated()).thenReturn(new Date(2000L));
+        provider.invalidate();
+        provider.get();
+        provider.get();
+
+        verify(rulesCurator, times(2)).getUpdated();
+        verify(rulesCurator, times(2)).getRules();
+    }
+
+    @Test
+    public void noIntervalChecksEveryTime() {
+        JsRunnerProvider provider = new JsRunnerProvider(rulesCurator);
+        provider.get();
+        provider.get();
+
+        verify(rulesCurator, times(3)).getUpdated();
+        verify(rulesCurator, times(1)).getRules();
+    }
+
+    @Test
+    public void rulesVersionChangesOnRecompile() {
+        JsRunnerProvider provider = new JsRunnerProvider(rulesCurator);
+        long version = provider.get().getRulesVersion();
+        assertFalse(version == 0);
+        assertEquals(version, provider.get().getRulesVersion());
+
+        when(rulesCurator.getUpdated()).thenReturn(new Date(2000L));
+        assertFalse(version == provider.get().getRulesVersion());
+    }
+
+    @Test
+    public void runnersKnowWhetherRulesAreDefault() {
+        when(rulesCurator.isDefault(any(Rules.class))).thenReturn(true);
+        JsRunnerProvider provider = new JsRunnerProvider(rulesCurator);
+        assertTrue(provider.get().isDefaultRules());
+
+        // uploaded rules
+        when(rulesCurator.isDefault(any(Rules.class))).thenReturn(false);
+        when(rulesCurator.getUpdated()).thenReturn(new Date(2000L));
+        assertFalse(provider.get().isDefaultRules());
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.candlepin.model.Pool;
+import org.candlepin.model.PoolQuantity;
+import org.candlepin.model.Product;
+import org.candlepin.model.ProvidedProduct;
+import org.candlepin.policy.js.entitlement.Enforcer;
+import org.candlepin.test.TestUtil;
+import org.junit.Test;
+
+/**
+ * DefaultRulesBestPoolSelectorTest
+ *
+ * Runs every DefaultRulesTest scenario again with pools selected by
+ * BestPoolSelector, which must agree with select_pool_global of the default
+ * rules. The tied priority cases below run both and compare the results.
+ */
+public class DefaultRulesBestPoolSelectorTest extends DefaultRulesTest {
+
+    @Override
+    protected boolean isDefaultRules() {
+        return true;
+    }
+
+    @Test
+    public void selectBestPoolsManyProducts() {
+        // one pool per product, every combination of which the rules would try
+        int count = 40;
+        List<Pool> pools = new LinkedList<Pool>();
+        String[] productIds = new String[count];
+        for (int i = 0; i < count; i++) {
+            Product product = new Product("product-" + i, "Product " + i);
+            when(this.prodAdapter.getProductById(product.getId())).thenReturn(product);
+            productIds[i] = product.getId();
+            pools.add(createPool(owner, product));
+        }
+
+        List<PoolQuantity> result = enforcer.selectBestPools(consumer, productIds,
+            pools, compliance, null, new HashSet<String>());
+        assertEquals(count, result.size());
+    }
+
+    @Test
+    public void selectBestPoolsTiedPoolsInClassMatchesRules() {
+        Product product = mockProduct("product-1", null, null);
+        List<Pool> pools = new LinkedList<Pool>();
+        for (int i = 0; i < 3; i++) {
+            pools.add(createPool(owner, product));
+        }
+
+        assertSameSelection(new String[]{ product.getId() }, pools);
+    }
+
+    @Test
+    public void selectBestPoolsStacksInRulesClassOrder() {
+        consumer.setFact("cpu.cpu_socket(s)", "4");
+        Product product = mockProduct("product-1", "stack-1", "2");
+
+        // only the first pool of the class is compared against, so the latest
+        // expiring pool is stacked ahead of the middle one
+        Pool first = createPool(product, 2014);
+        Pool latest = createPool(product, 2016);
+        Pool middle = createPool(product, 2015);
+        List<Pool> pools = new LinkedList<Pool>();
+        pools.add(first);
+        pools.add(latest);
+        pools.add(middle);
+
+        List<PoolQuantity> selected = assertSameSelection(
+            new String[]{ product.getId() }, pools);
+        assertEquals(2, selected.size());
+        assertTrue(selected.contains(new PoolQuantity(first, 1)));
+        assertTrue(selected.contains(new PoolQuantity(latest, 1)));
+    }
+
+    @Test
+    public void selectBestPoolsBetterPoolLaterInClassMatchesRules() {
+        Product product1 = mockProduct("product-1", null, null);
+        Product product2 = mockProduct("product-2", null, null);
+
+        // the better pool restarts the rules' scan over the pools from its class
+        List<Pool> pools = new LinkedList<Pool>();
+        pools.add(createPool(product1, 2015));
+        pools.add(createPool(product1, 2014));
+        pools.add(createPool(product2, 2015));
+
+        assertSameSelection(new String[]{ product1.getId(), product2.getId() }, pools);
+    }
+
+    @Test
+    public void selectBestPoolsTiedClassesMatchesRules() {
+        Product product1 = mockProduct("product-1", null, null);
+        Product product2 = mockProduct("product-2", null, null);
+        Product product3 = mockProduct("product-3", null, null);
+
+        // both classes cover two products with one entitlement, and can't be
+        // combined as they both provide product-2
+        Pool pool1 = createPool(product1, 2015);
+        pool1.addProvidedProduct(new ProvidedProduct(product2.getId(), "Product 2"));
+        Pool pool3 = createPool(product3, 2015);
+        pool3.addProvidedProduct(new ProvidedProduct(product2.getId(), "Product 2"));
+        List<Pool> pools = new LinkedList<Pool>();
+        pools.add(pool1);
+        pools.add(pool3);
+
+        List<PoolQuantity> selected = assertSameSelection(new String[]{
+            product1.getId(), product2.getId(), product3.getId() }, pools);
+        assertEquals(1, selected.size());
+        assertTrue(selected.contains(new PoolQuantity(pool3, 1)));
+    }
+
+    /*
+     * Selects pools with select_pool_global and with BestPoolSelector, and checks
+     * both chose the same pools and quantities.
+     */
+    private List<PoolQuantity> assertSameSelection(String[] productIds,
+        List<Pool> pools) {
+        Enforcer rules = createEntitlementRules(false);
+        List<PoolQuantity> expected = rules.selectBestPools(consumer, productIds,
+            pools, compliance, null, new HashSet<String>());
+        List<PoolQuantity> actual = enforcer.selectBestPools(consumer, productIds,
+            pools, compliance, null, new HashSet<String>());
+        assertEquals(expected, actual);
+        return actual;
+    }
+
+    private Product mockProduct(String id, String stackId, String sockets) {
+        Product product = new Product(id, id);
+        if (stackId != null) {
+            product.setAttribute("sockets", sockets);
+            product.setAttribute("stacking_id", stackId);
+            product.setAttribute("multi-entitlement", "yes");
+        }
+        when(this.prodAdapter.getProductById(id)).thenReturn(product);
+        return product;
+    }
+
+    private Pool createPool(Product product, int endYear) {
+        Pool pool = createPool(owner, product);
+        pool.setQuantity(1L);
+        pool.setEndDate(TestUtil.createDate(endYear, 11, 30));
+        return pool;
+    }
+}
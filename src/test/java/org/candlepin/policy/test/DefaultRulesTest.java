@@ -84,19 +84,19 @@ import org.xnap.commons.i18n.I18nFactory;
  * DefaultRulesTest
  */
 public class DefaultRulesTest {
-    private Enforcer enforcer;
+    protected Enforcer enforcer;
     @Mock
     private RulesCurator rulesCurator;
     @Mock
-    private ProductServiceAdapter prodAdapter;
+    protected ProductServiceAdapter prodAdapter;
     @Mock
     private Config config;
     @Mock
     private ConsumerCurator consumerCurator;
-    @Mock private ComplianceStatus compliance;
+    @Mock protected ComplianceStatus compliance;
     @Mock private PoolManager poolManagerMock;
-    private Owner owner;
-    private Consumer consumer;
+    protected Owner owner;
+    protected Consumer consumer;
     private String productId = "a-product";
     private PoolRules poolRules;
     private ProductCache productCache;
@@ -127,10 +127,7 @@ public class DefaultRulesTest {
         when(rulesCurator.getUpdated()).thenReturn(
             TestDateUtil.date(2010, 1, 1));
 
-        JsRunner jsRules = new JsRunnerProvider(rulesCurator).get();
-        enforcer = new EntitlementRules(new DateSourceImpl(), jsRules,
-            productCache, I18nFactory.getI18n(getClass(), Locale.US,
-                I18nFactory.FALLBACK), config, consumerCurator);
+        enforcer = createEntitlementRules(isDefaultRules());
 
         owner = new Owner();
         consumer = new Consumer("test consumer", "test user", owner,
@@ -142,7 +139,28 @@ public class DefaultRulesTest {
 
     }
 
-    private Pool createPool(Owner owner, Product product) {
+    /**
+     * @return true to run the rules as the shipped rules, selecting pools with
+     * BestPoolSelector rather than the select_pool_global function.
+     */
+    protected boolean isDefaultRules() {
+        return false;
+    }
+
+    /**
+     * @param defaultRules true to treat the rules as the shipped rules
+     * @return entitlement rules running default-rules.js
+     */
+    protected Enforcer createEntitlementRules(boolean defaultRules) {
+        when(rulesCurator.isDefault(any(Rules.class))).thenReturn(defaultRules);
+
+        JsRunner jsRules = new JsRunnerProvider(rulesCurator).get();
+        return new EntitlementRules(new DateSourceImpl(), jsRules,
+            productCache, I18nFactory.getI18n(getClass(), Locale.US,
+                I18nFactory.FALLBACK), config, consumerCurator);
+    }
+
+    protected Pool createPool(Owner owner, Product product) {
         Pool pool = TestUtil.createPool(owner, product);
         pool.setId("fakeid" + TestUtil.randomInt());
         return pool;
@@ -22,6 +22,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -116,6 +117,34 @@ public class EnforcerDispatcherTest {
         verify(ce, never()).preEntitlement(eq(c), eq(p), eq(10));
     }
 
+    @Test
+    public void batchPreEntitlementManifestConsumer() {
+        Consumer c = mock(Consumer.class);
+        List<Pool> pools = Collections.singletonList(mock(Pool.class));
+        ConsumerType type = mock(ConsumerType.class);
+        when(c.getType()).thenReturn(type);
+        when(type.isManifest()).thenReturn(true);
+
+        ed.preEntitlement(c, pools, 1);
+
+        verify(rules, never()).preEntitlement(eq(c), eq(pools), eq(1));
+        verify(ce, atLeastOnce()).preEntitlement(eq(c), eq(pools), eq(1));
+    }
+
+    @Test
+    public void batchPreEntitlementRegularConsumer() {
+        Consumer c = mock(Consumer.class);
+        List<Pool> pools = Collections.singletonList(mock(Pool.class));
+        ConsumerType type = mock(ConsumerType.class);
+        when(c.getType()).thenReturn(type);
+        when(type.isManifest()).thenReturn(false);
+
+        ed.preEntitlement(c, pools, 1);
+
+        verify(rules, atLeastOnce()).preEntitlement(eq(c), eq(pools), eq(1));
+        verify(ce, never()).preEntitlement(eq(c), eq(pools), eq(1));
+    }
+
     @Test
     public void bestPoolManifestConsumer() {
         Consumer c = mock(Consumer.class);
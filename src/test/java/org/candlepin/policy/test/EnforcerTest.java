@@ -23,6 +23,7 @@ import static org.mockito.Mockito.when;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
@@ -273,6 +274,30 @@ public class EnforcerTest extends DatabaseTestFixture {
         assertFalse(result.hasWarnings());
     }
 
+    @Test
+    public void batchPreEntitlementValidatesEachPool() {
+        Product product = new Product("a-product", "A product for testing");
+        productCurator.create(product);
+
+        when(this.productAdapter.getProductById("a-product")).thenReturn(product);
+
+        Pool available = entitlementPoolWithMembersAndExpiration(owner, product, 1, 2,
+            expiryDate(2010, 10, 10));
+        Pool consumed = entitlementPoolWithMembersAndExpiration(owner, product, 1, 1,
+            expiryDate(2010, 10, 10));
+        Pool expired = entitlementPoolWithMembersAndExpiration(owner, product, 1, 2,
+            expiryDate(2000, 1, 1));
+        List<Pool> pools = Arrays.asList(available, consumed, expired);
+
+        Map<Pool, ValidationResult> results = enforcer.preEntitlement(
+            createConsumer(owner), pools, 1);
+
+        assertEquals(pools, new ArrayList<Pool>(results.keySet()));
+        assertTrue(results.get(available).isSuccessful());
+        assertTrue(results.get(consumed).hasErrors());
+        assertTrue(results.get(expired).hasErrors());
+    }
+
     // This exception should mention wrapping a MissingFactException
     @Test(expected = RuleExecutionException.class)
     public void testRuleFailsWhenConsumerDoesntHaveFact() {
@@ -434,6 +459,7 @@ public class EnforcerTest extends DatabaseTestFixture {
             Consumer c = createConsumer(theOwner);
             Entitlement e = createEntitlement(theOwner, c, p, null);
             e.setQuantity(1);
+            p.setConsumed(p.getConsumed() + 1);
             entitlementCurator.create(e);
             p.getEntitlements().add(e);
             poolCurator.merge(p);
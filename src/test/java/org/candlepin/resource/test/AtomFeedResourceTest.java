@@ -71,16 +71,26 @@ public class AtomFeedResourceTest {
     @Test
     public void getFeed() {
         List<Event> events = getEvents(10);
-        when(ec.listMostRecent(eq(1000))).thenReturn(events);
-        Feed f = afr.getFeed();
+        when(ec.listMostRecent(eq(1000), eq((String) null))).thenReturn(events);
+        Feed f = afr.getFeed(null);
         assertNotNull(f);
         assertEquals(10, f.getEntries().size());
     }
 
+    @Test
+    public void getFeedBefore() {
+        List<Event> events = getEvents(3);
+        when(ec.listMostRecent(eq(1000), eq("8aba"))).thenReturn(events);
+        Feed f = afr.getFeed("8aba");
+        assertNotNull(f);
+        assertEquals(3, f.getEntries().size());
+    }
+
     @Test
     public void getEmptyFeed() {
-        when(ec.listMostRecent(eq(1000))).thenReturn(new ArrayList<Event>());
-        Feed f = afr.getFeed();
+        when(ec.listMostRecent(eq(1000), eq((String) null)))
+            .thenReturn(new ArrayList<Event>());
+        Feed f = afr.getFeed(null);
         assertNotNull(f);
         assertTrue(f.getEntries().isEmpty());
     }
@@ -257,7 +257,8 @@ public class ConsumerResourceIntegrationTest extends DatabaseTestFixture {
         consumerCurator.update(consumer);
         setupPrincipal(owner, Access.READ_ONLY);
         securityInterceptor.enable();
-        consumerResource.exportData(mock(HttpServletResponse.class), consumer.getUuid());
+        consumerResource.exportData(mock(HttpServletResponse.class), null,
+            consumer.getUuid());
     }
 
     @SuppressWarnings("unchecked")
@@ -540,7 +541,7 @@ public class ConsumerResourceIntegrationTest extends DatabaseTestFixture {
         ConsumerResource cr = new ConsumerResource(this.consumerCurator, null,
             null, null, this.entitlementCurator, null, null, null, null, null,
             null, null, null, null, this.poolManager, null, null, null, null,
-            null, null, null, null, null, new Config());
+            null, null, null, null, null, new Config(), null);
 
         Response rsp = consumerResource.bind(
             consumer.getUuid(), pool.getId().toString(), null, 1, null,
@@ -22,7 +22,9 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -38,12 +40,20 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
+import org.candlepin.audit.Event;
 import org.candlepin.audit.EventFactory;
 import org.candlepin.audit.EventSink;
 import org.candlepin.auth.NoAuthPrincipal;
 import org.candlepin.config.Config;
 import org.candlepin.controller.CandlepinPoolManager;
+import org.candlepin.controller.CrlPublisher;
 import org.candlepin.controller.Entitler;
+import org.candlepin.controller.PoolIndex;
 import org.candlepin.controller.PoolManager;
 import org.candlepin.exceptions.BadRequestException;
 import org.candlepin.exceptions.NotFoundException;
@@ -72,6 +82,10 @@ import org.candlepin.resource.util.ResourceDateParser;
 import org.candlepin.service.EntitlementCertServiceAdapter;
 import org.candlepin.service.IdentityCertServiceAdapter;
 import org.candlepin.service.SubscriptionServiceAdapter;
+import org.candlepin.sync.ExportArchive;
+import org.candlepin.sync.Exporter;
+import org.candlepin.sync.ManifestCache;
+import org.candlepin.sync.ManifestCache.CachedManifest;
 import org.candlepin.test.TestUtil;
 import org.junit.Before;
 import org.junit.Test;
@@ -124,7 +138,7 @@ public class ConsumerResourceTest {
             mockedConsumerCurator, null, null, null, mockedEntitlementCurator, null,
             mockedEntitlementCertServiceAdapter, null, null, null, null, null,
             null, null, mockedPoolManager, null, null, null, null, null, null,
-            null, null, null, new Config());
+            null, null, null, new Config(), null);
 
         List<CertificateSerialDto> serials = consumerResource
             .getEntitlementCertificateSerials(consumer.getUuid());
@@ -153,13 +167,14 @@ public class ConsumerResourceTest {
         CandlepinPoolManager poolManager = new CandlepinPoolManager(null,
             mockedSubscriptionServiceAdapter, null,
             mockedEntitlementCertServiceAdapter, null, null, new Config(), null,
-            null, mockedEntitlementCurator, mockedConsumerCurator, null, null, null);
+            null, mockedEntitlementCurator, mockedConsumerCurator, null, null, null,
+            mock(CrlPublisher.class), mock(PoolIndex.class), mock(ManifestCache.class));
 
         ConsumerResource consumerResource = new ConsumerResource(
             mockedConsumerCurator, null, null, null, mockedEntitlementCurator, null,
             mockedEntitlementCertServiceAdapter, null, null, null, null, null,
             null, null, poolManager, null, null, null, null, null, null,
-            null, null, null, new Config());
+            null, null, null, new Config(), null);
 
         consumerResource.regenerateEntitlementCertificates(consumer.getUuid(), "9999",
             false);
@@ -194,7 +209,7 @@ public class ConsumerResourceTest {
         ConsumerResource cr = new ConsumerResource(mockedConsumerCurator, null,
             null, null, null, null, null, null, null, null, null, null, null,
             null, mgr, null, null, null, null, null, null, null, null, null,
-            new Config());
+            new Config(), null);
         cr.regenerateEntitlementCertificates(consumer.getUuid(), null, true);
         Mockito.verify(mgr, Mockito.times(1))
             .regenerateEntitlementCertificates(eq(consumer), eq(true));
@@ -225,7 +240,7 @@ public class ConsumerResourceTest {
         ConsumerResource cr = new ConsumerResource(mockedConsumerCurator, null,
             null, null, null, mockedIdSvc, null, null, sink, factory, null, null,
             null, null, null, null, null, null, mockedOwnerCurator, null, null, null,
-            null, null, new Config());
+            null, null, new Config(), null);
 
         Consumer fooc = cr.regenerateIdentityCertificates(consumer.getUuid());
 
@@ -261,7 +276,7 @@ public class ConsumerResourceTest {
         ConsumerResource cr = new ConsumerResource(mockedConsumerCurator, null,
             null, ssa, null, mockedIdSvc, null, null, sink, factory, null, null,
             null, null, null, null, null, null, mockedOwnerCurator, null, null,
-            rules, null, null, new Config());
+            rules, null, null, new Config(), null);
 
         Consumer c = cr.getConsumer(consumer.getUuid());
 
@@ -283,7 +298,7 @@ public class ConsumerResourceTest {
         ConsumerResource cr = new ConsumerResource(mockedConsumerCurator, null,
             null, ssa, null, null, null, null, null, null, null, null,
             null, null, null, null, null, null, mockedOwnerCurator, null, null,
-            rules, null, null, new Config());
+            rules, null, null, new Config(), null);
 
         Consumer c = cr.getConsumer(consumer.getUuid());
 
@@ -312,7 +327,7 @@ public class ConsumerResourceTest {
         ConsumerResource cr = new ConsumerResource(null, ctc,
             null, null, null, null, null, i18n, null, null, null, null,
             null, null, null, null, null, null, oc, akc, null, null, null, null,
-            new Config());
+            new Config(), null);
         cr.create(c, nap, null, "testOwner", "testKey");
     }
 
@@ -335,7 +350,7 @@ public class ConsumerResourceTest {
             ConsumerResource cr = new ConsumerResource(cc, null,
                 null, sa, null, null, null, i18n, null, null, null, null,
                 null, null, null, null, null, null, null, null, e, null, null, null,
-                new Config());
+                new Config(), null);
             cr.bind("fakeConsumer", null, prodIds, 1, null, null, false, null);
         }
         catch (Throwable t) {
@@ -362,7 +377,7 @@ public class ConsumerResourceTest {
         ConsumerResource cr = new ConsumerResource(cc, null,
             null, sa, null, null, null, null, null, null, null, null,
             null, null, null, null, null, null, null, null, e, null, null, null,
-            new Config());
+            new Config(), null);
         String dtStr = "2011-09-26T18:10:50.184081+00:00";
         Date dt = ResourceDateParser.parseDateString(dtStr);
         cr.bind("fakeConsumer", null, null, 1, null, null, false, dtStr);
@@ -381,7 +396,7 @@ public class ConsumerResourceTest {
         ConsumerResource consumerResource = new ConsumerResource(consumerCurator, null,
             null, null, entitlementCurator, null, null, i18n, null, null, null,
             null, null, null, null, null, null, null, null, null, null, null, null, null,
-            new Config());
+            new Config(), null);
 
         consumerResource.unbindBySerial("fake uuid",
             Long.valueOf(1234L));
@@ -395,7 +410,7 @@ public class ConsumerResourceTest {
         ConsumerResource consumerResource = new ConsumerResource(consumerCurator, null,
             null, null, null, null, null, i18n, null, null, null, null,
             null, null, null, null, null, null, null, null, null, null, null, null,
-            new Config());
+            new Config(), null);
 
         consumerResource.unbindBySerial("fake uuid",
             Long.valueOf(1234L));
@@ -407,7 +422,7 @@ public class ConsumerResourceTest {
         ConsumerResource consumerResource = new ConsumerResource(consumerCurator, null,
             null, null, null, null, null, i18n, null, null, null, null,
             null, null, null, null, null, null, null, null, null, null, null, null,
-            new Config());
+            new Config(), null);
 
         consumerResource.bind("fake uuid", "fake pool uuid",
             new String[]{"12232"}, 1, null, null, false, null);
@@ -420,7 +435,7 @@ public class ConsumerResourceTest {
         ConsumerResource consumerResource = new ConsumerResource(consumerCurator, null,
             null, null, null, null, null, i18n, null, null, null, null,
             null, null, null, null, null, null, null, null, null, null, null, null,
-            new Config());
+            new Config(), null);
 
         consumerResource.bind("notarealuuid", "fake pool uuid", null, null, null,
             null, false, null);
@@ -436,11 +451,124 @@ public class ConsumerResourceTest {
         ConsumerResource consumerResource = new ConsumerResource(consumerCurator, null,
             null, null, null, null, null, i18n, null, null, null, null,
             null, null, null, null, null, null, null, null, null, null, null, null,
-            new Config());
+            new Config(), null);
 
         consumerResource.regenerateEntitlementCertificates("xyz", null, true);
     }
 
+    @Test
+    public void exportUnchangedManifestIsNotModified() throws Exception {
+        Consumer consumer = createConsumer();
+        consumer.setType(new ConsumerType(ConsumerTypeEnum.CANDLEPIN));
+        Exporter exporter = mock(Exporter.class);
+        ManifestCache cache = mock(ManifestCache.class);
+        Request request = mock(Request.class);
+
+        when(mockedConsumerCurator.findByUuid(consumer.getUuid())).thenReturn(
+            consumer);
+        when(exporter.getFullExportFingerprint(consumer)).thenReturn("abc");
+        when(request.evaluatePreconditions(any(EntityTag.class)))
+            .thenReturn(Response.notModified());
+
+        ConsumerResource cr = new ConsumerResource(mockedConsumerCurator, null,
+            null, null, mockedEntitlementCurator, null, null, null, null, null,
+            null, null, null, exporter, mockedPoolManager, null, null, null, null,
+            null, null, null, null, null, new Config(), cache);
+        Response response = cr.exportData(mock(HttpServletResponse.class),
+            request, consumer.getUuid());
+
+        assertEquals(304, response.getStatus());
+        verify(exporter, never()).getFullExport(any(Consumer.class));
+    }
+
+    @Test
+    public void exportServesCachedManifest() throws Exception {
+        Consumer consumer = createConsumer();
+        consumer.setType(new ConsumerType(ConsumerTypeEnum.CANDLEPIN));
+        Exporter exporter = mock(Exporter.class);
+        ManifestCache cache = mock(ManifestCache.class);
+        CachedManifest manifest = mock(CachedManifest.class);
+        Request request = mock(Request.class);
+        HttpServletResponse httpResponse = mock(HttpServletResponse.class);
+
+        when(mockedConsumerCurator.findByUuid(consumer.getUuid())).thenReturn(
+            consumer);
+        when(exporter.getFullExportFingerprint(consumer)).thenReturn("abc");
+        when(cache.get(consumer.getUuid(), "abc")).thenReturn(manifest);
+        when(manifest.getName()).thenReturn("export.zip");
+
+        ConsumerResource cr = new ConsumerResource(mockedConsumerCurator, null,
+            null, null, mockedEntitlementCurator, null, null, null,
+            mock(EventSink.class), mock(EventFactory.class), null, null, null,
+            exporter, mockedPoolManager, null, null, null, null, null, null, null,
+            null, null, new Config(), cache);
+        Response response = cr.exportData(httpResponse, request, consumer.getUuid());
+
+        assertEquals(200, response.getStatus());
+        assertEquals(manifest, response.getEntity());
+        assertEquals(new EntityTag("abc", true).toString(),
+            response.getMetadata().getFirst("ETag").toString());
+        verify(httpResponse).addHeader("Content-Disposition",
+            "attachment; filename=export.zip");
+        verify(exporter, never()).getFullExport(any(Consumer.class));
+    }
+
+    @Test
+    public void exportHeadRequestDoesNotBuildManifest() throws Exception {
+        Consumer consumer = createConsumer();
+        consumer.setType(new ConsumerType(ConsumerTypeEnum.CANDLEPIN));
+        Exporter exporter = mock(Exporter.class);
+        Request request = mock(Request.class);
+
+        when(mockedConsumerCurator.findByUuid(consumer.getUuid())).thenReturn(
+            consumer);
+        when(exporter.getFullExportFingerprint(consumer)).thenReturn("abc");
+        when(request.getMethod()).thenReturn("HEAD");
+
+        ConsumerResource cr = new ConsumerResource(mockedConsumerCurator, null,
+            null, null, mockedEntitlementCurator, null, null, null, null, null,
+            null, null, null, exporter, mockedPoolManager, null, null, null, null,
+            null, null, null, null, null, new Config(), mock(ManifestCache.class));
+        Response response = cr.exportData(mock(HttpServletResponse.class),
+            request, consumer.getUuid());
+
+        assertEquals(200, response.getStatus());
+        assertEquals(null, response.getEntity());
+        verify(exporter, never()).getFullExport(any(Consumer.class));
+    }
+
+    @Test
+    public void exportArchiveIsDeletedWhenRequestFails() throws Exception {
+        Consumer consumer = createConsumer();
+        consumer.setType(new ConsumerType(ConsumerTypeEnum.CANDLEPIN));
+        Exporter exporter = mock(Exporter.class);
+        ManifestCache cache = mock(ManifestCache.class);
+        ExportArchive archive = mock(ExportArchive.class);
+        EventSink sink = mock(EventSink.class);
+
+        when(mockedConsumerCurator.findByUuid(consumer.getUuid())).thenReturn(
+            consumer);
+        when(exporter.getFullExportFingerprint(consumer)).thenReturn("abc");
+        when(exporter.getFullExport(consumer)).thenReturn(archive);
+        when(cache.put(consumer.getUuid(), "abc", archive)).thenReturn(archive);
+        doThrow(new RuntimeException("hornetq down")).when(sink)
+            .sendEvent(any(Event.class));
+
+        ConsumerResource cr = new ConsumerResource(mockedConsumerCurator, null,
+            null, null, mockedEntitlementCurator, null, null, null, sink,
+            mock(EventFactory.class), null, null, null, exporter, mockedPoolManager,
+            null, null, null, null, null, null, null, null, null, new Config(), cache);
+        try {
+            cr.exportData(mock(HttpServletResponse.class), mock(Request.class),
+                consumer.getUuid());
+            fail("expected the event failure to be rethrown");
+        }
+        catch (RuntimeException e) {
+            assertEquals("hornetq down", e.getMessage());
+        }
+        verify(archive).delete();
+    }
+
     private Consumer createConsumer() {
         return new Consumer("test-consumer", "test-user", new Owner(
             "Test Owner"), new ConsumerType("test-consumer-type-"));
@@ -92,7 +92,7 @@ public class ConsumerResourceUpdateTest {
             this.userService, null, poolManager, null, null, null, null,
             this.activationKeyCurator, this.entitler, this.complianceRules,
             this.deletedConsumerCurator, this.environmentCurator,
-            new Config());
+            new Config(), null);
 
         when(complianceRules.getStatus(any(Consumer.class), any(Date.class)))
             .thenReturn(new ComplianceStatus(new Date()));
@@ -14,6 +14,8 @@
  */
 package org.candlepin.resource.test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
@@ -21,50 +23,70 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import org.candlepin.config.Config;
-import org.candlepin.config.ConfigProperties;
-import org.candlepin.controller.CrlGenerator;
+import org.candlepin.controller.CrlPublisher;
+import org.candlepin.controller.CrlPublisher.PublishedCrl;
+import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialCurator;
 import org.candlepin.resource.CrlResource;
-import org.candlepin.util.CrlFileUtil;
 import org.junit.Test;
 
-import java.io.File;
-import java.security.cert.X509CRL;
-import java.util.HashMap;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.LinkedList;
 import java.util.List;
 
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
 /**
  * CrlResourceTest
  */
 public class CrlResourceTest {
 
     @Test
-    @SuppressWarnings("unchecked")
     public void unrevoke() throws Exception {
-        CrlGenerator crlgen = mock(CrlGenerator.class);
-        CrlFileUtil fileutil = mock(CrlFileUtil.class);
+        CrlPublisher publisher = mock(CrlPublisher.class);
         CertificateSerialCurator sercur = mock(CertificateSerialCurator.class);
-        Config config = new ConfigForTesting();
-        X509CRL crl = mock(X509CRL.class);
-        when(fileutil.readCRLFile(any(File.class))).thenReturn(crl);
-        when(crlgen.removeEntries(eq(crl), any(List.class))).thenReturn(crl);
-
-        CrlResource res = new CrlResource(crlgen, fileutil, config, sercur);
+        List<CertificateSerial> serials = new LinkedList<CertificateSerial>();
         String[] ids = {"10"};
+        when(sercur.listBySerialIds(eq(ids))).thenReturn(serials);
+
+        CrlResource res = new CrlResource(publisher, sercur);
         res.unrevoke(ids);
-        verify(crlgen, atLeastOnce()).removeEntries(eq(crl), any(List.class));
-        verify(fileutil, atLeastOnce()).writeCRLFile(any(File.class), eq(crl));
+        verify(publisher, atLeastOnce()).removeEntries(eq(serials));
     }
 
-    private static class ConfigForTesting extends Config {
-        public ConfigForTesting() {
-            super(new HashMap<String, String>() {
-                private static final long serialVersionUID = 1L;
-                {
-                    this.put(ConfigProperties.CRL_FILE_PATH, "/tmp/test-crl.crl");
-                }
-            });
-        }
+    @Test
+    public void getCurrentCrl() throws Exception {
+        CrlPublisher publisher = mock(CrlPublisher.class);
+        PublishedCrl crl = new PublishedCrl("crl".getBytes(), BigInteger.TEN,
+            new Date());
+        when(publisher.getCurrent()).thenReturn(crl);
+
+        CrlResource res = new CrlResource(publisher,
+            mock(CertificateSerialCurator.class));
+        Response response = res.getCurrentCrl(null, null);
+        assertEquals(200, response.getStatus());
+        assertSame(crl.getEncoded(), response.getEntity());
+        assertEquals(MediaType.TEXT_PLAIN_TYPE,
+            response.getMetadata().getFirst("Content-Type"));
+    }
+
+    @Test
+    public void getCurrentCrlNotModified() throws Exception {
+        CrlPublisher publisher = mock(CrlPublisher.class);
+        PublishedCrl crl = new PublishedCrl("crl".getBytes(), BigInteger.TEN,
+            new Date());
+        when(publisher.getCurrent()).thenReturn(crl);
+        Request request = mock(Request.class);
+        when(request.evaluatePreconditions(any(Date.class), any(EntityTag.class)))
+            .thenReturn(Response.notModified());
+
+        CrlResource res = new CrlResource(publisher,
+            mock(CertificateSerialCurator.class));
+        Response response = res.getCurrentCrl(null, request);
+        assertEquals(304, response.getStatus());
     }
 }
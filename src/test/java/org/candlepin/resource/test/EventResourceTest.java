@@ -19,6 +19,8 @@ import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.inject.Guice;
@@ -29,6 +31,7 @@ import org.candlepin.CandlepinNonServletEnvironmentTestingModule;
 import org.candlepin.audit.Event;
 import org.candlepin.audit.EventAdapter;
 import org.candlepin.auth.PrincipalData;
+import org.candlepin.exceptions.BadRequestException;
 import org.candlepin.exceptions.NotFoundException;
 import org.candlepin.model.EventCurator;
 import org.candlepin.resource.EventResource;
@@ -39,6 +42,9 @@ import org.xnap.commons.i18n.I18n;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 
 
 /**
@@ -47,10 +53,14 @@ import java.util.List;
 public class EventResourceTest {
     protected Injector injector;
     private EventCurator ec;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
 
     @Before
     public void init() {
         ec = mock(EventCurator.class);
+        request = mock(HttpServletRequest.class);
+        response = mock(HttpServletResponse.class);
         injector = Guice.createInjector(
             new CandlepinCommonTestingModule(),
             new CandlepinNonServletEnvironmentTestingModule()
@@ -77,15 +87,54 @@ public class EventResourceTest {
 
     @Test
     public void listevents() {
-        when(ec.listAll()).thenReturn(null);
+        when(ec.listMostRecent(eq(0), eq((String) null))).thenReturn(null);
         EventResource er = new EventResource(ec, null,
             injector.getInstance(EventAdapter.class));
-        assertNull(er.listEvents());
+        assertNull(er.listEvents(null, null, request, response));
+
+        List<Event> events = new ArrayList<Event>();
+        events.add(getEvent());
+        when(ec.listMostRecent(eq(0), eq((String) null))).thenReturn(events);
+        assertEquals(events, er.listEvents(null, null, request, response));
+        when(ec.listMostRecent(eq(0), eq("8aba"))).thenReturn(events);
+        assertEquals(events, er.listEvents(null, "8aba", request, response));
+        verify(response, never()).addHeader(eq("Link"), anyString());
+    }
 
+    @Test
+    public void fullPageLinksToTheNextPage() {
         List<Event> events = new ArrayList<Event>();
         events.add(getEvent());
-        when(ec.listAll()).thenReturn(events);
-        assertEquals(events, er.listEvents());
+        events.add(getEvent());
+        events.get(1).setId("8aba");
+        when(ec.listMostRecent(eq(2), eq((String) null))).thenReturn(events);
+        when(request.getRequestURL()).thenReturn(
+            new StringBuffer("https://localhost/candlepin/events"));
+        EventResource er = new EventResource(ec, null,
+            injector.getInstance(EventAdapter.class));
+
+        assertEquals(events, er.listEvents(2, null, request, response));
+        verify(response).addHeader("Link",
+            "<https://localhost/candlepin/events?limit=2&before=8aba>; rel=\"next\"");
+    }
+
+    @Test
+    public void partialPageHasNoNextPage() {
+        List<Event> events = new ArrayList<Event>();
+        events.add(getEvent());
+        when(ec.listMostRecent(eq(2), eq((String) null))).thenReturn(events);
+        EventResource er = new EventResource(ec, null,
+            injector.getInstance(EventAdapter.class));
+
+        assertEquals(events, er.listEvents(2, null, request, response));
+        verify(response, never()).addHeader(eq("Link"), anyString());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void limitMustBePositive() {
+        EventResource er = new EventResource(ec, injector.getInstance(I18n.class),
+            injector.getInstance(EventAdapter.class));
+        er.listEvents(0, null, request, response);
     }
 
     protected Event getEvent() {
@@ -358,7 +358,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
 
         securityInterceptor.enable();
 
-        Feed feed = ownerResource.getOwnerAtomFeed(owner.getKey());
+        Feed feed = ownerResource.getOwnerAtomFeed(owner.getKey(), null);
         assertEquals(1, feed.getEntries().size());
         Entry entry = feed.getEntries().get(0);
         assertEquals(e1.getTimestamp(), entry.getPublished());
@@ -377,7 +377,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
 
         securityInterceptor.enable();
 
-        ownerResource.getOwnerAtomFeed(owner.getKey());
+        ownerResource.getOwnerAtomFeed(owner.getKey(), null);
     }
 
     @Test(expected = ForbiddenException.class)
@@ -389,7 +389,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
 
         securityInterceptor.enable();
 
-        ownerResource.getOwnerAtomFeed(owner.getKey());
+        ownerResource.getOwnerAtomFeed(owner.getKey(), null);
     }
 
     @Test(expected = ForbiddenException.class)
@@ -401,7 +401,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
 
         securityInterceptor.enable();
 
-        ownerResource.getConsumerAtomFeed(owner.getKey(), c.getUuid());
+        ownerResource.getConsumerAtomFeed(owner.getKey(), c.getUuid(), null);
     }
 
     @Test(expected = ForbiddenException.class)
@@ -439,7 +439,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
 
         // Should see no results:
         setupPrincipal(owner2, Access.ALL);
-        ownerResource.getConsumerAtomFeed(owner.getKey(), c.getUuid());
+        ownerResource.getConsumerAtomFeed(owner.getKey(), c.getUuid(), null);
     }
 
     @Test
@@ -466,7 +466,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         setupPrincipal(owner, Access.ALL);
         securityInterceptor.enable();
 
-        Feed feed = ownerResource.getConsumerAtomFeed(owner.getKey(), c.getUuid());
+        Feed feed = ownerResource.getConsumerAtomFeed(owner.getKey(), c.getUuid(), null);
         assertEquals(1, feed.getEntries().size());
         Entry entry = feed.getEntries().get(0);
         assertEquals(e1.getTimestamp(), entry.getPublished());
@@ -549,6 +549,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         Entitlement e1 = createEntitlement(owner, consumer, pool, null);
         e1.setQuantity(quantity);
         pool.getEntitlements().add(e1);
+        pool.setConsumed(pool.getConsumed() + quantity);
 
         this.entitlementCurator.create(e1);
         this.poolCurator.merge(e1.getPool());
@@ -27,16 +27,19 @@ import java.util.Locale;
 import javax.servlet.http.HttpServletRequest;
 
 import org.candlepin.auth.ConsumerPrincipal;
+import org.candlepin.auth.ConsumerPrincipalCache;
 import org.candlepin.auth.NoAuthPrincipal;
 import org.candlepin.auth.Principal;
 import org.candlepin.auth.UserPrincipal;
 import org.candlepin.auth.interceptor.SecurityHole;
 import org.candlepin.config.Config;
+import org.candlepin.controller.ConsumerCheckinTracker;
 import org.candlepin.exceptions.UnauthorizedException;
 import org.candlepin.guice.I18nProvider;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.DeletedConsumerCurator;
+import org.candlepin.model.DeletedConsumerFilter;
 import org.candlepin.model.OwnerCurator;
 import org.candlepin.model.User;
 import org.candlepin.service.UserServiceAdapter;
@@ -62,6 +65,7 @@ public class AuthInterceptorTest {
     private OwnerCurator oc;
     private ConsumerCurator cc;
     private DeletedConsumerCurator dcc;
+    private ConsumerCheckinTracker tracker;
     private Injector injector;
     private I18n i18n;
 
@@ -72,9 +76,12 @@ public class AuthInterceptorTest {
         oc = mock(OwnerCurator.class);
         cc = mock(ConsumerCurator.class);
         dcc = mock(DeletedConsumerCurator.class);
+        tracker = mock(ConsumerCheckinTracker.class);
         injector = Guice.createInjector(new AuthInterceptorTestModule());
         i18n = I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK);
-        interceptor = new AuthInterceptor(config, usa, oc, cc, dcc, injector, i18n);
+        interceptor = new AuthInterceptor(config, usa, oc, cc, dcc,
+            mock(DeletedConsumerFilter.class), mock(ConsumerPrincipalCache.class),
+            tracker, injector, i18n);
     }
 
     @Test(expected = UnauthorizedException.class)
@@ -161,7 +168,7 @@ public class AuthInterceptorTest {
 
         Principal p1 = ResteasyProviderFactory.getContextData(Principal.class);
         assertTrue(p1 instanceof ConsumerPrincipal);
-        verify(cc).updateLastCheckin(eq(c));
+        verify(tracker).checkin(eq(c));
     }
 
     /**
@@ -18,6 +18,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.security.Principal;
@@ -25,10 +27,13 @@ import java.security.cert.X509Certificate;
 import java.util.Locale;
 
 import org.candlepin.auth.ConsumerPrincipal;
+import org.candlepin.auth.ConsumerPrincipalCache;
+import org.candlepin.exceptions.GoneException;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.ConsumerType;
 import org.candlepin.model.DeletedConsumerCurator;
+import org.candlepin.model.DeletedConsumerFilter;
 import org.candlepin.model.Owner;
 import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
 import org.jboss.resteasy.spi.HttpRequest;
@@ -44,6 +49,8 @@ public class SSLAuthTest {
     @Mock private HttpRequest request;
     @Mock private ConsumerCurator consumerCurator;
     @Mock private DeletedConsumerCurator deletedConsumerCurator;
+    @Mock private DeletedConsumerFilter deletedConsumerFilter;
+    @Mock private ConsumerPrincipalCache principalCache;
 
     private SSLAuth auth;
     private I18n i18n;
@@ -52,7 +59,8 @@ public class SSLAuthTest {
     public void setUp() {
         MockitoAnnotations.initMocks(this);
         i18n = I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK);
-        this.auth = new SSLAuth(this.consumerCurator, this.deletedConsumerCurator, i18n);
+        this.auth = new SSLAuth(this.consumerCurator, this.deletedConsumerCurator,
+            this.deletedConsumerFilter, this.principalCache, i18n);
     }
 
     /**
@@ -109,6 +117,49 @@ public class SSLAuthTest {
         assertNull(this.auth.getPrincipal(request));
     }
 
+    @Test
+    public void cachedPrincipal() throws Exception {
+        Consumer consumer = new Consumer("machine_name", "test user",
+            new Owner("test owner"), new ConsumerType(ConsumerTypeEnum.SYSTEM));
+        ConsumerPrincipal expected = new ConsumerPrincipal(consumer);
+
+        mockCert("CN=453-44423-235");
+        when(this.principalCache.get("453-44423-235")).thenReturn(expected);
+        assertEquals(expected, this.auth.getPrincipal(request));
+        verify(this.consumerCurator, never()).getConsumer(anyString());
+        verify(this.deletedConsumerCurator, never()).countByConsumerUuid(anyString());
+    }
+
+    @Test(expected = GoneException.class)
+    public void cachedPrincipalOfDeletedConsumer() throws Exception {
+        Consumer consumer = new Consumer("machine_name", "test user",
+            new Owner("test owner"), new ConsumerType(ConsumerTypeEnum.SYSTEM));
+
+        mockCert("CN=453-44423-235");
+        when(this.principalCache.get("453-44423-235")).thenReturn(
+            new ConsumerPrincipal(consumer));
+        when(this.deletedConsumerFilter.mightBeDeleted("453-44423-235"))
+            .thenReturn(true);
+        when(this.deletedConsumerCurator.countByConsumerUuid("453-44423-235"))
+            .thenReturn(1);
+        this.auth.getPrincipal(request);
+    }
+
+    @Test(expected = GoneException.class)
+    public void deletedConsumer() throws Exception {
+        mockCert("CN=235-8");
+        when(this.deletedConsumerFilter.mightBeDeleted("235-8")).thenReturn(true);
+        when(this.deletedConsumerCurator.countByConsumerUuid("235-8")).thenReturn(1);
+        this.auth.getPrincipal(request);
+    }
+
+    @Test(expected = GoneException.class)
+    public void deletedConsumerNotInFilter() throws Exception {
+        mockCert("CN=235-8");
+        when(this.deletedConsumerFilter.mightBeDeleted("235-8")).thenReturn(false);
+        when(this.deletedConsumerCurator.countByConsumerUuid("235-8")).thenReturn(1);
+        this.auth.getPrincipal(request);
+    }
 
     private void mockCert(String dn) {
         X509Certificate idCert =  mock(X509Certificate.class);
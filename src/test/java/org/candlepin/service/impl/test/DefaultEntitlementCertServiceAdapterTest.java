@@ -18,12 +18,14 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -52,6 +54,7 @@ import java.util.StringTokenizer;
 import java.util.zip.InflaterOutputStream;
 
 import org.candlepin.config.Config;
+import org.candlepin.json.model.EntitlementBody;
 import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialCurator;
 import org.candlepin.model.Consumer;
@@ -77,6 +80,7 @@ import org.candlepin.pki.impl.BouncyCastlePKIUtility;
 import org.candlepin.service.ProductServiceAdapter;
 import org.candlepin.service.impl.DefaultEntitlementCertServiceAdapter;
 import org.candlepin.util.CertificateSizeException;
+import org.candlepin.util.ContentExtensionCache;
 import org.candlepin.util.Util;
 import org.candlepin.util.X509ExtensionUtil;
 import org.candlepin.util.X509V3ExtensionUtil;
@@ -152,7 +156,8 @@ public class DefaultEntitlementCertServiceAdapterTest {
     public void setUp() {
         Config config = new Config();
         extensionUtil = new X509ExtensionUtil(config);
-        v3extensionUtil = new X509V3ExtensionUtil(config, entCurator);
+        v3extensionUtil = new X509V3ExtensionUtil(config, entCurator,
+            new ContentExtensionCache(config));
 
         certServiceAdapter = new DefaultEntitlementCertServiceAdapter(
             mockedPKI, extensionUtil, v3extensionUtil,
@@ -784,11 +789,53 @@ public class DefaultEntitlementCertServiceAdapterTest {
             product, new BigInteger("1234"), keyPair(), true);
         verify(mockV3extensionUtil).getExtensions(any(Set.class), eq(entitlement),
             any(String.class), any(Map.class), eq(subscription));
-        verify(mockV3extensionUtil).getByteExtensions(any(Set.class),
+        verify(mockV3extensionUtil).createEntitlementBody(any(Set.class),
             eq(entitlement), any(String.class), any(Map.class), eq(subscription));
+        verify(mockV3extensionUtil).getByteExtensions(any(EntitlementBody.class));
         verifyZeroInteractions(mockExtensionUtil);
     }
 
+    @Test
+    public void v3EntitlementBodyIsBuiltOnce() throws Exception {
+        Config mockConfig = mock(Config.class);
+        when(mockConfig.certV3IsEnabled()).thenReturn(true);
+        when(consumer.getFact(eq("system.certificate_version"))).thenReturn("3.0");
+
+        X509V3ExtensionUtil mockV3extensionUtil = mock(X509V3ExtensionUtil.class);
+        EntitlementBody body = new EntitlementBody();
+        when(mockV3extensionUtil.createEntitlementBody(any(Set.class),
+            eq(entitlement), any(String.class), any(Map.class), eq(subscription)))
+            .thenReturn(body);
+        when(mockV3extensionUtil.createEntitlementDataPayload(eq(body)))
+            .thenReturn("payload".getBytes());
+
+        KeyPair keyPair = new BouncyCastlePKIUtility(null, null).generateNewKeyPair();
+        when(keyPairCurator.getConsumerKeyPair(any(Consumer.class))).thenReturn(keyPair);
+        when(mockedPKI.getPemEncoded(any(X509Certificate.class))).thenReturn(
+            "".getBytes());
+        when(mockedPKI.getPemEncoded(any(Key.class))).thenReturn("".getBytes());
+        CertificateSerial serial = mock(CertificateSerial.class);
+        when(serial.getId()).thenReturn(1L);
+        when(serialCurator.reserve(any(CertificateSerial.class))).thenReturn(serial);
+
+        DefaultEntitlementCertServiceAdapter entAdapter =
+            new DefaultEntitlementCertServiceAdapter(mockedPKI,
+                mock(X509ExtensionUtil.class), mockV3extensionUtil,
+                mock(EntitlementCertificateCurator.class),
+                keyPairCurator, serialCurator, productAdapter, entCurator,
+                I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
+                mockConfig);
+
+        EntitlementCertificate cert = entAdapter.generateEntitlementCert(entitlement,
+            subscription, product);
+
+        assertTrue(cert.getCert().contains("ENTITLEMENT DATA"));
+        verify(mockV3extensionUtil, times(1)).createEntitlementBody(any(Set.class),
+            eq(entitlement), any(String.class), any(Map.class), eq(subscription));
+        verify(mockV3extensionUtil).getByteExtensions(eq(body));
+        verify(mockV3extensionUtil).createEntitlementDataPayload(eq(body));
+    }
+
     @Test
     public void ensureV1CertIsCreatedWhenEnableCertV3ConfigIsFalse() throws Exception {
         Config mockConfig = mock(Config.class);
@@ -1048,7 +1095,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
 
         CertificateSerial serial = mock(CertificateSerial.class);
         when(serial.getId()).thenReturn(1L);
-        when(serialCurator.create(any(CertificateSerial.class))).thenReturn(serial);
+        when(serialCurator.reserve(any(CertificateSerial.class))).thenReturn(serial);
 
         EntitlementCertificate cert =
             certServiceAdapter.generateEntitlementCert(entitlement, subscription,
@@ -1334,6 +1381,49 @@ public class DefaultEntitlementCertServiceAdapterTest {
         }
     }
 
+    @Test
+    public void testLargeContentSetRoundTrip() throws IOException {
+        // every url ends at the same depth, the format has no way to express a
+        // url which is a prefix of another.
+        String[] arches = {"i386", "x86_64", "ppc64", "s390x"};
+        String[] repos = {"os", "debug", "source/SRPMS", "optional/os",
+            "supplementary/os"};
+        Set<String> urls = new HashSet<String>();
+        List<org.candlepin.json.model.Content> contents =
+            new ArrayList<org.candlepin.json.model.Content>();
+        for (int product = 0; product < 60; product++) {
+            for (String arch : arches) {
+                for (String repo : repos) {
+                    String url = "/content/dist/product" + product + "/" +
+                        (product % 7) + "Server/" + arch + "/" + repo + "/all";
+                    org.candlepin.json.model.Content content =
+                        new org.candlepin.json.model.Content();
+                    content.setPath(url);
+                    contents.add(content);
+                    urls.add(url);
+                }
+            }
+        }
+        org.candlepin.json.model.Product jsonProduct =
+            new org.candlepin.json.model.Product();
+        jsonProduct.setContent(contents);
+        EntitlementBody body = new EntitlementBody();
+        body.setProducts(Arrays.asList(jsonProduct));
+
+        Set<X509ByteExtensionWrapper> byteExtensions =
+            v3extensionUtil.getByteExtensions(body);
+        List<String> hydrated = v3extensionUtil.hydrateContentPackage(
+            byteExtensions.iterator().next().getValue());
+
+        assertEquals(1200, hydrated.size());
+        assertEquals(urls, new HashSet<String>(hydrated));
+
+        // the same content set is only encoded once
+        Collections.reverse(contents);
+        assertSame(byteExtensions.iterator().next().getValue(),
+            v3extensionUtil.getByteExtensions(body).iterator().next().getValue());
+    }
+
     private String processPayload(byte[] payload)
         throws IOException, UnsupportedEncodingException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -28,6 +28,7 @@ import org.candlepin.config.Config;
 import org.candlepin.config.ConfigProperties;
 import org.candlepin.guice.PrincipalProvider;
 import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerType;
 import org.candlepin.model.ConsumerTypeCurator;
 import org.candlepin.model.Entitlement;
 import org.candlepin.model.EntitlementCurator;
@@ -43,19 +44,24 @@ import org.candlepin.service.EntitlementCertServiceAdapter;
 import org.candlepin.service.ProductServiceAdapter;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -89,6 +95,7 @@ public class ExporterTest {
     private CandlepinCommonTestConfig config;
     private ExportRules exportRules;
     private PrincipalProvider pprov;
+    private KeyPair keyPair;
 
     @Before
     public void setUp() {
@@ -154,8 +161,7 @@ public class ExporterTest {
         when(pool.getProductId()).thenReturn("MKT-prod");
         when(ent.getPool()).thenReturn(pool);
         when(mrules.getRules()).thenReturn("foobar");
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
+        when(pki.getSHA256WithRSASigner()).thenReturn(signer());
         when(rc.getRules()).thenReturn(mrules);
         when(consumer.getEntitlements()).thenReturn(entitlements);
         when(psa.getProductById("12345")).thenReturn(prod);
@@ -168,7 +174,7 @@ public class ExporterTest {
         Exporter e = new Exporter(ctc, me, ce, cte, re, ece, ecsa, pe, psa,
             pce, ec, ee, pki, config, exportRules, pprov);
 
-        File export = e.getFullExport(consumer);
+        File export = save(e.getFullExport(consumer));
 
         // VERIFY
         assertNotNull(export);
@@ -190,8 +196,7 @@ public class ExporterTest {
         List<Entitlement> entitlements = new ArrayList<Entitlement>();
         entitlements.add(ent);
 
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
+        when(pki.getSHA256WithRSASigner()).thenReturn(signer());
         when(pprov.get()).thenReturn(principal);
         when(principal.getUsername()).thenReturn("testUser");
 
@@ -201,7 +206,7 @@ public class ExporterTest {
         Exporter e = new Exporter(ctc, me, ce, cte, re, ece, ecsa, pe, psa,
             pce, ec, ee, pki, config, exportRules, pprov);
 
-        File export = e.getFullExport(consumer);
+        e.getFullExport(consumer);
     }
 
     @Test
@@ -213,8 +218,7 @@ public class ExporterTest {
         Principal principal = mock(Principal.class);
 
         when(mrules.getRules()).thenReturn("foobar");
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
+        when(pki.getSHA256WithRSASigner()).thenReturn(signer());
         when(rc.getRules()).thenReturn(mrules);
         when(pprov.get()).thenReturn(principal);
         when(principal.getUsername()).thenReturn("testUser");
@@ -222,7 +226,7 @@ public class ExporterTest {
         // FINALLY test this badboy
         Exporter e = new Exporter(ctc, me, ce, cte, re, ece, ecsa, pe, psa,
             pce, ec, ee, pki, config, exportRules, pprov);
-        File export = e.getFullExport(consumer);
+        File export = save(e.getFullExport(consumer));
 
         // VERIFY
         assertNotNull(export);
@@ -235,6 +239,164 @@ public class ExporterTest {
         assertTrue(new File("/tmp/meta.json").delete());
     }
 
+    @Test
+    public void signatureCoversExport() throws Exception {
+        config.setProperty(ConfigProperties.SYNC_WORK_DIR, "/tmp/");
+        Rules mrules = mock(Rules.class);
+        Consumer consumer = mock(Consumer.class);
+        Principal principal = mock(Principal.class);
+
+        when(mrules.getRules()).thenReturn("foobar");
+        when(pki.getSHA256WithRSASigner()).thenReturn(signer());
+        when(rc.getRules()).thenReturn(mrules);
+        when(pprov.get()).thenReturn(principal);
+
+        Exporter e = new Exporter(ctc, me, ce, cte, re, ece, ecsa, pe, psa,
+            pce, ec, ee, pki, config, exportRules, pprov);
+        ExportArchive archive = e.getFullExport(consumer);
+        assertTrue(archive.isInMemory());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        archive.write(out);
+        assertEquals(out.size(), archive.getSize());
+
+        byte[] export = null;
+        byte[] signature = null;
+        ZipInputStream zis = new ZipInputStream(
+            new ByteArrayInputStream(out.toByteArray()));
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            if (entry.getName().equals("consumer_export.zip")) {
+                export = IOUtils.toByteArray(zis);
+            }
+            else if (entry.getName().equals("signature")) {
+                signature = IOUtils.toByteArray(zis);
+            }
+        }
+        zis.close();
+
+        Signature verifier = Signature.getInstance("SHA256withRSA");
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(export);
+        assertTrue(verifier.verify(signature));
+    }
+
+    @Test
+    public void largeExportSpillsToDisk() throws Exception {
+        config.setProperty(ConfigProperties.SYNC_WORK_DIR, "/tmp/");
+        config.setProperty(ConfigProperties.SYNC_EXPORT_MEMORY_THRESHOLD, "16");
+        Date start = new Date();
+        Rules mrules = mock(Rules.class);
+        Consumer consumer = mock(Consumer.class);
+        Principal principal = mock(Principal.class);
+
+        when(mrules.getRules()).thenReturn("foobar");
+        when(pki.getSHA256WithRSASigner()).thenReturn(signer());
+        when(rc.getRules()).thenReturn(mrules);
+        when(pprov.get()).thenReturn(principal);
+
+        Exporter e = new Exporter(ctc, me, ce, cte, re, ece, ecsa, pe, psa,
+            pce, ec, ee, pki, config, exportRules, pprov);
+        ExportArchive archive = e.getFullExport(consumer);
+        assertFalse(archive.isInMemory());
+
+        File export = save(archive);
+        verifyContent(export, "export/meta.json", new VerifyMetadata(start));
+
+        FileUtils.deleteDirectory(export.getParentFile());
+        assertTrue(new File("/tmp/consumer_export.zip").delete());
+        assertTrue(new File("/tmp/meta.json").delete());
+    }
+
+    @Test
+    public void fingerprintFollowsExportedState() throws Exception {
+        Consumer consumer = mock(Consumer.class);
+        Entitlement ent = mock(Entitlement.class);
+        Pool pool = mock(Pool.class);
+        List<Entitlement> entitlements = new ArrayList<Entitlement>();
+        entitlements.add(ent);
+
+        when(consumer.getUuid()).thenReturn("uuid");
+        when(consumer.getType()).thenReturn(new ConsumerType("candlepin"));
+        when(ec.listByConsumer(consumer)).thenReturn(entitlements);
+        when(ent.getId()).thenReturn("ent1");
+        when(ent.getQuantity()).thenReturn(1);
+        when(ent.getPool()).thenReturn(pool);
+        when(rc.getUpdated()).thenReturn(new Date(1000L));
+
+        Exporter e = new Exporter(ctc, me, ce, cte, re, ece, ecsa, pe, psa,
+            pce, ec, ee, pki, config, exportRules, pprov);
+        String fingerprint = e.getFullExportFingerprint(consumer);
+        assertEquals(fingerprint, e.getFullExportFingerprint(consumer));
+
+        when(ent.getQuantity()).thenReturn(2);
+        String changed = e.getFullExportFingerprint(consumer);
+        assertFalse(fingerprint.equals(changed));
+
+        when(rc.getUpdated()).thenReturn(new Date(2000L));
+        assertFalse(changed.equals(e.getFullExportFingerprint(consumer)));
+    }
+
+    @Test
+    public void fingerprintFollowsExportedProducts() throws Exception {
+        Consumer consumer = mock(Consumer.class);
+        Entitlement ent = mock(Entitlement.class);
+        Pool pool = mock(Pool.class);
+        Set<Entitlement> entitlements = new HashSet<Entitlement>();
+        entitlements.add(ent);
+        // never stamped with an update date
+        Product prod = new Product("12345", "RHEL Product");
+        ProductCertificate pcert = new ProductCertificate();
+        pcert.setCert("first cert");
+
+        when(consumer.getUuid()).thenReturn("uuid");
+        when(consumer.getType()).thenReturn(new ConsumerType("candlepin"));
+        when(consumer.getEntitlements()).thenReturn(entitlements);
+        when(ent.getPool()).thenReturn(pool);
+        when(pool.getProductId()).thenReturn("12345");
+        when(psa.getProductById("12345")).thenReturn(prod);
+        when(psa.getProductCertificate(any(Product.class))).thenReturn(pcert);
+
+        Exporter e = new Exporter(ctc, me, ce, cte, re, ece, ecsa, pe, psa,
+            pce, ec, ee, pki, config, exportRules, pprov);
+        String fingerprint = e.getFullExportFingerprint(consumer);
+        assertEquals(fingerprint, e.getFullExportFingerprint(consumer));
+
+        prod.setName("RHEL Product Renamed");
+        String renamed = e.getFullExportFingerprint(consumer);
+        assertFalse(fingerprint.equals(renamed));
+
+        pcert.setCert("second cert");
+        assertFalse(renamed.equals(e.getFullExportFingerprint(consumer)));
+    }
+
+    private Signature signer() throws Exception {
+        if (keyPair == null) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(1024);
+            keyPair = generator.generateKeyPair();
+        }
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keyPair.getPrivate());
+        return signature;
+    }
+
+    /**
+     * Writes the archive to a file of its own temp dir, as the importer
+     * would receive it.
+     */
+    private File save(ExportArchive archive) throws IOException {
+        File dir = new SyncUtils(config).makeTempDir("export");
+        File file = new File(dir, archive.getName());
+        OutputStream out = new FileOutputStream(file);
+        try {
+            archive.write(out);
+        }
+        finally {
+            out.close();
+        }
+        return file;
+    }
+
     /**
      * return true if export has a given entry named name.
      * @param export zip file to inspect
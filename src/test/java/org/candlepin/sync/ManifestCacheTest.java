@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.sync;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.sync.ManifestCache.CachedManifest;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * ManifestCacheTest
+ */
+public class ManifestCacheTest {
+
+    private Config config;
+
+    @Before
+    public void init() {
+        config = mock(Config.class);
+        when(config.getInt(ConfigProperties.SYNC_MANIFEST_CACHE_MAX)).thenReturn(10);
+    }
+
+    @Test
+    public void servesManifestWhileFingerprintMatches() throws Exception {
+        ManifestCache cache = new ManifestCache(config);
+        ExportArchive archive = archive("abcd");
+        StreamingOutput stored = cache.put("c1", "f1", archive);
+
+        assertTrue(stored instanceof CachedManifest);
+        CachedManifest cached = cache.get("c1", "f1");
+        assertSame(stored, cached);
+        assertEquals("export.zip", cached.getName());
+
+        // can be written out more than once
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            cached.write(out);
+            assertArrayEquals("abcd".getBytes(), out.toByteArray());
+        }
+    }
+
+    @Test
+    public void changedFingerprintMisses() throws Exception {
+        ManifestCache cache = new ManifestCache(config);
+        cache.put("c1", "f1", archive("abcd"));
+
+        assertNull(cache.get("c1", "f2"));
+        assertNull(cache.get("c1", "f1"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void invalidate() throws Exception {
+        ManifestCache cache = new ManifestCache(config);
+        cache.put("c1", "f1", archive("abcd"));
+        Consumer consumer = new Consumer();
+        consumer.setUuid("c1");
+
+        cache.invalidate(consumer);
+        assertNull(cache.get("c1", "f1"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        ManifestCache cache = new ManifestCache(config);
+        cache.put("c1", "f1", archive("abcd"));
+        cache.put("c2", "f2", archive("efgh"));
+        cache.get("c1", "f1");
+        cache.put("c3", "f3", archive("ijkl"));
+
+        assertEquals(8, cache.getSize());
+        assertNull(cache.get("c2", "f2"));
+        assertTrue(cache.get("c1", "f1") != null);
+        assertTrue(cache.get("c3", "f3") != null);
+    }
+
+    @Test
+    public void largeManifestIsNotCached() throws Exception {
+        ManifestCache cache = new ManifestCache(config);
+        ExportArchive archive = archive("too large to cache");
+
+        assertSame(archive, cache.put("c1", "f1", archive));
+        assertNull(cache.get("c1", "f1"));
+        archive.delete();
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        when(config.getInt(ConfigProperties.SYNC_MANIFEST_CACHE_MAX)).thenReturn(0);
+        ManifestCache cache = new ManifestCache(config);
+        assertFalse(cache.isEnabled());
+
+        ExportArchive archive = archive("abcd");
+        assertSame(archive, cache.put("c1", "f1", archive));
+        assertNull(cache.get("c1", "f1"));
+        archive.delete();
+    }
+
+    private ExportArchive archive(String contents) throws IOException {
+        File file = File.createTempFile("manifest", ".zip");
+        ExportArchive archive = new ExportArchive("export.zip", file, 1024);
+        archive.getOutputStream().write(contents.getBytes());
+        archive.getOutputStream().close();
+        return archive;
+    }
+}
@@ -22,6 +22,7 @@ import java.io.StringReader;
 
 import org.candlepin.model.Rules;
 import org.candlepin.model.RulesCurator;
+import org.candlepin.policy.js.JsRunnerProvider;
 import org.candlepin.util.VersionUtil;
 import org.junit.Before;
 import org.junit.Test;
@@ -37,18 +38,20 @@ import org.mockito.runners.MockitoJUnitRunner;
 public class RulesImporterTest {
 
     @Mock private RulesCurator curator;
+    @Mock private JsRunnerProvider jsProvider;
     private RulesImporter importer;
     private String RULE = "good bye, cruel world!";
 
     @Before
     public void setUp() {
-        importer = new RulesImporter(curator);
+        importer = new RulesImporter(curator, jsProvider);
     }
 
     @Test
     public void importRules() throws IOException {
         importer.importObject(new StringReader(RULE), VersionUtil.getVersionString());
         verify(curator).update(any(Rules.class)); // TODO: can't get custom matcher to work?
+        verify(jsProvider).invalidate();
     }
 
     static class RulesMatcher extends ArgumentMatcher<Rules> {
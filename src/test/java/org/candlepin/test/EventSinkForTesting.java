@@ -43,6 +43,14 @@ public class EventSinkForTesting implements EventSink {
     public void sendEvent(Event event) {
     }
 
+    @Override
+    public void beginBatch() {
+    }
+
+    @Override
+    public void sendEvents() {
+    }
+
     @Override
     public void emitPoolCreated(Pool newPool) {
     }
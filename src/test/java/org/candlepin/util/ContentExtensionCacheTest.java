@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.junit.Test;
+
+/**
+ * ContentExtensionCacheTest
+ */
+public class ContentExtensionCacheTest {
+
+    private ContentExtensionCache createCache(int maxSize) {
+        Config config = mock(Config.class);
+        when(config.getInt(ConfigProperties.CONTENT_EXTENSION_CACHE_MAX))
+            .thenReturn(maxSize);
+        return new ContentExtensionCache(config);
+    }
+
+    @Test
+    public void fingerprintIgnoresOrder() {
+        assertEquals(
+            ContentExtensionCache.fingerprint(Arrays.asList("/a/b", "/c/d")),
+            ContentExtensionCache.fingerprint(Arrays.asList("/c/d", "/a/b")));
+    }
+
+    @Test
+    public void fingerprintChangesWithContent() {
+        assertFalse(
+            ContentExtensionCache.fingerprint(Arrays.asList("/a/b", "/c/d")).equals(
+            ContentExtensionCache.fingerprint(Arrays.asList("/a/b", "/c/e"))));
+        // segments must not run together
+        assertFalse(
+            ContentExtensionCache.fingerprint(Arrays.asList("/a/b", "/c")).equals(
+            ContentExtensionCache.fingerprint(Arrays.asList("/a/b/c"))));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        ContentExtensionCache cache = createCache(2);
+        byte[] one = new byte[] {1};
+        cache.put("one", one);
+        cache.put("two", new byte[] {2});
+        assertSame(one, cache.get("one"));
+
+        cache.put("three", new byte[] {3});
+        assertEquals(2, cache.size());
+        assertSame(one, cache.get("one"));
+        assertNull(cache.get("two"));
+    }
+
+    @Test
+    public void disabled() {
+        ContentExtensionCache cache = createCache(0);
+        assertFalse(cache.isEnabled());
+        cache.put("one", new byte[] {1});
+        assertNull(cache.get("one"));
+    }
+}
@@ -20,7 +20,6 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
-import org.candlepin.controller.CrlGenerator;
 import org.candlepin.pki.PKIUtility;
 
 import org.apache.commons.codec.binary.Base64;
@@ -45,7 +44,6 @@ public class CrlFileUtilTest {
 
     private CrlFileUtil cfu;
 
-    @Mock private CrlGenerator crlGenerator;
     @Mock private PKIUtility pkiUtility;
 
     @Before
@@ -66,7 +64,6 @@ public class CrlFileUtilTest {
 
         X509CRL crl = mock(X509CRL.class);
         when(crl.getEncoded()).thenReturn(Base64.encodeBase64("encoded".getBytes()));
-        when(crlGenerator.syncCRLWithDB(any(X509CRL.class))).thenReturn(crl);
         when(pkiUtility.getPemEncoded(any(X509CRL.class))).thenReturn(new byte [2]);
         cfu.writeCRLFile(crlFile, crl);
         File f = new File("/tmp/biteme.crl");
@@ -83,8 +80,7 @@ public class CrlFileUtilTest {
             assertEquals(0, f.length());
             X509CRL crl = mock(X509CRL.class);
             when(crl.getEncoded()).thenReturn(Base64.encodeBase64("encoded".getBytes()));
-            when(crlGenerator.syncCRLWithDB(any(X509CRL.class))).thenReturn(crl);
-            when(pkiUtility.getPemEncoded(any(X509CRL.class))).thenReturn(new byte [2]);
+                when(pkiUtility.getPemEncoded(any(X509CRL.class))).thenReturn(new byte [2]);
             X509CRL updatedcrl = cfu.readCRLFile(f);
             cfu.writeCRLFile(f, updatedcrl);
             assertTrue(f.length() > 0);